@@ -21,6 +21,7 @@ import PamController.PamController;
 import PamController.status.BaseProcessCheck;
 import PamController.status.ProcessCheck;
 import PamDetection.RawDataUnit;
+import PamModel.PamModel;
 import PamUtils.PamCalendar;
 import PamUtils.PamUtils;
 import PamUtils.worker.PamWorkMonitor;
@@ -201,6 +202,10 @@ public class AcquisitionProcess extends PamProcess {
 
 		//		before starting, clear all old data
 		rawDataBlock.clearAll();
+		if (rawDataBlock.getBufferPool() != null) {
+			// reset the counters so the stop summary is for this run only. 
+			rawDataBlock.getBufferPool().clear();
+		}
 
 		sampleRateErrorFilter.prepareFilter();
 		totalExtraSamples = 0;
@@ -374,6 +379,9 @@ public class AcquisitionProcess extends PamProcess {
 			ds.setStartTimeSource(runningSystem.getStartTimeSource());
 			addServerTime(ds);
 			daqStatusDataBlock.addPamData(ds);
+			if (rawDataBlock.getBufferPool() != null) {
+				System.out.println(rawDataBlock.getBufferPool());
+			}
 		}
 
 		runningSystem.stopSystem(acquisitionControl);
@@ -510,10 +518,19 @@ public class AcquisitionProcess extends PamProcess {
 
 		dcFilter = createDCFilter();
 
+		boolean poolBuffers = PamModel.getPamModel().getPamModelSettings().recycleRawData &&
+				PamController.getInstance().getRunMode() != PamController.RUN_PAMVIEW;
+		rawDataBlock.setBufferPooling(poolBuffers);
+
 		setSampleRate(acquisitionControl.acquisitionParameters.sampleRate, true);
 
 		super.prepareProcess();
 
+		// sized from the history observers need, so set after they are prepared. 
+		boolean sampleBuffer = PamModel.getPamModel().getPamModelSettings().rawSampleBuffer &&
+				PamController.getInstance().getRunMode() != PamController.RUN_PAMVIEW;
+		rawDataBlock.setSampleBuffer(sampleBuffer);
+
 		ppsDetector.prepare(acquisitionControl.acquisitionParameters);
 
 		if (runningSystem != null) {
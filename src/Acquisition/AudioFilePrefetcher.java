@@ -0,0 +1,287 @@
+package Acquisition;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioFormat.Encoding;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.jflac.sound.spi.FlacEncoding;
+import org.pamguard.x3.sud.SudAudioInputStream;
+
+import Acquisition.PrefetchAudioInputStream.ChunkEvent;
+import Acquisition.PrefetchAudioInputStream.PrefetchBlock;
+import Acquisition.pamAudio.PamAudioFileManager;
+
+/**
+ * Opens and decodes the next few files in a list on background threads, so that when the
+ * acquisition moves on to the next file it's already open and the first blocks of data
+ * are ready.
+ * <p>
+ * Each file is read on its own thread into a bounded buffer, so SUD and FLAC files are
+ * decompressed in parallel with each other and with the rest of the processing. FLAC
+ * files are converted to PCM streams, so they can be read by the normal FileInputSystem
+ * collector rather than the FLAC decoder callback. The streams are used exactly like
+ * streams opened directly, so sample numbers carry on across files in the same way and
+ * file times are still taken from the file names.
+ */
+public class AudioFilePrefetcher {
+
+	/**
+	 * Size of each block of prefetched data.
+	 */
+	private static final int BLOCK_BYTES = 256*1024;
+
+	private int nFiles;
+
+	private int maxBlocks;
+
+	private ExecutorService executor;
+
+	/**
+	 * Files being prefetched, in the order they were requested.
+	 */
+	private LinkedHashMap<File, PrefetchTask> tasks = new LinkedHashMap<>();
+
+	/**
+	 * @param nFiles number of files to read ahead
+	 * @param bufferMB maximum amount of decoded data to hold for each file in MBytes
+	 */
+	public AudioFilePrefetcher(int nFiles, int bufferMB) {
+		this.nFiles = Math.max(nFiles, 1);
+		this.maxBlocks = Math.max(1, (int) ((long) bufferMB * 1024 * 1024 / BLOCK_BYTES));
+		// one extra thread for the file currently being read. 
+		executor = Executors.newFixedThreadPool(this.nFiles+1, (r) -> {
+			Thread t = new Thread(r, "Audio file prefetch");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * @return number of files to read ahead.
+	 */
+	public int getNFiles() {
+		return nFiles;
+	}
+
+	/**
+	 * Start reading a file and the nFiles files after it. Files that are no longer needed are
+	 * discarded.
+	 * @param files list of files
+	 * @param firstIndex index of the file about to be processed
+	 */
+	public synchronized void prefetch(List<? extends File> files, int firstIndex) {
+		int first = Math.max(firstIndex, 0);
+		int last = Math.min(files.size()-1, first + nFiles);
+		List<? extends File> wanted = first <= last ? files.subList(first, last+1) : new ArrayList<File>();
+		Iterator<File> it = tasks.keySet().iterator();
+		while (it.hasNext()) {
+			File f = it.next();
+			if (wanted.contains(f) == false) {
+				tasks.get(f).cancel();
+				it.remove();
+			}
+		}
+		for (File f : wanted) {
+			if (tasks.containsKey(f) == false) {
+				PrefetchTask task = new PrefetchTask(f);
+				tasks.put(f, task);
+				task.future = executor.submit(task);
+			}
+		}
+	}
+
+	/**
+	 * Get the prefetched stream for a file, waiting for the file to be opened if
+	 * necessary.
+	 * @param file file
+	 * @return stream, or null if the file wasn't being prefetched or couldn't be opened,
+	 * in which case it should be opened in the normal way.
+	 */
+	public AudioInputStream getStream(File file) {
+		PrefetchTask task;
+		synchronized (this) {
+			task = tasks.remove(file);
+		}
+		if (task == null) {
+			return null;
+		}
+		try {
+			task.opened.await();
+		} catch (InterruptedException e) {
+			task.cancel();
+			return null;
+		}
+		return task.stream;
+	}
+
+	/**
+	 * Stop reading everything and discard any data.
+	 */
+	public synchronized void clear() {
+		for (PrefetchTask task : tasks.values()) {
+			task.cancel();
+		}
+		tasks.clear();
+	}
+
+	/**
+	 * Stop everything and stop the background threads.
+	 */
+	public void shutdown() {
+		clear();
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Open a file and get a PCM stream for it.
+	 */
+	private AudioInputStream openSource(File file) {
+		AudioInputStream source;
+		try {
+			source = PamAudioFileManager.getInstance().getAudioInputStream(file);
+		}
+		catch (Exception e) {
+			System.out.println("Unable to prefetch sound file " + file.getName() + ": " + e.getMessage());
+			return null;
+		}
+		if (source == null || source.getFormat() == null) {
+			return null;
+		}
+		AudioFormat format = source.getFormat();
+		if (format.getEncoding() == FlacEncoding.FLAC) {
+			AudioFormat pcmFormat = new AudioFormat(Encoding.PCM_SIGNED, format.getSampleRate(), format.getSampleSizeInBits(),
+					format.getChannels(), format.getChannels()*format.getSampleSizeInBits()/8, format.getSampleRate(), false);
+			try {
+				source = AudioSystem.getAudioInputStream(pcmFormat, source);
+			}
+			catch (IllegalArgumentException e) {
+				System.out.println("Unable to prefetch flac file " + file.getName() + ": " + e.getMessage());
+				closeSource(source);
+				return null;
+			}
+		}
+		return source;
+	}
+
+	private void closeSource(AudioInputStream source) {
+		try {
+			source.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private class PrefetchTask implements Runnable {
+
+		private File file;
+
+		private CountDownLatch opened = new CountDownLatch(1);
+
+		private volatile PrefetchAudioInputStream stream;
+
+		private volatile boolean cancelled;
+
+		private Future<?> future;
+
+		private ArrayList<ChunkEvent> chunkEvents = new ArrayList<>();
+
+		private PrefetchTask(File file) {
+			this.file = file;
+		}
+
+		private void cancel() {
+			cancelled = true;
+			PrefetchAudioInputStream s = stream;
+			if (s != null) {
+				try {
+					s.close();
+				} catch (IOException e) {
+				}
+			}
+			else if (future != null) {
+				future.cancel(false);
+			}
+			opened.countDown();
+		}
+
+		@Override
+		public void run() {
+			if (cancelled) {
+				return;
+			}
+			AudioInputStream source = openSource(file);
+			if (source == null || cancelled) {
+				if (source != null) {
+					closeSource(source);
+				}
+				opened.countDown();
+				return;
+			}
+			PrefetchAudioInputStream prefetchStream = PrefetchAudioInputStream.create(source, maxBlocks);
+			prefetchStream.setCloseAction(() -> cancelled = true);
+			if (source instanceof SudAudioInputStream) {
+				((SudAudioInputStream) source).addSudFileListener((chunkId, chunk) -> {
+					chunkEvents.add(new ChunkEvent(chunkId, chunk));
+				});
+			}
+			stream = prefetchStream;
+			opened.countDown();
+			int frameSize = Math.max(source.getFormat().getFrameSize(), 1);
+			int blockBytes = Math.max(1, BLOCK_BYTES / frameSize) * frameSize;
+			IOException error = null;
+			try {
+				boolean end = false;
+				while (!end && !cancelled) {
+					byte[] data = new byte[blockBytes];
+					int n = 0;
+					while (n < blockBytes) {
+						int r = source.read(data, n, blockBytes - n);
+						if (r <= 0) {
+							end = true;
+							break;
+						}
+						n += r;
+					}
+					ArrayList<ChunkEvent> events = null;
+					if (chunkEvents.size() > 0) {
+						events = chunkEvents;
+						chunkEvents = new ArrayList<>();
+					}
+					if (n > 0 || events != null) {
+						if (prefetchStream.putBlock(new PrefetchBlock(data, n, events, false)) == false) {
+							break;
+						}
+					}
+				}
+			}
+			catch (IOException e) {
+				System.out.println("Error prefetching sound file " + file.getName() + ": " + e.getMessage());
+				error = e;
+			}
+			catch (InterruptedException e) {
+				error = new IOException("Interrupted prefetching sound file " + file.getName(), e);
+			}
+			finally {
+				try {
+					// pass any error on to the reader, rather than make it look like the end of the file.
+					prefetchStream.putBlock(error == null ? new PrefetchBlock(null, 0, null, true) : new PrefetchBlock(error));
+				} catch (InterruptedException e) {
+				}
+				closeSource(source);
+			}
+		}
+	}
+
+}
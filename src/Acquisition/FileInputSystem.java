@@ -49,6 +49,7 @@ import Acquisition.filedate.FileDateDialogStrip;
 import Acquisition.filedate.FileDateObserver;
 import Acquisition.filedate.FileTimeData;
 import Acquisition.filetypes.SoundFileType;
+import Acquisition.pamAudio.MappedWavInputStream;
 import Acquisition.pamAudio.PamAudioFileFilter;
 import Acquisition.pamAudio.PamAudioFileManager;
 import PamController.DataInputStore;
@@ -67,6 +68,8 @@ import PamView.dialog.PamLabel;
 import PamView.dialog.warn.WarnOnce;
 import PamView.panel.PamPanel;
 import PamView.panel.PamProgressBar;
+import PamguardMVC.PamRawDataBlock;
+import PamguardMVC.RawDataBufferPool;
 import pamguard.GlobalArguments;
 import soundPlayback.PlaybackControl;
 import warnings.PamWarning;
@@ -699,7 +702,7 @@ public class FileInputSystem  extends DaqSystem implements ActionListener, PamSe
 
 //			System.out.println("FileInputSystem: - prepareInputFile");
 
-			audioStream = PamAudioFileManager.getInstance().getAudioInputStream(currentFile);
+			audioStream = openAudioStream(currentFile);
 
 
 			if (audioStream instanceof SudAudioInputStream) {
@@ -711,6 +714,17 @@ public class FileInputSystem  extends DaqSystem implements ActionListener, PamSe
 //				sudAudioInputStream.ad
 				acquisitionControl.getSUDNotificationManager().newSudInputStream(sudAudioInputStream);
 			}
+			else if (audioStream instanceof PrefetchAudioInputStream && 
+					((PrefetchAudioInputStream) audioStream).getSudAudioInputStream() != null) {
+				// SUD file being decoded on another thread. Chunk notifications come from the prefetch stream.
+				PrefetchAudioInputStream prefetchStream = (PrefetchAudioInputStream) audioStream;
+				sudAudioInputStream = prefetchStream.getSudAudioInputStream();
+				if (sudListener == null) {
+					sudListener = new SudListener();
+				}
+				prefetchStream.setSudFileListener(sudListener);
+				acquisitionControl.getSUDNotificationManager().newSudInputStream(sudAudioInputStream);
+			}
 			else {
 				sudAudioInputStream = null;
 			}
@@ -761,6 +775,17 @@ public class FileInputSystem  extends DaqSystem implements ActionListener, PamSe
 		return true;
 	}
 
+	/**
+	 * Open the audio stream for a file. 
+	 * @param file sound file
+	 * @return audio stream
+	 * @throws UnsupportedAudioFileException
+	 * @throws IOException
+	 */
+	protected AudioInputStream openAudioStream(WavFileType file) throws UnsupportedAudioFileException, IOException {
+		return PamAudioFileManager.getInstance().getAudioInputStream(file);
+	}
+
 	private class SudListener implements SudFileListener {
 
 		@Override
@@ -1046,7 +1071,7 @@ public class FileInputSystem  extends DaqSystem implements ActionListener, PamSe
 			}
 			//				System.out.println("processPCM(ByteData arg0)");
 			int newSamples = byteData.getLen() / frameSize;
-			double[][] doubleData = new double[nChannels][newSamples];
+			double[][] doubleData = getBlockArrays(channelOffset, nChannels, newSamples);
 			byteConverter.bytesToDouble(byteData.getData(), doubleData, byteData.getLen());
 
 			long ms = acquisitionControl.getAcquisitionProcess().absSamplesToMilliseconds(totalSamples);
@@ -1103,6 +1128,66 @@ public class FileInputSystem  extends DaqSystem implements ActionListener, PamSe
 
 	}
 
+	/**
+	 * Get arrays for a new block of data. If raw data buffer pooling is enabled
+	 * in the acquisition output, these are recycled from data that have been 
+	 * removed from the raw data block, otherwise they're new arrays. Either way
+	 * the byte converter will overwrite the entire content of each array. 
+	 * @param firstChannel first channel number
+	 * @param nChan number of channels
+	 * @param nSamples number of samples
+	 * @return arrays for the raw data, one per channel. 
+	 */
+	protected double[][] getBlockArrays(int firstChannel, int nChan, int nSamples) {
+		PamRawDataBlock rawDataBlock = acquisitionControl.getAcquisitionProcess().getRawDataBlock();
+		RawDataBufferPool bufferPool = rawDataBlock == null ? null : rawDataBlock.getBufferPool();
+		if (bufferPool == null) {
+			return new double[nChan][nSamples];
+		}
+		return bufferPool.getBuffers(firstChannel, nChan, nSamples);
+	}
+
+	/**
+	 * Read a block of data from a memory mapped wav file straight into the data arrays. If
+	 * the file ends before the block is full, carry on into the next file in the same way 
+	 * as for other streams. 
+	 * @param doubleData arrays to fill, one per channel
+	 * @param toRead number of frames to read from the current file
+	 * @param totalSamples total samples read so far
+	 * @return number of frames read. 
+	 * @throws IOException
+	 */
+	private int readMappedFrames(double[][] doubleData, int toRead, long totalSamples) throws IOException {
+		int blockLength = doubleData[0].length;
+		int framesRead = ((MappedWavInputStream) audioStream).readFrames(doubleData, 0, toRead);
+		while (framesRead < toRead) {
+			if (openNextFile(totalSamples + framesRead) == false) {
+				break;
+			}
+			int newFrames;
+			if (audioStream instanceof MappedWavInputStream) {
+				newFrames = ((MappedWavInputStream) audioStream).readFrames(doubleData, framesRead, blockLength - framesRead);
+			}
+			else {
+				// next file isn't a wav file, so has to be read and converted. 
+				int frameSize = audioFormat.getFrameSize();
+				byte[] byteArray = new byte[(blockLength - framesRead) * frameSize];
+				int newBytes = audioStream.read(byteArray, 0, byteArray.length);
+				newFrames = Math.max(newBytes, 0) / frameSize;
+				double[][] newData = new double[nChannels][newFrames];
+				byteConverter.bytesToDouble(byteArray, newData, newFrames * frameSize);
+				for (int i = 0; i < nChannels; i++) {
+					System.arraycopy(newData[i], 0, doubleData[i], framesRead, newFrames);
+				}
+			}
+			if (newFrames <= 0) {
+				break;
+			}
+			framesRead += newFrames;
+		}
+		return framesRead;
+	}
+
 	public class CollectorThread implements Runnable {
 
 		@Override
@@ -1150,14 +1235,30 @@ public class FileInputSystem  extends DaqSystem implements ActionListener, PamSe
 
 			while (dontStop && audioStream != null) {
 				int toRead = (int) Math.min(blockSize, maxBytes-totalBytesRead);
-				try {
-					bytesRead = audioStream.read(byteArray, 0, toRead);
-				} catch (Exception ex) {
-					ex.printStackTrace();
-					break; // file read error
+				doubleData = null;
+				if (audioStream instanceof MappedWavInputStream) {
+					// decode straight from the memory mapped file into the data arrays
+					doubleData = getBlockArrays(0, nChannels, blockSamples);
+					int framesRead;
+					try {
+						framesRead = readMappedFrames(doubleData, toRead / audioFormat.getFrameSize(), totalSamples);
+					} catch (Exception ex) {
+						ex.printStackTrace();
+						break; // file read error
+					}
+					bytesRead = framesRead * audioFormat.getFrameSize();
+					totalBytesRead += Math.min(bytesRead, toRead);
+				}
+				else {
+					try {
+						bytesRead = audioStream.read(byteArray, 0, toRead);
+					} catch (Exception ex) {
+						ex.printStackTrace();
+						break; // file read error
+					}
+					totalBytesRead += bytesRead;
 				}
-				totalBytesRead += bytesRead;
-				while (bytesRead < toRead) {
+				while (doubleData == null && bytesRead < toRead) {
 					// for single file operation, don't do anything, but need to have a hook
 					// in here to read multiple files, in which case we may just get the extra
 					// samples from the next file.
@@ -1184,8 +1285,16 @@ public class FileInputSystem  extends DaqSystem implements ActionListener, PamSe
 					// convert byte array to set of double arrays, one per
 					// channel
 					newSamples = bytesRead / audioFormat.getFrameSize();
-					doubleData = new double[nChannels][newSamples];
-					int convertedSamples = byteConverter.bytesToDouble(byteArray, doubleData, bytesRead);
+					if (doubleData == null) {
+						doubleData = getBlockArrays(0, nChannels, newSamples);
+						int convertedSamples = byteConverter.bytesToDouble(byteArray, doubleData, bytesRead);
+					}
+					else if (newSamples < blockSamples) {
+						// short block at the end of the data
+						for (int ichan = 0; ichan < nChannels; ichan++) {
+							doubleData[ichan] = Arrays.copyOf(doubleData[ichan], newSamples);
+						}
+					}
 
 					ms = acquisitionControl.getAcquisitionProcess().absSamplesToMilliseconds(totalSamples);
 //					currentAnalysisTime = ms;
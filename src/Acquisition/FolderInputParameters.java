@@ -25,6 +25,17 @@ public class FolderInputParameters extends FileInputParameters implements Serial
 
 	public boolean mergeFiles;
 
+	/**
+	 * Number of files to open and decode on background threads ahead of the 
+	 * file being processed. 0 to read each file only when it's needed. 
+	 */
+	public int prefetchFiles = 0;
+
+	/**
+	 * Maximum amount of decoded data to hold for each prefetched file in MBytes. 
+	 */
+	public int prefetchBufferMB = 32;
+
 	private String[] selectedFileNames;
 
 	/**
@@ -10,6 +10,7 @@ import java.awt.Point;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -17,6 +18,7 @@ import java.util.List;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.UnsupportedAudioFileException;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
@@ -95,6 +97,16 @@ public class FolderInputSystem extends FileInputSystem implements PamSettings, D
 
 	private FolderInputParameters folderInputParameters;
 
+	/**
+	 * Opens and decodes the next few files on background threads. Null if prefetching is off. 
+	 */
+	private AudioFilePrefetcher filePrefetcher;
+
+	/**
+	 * Text field for the number of files to prefetch. 
+	 */
+	private JTextField prefetchField;
+
 	public static final String GlobalWavFolderArg = "-wavfilefolder";
 	
 	public static final String GlobalWavPrefixArg = "-recording.Prefix";
@@ -352,6 +364,13 @@ public class FolderInputSystem extends FileInputSystem implements PamSettings, D
 		addComponent(skipPanel, skipSecondsField = new JTextField(4), constraints);
 		constraints.gridx++;
 		addComponent(skipPanel,  new JLabel("seconds"), constraints);
+		constraints.gridx++;
+		addComponent(skipPanel,  new JLabel("   Read ahead "), constraints);
+		constraints.gridx++;
+		addComponent(skipPanel, prefetchField = new JTextField(3), constraints);
+		prefetchField.setToolTipText("Number of files to open and decode in advance on background threads (0 for none)");
+		constraints.gridx++;
+		addComponent(skipPanel,  new JLabel("files"), constraints);
 		constraints.anchor = GridBagConstraints.WEST;
 
 		constraints.gridwidth = 3;
@@ -698,6 +717,9 @@ public class FolderInputSystem extends FileInputSystem implements PamSettings, D
 		
 		fileListData.sort();
 		allFiles = fileListData.getListCopy();
+		if (filePrefetcher != null) {
+			filePrefetcher.clear();
+		}
 
 		List<WavFileType> asList = allFiles;
 		setSelectedFileTypes(acquisitionControl.soundFileTypes.getUsedTypes(allFiles));
@@ -1020,6 +1042,14 @@ public class FolderInputSystem extends FileInputSystem implements PamSettings, D
 		folderInputParameters.subFolders = subFolders.isSelected();
 		folderInputParameters.mergeFiles = mergeFiles.isSelected();
 		folderInputParameters.repeatLoop = repeat.isSelected();
+		if (prefetchField != null) {
+			try {
+				folderInputParameters.prefetchFiles = Math.max(0, Integer.valueOf(prefetchField.getText()));
+			}
+			catch (NumberFormatException e) {
+				return false;
+			}
+		}
 		resetToStart();
 		if (skipSecondsField!=null) {
 			try {
@@ -1059,6 +1089,9 @@ public class FolderInputSystem extends FileInputSystem implements PamSettings, D
 		if (skipSecondsField!=null) {
 			skipSecondsField.setText(String.format("%.1f", fileInputParameters.skipStartFileTime/1000.));
 		}
+		if (prefetchField != null) {
+			prefetchField.setText(String.format("%d", folderInputParameters.prefetchFiles));
+		}
 
 	}
 
@@ -1093,6 +1126,15 @@ public class FolderInputSystem extends FileInputSystem implements PamSettings, D
 		return super.startSystem(daqControl);
 	}
 
+	@Override
+	public void stopSystem(AcquisitionControl daqControl) {
+		super.stopSystem(daqControl);
+		if (filePrefetcher != null && PamController.getInstance().isManualStop()) {
+			// don't keep reading files if the user has stopped. 
+			filePrefetcher.clear();
+		}
+	}
+
 	//	/**
 	//	 * @param audioFileFilter the audioFileFilter to set
 	//	 */
@@ -1290,6 +1332,45 @@ public class FolderInputSystem extends FileInputSystem implements PamSettings, D
 	public void resetToStart() {
 		currentFileIndex = 0;
 		currentAnalysisTime = 0;
+		if (filePrefetcher != null) {
+			filePrefetcher.clear();
+		}
+	}
+
+	@Override
+	protected AudioInputStream openAudioStream(WavFileType file) throws UnsupportedAudioFileException, IOException {
+		AudioFilePrefetcher prefetcher = getFilePrefetcher();
+		if (prefetcher == null) {
+			return super.openAudioStream(file);
+		}
+		/*
+		 * Make sure this file and the next few are being read, then take this one. If 
+		 * it wasn't prefetched or failed, open it normally so errors are handled 
+		 * in the same way as without prefetching. 
+		 */
+		prefetcher.prefetch(allFiles, currentFileIndex);
+		AudioInputStream stream = prefetcher.getStream(file);
+		if (stream == null) {
+			stream = super.openAudioStream(file);
+		}
+		return stream;
+	}
+
+	/**
+	 * Get the file prefetcher, making a new one if the settings have changed. 
+	 * @return file prefetcher or null if prefetching is off. 
+	 */
+	private synchronized AudioFilePrefetcher getFilePrefetcher() {
+		int nFiles = folderInputParameters.prefetchFiles;
+		if (filePrefetcher != null && filePrefetcher.getNFiles() != nFiles) {
+			filePrefetcher.shutdown();
+			filePrefetcher = null;
+		}
+		if (filePrefetcher == null && nFiles > 0) {
+			int bufferMB = folderInputParameters.prefetchBufferMB > 0 ? folderInputParameters.prefetchBufferMB : 32;
+			filePrefetcher = new AudioFilePrefetcher(nFiles, bufferMB);
+		}
+		return filePrefetcher;
 	}
 
 	protected void startAtCurrent(long currT) {
@@ -0,0 +1,282 @@
+package Acquisition;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import org.pamguard.x3.sud.Chunk;
+import org.pamguard.x3.sud.SudAudioInputStream;
+import org.pamguard.x3.sud.SudFileListener;
+
+/**
+ * Audio input stream for a file which is being read and decoded on a background
+ * thread by the AudioFilePrefetcher.
+ * <p>
+ * Decoded data are held in a bounded queue of blocks, so the background thread can only
+ * get so far ahead of whatever is reading this stream. If the source is a SUD file, chunk
+ * notifications from the decoder are held with the block they were decoded into and passed
+ * on to the SUD listener from the thread reading the stream when that block is reached, so
+ * they arrive at the same point in the data as they would if the file was read directly.
+ * <p>
+ * If the background thread fails to read the file, reads throw an IOException once the
+ * data decoded before the error have been read.
+ */
+public class PrefetchAudioInputStream extends AudioInputStream {
+
+	/**
+	 * One block of decoded data and any SUD chunks decoded while filling it.
+	 */
+	static class PrefetchBlock {
+
+		byte[] data;
+
+		int length;
+
+		ArrayList<ChunkEvent> chunkEvents;
+
+		boolean end;
+
+		/**
+		 * Error which stopped decoding, only set in the end block. 
+		 */
+		IOException error;
+
+		PrefetchBlock(byte[] data, int length, ArrayList<ChunkEvent> chunkEvents, boolean end) {
+			this.data = data;
+			this.length = length;
+			this.chunkEvents = chunkEvents;
+			this.end = end;
+		}
+
+		/**
+		 * Make an end block for data which ended because of an error. 
+		 * @param error error from the decoding thread
+		 */
+		PrefetchBlock(IOException error) {
+			this(null, 0, null, true);
+			this.error = error;
+		}
+	}
+
+	static class ChunkEvent {
+
+		int chunkId;
+
+		Chunk chunk;
+
+		ChunkEvent(int chunkId, Chunk chunk) {
+			this.chunkId = chunkId;
+			this.chunk = chunk;
+		}
+	}
+
+	private BlockInputStream blockStream;
+
+	private SudAudioInputStream sudAudioInputStream;
+
+	private volatile boolean closed;
+
+	private Runnable closeAction;
+
+	private PrefetchAudioInputStream(BlockInputStream blockStream, AudioFormat format, long frameLength,
+			SudAudioInputStream sudAudioInputStream) {
+		super(blockStream, format, frameLength);
+		this.blockStream = blockStream;
+		this.sudAudioInputStream = sudAudioInputStream;
+	}
+
+	/**
+	 * Make a stream for a source which is about to be read on another thread.
+	 * @param source source stream
+	 * @param maxBlocks maximum number of decoded blocks to hold
+	 * @return new stream.
+	 */
+	static PrefetchAudioInputStream create(AudioInputStream source, int maxBlocks) {
+		SudAudioInputStream sudStream = source instanceof SudAudioInputStream ? (SudAudioInputStream) source : null;
+		return new PrefetchAudioInputStream(new BlockInputStream(maxBlocks), source.getFormat(),
+				source.getFrameLength(), sudStream);
+	}
+
+	/**
+	 * Add a block from the decoding thread, waiting if the queue is full.
+	 * @param block new block
+	 * @return false if the stream has been closed, in which case decoding should stop.
+	 * @throws InterruptedException
+	 */
+	boolean putBlock(PrefetchBlock block) throws InterruptedException {
+		while (!closed) {
+			if (blockStream.blocks.offer(block, 100, TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the stream has been closed by the reader.
+	 */
+	boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * @param closeAction called when the stream is closed, to stop any decoding.
+	 */
+	void setCloseAction(Runnable closeAction) {
+		this.closeAction = closeAction;
+	}
+
+	/**
+	 * If the source is a SUD file, get the underlying SUD stream. This should only be used
+	 * for information about the file, since data are being read from it on another thread.
+	 * @return SUD stream or null
+	 */
+	public SudAudioInputStream getSudAudioInputStream() {
+		return sudAudioInputStream;
+	}
+
+	/**
+	 * Set a listener for SUD chunk notifications. Notifications are sent from the thread reading
+	 * this stream, when the data decoded with that chunk are read.
+	 * @param sudFileListener listener
+	 */
+	public void setSudFileListener(SudFileListener sudFileListener) {
+		blockStream.sudFileListener = sudFileListener;
+	}
+
+	/**
+	 * @return the number of decoded blocks waiting to be read.
+	 */
+	public int getQueuedBlocks() {
+		return blockStream.blocks.size();
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		blockStream.blocks.clear();
+		if (closeAction != null) {
+			closeAction.run();
+		}
+	}
+
+	/**
+	 * Input stream which reads from the queue of blocks, waiting for the decoding thread
+	 * if it's empty.
+	 */
+	private static class BlockInputStream extends InputStream {
+
+		private ArrayBlockingQueue<PrefetchBlock> blocks;
+
+		private PrefetchBlock currentBlock;
+
+		private int blockPos;
+
+		private volatile SudFileListener sudFileListener;
+
+		private BlockInputStream(int maxBlocks) {
+			blocks = new ArrayBlockingQueue<>(Math.max(maxBlocks, 1));
+		}
+
+		/**
+		 * @return the current block, or null at the end of the data.
+		 * @throws IOException if the data ended because the decoding thread had an error, 
+		 * so that a damaged file isn't mistaken for one which ended normally.
+		 */
+		private PrefetchBlock getBlock() throws IOException {
+			while (currentBlock == null || (!currentBlock.end && blockPos >= currentBlock.length)) {
+				try {
+					currentBlock = blocks.take();
+				} catch (InterruptedException e) {
+					throw new IOException("Interrupted waiting for prefetched audio data");
+				}
+				blockPos = 0;
+				SudFileListener listener = sudFileListener;
+				if (listener != null && currentBlock.chunkEvents != null) {
+					for (ChunkEvent event : currentBlock.chunkEvents) {
+						listener.chunkProcessed(event.chunkId, event.chunk);
+					}
+				}
+			}
+			if (currentBlock.error != null) {
+				throw new IOException("Error reading prefetched audio data: " + currentBlock.error.getMessage(), currentBlock.error);
+			}
+			return currentBlock.end ? null : currentBlock;
+		}
+
+		@Override
+		public int read() throws IOException {
+			PrefetchBlock block = getBlock();
+			if (block == null) {
+				return -1;
+			}
+			return block.data[blockPos++] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			/*
+			 * Always fill the request unless the data have ended, since the file readers
+			 * take a short read to mean the end of the file.
+			 */
+			int done = 0;
+			while (done < len) {
+				PrefetchBlock block;
+				try {
+					block = getBlock();
+				}
+				catch (IOException e) {
+					// return what we've got, the error will be thrown again on the next read.
+					if (done > 0) {
+						break;
+					}
+					throw e;
+				}
+				if (block == null) {
+					break;
+				}
+				int n = Math.min(len - done, block.length - blockPos);
+				System.arraycopy(block.data, blockPos, b, off + done, n);
+				blockPos += n;
+				done += n;
+			}
+			return done == 0 ? -1 : done;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long done = 0;
+			while (done < n) {
+				PrefetchBlock block = getBlock();
+				if (block == null) {
+					break;
+				}
+				int s = (int) Math.min(n - done, block.length - blockPos);
+				blockPos += s;
+				done += s;
+			}
+			return done;
+		}
+
+		@Override
+		public int available() throws IOException {
+			int n = currentBlock == null || currentBlock.end ? 0 : currentBlock.length - blockPos;
+			for (PrefetchBlock block : blocks) {
+				if (block.end) {
+					break;
+				}
+				n += block.length;
+			}
+			return n;
+		}
+	}
+
+}
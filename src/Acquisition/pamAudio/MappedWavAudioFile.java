@@ -0,0 +1,199 @@
+package Acquisition.pamAudio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import Acquisition.offlineFuncs.AquisitionLoadPoint;
+import PamDetection.RawDataUnit;
+import PamUtils.worker.filelist.WavFileType;
+import PamUtils.worker.filelist.WavLoadListener;
+import PamguardMVC.PamDataBlock;
+import PamguardMVC.dataOffline.OfflineDataLoadInfo;
+import dataMap.OfflineDataMap;
+import dataMap.filemaps.FileDataMapPoint;
+import dataMap.filemaps.OfflineFileServer;
+import pamScrollSystem.ViewLoadObserver;
+
+/**
+ * Alternative to WavAudioFile which opens wav files with a MappedWavInputStream.
+ * <p>
+ * Viewer loads go straight to the first sample needed rather than streaming through
+ * the file from the start and samples are decoded directly from the mapped file into
+ * the arrays used in the RawDataUnits. Anything which isn't a wav file, or which can't be
+ * mapped, is handled exactly as it is by WavAudioFile.
+ * <p>
+ * Used in place of WavAudioFile if PAMGuard is started with the -mappedwav option.
+ *
+ */
+public class MappedWavAudioFile extends WavAudioFile {
+
+	public MappedWavAudioFile() {
+		super();
+	}
+
+	@Override
+	public String getName() {
+		return "WAV (memory mapped)";
+	}
+
+	@Override
+	public AudioInputStream getAudioStream(File soundFile, WavLoadListener loadListener) {
+		if (soundFile != null && soundFile.exists() && soundFile.length() >= 44 && isSoundFile(soundFile)) {
+			try {
+				return MappedWavInputStream.openInputStream(soundFile);
+			}
+			catch (UnsupportedAudioFileException | IOException e) {
+				System.err.println("Could not memory map wav file " + soundFile.getName() + ": " + e.getMessage());
+			}
+		}
+		return super.getAudioStream(soundFile, loadListener);
+	}
+
+	@Override
+	public boolean loadAudioData(OfflineFileServer offlineFileServer, PamDataBlock dataBlock,
+			OfflineDataLoadInfo offlineDataLoadInfo, ViewLoadObserver loadObserver) {
+		OfflineDataMap<FileDataMapPoint> dataMap = offlineFileServer.getDataMap();
+		Iterator<FileDataMapPoint> mapIt = dataMap.getListIterator();
+		FileDataMapPoint mapPoint = offlineFileServer.findFirstMapPoint(mapIt, offlineDataLoadInfo.getStartMillis(), offlineDataLoadInfo.getEndMillis());
+		if (mapPoint == null) {
+			return false;
+		}
+		AudioInputStream stream = getAudioStream(mapPoint.getSoundFile(), null);
+		if (stream == null) {
+			System.out.println("Could not open sound file " + mapPoint.getSoundFile().getAbsolutePath());
+			return false;
+		}
+		if (stream instanceof MappedWavInputStream == false) {
+			// not a wav file, so use the standard streaming load.
+			closeStream(stream);
+			return super.loadAudioData(offlineFileServer, dataBlock, offlineDataLoadInfo, loadObserver);
+		}
+		MappedWavInputStream mappedStream = (MappedWavInputStream) stream;
+		AudioFormat audioFormat = mappedStream.getFormat();
+		float sampleRate = audioFormat.getSampleRate();
+		int nChannels = audioFormat.getChannels();
+		int blockSamples = Math.max((int) sampleRate / 10, 1000);
+
+		long currentTime = mapPoint.getStartTime();
+		long prevFileEnd = mapPoint.getEndTime();
+		long totalSamples = 0;
+		long ms = currentTime;
+		int lastBlockSamples = 0;
+		long startFrame = 0;
+		if (currentTime < offlineDataLoadInfo.getStartMillis()) {
+			startFrame = (long) (((offlineDataLoadInfo.getStartMillis()-currentTime)*sampleRate)/1000.);
+			currentTime = offlineDataLoadInfo.getStartMillis();
+			ms = currentTime;
+		}
+		/*
+		 * Go straight to the first sample needed and work out where reading this file has
+		 * to stop, which for HARP data may be well before the end of the file.
+		 */
+		setFileSection(mappedStream, mapPoint.getSoundFile(), startFrame);
+		long endFrame = getEndFrame(mappedStream, mapPoint.getSoundFile());
+		try {
+			while (ms < offlineDataLoadInfo.getEndMillis() && currentTime < offlineDataLoadInfo.getEndMillis()) {
+				if (offlineDataLoadInfo.cancel) {
+					offlineDataLoadInfo.setLastLoadInfo(new AquisitionLoadPoint(ms, lastBlockSamples*audioFormat.getFrameSize()));
+					break;
+				}
+				int toRead = (int) Math.min(blockSamples, endFrame - mappedStream.getFramePosition());
+				double[][] doubleData = new double[nChannels][Math.max(toRead, 0)];
+				int newSamples = toRead > 0 ? mappedStream.readFrames(doubleData, 0, toRead) : 0;
+				if (newSamples <= 0) {
+					// end of this file, move on to the next one if there is one.
+					if (mapIt.hasNext() == false) {
+						break;
+					}
+					mapPoint = mapIt.next();
+					boolean fileGap = (mapPoint.getStartTime() - prevFileEnd) > 1000;
+					prevFileEnd = mapPoint.getEndTime();
+					closeStream(mappedStream);
+					stream = getAudioStream(mapPoint.getSoundFile(), null);
+					if (stream instanceof MappedWavInputStream == false) {
+						closeStream(stream);
+						break;
+					}
+					mappedStream = (MappedWavInputStream) stream;
+					if (fileGap) {
+						// restart the time base at the start of the new file.
+						currentTime = mapPoint.getStartTime();
+						totalSamples = 0;
+					}
+					setFileSection(mappedStream, mapPoint.getSoundFile(), 0);
+					endFrame = getEndFrame(mappedStream, mapPoint.getSoundFile());
+					continue;
+				}
+				if (newSamples < toRead) {
+					for (int i = 0; i < nChannels; i++) {
+						doubleData[i] = Arrays.copyOf(doubleData[i], newSamples);
+					}
+				}
+				ms = currentTime + (long)(totalSamples * 1000 / (double) sampleRate);
+				// samples into the wav file.
+				long fileSamples = mappedStream.getFramePosition() - newSamples;
+				for (int ichan = 0; ichan < nChannels; ichan++) {
+					RawDataUnit newDataUnit = new RawDataUnit(ms, 1 << ichan, totalSamples, newSamples);
+					newDataUnit.setFileSamples(fileSamples);
+					removeDCComponent(doubleData[ichan], ichan, audioFormat);
+					newDataUnit.setRawData(doubleData[ichan], true);
+					offlineFileServer.getRawDataBlock().addPamData(newDataUnit);
+				}
+				totalSamples += newSamples;
+				lastBlockSamples = newSamples;
+			}
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		closeStream(mappedStream);
+		return false;
+	}
+
+	/**
+	 * Move to the first sample to read, allowing for the sample offset in HARP files.
+	 * @param mappedStream stream
+	 * @param soundFile sound file
+	 * @param frame frame to move to, not including any HARP offset
+	 */
+	private void setFileSection(MappedWavInputStream mappedStream, File soundFile, long frame) {
+		long offset = 0;
+		if (soundFile instanceof WavFileType) {
+			offset = ((WavFileType) soundFile).getSamplesOffset();
+		}
+		mappedStream.setFramePosition(offset + frame);
+	}
+
+	/**
+	 * @return the position after the last sample that should be read from a file, which
+	 * for HARP data may be before the end of the file.
+	 */
+	private long getEndFrame(MappedWavInputStream mappedStream, File soundFile) {
+		long nFrames = mappedStream.getFrameLength();
+		if (soundFile instanceof WavFileType) {
+			WavFileType wavFile = (WavFileType) soundFile;
+			if (wavFile.getMaxSamples() > 0) {
+				return Math.min(nFrames, wavFile.getSamplesOffset() + wavFile.getMaxSamples());
+			}
+		}
+		return nFrames;
+	}
+
+	private void closeStream(AudioInputStream stream) {
+		if (stream == null) {
+			return;
+		}
+		try {
+			stream.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,286 @@
+package Acquisition.pamAudio;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioFormat.Encoding;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import clickDetector.WindowsFile;
+import wavFiles.WavHeader;
+
+/**
+ * Random access reader for PCM and floating point wav files using memory mapping.
+ * <p>
+ * The sample data are mapped into memory a region at a time using a FileChannel and
+ * samples are decoded straight from the mapped buffer into double arrays, so there is
+ * no intermediate byte array and no need to stream through the file to get to a
+ * particular sample. Samples are scaled in exactly the same way as by the ByteConverter
+ * classes.
+ * <p>
+ * Regions are MAX_REGION_BYTES long (rounded down to a whole number of frames), so
+ * the reader works for files of any size. Note that Java doesn't release mapped memory
+ * until the buffer is garbage collected, which on Windows means the file can't be deleted
+ * or renamed until then, even after close() has been called.
+ * <p>
+ * Not thread safe.
+ */
+public class MappedWavFile implements Closeable {
+
+	/**
+	 * Max size of each mapped region
+	 */
+	public static final long MAX_REGION_BYTES = 64L<<20;
+
+	private File file;
+
+	private WavHeader wavHeader;
+
+	private FileChannel fileChannel;
+
+	private AudioFormat audioFormat;
+
+	private Encoding encoding;
+
+	private int nChannels;
+
+	private int bytesPerSample;
+
+	private int frameSize;
+
+	private long dataStart;
+
+	private long dataBytes;
+
+	private long regionBytes;
+
+	/**
+	 * Currently mapped region and the byte offset of its start from the start of the sample data
+	 */
+	private MappedByteBuffer region;
+
+	private long regionStart = -1;
+
+	private MappedWavFile(File file, WavHeader wavHeader, FileChannel fileChannel) throws UnsupportedAudioFileException, IOException {
+		this.file = file;
+		this.wavHeader = wavHeader;
+		this.fileChannel = fileChannel;
+		encoding = WavFileInputStream.getEncoding(wavHeader.getFmtTag());
+		if (encoding == null) {
+			throw new UnsupportedAudioFileException("Unsupprted wav file format type " + wavHeader.getFmtTag() +
+					" in " + file.getName());
+		}
+		nChannels = wavHeader.getNChannels();
+		int bitsPerSample = wavHeader.getBitsPerSample();
+		// same as ByteConverter.createByteConverter
+		bytesPerSample = bitsPerSample == 12 ? 2 : bitsPerSample/8;
+		if (nChannels <= 0 || bytesPerSample < 1 || bytesPerSample > 4 ||
+				(encoding == Encoding.PCM_FLOAT && bytesPerSample != 4)) {
+			throw new UnsupportedAudioFileException(String.format("Unsupprted wav file format %d channels %d bits in %s",
+					nChannels, bitsPerSample, file.getName()));
+		}
+		frameSize = nChannels * bytesPerSample;
+		dataStart = wavHeader.getDataStart();
+		// data size in the header may be wrong if the file wasn't closed properly.
+		long available = Math.max(0, fileChannel.size() - dataStart);
+		dataBytes = wavHeader.getDataSize() > 0 ? Math.min(wavHeader.getDataSize(), available) : available;
+		dataBytes -= dataBytes % frameSize;
+		regionBytes = Math.max(1, MAX_REGION_BYTES / frameSize) * frameSize;
+		audioFormat = new AudioFormat(encoding, wavHeader.getSampleRate(), bitsPerSample, nChannels,
+				frameSize, wavHeader.getSampleRate(), false);
+	}
+
+	/**
+	 * Open a wav file.
+	 * @param file wav file
+	 * @return mapped wav file
+	 * @throws UnsupportedAudioFileException if it's not a wav file or the sample format isn't supported.
+	 * @throws IOException if the file can't be opened.
+	 */
+	public static MappedWavFile open(File file) throws UnsupportedAudioFileException, IOException {
+		WavHeader wavHeader = new WavHeader();
+		WindowsFile windowsFile = new WindowsFile(file, "r");
+		try {
+			if (wavHeader.readHeader(windowsFile) == false) {
+				throw new UnsupportedAudioFileException("Unsupprted wav file format in " + file.getName());
+			}
+		}
+		finally {
+			windowsFile.close();
+		}
+		FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			return new MappedWavFile(file, wavHeader, fileChannel);
+		}
+		catch (UnsupportedAudioFileException | IOException e) {
+			fileChannel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Make sure the region holding a byte is mapped.
+	 * @param bytePos byte position from the start of the sample data
+	 * @return number of bytes from bytePos to the end of the region.
+	 * @throws IOException
+	 */
+	private int mapRegion(long bytePos) throws IOException {
+		long start = (bytePos / regionBytes) * regionBytes;
+		if (start != regionStart || region == null) {
+			long len = Math.min(regionBytes, dataBytes - start);
+			region = fileChannel.map(MapMode.READ_ONLY, dataStart + start, len);
+			region.order(ByteOrder.LITTLE_ENDIAN);
+			regionStart = start;
+		}
+		return (int) (region.limit() - (bytePos - regionStart));
+	}
+
+	/**
+	 * Read and decode samples into double arrays.
+	 * @param firstFrame first frame (sample number) to read
+	 * @param data arrays to fill, one per channel. There can be fewer arrays than channels, in
+	 * which case only the first data.length channels are read.
+	 * @param offset position in the arrays for the first sample
+	 * @param nFrames number of frames to read
+	 * @return the number of frames read, less than nFrames at the end of the file.
+	 * @throws IOException
+	 */
+	public int readFrames(long firstFrame, double[][] data, int offset, int nFrames) throws IOException {
+		if (firstFrame < 0) {
+			throw new IOException("Negative frame number " + firstFrame);
+		}
+		long framesLeft = getNumFrames() - firstFrame;
+		nFrames = (int) Math.max(0, Math.min(nFrames, framesLeft));
+		int nChan = Math.min(nChannels, data.length);
+		int done = 0;
+		while (done < nFrames) {
+			long bytePos = (firstFrame + done) * frameSize;
+			int regionLeft = mapRegion(bytePos);
+			int n = Math.min(nFrames - done, regionLeft / frameSize);
+			int pos = (int) (bytePos - regionStart);
+			for (int iChan = 0; iChan < nChan; iChan++) {
+				decode(pos + iChan*bytesPerSample, data[iChan], offset + done, n);
+			}
+			done += n;
+		}
+		return done;
+	}
+
+	/**
+	 * Decode one channel from the current region.
+	 * @param pos position of the first sample in the region
+	 * @param out output array
+	 * @param outPos first position in the output array
+	 * @param n number of samples
+	 */
+	private void decode(int pos, double[] out, int outPos, int n) {
+		MappedByteBuffer buf = region;
+		int end = outPos + n;
+		switch (bytesPerSample) {
+		case 1:
+			for (int i = outPos; i < end; i++, pos += frameSize) {
+				out[i] = buf.get(pos) / 128.;
+			}
+			break;
+		case 2:
+			for (int i = outPos; i < end; i++, pos += frameSize) {
+				out[i] = buf.getShort(pos) / 32768.;
+			}
+			break;
+		case 3:
+			double scale24 = Math.pow(2, 31);
+			for (int i = outPos; i < end; i++, pos += frameSize) {
+				out[i] = ((buf.get(pos+2)&0xFF)<<24 | (buf.get(pos+1)&0xFF)<<16 | (buf.get(pos)&0xFF)<<8) / scale24;
+			}
+			break;
+		case 4:
+			if (encoding == Encoding.PCM_FLOAT) {
+				for (int i = outPos; i < end; i++, pos += frameSize) {
+					out[i] = buf.getFloat(pos);
+				}
+			}
+			else {
+				double scale32 = Math.pow(2, 31);
+				for (int i = outPos; i < end; i++, pos += frameSize) {
+					out[i] = buf.getInt(pos) / scale32;
+				}
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Copy raw bytes from the sample data.
+	 * @param bytePos position from the start of the sample data
+	 * @param dest destination array
+	 * @param off offset in the destination array
+	 * @param len number of bytes to copy
+	 * @return the number of bytes copied, or -1 at the end of the data.
+	 * @throws IOException
+	 */
+	public int readBytes(long bytePos, byte[] dest, int off, int len) throws IOException {
+		if (bytePos >= dataBytes) {
+			return -1;
+		}
+		len = (int) Math.min(len, dataBytes - bytePos);
+		int done = 0;
+		while (done < len) {
+			int regionLeft = mapRegion(bytePos + done);
+			int n = Math.min(len - done, regionLeft);
+			region.position((int) (bytePos + done - regionStart));
+			region.get(dest, off + done, n);
+			done += n;
+		}
+		return done;
+	}
+
+	/**
+	 * @return the number of frames (samples per channel) in the file.
+	 */
+	public long getNumFrames() {
+		return dataBytes / frameSize;
+	}
+
+	/**
+	 * @return number of bytes of sample data.
+	 */
+	public long getDataBytes() {
+		return dataBytes;
+	}
+
+	/**
+	 * @return the audio format.
+	 */
+	public AudioFormat getAudioFormat() {
+		return audioFormat;
+	}
+
+	/**
+	 * @return the wav header.
+	 */
+	public WavHeader getWavHeader() {
+		return wavHeader;
+	}
+
+	/**
+	 * @return the file.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	public void close() throws IOException {
+		region = null;
+		regionStart = -1;
+		fileChannel.close();
+	}
+
+}
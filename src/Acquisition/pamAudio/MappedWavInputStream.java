@@ -0,0 +1,142 @@
+package Acquisition.pamAudio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import wavFiles.WavHeader;
+
+/**
+ * Audio input stream for wav files which reads from a MappedWavFile.
+ * <p>
+ * It can be used as a normal AudioInputStream, in which case reads are a single copy
+ * out of the mapped file and skip() moves straight to the new position. It can also read
+ * straight into double arrays with readFrames and move to any sample with
+ * setFramePosition, so the FileInputSystem and viewer loads can avoid the byte buffer
+ * and byte conversion altogether.
+ */
+public class MappedWavInputStream extends AudioInputStream {
+
+	private MappedWavFile mappedFile;
+
+	private MappedDataStream dataStream;
+
+	private MappedWavInputStream(MappedWavFile mappedFile, MappedDataStream dataStream) {
+		super(dataStream, mappedFile.getAudioFormat(), mappedFile.getNumFrames());
+		this.mappedFile = mappedFile;
+		this.dataStream = dataStream;
+	}
+
+	/**
+	 * Open a wav file.
+	 * @param file wav file
+	 * @return input stream.
+	 * @throws UnsupportedAudioFileException
+	 * @throws IOException
+	 */
+	public static MappedWavInputStream openInputStream(File file) throws UnsupportedAudioFileException, IOException {
+		MappedWavFile mappedFile = MappedWavFile.open(file);
+		return new MappedWavInputStream(mappedFile, new MappedDataStream(mappedFile));
+	}
+
+	/**
+	 * Read samples from the current position directly into double arrays and move on
+	 * by the number of samples read.
+	 * @param data arrays to fill, one per channel
+	 * @param offset position in the arrays for the first sample
+	 * @param nFrames number of frames (samples per channel) to read
+	 * @return number of frames read, 0 at the end of the file.
+	 * @throws IOException
+	 */
+	public int readFrames(double[][] data, int offset, int nFrames) throws IOException {
+		int n = mappedFile.readFrames(framePos, data, offset, nFrames);
+		setFramePosition(framePos + n);
+		return n;
+	}
+
+	/**
+	 * @return the current position in frames (samples per channel) from the start of the file.
+	 */
+	public long getFramePosition() {
+		return framePos;
+	}
+
+	/**
+	 * Move to any position in the file.
+	 * @param framePosition new position in frames (samples per channel)
+	 */
+	public void setFramePosition(long framePosition) {
+		framePos = Math.max(0, Math.min(framePosition, frameLength));
+		dataStream.bytePos = framePos * frameSize;
+	}
+
+	/**
+	 * @return the memory mapped file.
+	 */
+	public MappedWavFile getMappedFile() {
+		return mappedFile;
+	}
+
+	/**
+	 * Get additional header information from the wav file.
+	 * @return the wavHeader
+	 */
+	public WavHeader getWavHeader() {
+		return mappedFile.getWavHeader();
+	}
+
+	@Override
+	public void close() throws IOException {
+		mappedFile.close();
+	}
+
+	/**
+	 * Byte stream view of the sample data for the AudioInputStream super class.
+	 */
+	private static class MappedDataStream extends InputStream {
+
+		private MappedWavFile mappedFile;
+
+		private long bytePos;
+
+		private MappedDataStream(MappedWavFile mappedFile) {
+			this.mappedFile = mappedFile;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			int n = read(b, 0, 1);
+			return n <= 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			int n = mappedFile.readBytes(bytePos, b, off, len);
+			if (n > 0) {
+				bytePos += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = Math.max(0, Math.min(n, mappedFile.getDataBytes() - bytePos));
+			bytePos += skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(Integer.MAX_VALUE, Math.max(0, mappedFile.getDataBytes() - bytePos));
+		}
+
+	}
+
+}
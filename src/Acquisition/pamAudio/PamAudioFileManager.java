@@ -12,6 +12,7 @@ import org.codehaus.plexus.util.FileUtils;
 
 import Acquisition.sud.SudAudioFile;
 import PamUtils.worker.filelist.WavLoadListener;
+import pamguard.GlobalArguments;
 
 /**
  * Central class for opening sound files.
@@ -26,6 +27,12 @@ import PamUtils.worker.filelist.WavLoadListener;
  */
 public class PamAudioFileManager {
 
+	/**
+	 * Command line option to open wav files with the memory mapped reader (MappedWavAudioFile)
+	 * rather than the standard WavAudioFile.
+	 */
+	public static final String GlobalMappedWavArg = "-mappedwav";
+
 	/**
 	 * Instance of the PamAudioFieManager.
 	 */
@@ -48,7 +55,13 @@ public class PamAudioFileManager {
 		pamAudioFileTypes = new ArrayList<PamAudioFileLoader>();
 
 		/***** Add new audio file types here *****/
-		pamAudioFileTypes.add(rawFileLoader = new WavAudioFile());
+		if (GlobalArguments.getParam(GlobalMappedWavArg) != null) {
+			rawFileLoader = new MappedWavAudioFile();
+		}
+		else {
+			rawFileLoader = new WavAudioFile();
+		}
+		pamAudioFileTypes.add(rawFileLoader);
 		pamAudioFileTypes.add(new FlacAudioFile());
 		pamAudioFileTypes.add(new SudAudioFile());
 
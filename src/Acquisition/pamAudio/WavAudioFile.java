@@ -270,7 +270,7 @@ public class WavAudioFile implements PamAudioFileLoader {
 	}
 
 
-	private void removeDCComponent(double[] ds, int channel, AudioFormat audioFormat) {
+	protected void removeDCComponent(double[] ds, int channel, AudioFormat audioFormat) {
 		/*
 		 *  do a simple background subtraction with about a 1s time constant. 
 		 *  If the background is currently zero initialise it to the mean data value.  
@@ -46,6 +46,8 @@ public class ArrayDialog extends PamDialog implements ActionListener {
 
 	private EnvironmentPanel environmentPanel;
 
+	private GeometryCachePanel geometryCachePanel;
+
 	private HydrophoneDiagram hydrophoneDiagram;
 	
 	private InstrumentIdentityPanel instrumentIdentityPanel;
@@ -76,6 +78,11 @@ public class ArrayDialog extends PamDialog implements ActionListener {
 		channelPanel = new ChannelPanel(this);
 		eastPanel.add(channelPanel.getChannelPanel());
 
+		if (arrayManager != null) {
+			geometryCachePanel = new GeometryCachePanel(this);
+			eastPanel.add(geometryCachePanel.getGeometryCachePanel());
+		}
+
 		environmentPanel = new EnvironmentPanel(this);
 		instrumentIdentityPanel = new InstrumentIdentityPanel();
 		//		eastPanel.add(environmentPanel.getEnvironmentPanel());
@@ -167,6 +174,9 @@ public class ArrayDialog extends PamDialog implements ActionListener {
 		if (selArray != null) {
 			environmentPanel.setNewSpeed(selArray.getSpeedOfSound());
 		}
+		if (geometryCachePanel != null) {
+			geometryCachePanel.setParams(arrayManager.getGeometryCacheParams());
+		}
 		setReceieverLabels();
 		enableButtons();
 	}
@@ -186,8 +196,19 @@ public class ArrayDialog extends PamDialog implements ActionListener {
 		// move the selected array to the top of the list in the ArrayManager
 		if (!okOK(true)) return false;
 
+		GeometryCacheParams cacheParams = null;
+		if (geometryCachePanel != null) {
+			cacheParams = geometryCachePanel.getParams();
+			if (cacheParams == null) {
+				return false;
+			}
+		}
+
 		PamArray array = hydrophoneDialogPanel.getDialogSelectedArray();
 		if (arrayManager != null) {
+			if (cacheParams != null) {
+				arrayManager.setGeometryCacheParams(cacheParams);
+			}
 			arrayManager.setCurrentArray(array);
 		}
 		array.setSpeedOfSound(environmentPanel.getNewSpeed());
@@ -117,6 +117,12 @@ public class ArrayManager extends PamControlledUnit implements PamSettings, PamO
 	
 	public static final String FIRST_IDX_SENS = "-array.firstHydrophone";
 
+	/**
+	 * Cache of recently used array geometries. Created in getGeometryCache() since 
+	 * settings may be restored before the constructor has completed. 
+	 */
+	private SnapshotGeometryCache geometryCache;
+
 
 	private ArrayManager(String unitName) {
 		super(arrayManagerType, "Array Manager");
@@ -191,16 +197,30 @@ public class ArrayManager extends PamControlledUnit implements PamSettings, PamO
 			//			}
 		}
 
+		switch (changeType) {
+		case PamControllerInterface.INITIALIZATION_COMPLETE:
+		case PamControllerInterface.ADD_CONTROLLEDUNIT:
+		case PamControllerInterface.REMOVE_CONTROLLEDUNIT:
+			subscribePositionData();
+			break;
+		}
+
 		if (changeType == PamControllerInterface.OFFLINE_DATA_LOADED){
 			if (isViewer) {
 				getHydrophoneDataBlock().clearChannelIterators();
 			}
+			invalidateGeometryCache();
+		}
+
+		if (changeType == PamControllerInterface.DATA_LOAD_COMPLETE) {
+			invalidateGeometryCache();
 		}
 
 		if (changeType == PamControllerInterface.HYDROPHONE_ARRAY_CHANGED){
 			if (isViewer) {
 				getHydrophoneDataBlock().clearChannelIterators();
 			}
+			invalidateGeometryCache();
 		}
 		
 		if (changeType == PamControllerInterface.GLOBAL_MEDIUM_UPDATE){
@@ -248,6 +268,7 @@ public class ArrayManager extends PamControlledUnit implements PamSettings, PamO
 			recentArrays = new ArrayList<PamArray>();
 		}
 		recentArrays.add(newArray);
+		invalidateGeometryCache();
 	}
 
 	public void setCurrentArray(PamArray array) {
@@ -256,6 +277,7 @@ public class ArrayManager extends PamControlledUnit implements PamSettings, PamO
 		array.setArrayShape(this.getArrayShape(array));
 		array.getHydrophoneLocator();
 		recentArrays.add(0, array);
+		invalidateGeometryCache();
 	}
 
 	public boolean removeArray(PamArray newArray) {
@@ -279,7 +301,9 @@ public class ArrayManager extends PamControlledUnit implements PamSettings, PamO
 		for (PamArray array:recentArrays) {
 			array.prepareToSerialize();
 		}
-		return new ArrayParameters(recentArrays);
+		ArrayParameters arrayParameters = new ArrayParameters(recentArrays);
+		arrayParameters.setGeometryCacheParams(getGeometryCacheParams());
+		return arrayParameters;
 	}
 
 	/* (non-Javadoc)
@@ -317,6 +341,7 @@ public class ArrayManager extends PamControlledUnit implements PamSettings, PamO
 				Object settings = pamControlledUnitSettings.getSettings();
 				if (settings instanceof ArrayParameters) {
 					oldArrays = ((ArrayParameters) settings).getArrayList();
+					getGeometryCache().setCacheParams(((ArrayParameters) settings).getGeometryCacheParams());
 				}
 				else if (settings instanceof PamArray) {
 					oldArrays = new ArrayList<>();
@@ -349,6 +374,7 @@ public class ArrayManager extends PamControlledUnit implements PamSettings, PamO
 			double sensitivity = Double.valueOf(sens);
 			this.recentArrays.get(0).getHydrophone(0).setSensitivity(sensitivity);
 		}
+		invalidateGeometryCache();
 		
 		return true;
 	}
@@ -418,8 +444,11 @@ public class ArrayManager extends PamControlledUnit implements PamSettings, PamO
 
 	@Override
 	public long getRequiredDataHistory(PamObservable o, Object arg) {
-		// would be better to work out how long the Gps data are being kept for and do the same
-		return 3600*1000;
+		/*
+		 * Only observes position data to know when to clear the geometry cache, so 
+		 * doesn't need anything kept. 
+		 */
+		return 0;
 	}
 
 	@Override
@@ -446,13 +475,58 @@ public class ArrayManager extends PamControlledUnit implements PamSettings, PamO
 
 	@Override
 	public void addData(PamObservable o, PamDataUnit arg) {
-		// TODO Auto-generated method stub
-
+		getGeometryCache().positionDataUpdate(arg.getTimeMilliseconds());
 	}
 
 	@Override
 	public void updateData(PamObservable o, PamDataUnit arg) {
+		getGeometryCache().positionDataUpdate(arg.getTimeMilliseconds());
+	}
+
+	/**
+	 * Observe the GPS, streamer and hydrophone data blocks, so that cached
+	 * geometry can be discarded when new position data arrive. 
+	 */
+	private void subscribePositionData() {
+		GPSDataBlock gpsDataBlock = getGPSDataBlock();
+		if (gpsDataBlock != null) {
+			gpsDataBlock.addObserver(this);
+		}
+		getStreamerDatabBlock().addObserver(this);
+		getHydrophoneDataBlock().addObserver(this);
+	}
 
+	/**
+	 * @return the cache of array geometries used by getSnapshotGeometry
+	 */
+	public SnapshotGeometryCache getGeometryCache() {
+		if (geometryCache == null) {
+			geometryCache = new SnapshotGeometryCache();
+		}
+		return geometryCache;
+	}
+
+	/**
+	 * @return parameters for the geometry cache
+	 */
+	public GeometryCacheParams getGeometryCacheParams() {
+		return getGeometryCache().getCacheParams();
+	}
+
+	/**
+	 * Set parameters for the geometry cache. This clears the cache. 
+	 * @param geometryCacheParams parameters for the geometry cache
+	 */
+	public void setGeometryCacheParams(GeometryCacheParams geometryCacheParams) {
+		getGeometryCache().setCacheParams(geometryCacheParams);
+	}
+
+	/**
+	 * Discard all cached array geometry. Should be called whenever 
+	 * anything changes which might affect hydrophone positions. 
+	 */
+	public void invalidateGeometryCache() {
+		getGeometryCache().invalidateAll();
 	}
 
 	/**
@@ -1052,10 +1126,25 @@ public class ArrayManager extends PamControlledUnit implements PamSettings, PamO
 	 * All individual hydrophones have their pitch, roll and everything else added 
 	 * within this function. 
 	 *  
+	 * <p>
+	 * If the geometry cache is enabled, geometry may come from the cache, so  
+	 * the returned object must not be modified.  
+	 *  
 	 * @param hydrophoneMap bitmap of used hydrophones
 	 * @return geometry data. 
+	 * @see SnapshotGeometryCache
 	 */
 	public SnapshotGeometry getSnapshotGeometry(int hydrophoneMap, long timeMillis) {
+		return getGeometryCache().getGeometry(hydrophoneMap, timeMillis, this::makeSnapshotGeometry);
+	}
+
+	/**
+	 * Work out array geometry for the given hydrophones without using the cache. 
+	 * @param hydrophoneMap bitmap of used hydrophones
+	 * @param timeMillis time in milliseconds
+	 * @return geometry data. 
+	 */
+	private SnapshotGeometry makeSnapshotGeometry(int hydrophoneMap, long timeMillis) {
 				
 		PamArray currentArray = getCurrentArray();
 		if (currentArray == null) {
@@ -19,6 +19,8 @@ public class ArrayParameters implements Serializable, ManagedParameters {
 	
 	private ArrayList<PamArray> arrayList;
 
+	private GeometryCacheParams geometryCacheParams;
+
 	public ArrayParameters() {
 		super();
 		this.arrayList = new ArrayList<>();
@@ -39,6 +41,20 @@ public class ArrayParameters implements Serializable, ManagedParameters {
 		return arrayList;
 	}
 
+	/**
+	 * @return parameters for the geometry cache. Will be null for older configurations. 
+	 */
+	public GeometryCacheParams getGeometryCacheParams() {
+		return geometryCacheParams;
+	}
+
+	/**
+	 * @param geometryCacheParams parameters for the geometry cache
+	 */
+	public void setGeometryCacheParams(GeometryCacheParams geometryCacheParams) {
+		this.geometryCacheParams = geometryCacheParams;
+	}
+
 	/**
 	 * We keep a list of all the old arrays, but we only want to export the current array (index=0)
 	 */
@@ -0,0 +1,90 @@
+package Array;
+
+import java.awt.BorderLayout;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+
+import javax.swing.JCheckBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.border.TitledBorder;
+
+import PamView.dialog.PamDialog;
+import PamView.dialog.PamGridBagContraints;
+
+/**
+ * Dialog panel for the array geometry cache settings. 
+ * @see SnapshotGeometryCache
+ */
+public class GeometryCachePanel {
+
+	private ArrayDialog arrayDialog;
+
+	private JPanel geometryCachePanel;
+
+	private JTextField resolution;
+
+	private JCheckBox interpolate;
+
+	GeometryCachePanel(ArrayDialog arrayDialog) {
+		this.arrayDialog = arrayDialog;
+		geometryCachePanel = makePanel();
+	}
+
+	private JPanel makePanel() {
+		JPanel panel = new JPanel();
+		panel.setBorder(new TitledBorder("Geometry cache"));
+		panel.setLayout(new GridBagLayout());
+		GridBagConstraints c = new PamGridBagContraints();
+
+		PamDialog.addComponent(panel, new JLabel("Time resolution "), c);
+		c.gridx++;
+		PamDialog.addComponent(panel, resolution = new JTextField(5), c);
+		c.gridx++;
+		PamDialog.addComponent(panel, new JLabel(" ms (0 = off)"), c);
+		c.gridx = 0;
+		c.gridy++;
+		c.gridwidth = 3;
+		PamDialog.addComponent(panel, interpolate = new JCheckBox("Interpolate between cached positions"), c);
+		resolution.setToolTipText("Array geometry is calculated at this interval and reused for detections in between");
+		interpolate.setToolTipText("Interpolate between geometries either side of each detection rather than using the nearest earlier one");
+
+		JPanel outerPanel = new JPanel(new BorderLayout());
+		outerPanel.add(BorderLayout.CENTER, panel);
+		return outerPanel;
+	}
+
+	public void setParams(GeometryCacheParams cacheParams) {
+		resolution.setText(String.format("%d", cacheParams.resolutionMillis));
+		interpolate.setSelected(cacheParams.interpolate);
+	}
+
+	/**
+	 * @return new parameters, or null if the resolution is invalid. 
+	 */
+	public GeometryCacheParams getParams() {
+		GeometryCacheParams cacheParams = new GeometryCacheParams();
+		try {
+			cacheParams.resolutionMillis = Integer.valueOf(resolution.getText());
+		}
+		catch (NumberFormatException e) {
+			arrayDialog.showWarning("Invalid geometry cache time resolution");
+			return null;
+		}
+		if (cacheParams.resolutionMillis < 0) {
+			arrayDialog.showWarning("The geometry cache time resolution cannot be negative");
+			return null;
+		}
+		cacheParams.interpolate = interpolate.isSelected();
+		return cacheParams;
+	}
+
+	/**
+	 * @return the geometry cache panel
+	 */
+	public JPanel getGeometryCachePanel() {
+		return geometryCachePanel;
+	}
+
+}
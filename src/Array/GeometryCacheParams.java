@@ -0,0 +1,35 @@
+package Array;
+
+import java.io.Serializable;
+
+/**
+ * Settings for the SnapshotGeometry cache in the ArrayManager. 
+ * @see SnapshotGeometryCache
+ */
+public class GeometryCacheParams implements Serializable, Cloneable {
+
+	public static final long serialVersionUID = 1L;
+
+	/**
+	 * Time resolution of cached geometries in milliseconds. 0 disables
+	 * the cache, so geometry is worked out in full for every call. 
+	 */
+	public int resolutionMillis = 0;
+
+	/**
+	 * Interpolate between the cached geometries either side of the 
+	 * requested time rather than using the one at the start of the time bucket. 
+	 */
+	public boolean interpolate = true;
+
+	@Override
+	public GeometryCacheParams clone() {
+		try {
+			return (GeometryCacheParams) super.clone();
+		} catch (CloneNotSupportedException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+}
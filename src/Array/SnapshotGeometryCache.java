@@ -0,0 +1,264 @@
+package Array;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import GPS.GpsData;
+import pamMaths.PamVector;
+
+/**
+ * Cache of SnapshotGeometry objects for the ArrayManager. 
+ * <p>
+ * Working out array geometry means getting streamer positions from the hydrophone 
+ * locators (which for threading locators means searching back through the GPS track), 
+ * then rotating every hydrophone. Detectors and localisers ask for geometry for every 
+ * detection, so at high detection rates this gets done many times for almost the same 
+ * time. Instead, geometry is worked out once for the start of each time bucket and then
+ * either reused for everything in that bucket, or interpolated between the buckets either 
+ * side of the requested time. 
+ * <p>
+ * Entries are keyed by hydrophone map, time bucket and the array version, which is 
+ * incremented whenever the array configuration changes. When new GPS or streamer data 
+ * arrive, any cached geometry later than the previous data is discarded, since that 
+ * will have been extrapolated and may now be different. 
+ */
+public class SnapshotGeometryCache {
+
+	/**
+	 * Maximum number of cached geometries. 
+	 */
+	public static final int MAX_ENTRIES = 4096;
+
+	/**
+	 * Makes geometry for a given time when it's not in the cache. 
+	 */
+	public interface GeometryMaker {
+		public SnapshotGeometry makeGeometry(int hydrophoneMap, long timeMillis);
+	}
+
+	private GeometryCacheParams cacheParams = new GeometryCacheParams();
+
+	private int arrayVersion;
+
+	/**
+	 * Time of the latest position data that has arrived. 
+	 */
+	private long latestDataMillis = Long.MIN_VALUE;
+
+	private LinkedHashMap<CacheKey, SnapshotGeometry> cache = new LinkedHashMap<CacheKey, SnapshotGeometry>(256, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<CacheKey, SnapshotGeometry> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	private AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), interpolations = new AtomicLong(), 
+			invalidations = new AtomicLong();
+
+	private static class CacheKey {
+
+		private int hydrophoneMap;
+
+		private long bucket;
+
+		private int arrayVersion;
+
+		private CacheKey(int hydrophoneMap, long bucket, int arrayVersion) {
+			this.hydrophoneMap = hydrophoneMap;
+			this.bucket = bucket;
+			this.arrayVersion = arrayVersion;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * hydrophoneMap + Long.hashCode(bucket)) + arrayVersion;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof CacheKey == false) {
+				return false;
+			}
+			CacheKey other = (CacheKey) obj;
+			return other.hydrophoneMap == hydrophoneMap && other.bucket == bucket && other.arrayVersion == arrayVersion;
+		}
+	}
+
+	/**
+	 * Get geometry for a given time, from the cache if possible.
+	 * @param hydrophoneMap bitmap of used hydrophones
+	 * @param timeMillis time in milliseconds
+	 * @param maker called to work out geometry which isn't in the cache
+	 * @return geometry, which may be shared, so must not be modified.
+	 */
+	public SnapshotGeometry getGeometry(int hydrophoneMap, long timeMillis, GeometryMaker maker) {
+		GeometryCacheParams params = cacheParams;
+		int resolution = params.resolutionMillis;
+		if (resolution <= 0) {
+			return maker.makeGeometry(hydrophoneMap, timeMillis);
+		}
+		long bucket = Math.floorDiv(timeMillis, resolution);
+		SnapshotGeometry g0 = getBucketGeometry(hydrophoneMap, bucket, resolution, maker);
+		long bucketStart = bucket * resolution;
+		if (params.interpolate == false || timeMillis == bucketStart || g0 == null) {
+			return g0;
+		}
+		SnapshotGeometry g1 = getBucketGeometry(hydrophoneMap, bucket+1, resolution, maker);
+		if (g1 == null) {
+			return g0;
+		}
+		interpolations.incrementAndGet();
+		return interpolate(g0, g1, (double) (timeMillis - bucketStart) / resolution, timeMillis);
+	}
+
+	private SnapshotGeometry getBucketGeometry(int hydrophoneMap, long bucket, int resolution, GeometryMaker maker) {
+		CacheKey key;
+		synchronized (this) {
+			key = new CacheKey(hydrophoneMap, bucket, arrayVersion);
+			SnapshotGeometry geom = cache.get(key);
+			if (geom != null) {
+				hits.incrementAndGet();
+				return geom;
+			}
+		}
+		misses.incrementAndGet();
+		SnapshotGeometry geom = maker.makeGeometry(hydrophoneMap, bucket * resolution);
+		if (geom != null) {
+			synchronized (this) {
+				// don't keep it if the array has changed while it was being made. 
+				if (key.arrayVersion == arrayVersion) {
+					cache.put(key, geom);
+				}
+			}
+		}
+		return geom;
+	}
+
+	/**
+	 * Interpolate between two geometries. If they don't have the same hydrophones, then
+	 * the nearest is returned.
+	 * @param g0 geometry at the start of the bucket
+	 * @param g1 geometry at the start of the next bucket
+	 * @param f fraction of the way from g0 to g1
+	 * @param timeMillis time for the new geometry
+	 * @return interpolated geometry
+	 */
+	private SnapshotGeometry interpolate(SnapshotGeometry g0, SnapshotGeometry g1, double f, long timeMillis) {
+		SnapshotGeometry nearest = f < 0.5 ? g0 : g1;
+		if (Arrays.equals(g0.getHydrophoneList(), g1.getHydrophoneList()) == false ||
+				(g0.getGeometry() == null) != (g1.getGeometry() == null)) {
+			return nearest;
+		}
+		GpsData refGps = GpsData.interpolate(g0.getReferenceGPS(), g1.getReferenceGPS(), timeMillis);
+		PamVector centre = interpolate(g0.getGeometricCentre(), g1.getGeometricCentre(), f);
+		PamVector[] geometry = null;
+		PamVector[] geom0 = g0.getGeometry();
+		PamVector[] geom1 = g1.getGeometry();
+		if (geom0 != null) {
+			geometry = new PamVector[geom0.length];
+			for (int i = 0; i < geom0.length; i++) {
+				geometry[i] = i < geom1.length ? interpolate(geom0[i], geom1[i], f) : geom0[i];
+			}
+		}
+		return new SnapshotGeometry(nearest.getCurrentArray(), timeMillis, nearest.getStreamerList(), nearest.getHydrophoneList(), 
+				refGps, centre, geometry, nearest.getStreamerErrors(), nearest.getHydrophoneErrors());
+	}
+
+	private PamVector interpolate(PamVector v0, PamVector v1, double f) {
+		if (v0 == null || v1 == null) {
+			return v0;
+		}
+		return v0.add(v1.sub(v0).times(f));
+	}
+
+	/**
+	 * Discard everything. Called when the array configuration changes. 
+	 */
+	public synchronized void invalidateAll() {
+		arrayVersion++;
+		cache.clear();
+		latestDataMillis = Long.MIN_VALUE;
+		invalidations.incrementAndGet();
+	}
+
+	/**
+	 * Called when new position data (GPS, streamer or hydrophone data) arrive. Discards 
+	 * cached geometry for times after the previous data, which may have been extrapolated. 
+	 * If data arrive out of order, everything is discarded. 
+	 * @param dataMillis time of the new data
+	 */
+	public synchronized void positionDataUpdate(long dataMillis) {
+		if (dataMillis < latestDataMillis) {
+			invalidateAll();
+			latestDataMillis = dataMillis;
+			return;
+		}
+		long from = latestDataMillis;
+		latestDataMillis = dataMillis;
+		int resolution = cacheParams.resolutionMillis;
+		if (cache.isEmpty() || resolution <= 0) {
+			return;
+		}
+		Iterator<CacheKey> it = cache.keySet().iterator();
+		int n = 0;
+		while (it.hasNext()) {
+			CacheKey key = it.next();
+			if (from == Long.MIN_VALUE || key.bucket * resolution > from) {
+				it.remove();
+				n++;
+			}
+		}
+		if (n > 0) {
+			invalidations.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @return the cache parameters
+	 */
+	public GeometryCacheParams getCacheParams() {
+		return cacheParams;
+	}
+
+	/**
+	 * Set new cache parameters. This clears the cache. 
+	 * @param cacheParams the cache parameters
+	 */
+	public synchronized void setCacheParams(GeometryCacheParams cacheParams) {
+		if (cacheParams == null) {
+			cacheParams = new GeometryCacheParams();
+		}
+		this.cacheParams = cacheParams;
+		invalidateAll();
+	}
+
+	/**
+	 * @return the proportion of lookups found in the cache. 
+	 */
+	public double getHitRate() {
+		long h = hits.get();
+		long tot = h + misses.get();
+		return tot == 0 ? 0 : (double) h / tot;
+	}
+
+	/**
+	 * Reset hit and miss counts
+	 */
+	public void resetStats() {
+		hits.set(0);
+		misses.set(0);
+		interpolations.set(0);
+		invalidations.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Geometry cache %d ms: %d hits, %d misses (%3.1f%% hit rate), %d interpolated, %d invalidations", 
+				cacheParams.resolutionMillis, hits.get(), misses.get(), getHitRate()*100., interpolations.get(), invalidations.get());
+	}
+
+}
@@ -0,0 +1,355 @@
+package Filters;
+
+/**
+ * IIR filter implemented as a cascade of second order sections (biquads), using
+ * the same pole zero pairs as FastIIRFilter, from the IIR filter method for the
+ * filter parameters.
+ * <p>
+ * Data are processed a whole block at a time in the transposed direct form II, up to
+ * three sections in each pass through the data. The coefficients and state for those
+ * sections are held in local variables for the whole block, which is much quicker than
+ * calling into every section for every sample, and since each section only depends on
+ * the one before for the same sample, the processor can work on several sections at
+ * once. The overall filter gain is applied within the first section, so there is no
+ * extra pass over the data. Nothing is allocated once the filter has been prepared.
+ * <p>
+ * A single filter can hold state for several channels, so that multi-channel data
+ * can be filtered in one call, either as separate arrays or interleaved in a single
+ * array. The filter is not thread safe, so either make one per channel or run all
+ * channels from the same thread.
+ * <p>
+ * Filter types which don't have pole zero pairs (e.g. FIR) pass data straight through.
+ *
+ * @see IIRFilterMethod#getFastFilterCoefficients()
+ */
+public class BiquadFilter implements Filter {
+
+	/**
+	 * Number of coefficients for each section: n0, n1, n2, d1, d2
+	 */
+	private static final int NCOEFFS = 5;
+
+	private double sampleRate;
+
+	private FilterParams filterParams;
+
+	private int nChannels;
+
+	private int nSections;
+
+	/**
+	 * Coefficients, NCOEFFS per section. The section output is
+	 * y = n0.x + s1; s1 = n1.x + d1.y + s2; s2 = n2.x + d2.y
+	 */
+	private double[] coefficients = new double[0];
+
+	/**
+	 * Filter state, two values per section per channel.
+	 */
+	private double[] state = new double[0];
+
+	/**
+	 * Gain to use if there are no filter sections.
+	 */
+	private double passGain = 1;
+
+	/**
+	 * Single channel filter.
+	 * @param channel channel number (not used, but there for consistency with other filters)
+	 * @param sampleRate sample rate
+	 * @param filterParams filter parameters
+	 */
+	public BiquadFilter(int channel, double sampleRate, FilterParams filterParams) {
+		this(sampleRate, filterParams, 1);
+	}
+
+	/**
+	 * Filter for several channels of data.
+	 * @param sampleRate sample rate
+	 * @param filterParams filter parameters
+	 * @param nChannels number of channels.
+	 */
+	public BiquadFilter(double sampleRate, FilterParams filterParams, int nChannels) {
+		this.sampleRate = sampleRate;
+		this.filterParams = filterParams;
+		this.nChannels = Math.max(1, nChannels);
+		prepareFilter();
+	}
+
+	@Override
+	public void prepareFilter() {
+		FilterMethod filterMethod = null;
+		if (filterParams != null && sampleRate != 0) {
+			switch (filterParams.filterType) {
+			case BUTTERWORTH:
+				filterMethod = new ButterworthMethod(sampleRate, filterParams);
+				break;
+			case CHEBYCHEV:
+				filterMethod = new ChebyshevMethod(sampleRate, filterParams);
+				break;
+			default:
+				filterMethod = null;
+			}
+		}
+		double[] fastCoeffs = null;
+		double gain = 1;
+		if (filterMethod != null) {
+			fastCoeffs = filterMethod.getFastFilterCoefficients();
+			gain = filterMethod.getFilterGainConstant();
+		}
+		if (fastCoeffs == null || gain == 0) {
+			nSections = 0;
+			coefficients = new double[0];
+			passGain = 1;
+		}
+		else {
+			setCoefficients(fastCoeffs, gain);
+		}
+		state = new double[nSections * 2 * nChannels];
+	}
+
+	/**
+	 * Convert from the coefficients used by FastIIRFilter, which are
+	 * a1, a2, b1, b2 for each section, where the section transfer function is
+	 * (1 + a1/z + a2/z^2) / (1 - b1/z - b2/z^2), and the output is divided by the
+	 * gain constant.
+	 */
+	private void setCoefficients(double[] fastCoeffs, double gain) {
+		nSections = fastCoeffs.length / 4;
+		coefficients = new double[nSections * NCOEFFS];
+		for (int s = 0, i = 0, j = 0; s < nSections; s++, i += 4, j += NCOEFFS) {
+			double g = s == 0 ? 1. / gain : 1.;
+			coefficients[j] = g;
+			coefficients[j+1] = fastCoeffs[i] * g;
+			coefficients[j+2] = fastCoeffs[i+1] * g;
+			coefficients[j+3] = fastCoeffs[i+2];
+			coefficients[j+4] = fastCoeffs[i+3];
+		}
+		passGain = 1. / gain;
+	}
+
+	/**
+	 * Clear the filter state for all channels.
+	 */
+	public void resetFilter() {
+		for (int i = 0; i < state.length; i++) {
+			state[i] = 0;
+		}
+	}
+
+	@Override
+	public void runFilter(double[] inputData) {
+		runFilter(0, inputData, inputData, inputData.length);
+	}
+
+	@Override
+	public void runFilter(double[] inputData, double[] outputData) {
+		// as with the older filters, only fill as much output as there is room for.
+		runFilter(0, inputData, outputData, Math.min(inputData.length, outputData.length));
+	}
+
+	@Override
+	public double runFilter(double aData) {
+		double x = aData;
+		for (int s = 0, c = 0, st = 0; s < nSections; s++, c += NCOEFFS, st += 2) {
+			double y = coefficients[c] * x + state[st];
+			state[st] = coefficients[c+1] * x + coefficients[c+3] * y + state[st+1];
+			state[st+1] = coefficients[c+2] * x + coefficients[c+4] * y;
+			x = y;
+		}
+		return nSections == 0 ? x * passGain : x;
+	}
+
+	/**
+	 * Filter a block of data for one channel.
+	 * @param channel channel index (0 to nChannels-1), not the hardware channel number.
+	 * @param inputData input data
+	 * @param outputData output data, which can be the same array as the input.
+	 * Must be at least nSamples long.
+	 * @param nSamples number of samples to filter.
+	 */
+	public void runFilter(int channel, double[] inputData, double[] outputData, int nSamples) {
+		if (outputData == null || outputData.length < nSamples) {
+			throw new IllegalArgumentException("BiquadFilter output array too short for " + nSamples + " samples");
+		}
+		if (nSections == 0) {
+			for (int i = 0; i < nSamples; i++) {
+				outputData[i] = inputData[i] * passGain;
+			}
+			return;
+		}
+		runSections(channel, inputData, 0, outputData, 0, 1, nSamples);
+	}
+
+	/**
+	 * Filter a block of data for every channel.
+	 * @param inputData input data, one array per channel
+	 * @param outputData output data, one array per channel, which can be the same arrays as the input.
+	 */
+	public void runFilter(double[][] inputData, double[][] outputData) {
+		int n = Math.min(nChannels, inputData.length);
+		for (int i = 0; i < n; i++) {
+			runFilter(i, inputData[i], outputData[i], Math.min(inputData[i].length, outputData[i].length));
+		}
+	}
+
+	/**
+	 * Filter interleaved multi-channel data in place, e.g. data straight from a
+	 * sound card or wav file, where the samples for each channel follow each other.
+	 * Each channel is filtered in turn, stepping through the array, so the data don't 
+	 * need to be split into separate arrays first.
+	 * @param data interleaved data
+	 * @param nFrames number of frames (samples per channel) in the data
+	 */
+	public void runInterleaved(double[] data, int nFrames) {
+		if (data.length < nFrames * nChannels) {
+			throw new IllegalArgumentException("BiquadFilter data array too short for " + nFrames + " frames");
+		}
+		int nCh = nChannels;
+		if (nSections == 0) {
+			for (int i = 0; i < nFrames * nCh; i++) {
+				data[i] *= passGain;
+			}
+			return;
+		}
+		for (int ch = 0; ch < nCh; ch++) {
+			runSections(ch, data, ch, data, ch, nCh, nFrames);
+		}
+	}
+
+	/**
+	 * Run all filter sections over a block of data for one channel, taking up to
+	 * three sections at a time.
+	 * @param channel channel index
+	 * @param in input data
+	 * @param inOff offset of first sample in input data
+	 * @param out output data (can be the same as the input)
+	 * @param outOff offset of first sample in output data
+	 * @param stride step between samples in both input and output
+	 * @param n number of samples
+	 */
+	private void runSections(int channel, double[] in, int inOff, double[] out, int outOff, int stride, int n) {
+		int st = channel * nSections * 2;
+		int s = 0;
+		while (s < nSections) {
+			int c = s * NCOEFFS;
+			int nRun = Math.min(3, nSections - s);
+			switch (nRun) {
+			case 3:
+				runThreeSections(c, st, in, inOff, out, outOff, stride, n);
+				break;
+			case 2:
+				runTwoSections(c, st, in, inOff, out, outOff, stride, n);
+				break;
+			default:
+				runSection(c, st, in, inOff, out, outOff, stride, n);
+			}
+			// later sections work in place on the output.
+			in = out;
+			inOff = outOff;
+			s += nRun;
+			st += nRun * 2;
+		}
+	}
+
+	/**
+	 * Run a single section over a block of data.
+	 * @param c index of section coefficients
+	 * @param st index of section state
+	 */
+	private void runSection(int c, int st, double[] in, int inOff, double[] out, int outOff, int stride, int n) {
+		double[] cf = coefficients;
+		double n0 = cf[c], n1 = cf[c+1], n2 = cf[c+2], d1 = cf[c+3], d2 = cf[c+4];
+		double z1 = state[st], z2 = state[st+1];
+		for (int i = 0, j = inOff, k = outOff; i < n; i++, j += stride, k += stride) {
+			double x = in[j];
+			double y = n0 * x + z1;
+			z1 = n1 * x + d1 * y + z2;
+			z2 = n2 * x + d2 * y;
+			out[k] = y;
+		}
+		state[st] = z1;
+		state[st+1] = z2;
+	}
+
+	/**
+	 * Run two consecutive sections over a block of data.
+	 */
+	private void runTwoSections(int c, int st, double[] in, int inOff, double[] out, int outOff, int stride, int n) {
+		double[] cf = coefficients;
+		double a0 = cf[c], a1 = cf[c+1], a2 = cf[c+2], ad1 = cf[c+3], ad2 = cf[c+4];
+		double b0 = cf[c+5], b1 = cf[c+6], b2 = cf[c+7], bd1 = cf[c+8], bd2 = cf[c+9];
+		double za1 = state[st], za2 = state[st+1];
+		double zb1 = state[st+2], zb2 = state[st+3];
+		for (int i = 0, j = inOff, k = outOff; i < n; i++, j += stride, k += stride) {
+			double x = in[j];
+			double y = a0 * x + za1;
+			za1 = a1 * x + ad1 * y + za2;
+			za2 = a2 * x + ad2 * y;
+			double v = b0 * y + zb1;
+			zb1 = b1 * y + bd1 * v + zb2;
+			zb2 = b2 * y + bd2 * v;
+			out[k] = v;
+		}
+		state[st] = za1;
+		state[st+1] = za2;
+		state[st+2] = zb1;
+		state[st+3] = zb2;
+	}
+
+	/**
+	 * Run three consecutive sections over a block of data.
+	 */
+	private void runThreeSections(int c, int st, double[] in, int inOff, double[] out, int outOff, int stride, int n) {
+		double[] cf = coefficients;
+		double a0 = cf[c], a1 = cf[c+1], a2 = cf[c+2], ad1 = cf[c+3], ad2 = cf[c+4];
+		double b0 = cf[c+5], b1 = cf[c+6], b2 = cf[c+7], bd1 = cf[c+8], bd2 = cf[c+9];
+		double e0 = cf[c+10], e1 = cf[c+11], e2 = cf[c+12], ed1 = cf[c+13], ed2 = cf[c+14];
+		double za1 = state[st], za2 = state[st+1];
+		double zb1 = state[st+2], zb2 = state[st+3];
+		double ze1 = state[st+4], ze2 = state[st+5];
+		for (int i = 0, j = inOff, k = outOff; i < n; i++, j += stride, k += stride) {
+			double x = in[j];
+			double y = a0 * x + za1;
+			za1 = a1 * x + ad1 * y + za2;
+			za2 = a2 * x + ad2 * y;
+			double v = b0 * y + zb1;
+			zb1 = b1 * y + bd1 * v + zb2;
+			zb2 = b2 * y + bd2 * v;
+			double w = e0 * v + ze1;
+			ze1 = e1 * v + ed1 * w + ze2;
+			ze2 = e2 * v + ed2 * w;
+			out[k] = w;
+		}
+		state[st] = za1;
+		state[st+1] = za2;
+		state[st+2] = zb1;
+		state[st+3] = zb2;
+		state[st+4] = ze1;
+		state[st+5] = ze2;
+	}
+
+	/**
+	 * @return the number of second order sections
+	 */
+	public int getNumSections() {
+		return nSections;
+	}
+
+	/**
+	 * @return the number of channels the filter holds state for
+	 */
+	public int getNumChannels() {
+		return nChannels;
+	}
+
+	@Override
+	public int getFilterDelay() {
+		/*
+		 * Same as the FastIIRFilter this replaced. The click detector shifts click
+		 * start samples by this, so changing it would move every click. 
+		 */
+		return 0;
+	}
+
+}
@@ -2,50 +2,183 @@ package Filters;
 
 import java.util.Random;
 
+/**
+ * Speed test for IIR filters. Compares the original IirfFilter, the FastIIRFilter
+ * and the block processing BiquadFilter for a few typical filter designs, filtering
+ * a sample at a time, a block at a time and, for the BiquadFilter, multi-channel
+ * interleaved data. Also checks that all the filters give the same output.
+ */
 public class FilterSpeed {
 
+	private static final double sampleRate = 500000;
+
+	private static final int blockLen = 4096;
+
+	private static final int nBlocks = 500;
+
+	private static final int nChannels = 4;
+
+	private static final int nRepeats = 5;
+
 	/**
 	 * @param args
 	 */
 	public static void main(String[] args) {
-		// run some speed tests of filter operations
+		System.out.printf("%d blocks of %d samples at %3.0fkHz, best of %d runs. Times are ns per sample\n",
+				nBlocks, blockLen, sampleRate/1000, nRepeats);
+		runTests(makeParams(FilterType.BUTTERWORTH, FilterBand.HIGHPASS, 4, 2000, 0));
+		runTests(makeParams(FilterType.BUTTERWORTH, FilterBand.LOWPASS, 6, 0, 24000));
+		runTests(makeParams(FilterType.BUTTERWORTH, FilterBand.BANDPASS, 4, 10000, 150000));
+		runTests(makeParams(FilterType.CHEBYCHEV, FilterBand.BANDPASS, 5, 20000, 100000));
+	}
+
+	private static FilterParams makeParams(FilterType type, FilterBand band, int order, float highPass, float lowPass) {
 		FilterParams filtParams = new FilterParams();
-		filtParams.filterBand = FilterBand.HIGHPASS;
-		filtParams.highPassFreq = 10000;
-		filtParams.lowPassFreq = 1000;
-		filtParams.filterOrder = 3;
-		filtParams.filterType = FilterType.CHEBYCHEV;
+		filtParams.filterType = type;
+		filtParams.filterBand = band;
+		filtParams.filterOrder = order;
+		filtParams.highPassFreq = highPass;
+		filtParams.lowPassFreq = lowPass;
 		filtParams.passBandRipple = 2.;
-		
-		int nTrials = 10000;
-		int dataLen = 2000;
-		IirfFilter filter = new IirfFilter(0, 48000, filtParams);
-		filter.sayFilter();
-		double data[] = new double[dataLen];
-		double testData[] = new double[dataLen];
-		Random r = new Random();
-		for (int i = 0; i < dataLen; i++) {
-			data[i] = r.nextGaussian();
+		return filtParams;
+	}
+
+	private static void runTests(FilterParams filtParams) {
+		double[][] data = new double[nBlocks][blockLen];
+		Random r = new Random(1);
+		for (int b = 0; b < nBlocks; b++) {
+			for (int i = 0; i < blockLen; i++) {
+				data[b][i] = r.nextGaussian();
+			}
 		}
-		testData = data.clone();
-		long sn, en, mn = 0;
-		double a;
-		long startTime = System.currentTimeMillis();
-		for (int i = 0; i < nTrials; i++) {
-			sn = System.nanoTime();
-			testData = data.clone();
-			filter.runFilter(testData);
-			en = System.nanoTime();
-			mn = Math.max(mn, en-sn);
-			for (int j = 0; j < dataLen; j++) {
-				a  = Math.log10(testData[j]);
+		double[] output = new double[blockLen];
+		double[] refOutput = new double[blockLen];
+
+		long tIirfSample = Long.MAX_VALUE, tIirfBlock = Long.MAX_VALUE;
+		long tFastSample = Long.MAX_VALUE, tFastBlock = Long.MAX_VALUE;
+		long tBiquadSample = Long.MAX_VALUE, tBiquadBlock = Long.MAX_VALUE;
+		long tBiquadInterleaved = Long.MAX_VALUE, tBiquadSeparate = Long.MAX_VALUE;
+		double maxFastErr = 0, maxBiquadErr = 0;
+		BiquadFilter biquad = null;
+		for (int rep = 0; rep < nRepeats; rep++) {
+			IirfFilter iirf = new IirfFilter(0, sampleRate, filtParams);
+			long t0 = System.nanoTime();
+			for (int b = 0; b < nBlocks; b++) {
+				double[] d = data[b];
+				for (int i = 0; i < blockLen; i++) {
+					output[i] = iirf.runFilter(d[i]);
+				}
+			}
+			tIirfSample = Math.min(tIirfSample, System.nanoTime()-t0);
+			System.arraycopy(output, 0, refOutput, 0, blockLen);
+
+			iirf = new IirfFilter(0, sampleRate, filtParams);
+			t0 = System.nanoTime();
+			for (int b = 0; b < nBlocks; b++) {
+				iirf.runFilter(data[b], output);
+			}
+			tIirfBlock = Math.min(tIirfBlock, System.nanoTime()-t0);
+
+			FastIIRFilter fast = new FastIIRFilter(0, sampleRate, filtParams);
+			t0 = System.nanoTime();
+			for (int b = 0; b < nBlocks; b++) {
+				double[] d = data[b];
+				for (int i = 0; i < blockLen; i++) {
+					output[i] = fast.runFilter(d[i]);
+				}
+			}
+			tFastSample = Math.min(tFastSample, System.nanoTime()-t0);
+
+			fast = new FastIIRFilter(0, sampleRate, filtParams);
+			t0 = System.nanoTime();
+			for (int b = 0; b < nBlocks; b++) {
+				fast.runFilter(data[b], output);
+			}
+			tFastBlock = Math.min(tFastBlock, System.nanoTime()-t0);
+			maxFastErr = Math.max(maxFastErr, maxDifference(output, refOutput));
+
+			biquad = new BiquadFilter(0, sampleRate, filtParams);
+			t0 = System.nanoTime();
+			for (int b = 0; b < nBlocks; b++) {
+				double[] d = data[b];
+				for (int i = 0; i < blockLen; i++) {
+					output[i] = biquad.runFilter(d[i]);
+				}
+			}
+			tBiquadSample = Math.min(tBiquadSample, System.nanoTime()-t0);
+
+			biquad = new BiquadFilter(0, sampleRate, filtParams);
+			t0 = System.nanoTime();
+			for (int b = 0; b < nBlocks; b++) {
+				biquad.runFilter(data[b], output);
+			}
+			tBiquadBlock = Math.min(tBiquadBlock, System.nanoTime()-t0);
+			maxBiquadErr = Math.max(maxBiquadErr, maxDifference(output, refOutput));
+
+			/*
+			 * Multi-channel, using the same data on every channel so that every
+			 * channel can be checked against the single channel output.
+			 */
+			double[][] chanData = new double[nChannels][blockLen];
+			double[][] chanOut = new double[nChannels][blockLen];
+			BiquadFilter multiBiquad = new BiquadFilter(sampleRate, filtParams, nChannels);
+			t0 = System.nanoTime();
+			for (int b = 0; b < nBlocks; b++) {
+				for (int c = 0; c < nChannels; c++) {
+					System.arraycopy(data[b], 0, chanData[c], 0, blockLen);
+				}
+				multiBiquad.runFilter(chanData, chanOut);
+			}
+			tBiquadSeparate = Math.min(tBiquadSeparate, System.nanoTime()-t0);
+			for (int c = 0; c < nChannels; c++) {
+				maxBiquadErr = Math.max(maxBiquadErr, maxDifference(chanOut[c], refOutput));
 			}
+
+			double[] interleaved = new double[blockLen * nChannels];
+			multiBiquad = new BiquadFilter(sampleRate, filtParams, nChannels);
+			t0 = System.nanoTime();
+			for (int b = 0; b < nBlocks; b++) {
+				double[] d = data[b];
+				for (int i = 0, j = 0; i < blockLen; i++) {
+					for (int c = 0; c < nChannels; c++) {
+						interleaved[j++] = d[i];
+					}
+				}
+				multiBiquad.runInterleaved(interleaved, blockLen);
+			}
+			tBiquadInterleaved = Math.min(tBiquadInterleaved, System.nanoTime()-t0);
+			for (int i = 0; i < blockLen; i++) {
+				for (int c = 0; c < nChannels; c++) {
+					maxBiquadErr = Math.max(maxBiquadErr, Math.abs(interleaved[i*nChannels+c] - refOutput[i]));
+				}
+			}
+		}
+		double nSamples = (double) nBlocks * blockLen;
+		System.out.printf("\n%s %s order %d, %d biquad sections\n", filtParams.filterType, filtParams.filterBand,
+				filtParams.filterOrder, biquad.getNumSections());
+		System.out.printf("  IirfFilter     sample %6.2f  block %6.2f\n", tIirfSample/nSamples, tIirfBlock/nSamples);
+		System.out.printf("  FastIIRFilter  sample %6.2f  block %6.2f  max difference %6.2e\n",
+				tFastSample/nSamples, tFastBlock/nSamples, maxFastErr);
+		System.out.printf("  BiquadFilter   sample %6.2f  block %6.2f  max difference %6.2e\n",
+				tBiquadSample/nSamples, tBiquadBlock/nSamples, maxBiquadErr);
+		System.out.printf("  BiquadFilter   %d channels %6.2f  interleaved %6.2f (includes copying data)\n", nChannels,
+				tBiquadSeparate/nSamples/nChannels, tBiquadInterleaved/nSamples/nChannels);
+		System.out.printf("  Block speed up on IirfFilter x%3.1f, on FastIIRFilter x%3.1f\n",
+				(double) tIirfBlock/tBiquadBlock, (double) tFastBlock/tBiquadBlock);
+		checkData(output);
+	}
+
+	private static double maxDifference(double[] a, double[] b) {
+		double maxDiff = 0;
+		for (int i = 0; i < a.length; i++) {
+			maxDiff = Math.max(maxDiff, Math.abs(a[i]-b[i]));
 		}
-		long endTime = System.currentTimeMillis();
-		System.out.println(String.format("Run time for %d filter runs of %d samples = %d ms, longest = %d ns", 
-				nTrials, dataLen, endTime-startTime, mn/1000));
+		return maxDiff;
+	}
+
+	private static void checkData(double[] data) {
 		int nan = 0, inf = 0;
-		for (int i = 0; i < dataLen; i++) {
+		for (int i = 0; i < data.length; i++) {
 			if (Double.isNaN(data[i])) {
 				nan ++;
 			}
@@ -424,9 +424,12 @@ public abstract class IIRFilterMethod extends FilterMethod {
 //				return new IirfFilter(channel, getSampleRate(), getFilterParams());
 		/*
 		 * Fast IIR filter gives a speed increase of about *2.4 on my machine
-		 * compared to the older IirfFilter method 
+		 * compared to the older IirfFilter method. The BiquadFilter processes 
+		 * whole blocks of data several sections at a time and is about twice as fast 
+		 * again (see FilterSpeed).  
 		 */
 //		return new IirfFilter(channel, getSampleRate(), getFilterParams());
-		return new FastIIRFilter(channel, getSampleRate(), getFilterParams());
+//		return new FastIIRFilter(channel, getSampleRate(), getFilterParams());
+		return new BiquadFilter(channel, getSampleRate(), getFilterParams());
 	}
 }
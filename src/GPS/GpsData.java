@@ -1194,6 +1194,42 @@ public class GpsData extends LatLong implements Cloneable, ManagedParameters, Ar
 		return predictedData;
 	}
 
+	/**
+	 * Interpolate between two GPS positions. Position and height are 
+	 * interpolated linearly, headings and angles the shortest way round. 
+	 * Anything else is taken from the first position. 
+	 * @param g1 first position
+	 * @param g2 second position
+	 * @param timeMillis time of interpolated position
+	 * @return interpolated position, or a copy of whichever isn't null if one is null. 
+	 */
+	public static GpsData interpolate(GpsData g1, GpsData g2, long timeMillis) {
+		if (g1 == null || g2 == null) {
+			GpsData g = g1 == null ? g2 : g1;
+			return g == null ? null : g.clone();
+		}
+		GpsData newData = g1.clone();
+		long dt = g2.timeInMillis - g1.timeInMillis;
+		double f = dt == 0 ? 0 : (double) (timeMillis - g1.timeInMillis) / dt;
+		newData.latitude = g1.latitude + f * (g2.latitude - g1.latitude);
+		newData.longitude = g1.longitude + f * (g2.longitude - g1.longitude);
+		newData.height = g1.height + f * (g2.height - g1.height);
+		newData.trueHeading = interpolateAngle(g1.trueHeading, g2.trueHeading, f);
+		newData.magneticHeading = interpolateAngle(g1.magneticHeading, g2.magneticHeading, f);
+		newData.pitch = interpolateAngle(g1.pitch, g2.pitch, f);
+		newData.roll = interpolateAngle(g1.roll, g2.roll, f);
+		newData.timeInMillis = timeMillis;
+		return newData;
+	}
+
+	private static Double interpolateAngle(Double a1, Double a2, double f) {
+		if (a1 == null || a2 == null) {
+			return a1;
+		}
+		double d = PamUtils.constrainedAngle(a2 - a1, 180);
+		return a1 + f * d;
+	}
+
 	@Override
 	public GpsData clone() {
 		return (GpsData) super.clone();
@@ -2,7 +2,6 @@ package IshmaelDetector;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -11,14 +10,14 @@ import javax.sound.sampled.AudioSystem;
 import Acquisition.FileInputSystem;
 import PamDetection.RawDataUnit;
 import PamUtils.PamUtils;
-import PamUtils.complex.ComplexArray;
 import PamView.GroupedSourceParameters;
 import PamView.dialog.warn.WarnOnce;
 import PamguardMVC.PamConstants;
 import PamguardMVC.PamDataBlock;
 import PamguardMVC.PamDataUnit;
 import PamguardMVC.PamObservable;
-import fftManager.FastFFT;
+import fftManager.StreamingCorrelator;
+import fftManager.StreamingCorrelator.CorrelationListener;
 
 public class MatchFiltProcess2 extends IshDetFnProcess {
 
@@ -28,15 +27,10 @@ public class MatchFiltProcess2 extends IshDetFnProcess {
 
 	private double[] kernel;
 
-	private int fftLength;
-
-	private FastFFT fastFFT;
-
-	private ComplexArray complexKernel;
-
-	private int usefulSamples;
-
-	private int logFFTLength;
+	/**
+	 * Correlates data with the kernel, shared by all channel detectors. 
+	 */
+	private StreamingCorrelator correlator;
 
 	private double normConst;
 	
@@ -71,7 +65,9 @@ public class MatchFiltProcess2 extends IshDetFnProcess {
 		}
 		
 		boolean kernelOK = prepareKernel(params);
-		
+		if (kernelOK == false) {
+			correlator = null;
+		}
 		
 		prepareProcess();
 	}
@@ -107,22 +103,15 @@ public class MatchFiltProcess2 extends IshDetFnProcess {
 		if (kernel == null) {
 			return false;
 		}
-		int bufLen = Math.max((int)Math.round(getSampleRate() * 0.1), kernel.length * 2);
-		fftLength = FastFFT.nextBinaryExp(bufLen);
-		logFFTLength = FastFFT.log2(fftLength);
-		// pack it slightly differently so that the data are at the end. 
-		double[] packedKernel = Arrays.copyOf(kernel, fftLength);
-//		double[] packedKernel = new double[fftLength];
-//		for (int i = 0, j = fftLength-packedKernel.length; i < kernel.length; i++, j++) {
-//			packedKernel[j] = kernel[i];
-//		}
-		
-		
-		fastFFT = new FastFFT();
-		// this will initialise the fastFFT for bufLen, to reuse in subsequent calls
-		complexKernel = fastFFT.rfft(packedKernel, fftLength);
-//		usefulSamples = fftLength/2;//-kernel.length;
-		usefulSamples = fftLength-kernel.length;
+		if (kernel.length == 0) {
+			WarnOnce.showWarning("Ish Matched Filter", "Kernel file " + kernelFile.getAbsolutePath() + " contains no data", WarnOnce.OK_OPTION);
+			return false;
+		}
+		/*
+		 * The kernel is transformed once here. Data blocks are at least 0.1s and 
+		 * at least twice the kernel length, overlapping by the kernel length.  
+		 */
+		correlator = new StreamingCorrelator(kernel, (int)Math.round(getSampleRate() * 0.1));
 		normConst = 0;
 		for (int i = 0; i < kernel.length; i++) {
 			normConst += Math.pow(kernel[i], 2);
@@ -148,64 +137,35 @@ public class MatchFiltProcess2 extends IshDetFnProcess {
 			return;
 		}
 		int chan = PamUtils.getSingleChannel(arg.getSequenceBitmap());
-		if (channelDetectors[chan] == null) {
+		if (channelDetectors[chan] == null || correlator == null) {
 			return;
 		}
 		channelDetectors[chan].newData((RawDataUnit) arg);
 	}
 	
-	private class ChannelDetector {
+	private class ChannelDetector implements CorrelationListener {
 		
 		int iChannel;
 		
-		int bufferIndex = 0;
-		
-		long totalSamples = 0;
-		
-		double[] dataBuffer;
+		private StreamingCorrelator.Channel correlatorChannel;
 		
 		private ChannelDetector(int iChan) {
 			this.iChannel = iChan;
 		}
 
 		public void newData(RawDataUnit rawDataUnit) {
-			double[] raw = rawDataUnit.getRawData();
-			if (dataBuffer == null) {
-				dataBuffer = new double[fftLength];
-				bufferIndex = 0;
-			}
-			for (int i = 0; i < raw.length; i++) {
-				dataBuffer[bufferIndex++] = raw[i];
-				totalSamples++;
-				if (bufferIndex == fftLength) {
-					processBuffer();
-					shuffleBuffer();
-					bufferIndex -= usefulSamples;
-				}
-			}
-		}
-
-		/**
-		 * Move data back to start of buffer by useful samples. 
-		 */
-		private void shuffleBuffer() {
-			for (int i = 0, j = usefulSamples; j < fftLength; i++, j++) {
-				dataBuffer[i] = dataBuffer[j];
+			if (correlatorChannel == null) {
+				correlatorChannel = correlator.createChannel();
 			}
-			
+			correlatorChannel.addData(rawDataUnit.getRawData(), this);
 		}
 
 		/**
-		 * Process a completed data buffer
+		 * Process a completed block of correlation data
 		 */
-		private void processBuffer() {
-			// do the xCorr here, it's as easy as in a separate class given the
-			// functions in ComplexArray
-			ComplexArray fftData = fastFFT.rfft(dataBuffer, fftLength);
-			ComplexArray xCorrDat = fftData.conjTimes(complexKernel);
-			// because it was a rfft, these data are only half of what we need for the inv FFt.
-//			xCorrDat = xCorrDat.fillConjugateHalf();
-			double[] xCorr = fastFFT.realInverse(xCorrDat);
+		@Override
+		public void newCorrelationBlock(long startSamp, double[] dataBuffer, double[][] correlations, int usefulSamples) {
+			double[] xCorr = correlations[0];
 			/**
 			 * For normalisation, we need to sum the energy in the waveform for each sample of
 			 * the correlation. So add the first block, the length of the kernel, then for 
@@ -213,17 +173,16 @@ public class MatchFiltProcess2 extends IshDetFnProcess {
 			 */
 			double norm2 = 0;
 			for (int i = 0; i < kernel.length; i++) {
-				norm2 += Math.pow(dataBuffer[i],2);
+				norm2 += dataBuffer[i] * dataBuffer[i];
 			}
 
-			long startSamp = totalSamples - fftLength;
 			long bufferStartMillis = absSamplesToMilliseconds(startSamp);
 
 			double[] dataOut = new double[usefulSamples];
 			for (int i = 0, j = kernel.length; i < usefulSamples; i++, j++) {
 				dataOut[i] = xCorr[i]/Math.sqrt(normConst*norm2);
-				norm2 -= Math.pow(dataBuffer[i],2); // remove first
-				norm2 += Math.pow(dataBuffer[j],2); // add next
+				norm2 -= dataBuffer[i] * dataBuffer[i]; // remove first
+				norm2 += dataBuffer[j] * dataBuffer[j]; // add next
 			}
 			// now throw that at a new data unit ...
 			IshDetFnDataUnit outData = new IshDetFnDataUnit(bufferStartMillis, 1<<iChannel, startSamp, usefulSamples, dataOut);
@@ -30,6 +30,7 @@ import PamUtils.PamUtils;
 import PamUtils.complex.ComplexArray;
 import fftFilter.FFTFilterParams;
 import fftManager.Complex;
+import fftManager.FFTService;
 import fftManager.FastFFT;
 
 /**
@@ -50,6 +51,7 @@ import fftManager.FastFFT;
 public class Correlations {
 
 	private FastFFT fastFFT = new FastFFT();
+	private FFTService fftService = FFTService.getInstance();
 	private double correlationValue;
 	private double[] lastCorrelationData;
 	private double[] lastPeak;
@@ -116,7 +118,7 @@ public class Correlations {
 			for (int iS = nS; iS < fftLength; iS++) {
 				fftdata[i][iS] = 0.;
 			}
-			fftOutData[i] = fastFFT.rfft(fftdata[i], fftLength);
+			fftOutData[i] = fftService.rfftInPlace(fftdata[i]);
 		}
 		return getDelay(fftOutData[0], fftOutData[1], delayMeasurementParams, sampleRate, fftLength, maxDelaySamples);
 	}
@@ -163,37 +165,54 @@ public class Correlations {
 		/**
 		 * See comment above - needs a lot of work to fully incorporate all delay options. 
 		 */
-		int[] binLims = {0, complexArray.length()};
-		if (delayMeasurementParams != null) {
-			FFTFilterParams filterParams = delayMeasurementParams.delayFilterParams;
-			if (filterParams != null) {
-				fftLength = complexArray.length()*2;
-				int b1 = (int) Math.round(filterParams.lowPassFreq*fftLength/sampleRate);
-				int b2 = (int) Math.round(filterParams.highPassFreq*fftLength/sampleRate);
-				switch(filterParams.filterBand) {
-				case BANDPASS:
-					binLims[0] = Math.max(0, (int)Math.floor(Math.min(b1, b2))); 
-					binLims[1] = Math.min(fftLength/2, (int)Math.ceil(Math.max(b1, b2))); 
-					break;
-				case BANDSTOP:
-					binLims[0] = Math.max(0, (int)Math.floor(Math.max(b1, b2))); 
-					binLims[1] = Math.min(fftLength/2, (int)Math.ceil(Math.min(b1, b2))); 
-					break;
-				case HIGHPASS:
-					binLims[0] = Math.max(0, b2);
-					break;
-				case LOWPASS:
-					binLims[1] = Math.min(fftLength/2, b1);
-					break;
-				default:
-					break;
-				
-				}
-			}
+		if (delayMeasurementParams != null && delayMeasurementParams.delayFilterParams != null) {
+			fftLength = complexArray.length()*2;
 		}
+		int[] binLims = getBinRange(delayMeasurementParams, sampleRate, fftLength, complexArray.length());
 		return getDelay(complexArray, complexArray2, fftLength, maxDelaySamples, binLims);
 	}
 
+	/**
+	 * Get the range of frequency bins to use in a cross correlation, based on the 
+	 * filter settings in the delay measurement parameters. 
+	 * @param delayMeasurementParams Measurement parameters (can be null)
+	 * @param sampleRate sample rate
+	 * @param fftLength FFT length
+	 * @param nBins number of bins in the spectrum data (usually fftLength/2)
+	 * @return two element array, first bin to use and one past the last bin to use. 
+	 */
+	public static int[] getBinRange(DelayMeasurementParams delayMeasurementParams, double sampleRate, int fftLength, int nBins) {
+		int[] binLims = {0, nBins};
+		if (delayMeasurementParams == null) {
+			return binLims;
+		}
+		FFTFilterParams filterParams = delayMeasurementParams.delayFilterParams;
+		if (filterParams == null) {
+			return binLims;
+		}
+		int b1 = (int) Math.round(filterParams.lowPassFreq*fftLength/sampleRate);
+		int b2 = (int) Math.round(filterParams.highPassFreq*fftLength/sampleRate);
+		switch(filterParams.filterBand) {
+		case BANDPASS:
+			binLims[0] = Math.max(0, (int)Math.floor(Math.min(b1, b2))); 
+			binLims[1] = Math.min(fftLength/2, (int)Math.ceil(Math.max(b1, b2))); 
+			break;
+		case BANDSTOP:
+			binLims[0] = Math.max(0, (int)Math.floor(Math.max(b1, b2))); 
+			binLims[1] = Math.min(fftLength/2, (int)Math.ceil(Math.min(b1, b2))); 
+			break;
+		case HIGHPASS:
+			binLims[0] = Math.max(0, b2);
+			break;
+		case LOWPASS:
+			binLims[1] = Math.min(fftLength/2, b1);
+			break;
+		default:
+			break;
+		}
+		return binLims;
+	}
+
 //	/**
 //	 * Measure the time delay between pulses on two channels. Inputs in this case are the 
 //	 * spectrum data (most of the cross correlation is done in the frequency domain)
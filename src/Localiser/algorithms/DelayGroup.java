@@ -25,6 +25,7 @@ public class DelayGroup {
 	private Hilbert hilbert = new Hilbert();
 	private FastFFT fastFFT = new FastFFT();
 	private Correlations correlations = new Correlations();
+	private MultiChannelCorrelations multiCorrelations = new MultiChannelCorrelations();
 	private UpSampler upSampler;
 	
 	/**
@@ -86,27 +87,27 @@ public class DelayGroup {
 		//filter the waveform.
 		FFTDataArray[] specData = getComplexCorrelatorData(waveformCopy, sampleRate*delayParams.getUpSample(), null, delayParams);
 		int nOutputs = (nChan-1)*nChan/2;
-		TimeDelayData[] delays = new TimeDelayData[nOutputs];
-		int iOut = 0;
 		
 		//if max delays is null then it's just the spectrum length
 		//added maxDelays.length!=nOutputs because imported clicks (e.g. from Rainbow clicks) can have 
 		//a maxDelays length of 0. 
 		if (maxDelays==null || maxDelays.length!=nOutputs) {
-			maxDelays = new double[waveformCopy.length];
+			maxDelays = new double[nOutputs];
 			for (int i = 0; i < nOutputs; i++) {
 				maxDelays[i]=specData[0].getFftLength(); 
 			}
 		}
 		
-
-		//perform the time delay calculations
+		//perform the time delay calculations, all pairs from the one set of spectra
+		ComplexArray[] spectra = new ComplexArray[nChan];
 		for (int i = 0; i < nChan; i++) {
-			for (int j = i+1; j < nChan; j++, iOut++) {	
-				TimeDelayData td = correlations.getDelay(specData[i].getFftData(), specData[j].getFftData(), 
-						delayParams, sampleRate*delayParams.getUpSample(), specData[i].getFftLength(), maxDelays[iOut]);
-				td.scaleDelay(1./ delayParams.getUpSample());
-				delays[iOut] = td;
+			spectra[i] = specData[i].getFftData();
+		}
+		TimeDelayData[] delays = multiCorrelations.getDelays(spectra, delayParams, 
+				sampleRate*delayParams.getUpSample(), specData[0].getFftLength(), maxDelays);
+		for (int i = 0; i < delays.length; i++) {
+			if (delays[i] != null) {
+				delays[i].scaleDelay(1./ delayParams.getUpSample());
 			}
 		}
 		
@@ -252,6 +253,13 @@ public class DelayGroup {
 		return fftFilter;
 	}
 
+	/**
+	 * @return the multi-channel correlations used to measure the delays between all channel pairs
+	 */
+	public MultiChannelCorrelations getMultiCorrelations() {
+		return multiCorrelations;
+	}
+
 	/**
 	 * @return the correlations
 	 */
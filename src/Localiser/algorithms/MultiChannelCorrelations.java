@@ -0,0 +1,230 @@
+package Localiser.algorithms;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import Localiser.DelayMeasurementParams;
+import PamUtils.complex.ComplexArray;
+import fftManager.FFTService;
+import fftManager.FastFFT;
+
+/**
+ * Time delays between every pair of channels in a multi-channel sound.
+ * <p>
+ * Calling Correlations.getDelay(double[], double[], ...) for each pair of channels
+ * transforms every channel once for every other channel, i.e. N-1 times for N
+ * channels. This class transforms each channel once, keeps the spectra and the
+ * total power in each channel, then works out the cross spectrum, inverse FFT
+ * and peak search for every pair from those. FFT plans come from the shared
+ * FFTService, so are only made once for each FFT length.
+ * <p>
+ * For larger arrays, the pairs are processed in parallel. Each thread
+ * has its own working array and its own Correlations object for the
+ * peak search, so one of these can be used from several threads at once.
+ * <p>
+ * Delays are returned in the same order as Correlations.getMaxDelays, i.e.
+ * (0,1), (0,2), ... (0,N-1), (1,2), ... (N-2,N-1) and are in samples, with
+ * the same sign convention as Correlations.getDelay.
+ *
+ * @see Correlations
+ */
+public class MultiChannelCorrelations {
+
+	/**
+	 * Minimum total number of points (pairs * FFT length) before
+	 * pairs are processed in parallel.
+	 */
+	public static final int MIN_PARALLEL_POINTS = 1<<15;
+
+	private FFTService fftService = FFTService.getInstance();
+
+	private ThreadLocal<Correlations> threadCorrelations = ThreadLocal.withInitial(Correlations::new);
+
+	private ThreadLocal<double[]> threadWork = new ThreadLocal<>();
+
+	private boolean allowParallel = true;
+
+	public MultiChannelCorrelations() {
+		super();
+	}
+
+	/**
+	 * Measure the time delays between every pair of channels from waveform data. Each
+	 * channel is transformed once.
+	 * @param waveforms waveforms, one array per channel
+	 * @param fftLength FFT length to use (data will be padded or truncated as necessary). If 0,
+	 * the next power of 2 above the longest waveform is used.
+	 * @param maxDelays maximum possible delay for each pair in samples. Can be null in which case
+	 * delays up to half the FFT length will be searched.
+	 * @return time delays for every pair of channels in samples.
+	 */
+	public TimeDelayData[] getDelays(double[][] waveforms, int fftLength, double[] maxDelays) {
+		if (fftLength == 0) {
+			int soundLen = 0;
+			for (int i = 0; i < waveforms.length; i++) {
+				soundLen = Math.max(soundLen, waveforms[i].length);
+			}
+			fftLength = FastFFT.nextBinaryExp(soundLen);
+		}
+		ComplexArray[] spectra = getSpectra(waveforms, fftLength);
+		return getDelays(spectra, fftLength, maxDelays, null);
+	}
+
+	/**
+	 * Get the spectra for a set of waveforms, transforming each channel once. Large
+	 * sets of channels are transformed in parallel.
+	 * @param waveforms waveforms, one array per channel
+	 * @param fftLength FFT length
+	 * @return complex spectra, first half only (fftLength/2 complex values)
+	 */
+	public ComplexArray[] getSpectra(double[][] waveforms, int fftLength) {
+		return fftService.rfft(waveforms, fftLength, null);
+	}
+
+	/**
+	 * Measure the time delays between every pair of channels from spectrum data, using the
+	 * frequency range set in the delay measurement parameters.
+	 * @param spectra complex spectra, one per channel (first half only)
+	 * @param delayMeasurementParams Measurement parameters.
+	 * @param sampleRate sample rate
+	 * @param fftLength FFT length used to make the spectra
+	 * @param maxDelays maximum possible delay for each pair in samples. Can be null.
+	 * @return time delays for every pair of channels in samples.
+	 */
+	public TimeDelayData[] getDelays(ComplexArray[] spectra, DelayMeasurementParams delayMeasurementParams,
+			double sampleRate, int fftLength, double[] maxDelays) {
+		if (spectra.length == 0 || spectra[0] == null) {
+			return new TimeDelayData[0];
+		}
+		if (delayMeasurementParams != null && delayMeasurementParams.delayFilterParams != null) {
+			fftLength = spectra[0].length()*2;
+		}
+		int[] binRange = Correlations.getBinRange(delayMeasurementParams, sampleRate, fftLength, spectra[0].length());
+		int[][] binRanges = new int[spectra.length][];
+		Arrays.fill(binRanges, binRange);
+		return getDelays(spectra, fftLength, maxDelays, binRanges);
+	}
+
+	/**
+	 * Measure the time delays between every pair of channels from spectrum data.
+	 * @param spectra complex spectra, one per channel (first half only). Pairs including a
+	 * null spectrum will have a null delay.
+	 * @param fftLength FFT length used to make the spectra
+	 * @param maxDelays maximum possible delay for each pair in samples. Can be null.
+	 * @param binRanges range of frequency bins to use for each channel. For each pair, the range
+	 * for the first channel of the pair is used, as when Correlations.getDelay is called with
+	 * the first channel's range. Can be null, or contain nulls, to use all bins.
+	 * @return time delays for every pair of channels in samples.
+	 */
+	public TimeDelayData[] getDelays(ComplexArray[] spectra, int fftLength, double[] maxDelays, int[][] binRanges) {
+		int nChan = spectra.length;
+		int nPairs = nChan*(nChan-1)/2;
+		TimeDelayData[] delays = new TimeDelayData[nPairs];
+		if (nPairs == 0) {
+			return delays;
+		}
+		int[] pairA = new int[nPairs];
+		int[] pairB = new int[nPairs];
+		for (int i = 0, p = 0; i < nChan; i++) {
+			for (int j = i+1; j < nChan; j++, p++) {
+				pairA[p] = i;
+				pairB[p] = j;
+			}
+		}
+		/*
+		 * Cumulative power in each channel, so that the power between any two
+		 * bins can be read off without summing it again for every pair.
+		 */
+		double[][] cumPower = new double[nChan][];
+		for (int i = 0; i < nChan; i++) {
+			cumPower[i] = getCumulativePower(spectra[i]);
+		}
+		int[] defaultRange = {0, fftLength/2};
+		IntStream pairs = IntStream.range(0, nPairs);
+		if (allowParallel && nPairs > 1 && (long) nPairs * fftLength >= MIN_PARALLEL_POINTS) {
+			pairs = pairs.parallel();
+		}
+		pairs.forEach(p -> {
+			int a = pairA[p], b = pairB[p];
+			if (spectra[a] == null || spectra[b] == null) {
+				return;
+			}
+			int[] binRange = binRanges == null || binRanges[a] == null ? defaultRange : binRanges[a];
+			double maxDelay = maxDelays == null || maxDelays.length != nPairs ? fftLength/2 : maxDelays[p];
+			delays[p] = getPairDelay(spectra[a], spectra[b], cumPower[a], cumPower[b], fftLength, maxDelay, binRange);
+		});
+		return delays;
+	}
+
+	/**
+	 * Cross correlate two channels. Same as Correlations.getDelay(ComplexArray, ComplexArray, int, double, int[])
+	 * but using the precalculated channel powers and a working array which is reused for each pair.
+	 */
+	private TimeDelayData getPairDelay(ComplexArray f1, ComplexArray f2, double[] cumPower1, double[] cumPower2,
+			int fftLength, double maxDelay, int[] binRange) {
+		double[] d1 = f1.getData();
+		double[] d2 = f2.getData();
+		int n = d1.length;
+		double[] work = threadWork.get();
+		if (work == null || work.length != n) {
+			work = new double[n];
+			threadWork.set(work);
+		}
+		else {
+			Arrays.fill(work, 0.);
+		}
+		int b0 = Math.max(0, binRange[0]);
+		int b1 = Math.min(Math.min(n, d2.length)/2, binRange[1]);
+		for (int re = b0*2, im = re+1; re < b1*2; re+=2, im+=2) {
+			work[re] = d1[re]*d2[re] + d1[im]*d2[im];
+			work[im] = -d1[re]*d2[im] + d1[im]*d2[re];
+		}
+		double scale1 = getPower(cumPower1, b0, b1);
+		double scale2 = getPower(cumPower2, b0, b1);
+		fftService.getPlan(n).realInverse(work, true);
+		// see Correlations.getDelay for the scaling.
+		double scale = Math.sqrt(scale1*scale2)*2 / fftLength;
+		double[] peak = threadCorrelations.get().getInterpolatedPeak(work, scale, maxDelay);
+		return new TimeDelayData(peak[0], peak[1]);
+	}
+
+	/**
+	 * @return cumulative sum of the power in each bin, starting at 0, so
+	 * the power in bins i to j-1 is cumPower[j]-cumPower[i].
+	 */
+	private double[] getCumulativePower(ComplexArray spectrum) {
+		if (spectrum == null) {
+			return null;
+		}
+		int nBins = spectrum.length();
+		double[] cumPower = new double[nBins+1];
+		for (int i = 0; i < nBins; i++) {
+			cumPower[i+1] = cumPower[i] + spectrum.magsq(i);
+		}
+		return cumPower;
+	}
+
+	private double getPower(double[] cumPower, int b0, int b1) {
+		b1 = Math.min(b1, cumPower.length-1);
+		if (b1 <= b0) {
+			return 0;
+		}
+		return cumPower[b1] - cumPower[b0];
+	}
+
+	/**
+	 * @return true if pairs can be processed in parallel
+	 */
+	public boolean isAllowParallel() {
+		return allowParallel;
+	}
+
+	/**
+	 * @param allowParallel set true to allow pairs to be processed in parallel
+	 * for larger arrays.
+	 */
+	public void setAllowParallel(boolean allowParallel) {
+		this.allowParallel = allowParallel;
+	}
+
+}
@@ -5,6 +5,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.stream.IntStream;
 
 import Localiser.LocaliserPane;
 import Localiser.algorithms.genericLocaliser.MinimisationAlgorithm;
@@ -18,6 +19,8 @@ import PamUtils.CoordUtils;
 import org.apache.commons.math3.ml.clustering.Cluster;
 import org.apache.commons.math3.ml.clustering.DoublePoint;
 import org.apache.commons.math3.ml.clustering.KMeansPlusPlusClusterer;
+import org.apache.commons.math3.ml.distance.EuclideanDistance;
+import org.apache.commons.math3.random.JDKRandomGenerator;
 
 
 /**
@@ -32,6 +35,9 @@ import org.apache.commons.math3.ml.clustering.KMeansPlusPlusClusterer;
 * Multiple MCMC chains can and should be run. These are executed on different threads to take advantage of multi-core processing if possible. 
 * Even so, a large number of chains or large observation set can result in significant processing times. 
 * <p>
+* Each chain has its own random number stream, split from a single stream for each run. If a random seed is set in the 
+* parameters, results are the same every time the algorithm is run on the same data. 
+* <p>
 * Results are analysed for convergence and final locations packed into an MCMCTDResults class. 
 * 
 * @author Jamie Macaulay
@@ -40,9 +46,15 @@ import org.apache.commons.math3.ml.clustering.KMeansPlusPlusClusterer;
 public class MCMC implements MinimisationAlgorithm {
 	
 	/**
-	 * Function for generating random numbers from Gaussian distribution
+	 * Function for generating random numbers from Gaussian distribution. Chain 
+	 * random number streams are split from this. 
+	 */
+	private MCMCRandom r;
+	
+	/**
+	 * Seed for the k-means clustering in the current run. 
 	 */
-	private Random r;
+	private long kMeansSeed;
 	
 	/**
 	 * Paramters class for MCMC. 
@@ -85,7 +97,7 @@ public class MCMC implements MinimisationAlgorithm {
 	 * Constructor for MCMC algorithm. 
 	 */
 	public MCMC(){
-		this.r=new Random();
+		this.r=new MCMCRandom();
 		this.settings=new MCMCParams2(); 
 	}
 	
@@ -94,7 +106,7 @@ public class MCMC implements MinimisationAlgorithm {
 	 * @param mCMCParams - the MCMC settings to use. 
 	 */
 	public MCMC(MCMCParams2 mCMCParams) {
-		this.r=new Random();
+		this.r=new MCMCRandom();
 		this.settings=mCMCParams;
 	}
 
@@ -104,6 +116,16 @@ public class MCMC implements MinimisationAlgorithm {
 	 * @return the results from the chain. 
 	 */
 	public ChainResult mCMC(MinimisationFunction chi2){
+		return mCMC(chi2, splitRandom()); 
+	}
+	
+	/**
+	 * Run MCMC algortihm. This starts a single Markov chain at a random location.  
+	 * @param chi2- the chi2 function to compare simulation data to observed data. 
+	 * @param chainRandom - random number stream for the chain. Must not be used by any other chain. 
+	 * @return the results from the chain. 
+	 */
+	public ChainResult mCMC(MinimisationFunction chi2, MCMCRandom chainRandom){
 
 		//check to make sure we have a correct chi2 function 
 		if (chi2==null){
@@ -128,7 +150,7 @@ public class MCMC implements MinimisationAlgorithm {
 		if (settings.chainStartDispersion==null) settings.setChainDispersion(100, chi2.getDim());
 		
 		for (int i=0; i<chainPos.length; i++) {
-			chainPos[i]=((Math.random()-0.5)*settings.chainStartDispersion[i][1]-settings.chainStartDispersion[i][0])+settings.chainStartDispersion[i][0]; 
+			chainPos[i]=((chainRandom.nextDouble()-0.5)*settings.chainStartDispersion[i][1]-settings.chainStartDispersion[i][0])+settings.chainStartDispersion[i][0]; 
 		}
 
 
@@ -136,7 +158,7 @@ public class MCMC implements MinimisationAlgorithm {
 		for (int i=0; i<settings.numberOfJumps;i++){
 
 			//calculate a new jump. 
-			potentialNewJump=getNewJumpPoint(chainPos);
+			potentialNewJump=getNewJumpPoint(chainPos, chainRandom);
 
 			//calculate new chi2 value for new jump
 			newChi=chi2.value(potentialNewJump); 
@@ -151,7 +173,7 @@ public class MCMC implements MinimisationAlgorithm {
 				//System.out.println(ObservedTimeDelays);
 				//System.out.println(GetTimeDelays(PotentialNewJump));	 
 			}
-			else if (Math.random()<Math.exp((-0.5*(-currentChi+newChi)))){
+			else if (chainRandom.nextDouble()<Math.exp((-0.5*(-currentChi+newChi)))){
 				chainPos=potentialNewJump;
 				currentChi=newChi;
 				successChi.add(newChi);
@@ -248,23 +270,33 @@ public class MCMC implements MinimisationAlgorithm {
 	 * @param chainPos - the position of the chain in ndimensional space.
 	 * @return the new jump point to tests
 	 */
-	public double[] getNewJumpPoint(double[] chainPos){
+	public synchronized double[] getNewJumpPoint(double[] chainPos){
+		return getNewJumpPoint(chainPos, r); 
+	}
+	
+	/**
+	 * Calculates a random new Co-Ordinate, 3D Cartesian or Cylindrical space;
+	 * @param chainPos - the position of the chain in ndimensional space.
+	 * @param random - random number stream for the chain. 
+	 * @return the new jump point to tests
+	 */
+	private double[] getNewJumpPoint(double[] chainPos, MCMCRandom random){
 		double[] newChainPos=new double[chainPos.length]; 
 		
 		//Cylindrical
 		if (settings.cylindricalCoOrdinates){
 			double r= Math.sqrt(Math.pow(chainPos[0], 2)+Math.pow(chainPos[1], 2));
 			double theta=Math.atan(chainPos[1]/chainPos[0]);
-			double newTheta=(theta+randomNGenerator()*2*Math.PI);
-			double newr=Math.abs(r+(randomNGenerator()*(settings.jumpSize[0]+settings.jumpSize[1])/2));
+			double newTheta=(theta+random.nextGaussian()*2*Math.PI);
+			double newr=Math.abs(r+(random.nextGaussian()*(settings.jumpSize[0]+settings.jumpSize[1])/2));
 			newChainPos[0]=(newr*Math.cos(newTheta));
-			newChainPos[2]=(chainPos[2]+(randomNGenerator()*settings.jumpSize[2]));
+			newChainPos[2]=(chainPos[2]+(random.nextGaussian()*settings.jumpSize[2]));
 			newChainPos[1]=(newr*Math.sin(newTheta));			
 		}
 		else {
 			for (int i=0; i<chainPos.length; i++){
 				//if cylindrical then the jump size needs to be different. 
-				newChainPos[i]=chainPos[i] + randomNGenerator()*settings.jumpSize[i]; 
+				newChainPos[i]=chainPos[i] + random.nextGaussian()*settings.jumpSize[i]; 
 			}
 		}
 		return newChainPos; 
@@ -272,18 +304,12 @@ public class MCMC implements MinimisationAlgorithm {
 
 	
 	/**
-	 * Run MCMC on a single thread.
+	 * Split a new random number stream from the main stream. 
+	 * @return new random number stream. 
 	 */
-	Runnable MarkovChainSequence = new Runnable() {
-
-		@SuppressWarnings("unchecked")
-		public void run() {
-			//run the simulations
-				ChainResult chainResult=mCMC(chi2);
-				chainResults.add(chainResult); 
-				//System.out.println("MCMC: chain completed");
-		  }
-	};
+	private synchronized MCMCRandom splitRandom() {
+		return r.split(); 
+	}
 
 	/**
 	 * Run the MCMC algorithm. 
@@ -298,37 +324,32 @@ public class MCMC implements MinimisationAlgorithm {
 			return null;
 		}
 		
-		//wipe any previous results and create a new results class; 
-		chainResults=new ArrayList<ChainResult>(); 
+		//check some stuff isn't set to null - if it is set some default values before the chains start
+		if (settings.jumpSize==null) settings.setJumpSize(1, chi2.getDim());
+		if (settings.chainStartDispersion==null) settings.setChainDispersion(100, chi2.getDim());
 		
 //		System.out.println("Number of Chains: "+settings.numberOfChains);
 		
-		/*Run multiple Markov Chains. Each chain is started on a different thread.*/
-		Thread[] threads=new Thread[settings.numberOfChains];
-		
+		/*
+		 * Each chain gets its own random number stream. These are split off in order before any 
+		 * chains start so that, with a seed, each chain always gets the same numbers. 
+		 */
+		MCMCRandom runRandom = settings.randomSeed == null ? splitRandom() : new MCMCRandom(settings.randomSeed); 
+		MCMCRandom[] chainRandom = new MCMCRandom[settings.numberOfChains]; 
 		for (int i=0; i<settings.numberOfChains; i++){
-			threads[i]=new Thread(MarkovChainSequence);
-		}
-
-		for (int j=0; j<settings.numberOfChains;j++){
-			 threads[j].start();
-		}
-		
-		for (int k=0; k<settings.numberOfChains;k++){
-			try {
-				threads[k].join();
-			} 
-			catch (InterruptedException e) {
-				e.printStackTrace();
-			}
+			chainRandom[i]=runRandom.split();
 		}
+		kMeansSeed = runRandom.nextLong(); 
 		
-		//kill threads
-		for (int l=0; l<settings.numberOfChains;l++){
-			threads[l].interrupt();
-			threads[l] = null;
-		}
+		/*Run multiple Markov Chains on the common fork join pool. Results are kept in chain order.*/
+		ChainResult[] chains = new ChainResult[settings.numberOfChains]; 
+		final MinimisationFunction chi2 = this.chi2; 
+		IntStream.range(0, settings.numberOfChains).parallel().forEach((i)->{
+			chains[i]=mCMC(chi2, chainRandom[i]);
+		});
 		
+		//wipe any previous results and create a new results class; 
+		chainResults=new ArrayList<ChainResult>(Arrays.asList(chains)); 
 		
 		ArrayList<MCMCResult> finalResults = clusterAnalysis(chainResults);
 		//this.finalResults=results;
@@ -400,7 +421,10 @@ public class MCMC implements MinimisationAlgorithm {
 		}
 		
 		//create the clustering algorithm from Apache commons. 
-		KMeansPlusPlusClusterer<DoublePoint> kmeanCluster= new KMeansPlusPlusClusterer<DoublePoint>(nKmeans,  settings.kmeanAttempts)	;
+		JDKRandomGenerator kMeansRandom = new JDKRandomGenerator(); 
+		kMeansRandom.setSeed(kMeansSeed);
+		KMeansPlusPlusClusterer<DoublePoint> kmeanCluster= new KMeansPlusPlusClusterer<DoublePoint>(nKmeans,  settings.kmeanAttempts, 
+				new EuclideanDistance(), kMeansRandom);
 		//run the algorithm 
 		List<? extends Cluster<DoublePoint>> clusters  = kmeanCluster.cluster(Arrays.asList(chainPoints)); 
 		
@@ -778,7 +802,7 @@ public class MCMC implements MinimisationAlgorithm {
 	 * Generate a random number from a Gaussian distribution. 
 	 * @return a random number from Gaussian distribution with a mean of zero and standard deviation of 1. 
 	 */
-	public double  randomNGenerator(){
+	public synchronized double  randomNGenerator(){
 		return r.nextGaussian();
 		//return Math.random()-0.5;
 	}
@@ -789,7 +813,7 @@ public class MCMC implements MinimisationAlgorithm {
 	 * @param limits - the min std and max std values the number should be between
 	 * @return the random number; 
 	 */
-	public double randNGenerator(double[] limits){
+	public synchronized double randNGenerator(double[] limits){
 		double rand=r.nextGaussian();
 		double magnitude=limits[1]-limits[0];
 		rand=magnitude*rand+limits[0];
@@ -51,6 +51,13 @@ public class MCMCParams2 implements Serializable, Cloneable, ManagedParameters
 	 * Use cylindrical jumps. 
 	 */
 	public boolean cylindricalCoOrdinates = false; 
+	
+	/**
+	 * Seed for the random numbers used by the chains. If null, the chains are started 
+	 * from different random numbers every time. Set a seed to get exactly the same 
+	 * results each time the same data are localised, e.g. for testing. 
+	 */
+	public Long randomSeed = null; 
 	/**
 	 * Set the chain jump size- sets the jump size of all dimensions to the input jump size.
 	 * @param jumpsize the jump size for all dimensions. 
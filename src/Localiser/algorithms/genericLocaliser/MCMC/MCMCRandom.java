@@ -0,0 +1,89 @@
+package Localiser.algorithms.genericLocaliser.MCMC;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random number stream for a single Markov chain.
+ * <p>
+ * Each chain gets its own stream, split from a master stream, so chains can run on
+ * different threads without sharing (and waiting on) a single generator. If the master
+ * stream is seeded, every chain gets the same numbers each time the algorithm is run,
+ * however the chains are scheduled.
+ * <p>
+ * Not thread safe - use one per thread.
+ */
+public class MCMCRandom {
+
+	private SplittableRandom random;
+
+	/**
+	 * Second Gaussian value from the last call to nextGaussian.
+	 */
+	private double spareGaussian;
+
+	private boolean hasSpare = false;
+
+	/**
+	 * Create a random number stream with an unpredictable seed.
+	 */
+	public MCMCRandom() {
+		this(new SplittableRandom());
+	}
+
+	/**
+	 * Create a random number stream with a fixed seed.
+	 * @param seed the seed.
+	 */
+	public MCMCRandom(long seed) {
+		this(new SplittableRandom(seed));
+	}
+
+	private MCMCRandom(SplittableRandom random) {
+		this.random = random;
+	}
+
+	/**
+	 * Split off a new independent stream, e.g. for another chain.
+	 * @return new random number stream.
+	 */
+	public MCMCRandom split() {
+		return new MCMCRandom(random.split());
+	}
+
+	/**
+	 * @return uniformly distributed random number between 0 and 1.
+	 */
+	public double nextDouble() {
+		return random.nextDouble();
+	}
+
+	/**
+	 * @return random long value, e.g. to seed other generators.
+	 */
+	public long nextLong() {
+		return random.nextLong();
+	}
+
+	/**
+	 * Generate a random number from a Gaussian distribution, using the polar method, which
+	 * gives two values at a time.
+	 * @return a random number from a Gaussian distribution with a mean of zero and a standard deviation of 1.
+	 */
+	public double nextGaussian() {
+		if (hasSpare) {
+			hasSpare = false;
+			return spareGaussian;
+		}
+		double v1, v2, s;
+		do {
+			v1 = 2 * random.nextDouble() - 1;
+			v2 = 2 * random.nextDouble() - 1;
+			s = v1 * v1 + v2 * v2;
+		} while (s >= 1 || s == 0);
+		double multiplier = Math.sqrt(-2 * Math.log(s) / s);
+		spareGaussian = v2 * multiplier;
+		hasSpare = true;
+		return v1 * multiplier;
+	}
+
+}
@@ -1,6 +1,8 @@
 package PamController;
 
 import java.awt.Window;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
@@ -9,7 +11,15 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 import javax.swing.JFileChooser;
 
@@ -35,6 +45,11 @@ public class PSFXReadWriter {
 	
 //	private static final String TEMPNAME = "_tmp";
 	private static final String TEMPEXT = ".tmp";
+	
+	/**
+	 * Single thread for background writes, so they are made in order. 
+	 */
+	private ExecutorService writeExecutor;
 
 	private PSFXReadWriter() {
 		// TODO Auto-generated constructor stub
@@ -51,22 +66,16 @@ public class PSFXReadWriter {
 	 * Save settings to psfx file.  Note that this method first saves to a temp file
 	 * (using the filename passed with 'tmp' appended to the end) and then renames to
 	 * the correct filename at the end.  This way, if something happens and the file
-	 * becomes corrupted during the save, the original will still be safe
+	 * becomes corrupted during the save, the original will still be safe. 
+	 * <p>Any background writes which are still queued are completed first, so that 
+	 * they can't overwrite the file with older settings. 
 	 * 
 	 * @param fileName the name to use for the save file (full name, including path)
 	 * @return true if successful, false otherwise
 	 */
-	public synchronized boolean writePSFX(String fileName) {
-//		return writePSFX(fileName, PamCalendar.getTimeInMillis());
-		String tempName = generateTempFilename(fileName);
-		boolean success = writePSFX(tempName, PamCalendar.getTimeInMillis());
-		if (success) {
-			File origFile = new File(fileName);
-			origFile.delete();
-			File tempFile = new File(tempName);
-			success = tempFile.renameTo(origFile);
-		}
-		return success;
+	public boolean writePSFX(String fileName) {
+		waitForWrites();
+		return writePSFX(fileName, PamCalendar.getTimeInMillis());
 	}
 	
 	/**
@@ -88,26 +97,105 @@ public class PSFXReadWriter {
 	 * @param timeStamp time stamp in milliseconds
 	 * @return true on success
 	 */
-	public synchronized boolean writePSFX(String fileName, long timeStamp) {
-
+	public boolean writePSFX(String fileName, long timeStamp) {
+		return writePSFX(fileName, getSettingsGroup(timeStamp));
+	}
+	
+	/**
+	 * Write settings to the given file<br>
+	 * Initially write to a temp file, then rename the temp file.  
+	 * @param fileName the name to use for the save file (full name, including path)
+	 * @param psg PAMGuard settings group
+	 * @return true on success
+	 */
+	public boolean writePSFX(String fileName, PamSettingsGroup psg) {
+		byte[] fileData = packSettings(psg);
+		if (fileData == null) {
+			return false;
+		}
+		return writeFile(fileName, fileData);
+	}
+	
+	/**
+	 * Save settings to a psfx file without holding up the calling thread (generally the GUI) 
+	 * while the file is written. The settings are serialised immediately, so the file will hold 
+	 * the settings as they are when this is called, but the file is written on a background 
+	 * thread. Writes are made in the order they are requested and each one goes to a temp file 
+	 * which is then moved over the original, the same as writePSFX. 
+	 * @param fileName the name to use for the save file (full name, including path)
+	 * @param timeStamp time stamp in milliseconds
+	 * @param whenDone optional, called from the background thread with the result of the write. 
+	 * @return true if the settings were serialised and queued for writing. 
+	 */
+	public boolean writePSFXInBackground(String fileName, long timeStamp, Consumer<Boolean> whenDone) {
+		byte[] fileData = packSettings(getSettingsGroup(timeStamp));
+		if (fileData == null) {
+			return false;
+		}
+		getWriteExecutor().submit(() -> {
+			boolean ok = writeFile(fileName, fileData);
+			if (ok == false) {
+				System.err.println("Error saving settings to " + fileName);
+			}
+			if (whenDone != null) {
+				whenDone.accept(ok);
+			}
+		});
+		return true;
+	}
+	
+	/**
+	 * Wait for any settings files queued by writePSFXInBackground to be written. 
+	 * Must be called before PAMGuard exits. 
+	 */
+	public void waitForWrites() {
+		ExecutorService executor;
+		synchronized (this) {
+			executor = writeExecutor;
+		}
+		if (executor == null) {
+			return;
+		}
+		try {
+			// writes are done in order, so once this has run, everything before it is done. 
+			executor.submit(() -> {}).get();
+		} catch (InterruptedException | ExecutionException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	private synchronized ExecutorService getWriteExecutor() {
+		if (writeExecutor == null) {
+			writeExecutor = Executors.newSingleThreadExecutor((r) -> {
+				Thread t = new Thread(r, "PSFX settings writer");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return writeExecutor;
+	}
+	
+	/**
+	 * Get the current settings with a given time stamp. 
+	 * @param timeStamp time stamp in milliseconds
+	 * @return settings group
+	 */
+	private PamSettingsGroup getSettingsGroup(long timeStamp) {
 		// get an object containing everything we'll need to know. 
 		PamSettingsGroup psg = PamSettingManager.getInstance().getCurrentSettingsGroup();
 		
 		// force the time stamp to be that given - might need to be exact !
 		psg.setSettingsTime(timeStamp);
 		
-
-		return writePSFX(fileName, psg);
+		return psg;
 	}
 	
 	/**
-	 * Write settings to the given file<br>
-	 * Initially write to a temp file, then rename the temp file.  
-	 * @param fileName the name to use for the save file (full name, including path)
+	 * Serialise a settings group into the complete contents of a psfx file. 
 	 * @param psg PAMGuard settings group
-	 * @return true on success
+	 * @return file contents, or null if something couldn't be written
 	 */
-	public synchronized boolean writePSFX(String fileName, PamSettingsGroup psg) {
+	private byte[] packSettings(PamSettingsGroup psg) {
 		
 		BinaryHeader header = new BinaryHeader(SETTINGSSTORE, SETTINGSSTORE, SETTINGSSTORE, 0);
 		
@@ -116,15 +204,10 @@ public class PSFXReadWriter {
 		header.setDataDate(timeStamp);
 
 		BinaryFooter footer = new BinaryFooter(timeStamp, timeStamp, 2, BinaryStore.getCurrentFileFormat());
-		DataOutputStream dos = null;
-		try {
-			dos = new DataOutputStream(new FileOutputStream(fileName));
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-			return false;
-		}
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(64*1024);
+		DataOutputStream dos = new DataOutputStream(bos);
 
-		header.writeHeader(dos);
+		boolean ok = header.writeHeader(dos);
 
 		// write out a list of modules.
 		ArrayList<UsedModuleInfo> umiList = psg.getUsedModuleInfo();
@@ -136,7 +219,7 @@ public class PSFXReadWriter {
 			for (int i = 0; i < nMods; i++) {
 				umi = umiList.get(i);
 				moduleNameObject = new ModuleNameObject(umi.className, umi.getUnitType(), umi.unitName);
-				writeData(dos, ModuleNameObject.typeId, moduleNameObject.createBinaryWriteObject());
+				ok &= writeData(dos, ModuleNameObject.typeId, moduleNameObject.createBinaryWriteObject());
 			}
 		}
 
@@ -145,15 +228,43 @@ public class PSFXReadWriter {
 		PamControlledUnitSettings pcsu;
 		for (int i = 0; i < nMods; i++) {
 			pcsu = psg.getUnitSettings(i);
-			writeData(dos, 2, pcsu.getNamedSerialisedByteArray());
+			ok &= writeData(dos, 2, pcsu.getNamedSerialisedByteArray());
 		}
 
-		footer.writeFooter(dos, BinaryStore.getCurrentFileFormat());
+		ok &= footer.writeFooter(dos, BinaryStore.getCurrentFileFormat());
 
+		return ok ? bos.toByteArray() : null;
+	}
+	
+	/**
+	 * Write a complete psfx file to a temp file and then move it over the 
+	 * original, atomically if the file system allows it. If anything goes wrong the 
+	 * original file is left as it was. 
+	 * @param fileName file name
+	 * @param fileData file contents
+	 * @return true on success
+	 */
+	private synchronized boolean writeFile(String fileName, byte[] fileData) {
+		File origFile = new File(fileName);
+		File tempFile = new File(generateTempFilename(fileName));
+		try (FileOutputStream fos = new FileOutputStream(tempFile)) {
+			fos.write(fileData);
+			fos.getFD().sync();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
 		try {
-			dos.close();
+			try {
+				Files.move(tempFile.toPath(), origFile.toPath(), StandardCopyOption.REPLACE_EXISTING, 
+						StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile.toPath(), origFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
+			return false;
 		}
 		return true;
 	}
@@ -239,9 +350,10 @@ public class PSFXReadWriter {
 			}
 		}
 		
+		long loadStart = System.nanoTime();
 		DataInputStream dis = null;
 		try {
-			dis = new DataInputStream(new FileInputStream(file));
+			dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64*1024));
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 			return null;
@@ -270,7 +382,7 @@ public class PSFXReadWriter {
 					break;
 				}
 				data = new byte[dataLen];
-				dis.read(data);
+				dis.readFully(data);
 				if (objectId == ModuleNameObject.typeId) {
 					ModuleNameObject mno = new ModuleNameObject(data);
 					moduleNames.add(mno);
@@ -294,6 +406,31 @@ public class PSFXReadWriter {
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		System.out.printf("Read %d module settings from %s in %3.1f ms\n", psg.getUnitSettings().size(), 
+				file.getName(), (System.nanoTime()-loadStart)/1.e6);
 		return psg;
 	}
+	
+	/**
+	 * Start deserialising settings on background threads, so that most of them are 
+	 * ready by the time modules are created and call for them. Modules still get their 
+	 * settings with getSettings() in the normal way, which will wait if that unit 
+	 * is still being deserialised or do it there and then if it hasn't been started. 
+	 * @param unitSettings settings read from a psfx file. 
+	 */
+	public void preloadSettings(List<PamControlledUnitSettings> unitSettings) {
+		if (unitSettings == null || unitSettings.size() < 2) {
+			return;
+		}
+		int nThreads = Math.max(1, Math.min(unitSettings.size(), Runtime.getRuntime().availableProcessors()-1));
+		ExecutorService executor = Executors.newFixedThreadPool(nThreads, (r) -> {
+			Thread t = new Thread(r, "PSFX settings preload");
+			t.setDaemon(true);
+			return t;
+		});
+		for (PamControlledUnitSettings pcus : unitSettings) {
+			executor.submit(() -> pcus.preloadSettings());
+		}
+		executor.shutdown();
+	}
 }
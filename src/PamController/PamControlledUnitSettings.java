@@ -111,7 +111,7 @@ public class PamControlledUnitSettings implements Serializable, ManagedParameter
 	 * 
 	 * @return The unit settings. 
 	 */
-	public Object getSettings() {
+	public synchronized Object getSettings() {
 //		if (unitName.equals("NARW UDP Classifier")) {
 //			System.out.println(unitName);
 ////			Object des = createFromByteArray(serialisedData);
@@ -136,6 +136,31 @@ public class PamControlledUnitSettings implements Serializable, ManagedParameter
 		return settings;
 	}
 
+	/**
+	 * Deserialise the settings ahead of them being needed, e.g. on a background thread 
+	 * while other modules are being created. Unlike getSettings() this never shows 
+	 * a warning, so if anything goes wrong the settings are left for getSettings() to 
+	 * unpack and report in the normal way. 
+	 */
+	synchronized void preloadSettings() {
+		if (settings != null || serialisedData == null) {
+			return;
+		}
+		Object settingData;
+		try {
+			settingData = readByteArray(serialisedData);
+		}
+		catch (Exception e) {
+			return;
+		}
+		if (settingData instanceof PamControlledUnitSettings) {
+			this.settings = ((PamControlledUnitSettings) settingData).getSettings();
+		}
+		else {
+			this.settings = settingData;
+		}
+	}
+
 	/**
 	 * Deserialise byte settings. 
 	 */
@@ -169,7 +194,7 @@ public class PamControlledUnitSettings implements Serializable, ManagedParameter
 	/**
 	 * @param settings the settings to set
 	 */
-	public void setSettings(Object settings) {
+	public synchronized void setSettings(Object settings) {
 		this.settings = settings;
 	}
 
@@ -325,7 +350,7 @@ public class PamControlledUnitSettings implements Serializable, ManagedParameter
 			versionNumber = dis.readLong();
 			dataLength = dis.readInt();
 			data = new byte[dataLength];
-			dis.read(data);
+			dis.readFully(data);
 			/**
 			 * New, don't deserilaise until somthing calls getSettings(). 
 			 */
@@ -345,29 +370,8 @@ public class PamControlledUnitSettings implements Serializable, ManagedParameter
 	 * @return new object (or null if invalid byte array)
 	 */
 	public static Object unpackByteArray(byte[] byteArray) {
-		ByteArrayInputStream bis = new ByteArrayInputStream(byteArray);
-//		ObjectInputStream ois;
-		ClassLoaderObjectInputStream ois;
-		ClassLoader classLoader;
-		if (PamModel.getPamModel() != null) {
-			classLoader = PamModel.getPamModel().getClassLoader();
-		}
-		else {
-			classLoader = new URLClassLoader(new URL[0], PamControlledUnitSettings.class.getClassLoader()) {
-
-			    @Override
-				public void addURL(URL url) {
-			        super.addURL(url);
-			    }
-			};
-		}
 		try {
-//			ois = new ObjectInputStream(bis);
-			ois = new ClassLoaderObjectInputStream(classLoader, bis);
-			Object ob =  ois.readObject();
-//			PamControlledUnitSettings pcus = (PamControlledUnitSettings) ob;
-			ois.close();
-			return ob;
+			return readByteArray(byteArray);
 		} 
 		catch (InvalidClassException e) {
 			System.out.println("Invalid class in Control setting");
@@ -395,6 +399,39 @@ public class PamControlledUnitSettings implements Serializable, ManagedParameter
 		//		return null;
 	}
 
+	/**
+	 * Deserialise an object using the PAMGuard class loader, so that classes 
+	 * from plugins can be found. 
+	 * @param byteArray byte array
+	 * @return new object
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private static Object readByteArray(byte[] byteArray) throws IOException, ClassNotFoundException {
+		ByteArrayInputStream bis = new ByteArrayInputStream(byteArray);
+//		ObjectInputStream ois;
+		ClassLoaderObjectInputStream ois;
+		ClassLoader classLoader;
+		if (PamModel.getPamModel() != null) {
+			classLoader = PamModel.getPamModel().getClassLoader();
+		}
+		else {
+			classLoader = new URLClassLoader(new URL[0], PamControlledUnitSettings.class.getClassLoader()) {
+
+			    @Override
+				public void addURL(URL url) {
+			        super.addURL(url);
+			    }
+			};
+		}
+//		ois = new ObjectInputStream(bis);
+		ois = new ClassLoaderObjectInputStream(classLoader, bis);
+		Object ob =  ois.readObject();
+//		PamControlledUnitSettings pcus = (PamControlledUnitSettings) ob;
+		ois.close();
+		return ob;
+	}
+
 	/**
 	 * 
 	 * Get the class type of the module that owned these settings. 
@@ -27,6 +27,7 @@ import java.io.File;
 import java.io.Serializable;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Locale;
 
 import javax.swing.JFrame;
@@ -2253,16 +2254,45 @@ public class PamController implements PamControllerInterface, PamSettings {
 		ArrayList<UsedModuleInfo> usedModules = (ArrayList<UsedModuleInfo>) pamControlledUnitSettings.getSettings();
 		UsedModuleInfo umi;
 		PamModuleInfo mi;
+		long startTime = System.nanoTime();
+		ArrayList<String> moduleNames = new ArrayList<>();
+		ArrayList<Long> moduleTimes = new ArrayList<>();
 		for (int i = 0; i < usedModules.size(); i++) {
 			umi = usedModules.get(i);
 			mi = PamModuleInfo.findModuleInfo(umi.className);
 			if (mi == null)
 				continue;
+			long t = System.nanoTime();
 			addModule(mi, umi.unitName);
+			moduleNames.add(umi.unitName);
+			moduleTimes.add(System.nanoTime()-t);
 		}
+		printStartupTimes(moduleNames, moduleTimes, System.nanoTime()-startTime);
 		return true;
 	}
 
+	/**
+	 * Print how long it took to create each module and restore its settings, slowest first. 
+	 * @param moduleNames module names
+	 * @param moduleTimes times in nanoseconds
+	 * @param totalTime total time in nanoseconds
+	 */
+	private void printStartupTimes(ArrayList<String> moduleNames, ArrayList<Long> moduleTimes, long totalTime) {
+		int nMods = moduleNames.size();
+		if (nMods == 0) {
+			return;
+		}
+		Integer[] order = new Integer[nMods];
+		for (int i = 0; i < nMods; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(moduleTimes.get(b), moduleTimes.get(a)));
+		System.out.printf("Created %d modules in %3.1f ms. Slowest modules:\n", nMods, totalTime/1.e6);
+		for (int i = 0; i < Math.min(nMods, 10); i++) {
+			System.out.printf("  %-40s %8.1f ms\n", moduleNames.get(order[i]), moduleTimes.get(order[i])/1.e6);
+		}
+	}
+
 	public void destroyModel() {
 		pamStop();
 
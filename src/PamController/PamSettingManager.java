@@ -20,6 +20,8 @@
  */
 package PamController;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
@@ -35,6 +37,7 @@ import java.util.Iterator;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.plaf.FontUIResource;
 
@@ -46,6 +49,7 @@ import PamUtils.PamFileFilter;
 import PamView.dialog.warn.WarnOnce;
 import generalDatabase.DBControl;
 import generalDatabase.DBControlSettings;
+import javafx.application.Platform;
 import javafx.scene.control.Alert.AlertType;
 import pamViewFX.fxNodes.utilsFX.PamUtilsFX;
 import pamViewFX.fxSettingsPanes.SettingsFileDialogFX;
@@ -215,6 +219,12 @@ public class PamSettingManager {
 	 * Save settings to database tables (if available).
 	 */
 	static public final int SAVE_DATABASE = 0x2;
+	
+	/**
+	 * Write the psf file on a background thread rather than waiting for 
+	 * it to be written. Only used with psfx files. 
+	 */
+	static public final int SAVE_BACKGROUND = 0x4;
 
 	/**
 	 * running in remote mode, default normal
@@ -502,29 +512,44 @@ public class PamSettingManager {
 	 * @return true if settings saved successfully.
 	 */
 	public boolean saveFinalSettings() {
+		int saveWhere = getRunModeSaveFlags();
+		if (saveWhere == 0) {
+			return false;
+		}
+		boolean ok = saveSettings(saveWhere);
+		// make sure nothing is still being written before PAMGuard exits. 
+		PSFXReadWriter.getInstance().waitForWrites();
+		return ok;
+	}
+
+	/**
+	 * Get where settings should be saved for the current run mode. 
+	 * @return combination of SAVE_PSF and SAVE_DATABASE, or 0 for an unknown run mode. 
+	 */
+	private int getRunModeSaveFlags() {
 		int runMode = PamController.getInstance().getRunMode();
 		switch (runMode) {
 		case PamController.RUN_NORMAL:
 		case PamController.RUN_NETWORKRECEIVER:
-			return saveSettings(SAVE_PSF | SAVE_DATABASE);
+			return SAVE_PSF | SAVE_DATABASE;
 		case PamController.RUN_PAMVIEW:
 			if (GlobalArguments.getParam(GlobalArguments.BATCHVIEW) != null) {
-				return saveSettings(SAVE_PSF | SAVE_DATABASE);
+				return SAVE_PSF | SAVE_DATABASE;
 			}
 			else {
-				return saveSettings(SAVE_DATABASE);
+				return SAVE_DATABASE;
 			}
 		case PamController.RUN_MIXEDMODE:
-			return saveSettings(SAVE_DATABASE);
+			return SAVE_DATABASE;
 		case PamController.RUN_NOTHING:
-			return saveSettings(SAVE_PSF);
+			return SAVE_PSF;
 		}
-		return false;
+		return 0;
 	}
 
 	/**
 	 * Save settings to a psf file and / or the database tables.
-	 * @param saveWhere
+	 * @param saveWhere combination of SAVE_PSF, SAVE_DATABASE and SAVE_BACKGROUND
 	 * @return true if sucessful
 	 */
 	public boolean saveSettings(int saveWhere) {
@@ -546,15 +571,15 @@ public class PamSettingManager {
 		//		saveSettingToDatabase();
 
 		if ((saveWhere & SAVE_PSF) != 0) {
-			boolean success = saveSettingsToFile();
+			boolean success;
+			if ((saveWhere & SAVE_BACKGROUND) != 0) {
+				success = saveSettingsToFileInBackground(getSettingsFileName());
+			}
+			else {
+				success = saveSettingsToFile();
+			}
 			if (!success) {
-				String title = "Error saving settings to psf file";
-				String msg = "There was an error while trying to save the current settings to the psf file <p>" +
-						getSettingsFileName() + "<p>" +
-						"This could occur if the psf file location is in a read-only folder, or the filename is " +
-						"invalid.  Please check and try again.";
-				String help = null;
-				int ans = WarnOnce.showWarning(PamController.getMainFrame(), title, msg, WarnOnce.WARNING_MESSAGE, help);
+				showSaveError(getSettingsFileName());
 			}
 		}
 		/**
@@ -576,6 +601,44 @@ public class PamSettingManager {
 		return saveSettingsToFile(getSettingsFileName());
 	}
 
+	/**
+	 * Warn that settings couldn't be saved to the psf file. 
+	 * @param fileName psf file name
+	 */
+	private void showSaveError(String fileName) {
+		String title = "Error saving settings to psf file";
+		String msg = "There was an error while trying to save the current settings to the psf file <p>" +
+				fileName + "<p>" +
+				"This could occur if the psf file location is in a read-only folder, or the filename is " +
+				"invalid.  Please check and try again.";
+		String help = null;
+		int ans = WarnOnce.showWarning(PamController.getMainFrame(), title, msg, WarnOnce.WARNING_MESSAGE, help);
+	}
+
+	/**
+	 * Save configuration settings to a psfx file, writing the file on a background 
+	 * thread. Settings are collected and serialised before this returns, so later changes 
+	 * won't get into the file. Old style psf files are written immediately. 
+	 * @param fileName file name
+	 * @return true if the settings were serialised OK. Any error writing the file is 
+	 * reported later from the GUI thread. 
+	 */
+	public boolean saveSettingsToFileInBackground(String fileName) {
+		if (saveAsPSFX == false || fileName.endsWith("psf")) {
+			return saveSettingsToFile(fileName);
+		}
+		return PSFXReadWriter.getInstance().writePSFXInBackground(fileName, PamCalendar.getTimeInMillis(), (ok) -> {
+			if (ok == false && !PamSettingManager.RUN_REMOTE) {
+				if (PamGUIManager.isFX()) {
+					Platform.runLater(() -> showSaveError(fileName));
+				}
+				else {
+					SwingUtilities.invokeLater(() -> showSaveError(fileName));
+				}
+			}
+		});
+	}
+
 	/**
 	 * Save configuration settings to the default (most recently used) psf file.
 	 * @return true if successful.
@@ -602,7 +665,11 @@ public class PamSettingManager {
 	private boolean saveGlobalSettings() {
 		File setFile = getGlobalSettingsFile();
 		ObjectOutputStream outStream = openOutputFile(setFile.getAbsolutePath());
+		if (outStream == null) {
+			return false;
+		}
 
+		boolean ok = true;
 		for (PamSettings gs:globalOwners) {
 			PamControlledUnitSettings pus = new PamControlledUnitSettings(gs.getUnitType(),
 					gs.getUnitName(), gs.getClass().getName(), gs.getSettingsVersion(), gs.getSettingsReference());
@@ -610,10 +677,17 @@ public class PamSettingManager {
 				outStream.writeObject(pus);
 			} catch (IOException e) {
 				e.printStackTrace();
-				return false;
+				ok = false;
+				break;
 			}
 		}
-		return true;
+		try {
+			outStream.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		return ok;
 	}
 
 	private boolean loadGlobalSettings() {
@@ -622,7 +696,7 @@ public class PamSettingManager {
 		ObjectInputStream  ois = null;
 		boolean ok= true;
 		try {
-			ois = new ObjectInputStream(new FileInputStream(setFile));
+			ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(setFile)));
 		}
 		catch (IOException e) {
 			ok = false;
@@ -1284,6 +1358,8 @@ public class PamSettingManager {
 				return null;
 			}
 			else {
+				// get settings deserialising in the background while modules are created.  
+				PSFXReadWriter.getInstance().preloadSettings(psg.getUnitSettings());
 				return psg.getUnitSettings();
 			}
 		}
@@ -1554,7 +1630,7 @@ public class PamSettingManager {
 	 */
 	public ObjectOutputStream openOutputFile(String outputFile) {
 		try {
-			return new ObjectOutputStream(new FileOutputStream(outputFile));
+			return new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile)));
 
 		} catch (Exception Ex) {
 			System.out.println(Ex);
@@ -1575,7 +1651,7 @@ public class PamSettingManager {
 //			return null;
 //		}
 		try {
-			return new ObjectInputStream(new FileInputStream(fileName));
+			return new ObjectInputStream(new BufferedInputStream(new FileInputStream(fileName)));
 		} catch (Exception Ex) {
 			//Ex.printStackTrace();
 			//			if(!userNotifiedAbsentSettingsFile){
@@ -1712,7 +1788,7 @@ public class PamSettingManager {
 		}
 
 		try {
-			is = new ObjectInputStream(new FileInputStream(getSettingsListFile()));
+			is = new ObjectInputStream(new BufferedInputStream(new FileInputStream(getSettingsListFile())));
 			settingsFileData = (SettingsFileData) is.readObject();
 
 		} catch (Exception Ex) {
@@ -1820,7 +1896,7 @@ public class PamSettingManager {
 
 		ObjectOutputStream os;
 		try {
-			os = new ObjectOutputStream(new FileOutputStream(getSettingsListFile()));
+			os = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(getSettingsListFile())));
 			os.writeObject(settingsFileData);
 		} catch (Exception Ex) {
 			System.out.println(Ex);
@@ -1849,7 +1925,7 @@ public class PamSettingManager {
 		databaseSettingsList = new ArrayList<PamControlledUnitSettings>();
 		Object j;
 		try {
-			is = new ObjectInputStream(new FileInputStream(getDatabaseListFile()));
+			is = new ObjectInputStream(new BufferedInputStream(new FileInputStream(getDatabaseListFile())));
 		} catch (Exception Ex) {
 			return false;
 		}
@@ -1907,7 +1983,7 @@ public class PamSettingManager {
 
 		ObjectOutputStream os;
 		try {
-			os = new ObjectOutputStream(new FileOutputStream(getDatabaseListFile()));
+			os = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(getDatabaseListFile())));
 		} catch (Exception Ex) {
 			return false;
 		}
@@ -1976,7 +2052,10 @@ public class PamSettingManager {
 	 * @param frame GUI frame (needed for dialog, can be null)
 	 */
 	public void saveSettings(JFrame frame) {
-		saveFinalSettings();
+		int saveWhere = getRunModeSaveFlags();
+		if (saveWhere != 0) {
+			saveSettings(saveWhere | SAVE_BACKGROUND);
+		}
 	}
 
 	/**
@@ -2017,7 +2096,7 @@ public class PamSettingManager {
 			PamSettingManager.remote_psf = newFile.getAbsolutePath();
 		}
 
-		saveSettings(SAVE_PSF);
+		saveSettings(SAVE_PSF | SAVE_BACKGROUND);
 
 		PamController.getInstance().getGuiFrameManager().sortFrameTitles();
 
@@ -2170,7 +2249,7 @@ public class PamSettingManager {
 		ObjectInputStream file = null;
 
 		try {
-			file = new ObjectInputStream(new FileInputStream(psfFile));
+			file = new ObjectInputStream(new BufferedInputStream(new FileInputStream(psfFile)));
 		}
 		catch (IOException eof){
 			return null;
@@ -1,5 +1,7 @@
 package PamDetection;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import PamguardMVC.AcousticDataUnit;
 import PamguardMVC.DataUnitBaseData;
 import PamguardMVC.PamDataUnit;
@@ -23,6 +25,12 @@ public class RawDataUnit extends PamDataUnit<PamDataUnit,SuperDetection> impleme
 	 */
 	private long fileSamples = -1; 
 
+	/**
+	 * Number of queued tasks (e.g. in a threaded observer) which will still 
+	 * read the raw data array. 
+	 */
+	private final AtomicInteger rawDataHolds = new AtomicInteger();
+
 	public RawDataUnit(long timeMilliseconds, int channelBitmap, long startSample, long duration) {
 		super(timeMilliseconds, channelBitmap, startSample, duration);
 	}
@@ -64,6 +72,45 @@ public class RawDataUnit extends PamDataUnit<PamDataUnit,SuperDetection> impleme
 		}
 	}
 
+	/**
+	 * Release the raw data so that the array can be reused. Called 
+	 * when raw data buffer pooling is enabled and the unit has been removed 
+	 * from its datablock, after which the unit will no longer have any data. 
+	 * @return the raw data array, or null if there wasn't one or something queued 
+	 * may still read it. 
+	 */
+	public double[] releaseRawData() {
+		if (rawDataHolds.get() > 0) {
+			return null;
+		}
+		double[] data = rawData;
+		rawData = null;
+		return data;
+	}
+
+	/**
+	 * Called before the unit is queued for something which will read the raw data 
+	 * array later in a different thread, so that the array isn't reused 
+	 * until holdDone() is called. 
+	 */
+	public void holdRawData() {
+		rawDataHolds.incrementAndGet();
+	}
+
+	/**
+	 * Called when a task queued after holdRawData() has finished with the raw data. 
+	 */
+	public void holdDone() {
+		rawDataHolds.decrementAndGet();
+	}
+
+	/**
+	 * @return true if anything queued may still read the raw data array. 
+	 */
+	public boolean isRawDataHeld() {
+		return rawDataHolds.get() > 0;
+	}
+
 	/**
 	 * Set the file samples. The file samples are the total number
 	 * of samples into an audio file the raw data unit starts at. It
@@ -46,6 +46,7 @@ import PamDetection.RawDataUnit;
 import PamUtils.FileFinder;
 import PamView.dialog.warn.WarnOnce;
 import PamguardMVC.PamDataBlock;
+import PamguardMVC.RawDataTransformCache;
 import analogarraysensor.ArraySensorControl;
 import backupmanager.BackupManager;
 import beamformer.continuous.BeamFormerControl;
@@ -1111,6 +1112,7 @@ final public class PamModel implements PamSettings {
 		if (newSettings != null) {
 			boolean changed = (!newSettings.equals(pamModelSettings));
 			pamModelSettings = newSettings.clone();
+			setupTransformCache();
 			if (changed) {
 				pamController.notifyModelChanged(PamControllerInterface.CHANGED_MULTI_THREADING);
 			}
@@ -1166,9 +1168,17 @@ final public class PamModel implements PamSettings {
 	public boolean restoreSettings(
 			PamControlledUnitSettings pamControlledUnitSettings) {
 		pamModelSettings = ((PamModelSettings)pamControlledUnitSettings.getSettings()).clone();
+		setupTransformCache();
 		return true;
 	}
 
+	/**
+	 * Set the memory budget for the shared RawDataTransforms cache. 
+	 */
+	private void setupTransformCache() {
+		RawDataTransformCache.getInstance().setBudgetBytes(pamModelSettings.transformCacheMB * 1024L * 1024L);
+	}
+
 	public boolean isMultiThread() {
 		return pamModelSettings.multiThreading;
 	}
@@ -15,6 +15,12 @@ public class PamModelSettings implements Cloneable, Serializable, ManagedParamet
 	 */
 	public boolean multiThreading = true;
 	
+	/**
+	 * Use lock free ring buffers rather than synchronised lists to pass
+	 * data between threads. 
+	 */
+	public boolean lockFreeQueues = false;
+	
 	private int threadingJitterMillis = 1000;
 	
 	private boolean oldJitterParam = false;
@@ -23,6 +29,24 @@ public class PamModelSettings implements Cloneable, Serializable, ManagedParamet
 	
 	public int gcInterval = 2;
 	
+	/**
+	 * Recycle raw data arrays from the acquisition module once they've
+	 * been removed from the raw data block, rather than allocating new ones. 
+	 */
+	public boolean recycleRawData = false;
+	
+	/**
+	 * Keep a contiguous per channel buffer of recent raw samples so that
+	 * processes can read blocks of raw data without locking the raw data block. 
+	 */
+	public boolean rawSampleBuffer = false;
+	
+	/**
+	 * Memory budget in MBytes for the shared cache of spectra and other transforms of 
+	 * clicks and clips. 0 disables the cache, so transforms are held with each data unit. 
+	 */
+	public int transformCacheMB = 0;
+	
 	@Override
 	protected PamModelSettings clone() {
 
@@ -70,6 +94,9 @@ public class PamModelSettings implements Cloneable, Serializable, ManagedParamet
 		if (other.multiThreading && other.threadingJitterMillis != threadingJitterMillis) {
 			return false;
 		}
+		if (other.multiThreading && other.lockFreeQueues != lockFreeQueues) {
+			return false;
+		}
 		return true;
 	}
 	
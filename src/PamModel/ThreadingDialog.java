@@ -27,12 +27,20 @@ public class ThreadingDialog extends PamDialog {
 	
 	private JTextField jitterMillis;
 	
+	private JCheckBox lockFreeQueues;
+	
 	private JTextArea infoArea;
 	
 	private JCheckBox enableGC;
 	
 	private JTextField gcInterval;
 	
+	private JCheckBox recycleRawData;
+	
+	private JCheckBox rawSampleBuffer;
+	
+	private JTextField transformCacheMB;
+	
 	private ThreadingDialog(Window parentFrame) {
 		super(parentFrame, "Threading Model", true);
 		JPanel p = new JPanel();
@@ -52,6 +60,13 @@ public class ThreadingDialog extends PamDialog {
 		c.gridy++;
 		c.gridwidth = 3;
 		c.gridx = 0;
+		addComponent(p, lockFreeQueues = new JCheckBox("Use lock free inter thread queues"), c);
+		lockFreeQueues.setToolTipText("Pass data between threads using lock free ring buffers instead of synchronised lists");
+		c.gridy++;
+		addComponent(p, rawSampleBuffer = new JCheckBox("Use contiguous raw sample buffer"), c);
+		rawSampleBuffer.setToolTipText("<html>Keep a circular buffer of recent raw audio for each channel so that clips and waveforms<br>"
+				+ "can be copied out without locking the acquisition data block</html>");
+		c.gridy++;
 		String infoText = "Multithreading can speed up PAMGUARD execution" +
 		"\nby utilising all cores on multi processor" +
 		"\nmachines." +
@@ -84,6 +99,22 @@ public class ThreadingDialog extends PamDialog {
 		c.gridx++;
 		gcPanel.add(new JLabel(" seconds"), c);
 		enableGC.addActionListener(new CtrlEnabler());
+		c.gridx = 0;
+		c.gridy++;
+		c.gridwidth = 3;
+		gcPanel.add(recycleRawData = new JCheckBox("Recycle raw data buffers"), c);
+		recycleRawData.setToolTipText("<html>Reuse raw audio arrays from the acquisition module once they are no longer needed.<br>"
+				+ "Reduces garbage collection when processing high sample rate files.<br>"
+				+ "Only used when every module reading the raw data copies it in the acquisition thread</html>");
+		c.gridy++;
+		c.gridwidth = 1;
+		gcPanel.add(new JLabel("Transform cache ", SwingConstants.RIGHT), c);
+		c.gridx++;
+		gcPanel.add(transformCacheMB = new JTextField(5), c);
+		c.gridx++;
+		gcPanel.add(new JLabel(" MBytes (0 = off)"), c);
+		transformCacheMB.setToolTipText("<html>Memory to use for a shared cache of click and clip spectra and filtered waveforms.<br>"
+				+ "If 0, transforms are kept with each detection until it's deleted</html>");
 		
 		
 		
@@ -106,9 +137,13 @@ public class ThreadingDialog extends PamDialog {
 	private void setParams() {
 		multiThreading.setSelected(pamModelSettings.multiThreading);
 		jitterMillis.setText(String.format("%d", pamModelSettings.getThreadingJitterMillis()));
+		lockFreeQueues.setSelected(pamModelSettings.lockFreeQueues);
 		
 		gcInterval.setText(String.format("%d", pamModelSettings.gcInterval));
 		enableGC.setSelected(pamModelSettings.enableGC);
+		recycleRawData.setSelected(pamModelSettings.recycleRawData);
+		rawSampleBuffer.setSelected(pamModelSettings.rawSampleBuffer);
+		transformCacheMB.setText(String.format("%d", pamModelSettings.transformCacheMB));
 		
 		enableControls();
 	}
@@ -124,8 +159,20 @@ public class ThreadingDialog extends PamDialog {
 			return showWarning("Inter thread jitter must be a positive integer");
 		}
 		pamModelSettings.setThreadingJitterMillis(jm);
+		pamModelSettings.lockFreeQueues = lockFreeQueues.isSelected();
 		
 		pamModelSettings.enableGC = enableGC.isSelected();
+		pamModelSettings.recycleRawData = recycleRawData.isSelected();
+		pamModelSettings.rawSampleBuffer = rawSampleBuffer.isSelected();
+		try {
+			pamModelSettings.transformCacheMB = Integer.valueOf(transformCacheMB.getText());
+		}
+		catch (NumberFormatException e) {
+			return showWarning("Transform cache size must be a positive integer or 0");
+		}
+		if (pamModelSettings.transformCacheMB < 0) {
+			return showWarning("Transform cache size must be a positive integer or 0");
+		}
 		if (enableGC.isSelected()) {
 			try {
 				pamModelSettings.gcInterval = Integer.valueOf(gcInterval.getText());	
@@ -148,6 +195,7 @@ public class ThreadingDialog extends PamDialog {
 
 	private void enableControls() {
 		jitterMillis.setEnabled(multiThreading.isSelected());
+		lockFreeQueues.setEnabled(multiThreading.isSelected());
 		gcInterval.setEnabled(enableGC.isSelected());
 	}
 
@@ -43,6 +43,9 @@ public class ObservedObject {
 	/** the action to perform */
 	private int action;
 
+	/** System nanotime when the object was put into a queue, used for latency stats */
+	private long queuedNanos;
+	
 	/** a list of objects to pass (the type of objects will
 	 * depend on what the action is  */
 	private Object[] observed;
@@ -82,4 +85,18 @@ public class ObservedObject {
 		this.timeMillis = time;
 	}
 
+	/**
+	 * @return System.nanoTime() when the object was queued.
+	 */
+	public long getQueuedNanos() {
+		return queuedNanos;
+	}
+
+	/**
+	 * @param queuedNanos System.nanoTime() when the object was queued.
+	 */
+	public void setQueuedNanos(long queuedNanos) {
+		this.queuedNanos = queuedNanos;
+	}
+
 }
@@ -0,0 +1,166 @@
+package PamguardMVC;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queue depth and latency counters for a ThreadedObserver. These make it possible
+ * to see which module is holding up the others, i.e. the one with a deep queue and
+ * a long latency while the producers are blocked.
+ * <p>
+ * Counts of objects queued and time producers spend blocked can be updated from
+ * any thread. Processing counts are only updated from the observer thread.
+ *
+ */
+public class ObserverQueueStats {
+
+	private AtomicLong queuedCount = new AtomicLong();
+
+	private AtomicInteger maxDepth = new AtomicInteger();
+
+	private AtomicLong blockedNanos = new AtomicLong();
+
+	private volatile long processedCount;
+
+	private volatile long totalLatencyNanos;
+
+	private volatile long maxLatencyNanos;
+
+	private volatile long batchCount;
+
+	private AtomicLong droppedCount = new AtomicLong();
+
+	/**
+	 * Called when an object has been added to the queue.
+	 * @param depth queue depth after adding the object.
+	 */
+	public void noteQueued(int depth) {
+		queuedCount.incrementAndGet();
+		maxDepth.accumulateAndGet(depth, Math::max);
+	}
+
+	/**
+	 * Called when a producer has had to wait for the queue.
+	 * @param nanos time the producer was waiting for.
+	 */
+	public void noteBlocked(long nanos) {
+		if (nanos > 0) {
+			blockedNanos.addAndGet(nanos);
+		}
+	}
+
+	/**
+	 * Called from the observer thread when an object is taken
+	 * from the queue for processing.
+	 * @param latencyNanos time the object spent in the queue.
+	 */
+	public void noteProcessed(long latencyNanos) {
+		processedCount++;
+		totalLatencyNanos += latencyNanos;
+		if (latencyNanos > maxLatencyNanos) {
+			maxLatencyNanos = latencyNanos;
+		}
+	}
+
+	/**
+	 * Called when an object could not be queued and has been discarded.
+	 * @return the total number of objects discarded.
+	 */
+	public long noteDropped() {
+		return droppedCount.incrementAndGet();
+	}
+
+	/**
+	 * @return the number of objects which could not be queued and were discarded.
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Called from the observer thread each time it wakes and
+	 * takes one or more objects from the queue.
+	 */
+	public void noteBatch() {
+		batchCount++;
+	}
+
+	/**
+	 * @return total number of objects added to the queue
+	 */
+	public long getQueuedCount() {
+		return queuedCount.get();
+	}
+
+	/**
+	 * @return total number of objects taken from the queue for processing
+	 */
+	public long getProcessedCount() {
+		return processedCount;
+	}
+
+	/**
+	 * @return the maximum queue depth
+	 */
+	public int getMaxDepth() {
+		return maxDepth.get();
+	}
+
+	/**
+	 * @return total time producers have spent waiting to add data in milliseconds
+	 */
+	public double getBlockedMillis() {
+		return blockedNanos.get() / 1.e6;
+	}
+
+	/**
+	 * @return mean time objects spent in the queue in milliseconds
+	 */
+	public double getMeanLatencyMillis() {
+		long n = processedCount;
+		if (n == 0) {
+			return 0;
+		}
+		return totalLatencyNanos / 1.e6 / n;
+	}
+
+	/**
+	 * @return maximum time an object has spent in the queue in milliseconds
+	 */
+	public double getMaxLatencyMillis() {
+		return maxLatencyNanos / 1.e6;
+	}
+
+	/**
+	 * @return mean number of objects processed each time the observer thread wakes up
+	 */
+	public double getMeanBatchSize() {
+		long n = batchCount;
+		if (n == 0) {
+			return 0;
+		}
+		return (double) processedCount / n;
+	}
+
+	/**
+	 * Reset all counters.
+	 */
+	public void reset() {
+		queuedCount.set(0);
+		maxDepth.set(0);
+		blockedNanos.set(0);
+		processedCount = 0;
+		totalLatencyNanos = 0;
+		maxLatencyNanos = 0;
+		batchCount = 0;
+		droppedCount.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("queued %d, processed %d, max depth %d, latency mean %3.1fms max %3.1fms, mean batch %3.1f, producers blocked %3.1fms, dropped %d",
+				getQueuedCount(), getProcessedCount(), getMaxDepth(), getMeanLatencyMillis(), getMaxLatencyMillis(),
+				getMeanBatchSize(), getBlockedMillis(), getDroppedCount());
+	}
+
+}
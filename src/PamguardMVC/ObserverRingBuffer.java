@@ -0,0 +1,263 @@
+package PamguardMVC;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock free queue of ObservedObjects for the ThreadedObserver.
+ * <p>
+ * This is a ring buffer with a sequence number per slot (D. Vyukov's bounded
+ * queue), so any number of threads can add objects without taking a lock,
+ * which is the normal case of several data blocks feeding one observer.
+ * Rather than polling with Thread.sleep, the consumer thread parks when the
+ * buffer is empty and is unparked by the next producer, and producers park
+ * when the buffer is full (or the ThreadedObserver decides they should wait)
+ * and are unparked by the consumer as it takes data out.
+ *
+ * @see ThreadedObserver
+ */
+public class ObserverRingBuffer {
+
+	private final int capacity;
+
+	private final int mask;
+
+	private final AtomicReferenceArray<ObservedObject> buffer;
+
+	private final AtomicLongArray sequence;
+
+	private final AtomicLong enqueuePos = new AtomicLong();
+
+	private final AtomicLong dequeuePos = new AtomicLong();
+
+	/**
+	 * Consumer thread if it's currently parked waiting for data
+	 */
+	private volatile Thread parkedConsumer;
+
+	/**
+	 * Producer threads currently parked waiting for space or for the
+	 * consumer to make some progress.
+	 */
+	private final ConcurrentLinkedQueue<Thread> waitingProducers = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * @param minCapacity minimum capacity. Will be rounded up to a power of 2.
+	 */
+	public ObserverRingBuffer(int minCapacity) {
+		int cap = 2;
+		while (cap < minCapacity) {
+			cap <<= 1;
+		}
+		capacity = cap;
+		mask = cap - 1;
+		buffer = new AtomicReferenceArray<>(cap);
+		sequence = new AtomicLongArray(cap);
+		for (int i = 0; i < cap; i++) {
+			sequence.set(i, i);
+		}
+	}
+
+	/**
+	 * Add an object to the buffer if there is space.
+	 * @param observedObject object to add
+	 * @return true if the object was added, false if the buffer was full.
+	 */
+	public boolean offer(ObservedObject observedObject) {
+		long pos = enqueuePos.get();
+		int index;
+		while (true) {
+			index = (int) (pos & mask);
+			long dif = sequence.get(index) - pos;
+			if (dif == 0) {
+				if (enqueuePos.compareAndSet(pos, pos + 1)) {
+					break;
+				}
+				pos = enqueuePos.get();
+			}
+			else if (dif < 0) {
+				return false;
+			}
+			else {
+				pos = enqueuePos.get();
+			}
+		}
+		buffer.set(index, observedObject);
+		sequence.set(index, pos + 1);
+		Thread consumer = parkedConsumer;
+		if (consumer != null) {
+			LockSupport.unpark(consumer);
+		}
+		return true;
+	}
+
+	/**
+	 * Add an object to the buffer, waiting for space if the buffer is full.
+	 * @param observedObject object to add
+	 * @param timeoutNanos maximum time to wait for space
+	 * @return true if the object was added, false if the buffer remained full
+	 * for the timeout period.
+	 */
+	public boolean offer(ObservedObject observedObject, long timeoutNanos) {
+		long deadline = System.nanoTime() + timeoutNanos;
+		while (!offer(observedObject)) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return false;
+			}
+			Thread me = Thread.currentThread();
+			waitingProducers.add(me);
+			if (size() >= capacity) {
+				LockSupport.parkNanos(this, remaining);
+			}
+			waitingProducers.remove(me);
+		}
+		return true;
+	}
+
+	/**
+	 * Take the oldest object out of the buffer.
+	 * @return oldest object or null if the buffer is empty.
+	 */
+	public ObservedObject poll() {
+		long pos = dequeuePos.get();
+		int index;
+		while (true) {
+			index = (int) (pos & mask);
+			long dif = sequence.get(index) - (pos + 1);
+			if (dif == 0) {
+				if (dequeuePos.compareAndSet(pos, pos + 1)) {
+					break;
+				}
+				pos = dequeuePos.get();
+			}
+			else if (dif < 0) {
+				return null;
+			}
+			else {
+				pos = dequeuePos.get();
+			}
+		}
+		ObservedObject observedObject = buffer.get(index);
+		buffer.set(index, null);
+		sequence.set(index, pos + capacity);
+		return observedObject;
+	}
+
+	/**
+	 * Take up to maxObjects out of the buffer in one go. Producers waiting
+	 * for space are signalled once the batch has been removed.
+	 * @param batch array to copy objects into
+	 * @param maxObjects maximum number of objects to take
+	 * @return number of objects taken.
+	 */
+	public int drainTo(ObservedObject[] batch, int maxObjects) {
+		int n = 0;
+		maxObjects = Math.min(maxObjects, batch.length);
+		ObservedObject observedObject;
+		while (n < maxObjects && (observedObject = poll()) != null) {
+			batch[n++] = observedObject;
+		}
+		if (n > 0) {
+			signalProducers();
+		}
+		return n;
+	}
+
+	/**
+	 * Look at the oldest object in the buffer without removing it. This is only
+	 * an estimate if other threads are taking data out of the buffer at the same time.
+	 * @return oldest object in the buffer or null.
+	 */
+	public ObservedObject peek() {
+		long pos = dequeuePos.get();
+		int index = (int) (pos & mask);
+		if (sequence.get(index) != pos + 1) {
+			return null;
+		}
+		return buffer.get(index);
+	}
+
+	/**
+	 * Park the calling (consumer) thread until more data arrive or the
+	 * timeout expires. Returns immediately if there are already data.
+	 * @param timeoutNanos maximum wait time.
+	 */
+	public void awaitData(long timeoutNanos) {
+		parkedConsumer = Thread.currentThread();
+		if (isEmpty()) {
+			LockSupport.parkNanos(this, timeoutNanos);
+		}
+		parkedConsumer = null;
+	}
+
+	/**
+	 * Park a producer thread until the consumer takes more data out of the
+	 * buffer or the timeout expires. This replaces sleeping the
+	 * producer for a fixed time when the queue holds too much data.
+	 * @param timeoutNanos maximum wait time
+	 */
+	public void awaitProgress(long timeoutNanos) {
+		Thread me = Thread.currentThread();
+		waitingProducers.add(me);
+		LockSupport.parkNanos(this, timeoutNanos);
+		waitingProducers.remove(me);
+	}
+
+	/**
+	 * Wake any producers waiting in awaitProgress or for space in the buffer.
+	 */
+	public void signalProducers() {
+		if (waitingProducers.isEmpty()) {
+			return;
+		}
+		for (Thread producer : waitingProducers) {
+			LockSupport.unpark(producer);
+		}
+	}
+
+	/**
+	 * Wake the consumer thread if it's parked, e.g. so it can
+	 * check a termination flag.
+	 */
+	public void signalConsumer() {
+		Thread consumer = parkedConsumer;
+		if (consumer != null) {
+			LockSupport.unpark(consumer);
+		}
+	}
+
+	/**
+	 * Remove everything from the buffer.
+	 */
+	public void clear() {
+		while (poll() != null);
+		signalProducers();
+	}
+
+	/**
+	 * @return number of objects in the buffer
+	 */
+	public int size() {
+		long n = enqueuePos.get() - dequeuePos.get();
+		return (int) Math.max(0, Math.min(n, capacity));
+	}
+
+	/**
+	 * @return true if the buffer is empty
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * @return the maximum number of objects the buffer can hold
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+}
@@ -27,7 +27,6 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.NoSuchElementException;
@@ -70,6 +69,8 @@ import PamguardMVC.nanotime.NanoTimeCalculator;
 import PamguardMVC.nanotime.NanosFromMillis;
 import PamguardMVC.toad.TOADCalculator;
 import PamguardMVC.uid.DataBlockUIDHandler;
+import PamguardMVC.unitstore.DataUnitStore;
+import PamguardMVC.unitstore.TimeOrderedUnitStore;
 import SoundRecorder.RecorderControl;
 import SoundRecorder.trigger.RecorderTrigger;
 import annotation.DataAnnotationType;
@@ -409,7 +410,7 @@ public class PamDataBlock<Tunit extends PamDataUnit> extends PamObservable {
 		offlineDataLoading = new OfflineDataLoading<Tunit>(this);
 
 		// pamDataUnits = new Vector<Tunit>();
-		pamDataUnits = Collections.synchronizedList(new LinkedList<Tunit>());
+		pamDataUnits = createUnitStore();
 		unitsRemoved = 0;
 
 		autoSetDataBlockMixMode();
@@ -523,6 +524,61 @@ public class PamDataBlock<Tunit extends PamDataUnit> extends PamObservable {
 		}
 	});
 
+	/**
+	 * Create the list used to store data units. By default this is a 
+	 * TimeOrderedUnitStore which allows fast searches by time and cheap removal
+	 * of old data from the front of the list. Subclasses can override to 
+	 * use a different store. 
+	 * @return new empty list for data units. 
+	 */
+	protected List<Tunit> createUnitStore() {
+		return new TimeOrderedUnitStore<Tunit>();
+	}
+
+	/**
+	 * Called when the time or start sample of a data unit in this block has 
+	 * changed, so that the unit store checks whether units are still in order 
+	 * before it's next searched. 
+	 */
+	public void unitOrderChanged() {
+		List<Tunit> units = pamDataUnits;
+		if (units instanceof DataUnitStore) {
+			((DataUnitStore<Tunit>) units).unitOrderChanged();
+		}
+	}
+
+	/**
+	 * Get the data unit store if it's one that currently supports 
+	 * binary searches on time, i.e. units are in time order. 
+	 * @return the unit store, or null if searches must be linear. 
+	 */
+	private DataUnitStore<Tunit> getTimeOrderedStore() {
+		List<Tunit> units = pamDataUnits;
+		if (units instanceof DataUnitStore) {
+			DataUnitStore<Tunit> store = (DataUnitStore<Tunit>) units;
+			if (store.isTimeOrdered()) {
+				return store;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get a read only snapshot of the data. Unlike getDataCopy(), for the standard
+	 * unit store this doesn't copy any data so is almost free, and the snapshot
+	 * can be iterated through without synchronising on the datablock. The snapshot will
+	 * not reflect data added or removed after it was taken. 
+	 * @return read only snapshot of the data units. 
+	 */
+	public List<Tunit> getDataSnapshot() {
+		synchronized (synchronizationLock) {
+			if (pamDataUnits instanceof DataUnitStore) {
+				return ((DataUnitStore<Tunit>) pamDataUnits).snapshot();
+			}
+			return Collections.unmodifiableList(new ArrayList<>(pamDataUnits));
+		}
+	}
+
 	/**
 	 * @return The total number of PamDataUnits in the block
 	 */
@@ -533,6 +589,10 @@ public class PamDataBlock<Tunit extends PamDataUnit> extends PamObservable {
 	public int getUnitsCountFromTime(long countStart) {
 		int count = 0;
 		synchronized (synchronizationLock) {
+			DataUnitStore<Tunit> store = getTimeOrderedStore();
+			if (store != null) {
+				return store.size() - store.indexOfFirstAtOrAfterMillis(countStart);
+			}
 			ListIterator<Tunit> listIterator = pamDataUnits.listIterator(pamDataUnits.size());
 			Tunit unit;
 			while (listIterator.hasPrevious()) {
@@ -591,12 +651,19 @@ public class PamDataBlock<Tunit extends PamDataUnit> extends PamObservable {
 		}
 		Tunit unit = null;
 		synchronized (synchronizationLock) {
+			DataUnitStore<Tunit> store = getTimeOrderedStore();
+			if (store != null) {
+				absStartPos = Math.max(absStartPos, store.indexOfFirstAtOrAfterMillis(timeMS));
+			}
 			ListIterator<Tunit> listIterator = pamDataUnits.listIterator(absStartPos);
 			while (listIterator.hasNext()) {
 				unit = listIterator.next();
 				if (unit.getTimeMilliseconds() == timeMS && (channels == 0 || channels == unit.getChannelBitmap())) {
 					return unit;
 				}
+				if (store != null && unit.getTimeMilliseconds() > timeMS) {
+					break;
+				}
 			}
 		}
 		return null;
@@ -619,12 +686,20 @@ public class PamDataBlock<Tunit extends PamDataUnit> extends PamObservable {
 	private Tunit findDataUnitBackwards(long timeMS, int channels) {
 		Tunit unit = null;
 		synchronized (synchronizationLock) {
-			ListIterator<Tunit> listIterator = pamDataUnits.listIterator(pamDataUnits.size());
+			DataUnitStore<Tunit> store = getTimeOrderedStore();
+			int startPos = pamDataUnits.size();
+			if (store != null) {
+				startPos = store.indexOfFirstAtOrAfterMillis(timeMS + 1);
+			}
+			ListIterator<Tunit> listIterator = pamDataUnits.listIterator(startPos);
 			while (listIterator.hasPrevious()) {
 				unit = listIterator.previous();
 				if (unit.getTimeMilliseconds() == timeMS && (channels == 0 || channels == unit.getChannelBitmap())) {
 					return unit;
 				}
+				if (store != null && unit.getTimeMilliseconds() < timeMS) {
+					break;
+				}
 			}
 		}
 		return null;
@@ -774,6 +849,13 @@ public class PamDataBlock<Tunit extends PamDataUnit> extends PamObservable {
 	 */
 	private Tunit searchFirstUnitAfter(long timems) {
 		Tunit unit, prevUnit = null;
+		synchronized (synchronizationLock) {
+			DataUnitStore<Tunit> store = getTimeOrderedStore();
+			if (store != null) {
+				int ind = store.indexOfFirstAtOrAfterMillis(timems);
+				return ind < store.size() ? store.get(ind) : null;
+			}
+		}
 		if (getFirstUnit() == null) {
 			return null;
 		}
@@ -865,6 +947,12 @@ public class PamDataBlock<Tunit extends PamDataUnit> extends PamObservable {
 		}
 
 		synchronized (synchronizationLock) {
+			DataUnitStore<Tunit> store = getTimeOrderedStore();
+			if (store != null) {
+				int i1 = store.indexOfFirstAtOrAfterMillis(startTime + 1);
+				int i2 = Math.max(i1, store.indexOfFirstAtOrAfterMillis(endTime));
+				return store.copy(i1, i2);
+			}
 			// ListIterator<Tunit> listIterator =
 			// pamDataUnits.listIterator(pamDataUnits.size());
 			ListIterator<Tunit> listIterator = pamDataUnits.listIterator(0);
@@ -2112,6 +2200,10 @@ public class PamDataBlock<Tunit extends PamDataUnit> extends PamObservable {
 		synchronized (synchronizationLock) {
 			if (pamDataUnits.size() == 0)
 				return null;
+			DataUnitStore<Tunit> store = getTimeOrderedStore();
+			if (store != null) {
+				return searchClosestUnitMillis(store, startTime, channelMap, false);
+			}
 			/*
 			 * start at the last unit, the work back and if the interval starts getting
 			 * bigger again, stop
@@ -2158,6 +2250,10 @@ public class PamDataBlock<Tunit extends PamDataUnit> extends PamObservable {
 		synchronized (synchronizationLock) {
 			if (pamDataUnits.size() == 0)
 				return null;
+			DataUnitStore<Tunit> store = getTimeOrderedStore();
+			if (store != null) {
+				return searchClosestUnitMillis(store, startTime, chanOrSeqMap, true);
+			}
 			/*
 			 * start at the last unit, the work back and if the interval starts getting
 			 * bigger again, stop
@@ -2191,6 +2287,55 @@ public class PamDataBlock<Tunit extends PamDataUnit> extends PamObservable {
 		}
 	}
 
+	/**
+	 * Find the closest data unit to a given time using a binary search of a time
+	 * ordered store, then stepping out either side to find the nearest units with
+	 * an overlapping channel or sequence map. As with the linear searches, if no
+	 * units overlap the map, the last unit is returned and the earlier unit wins if
+	 * two are equally close.
+	 * 
+	 * @param store       time ordered unit store
+	 * @param startTime   Start time of data unit (milliseconds)
+	 * @param map         Channel or sequence map - must be some overlap.
+	 * @param useSequence use the sequence map rather than the channel map
+	 * @return closest data unit
+	 */
+	private Tunit searchClosestUnitMillis(DataUnitStore<Tunit> store, long startTime, int map, boolean useSequence) {
+		int n = store.size();
+		if (n == 0) {
+			return null;
+		}
+		int ind = store.indexOfFirstAtOrAfterMillis(startTime);
+		Tunit before = null, after = null;
+		for (int i = ind - 1; i >= 0 && before == null; i--) {
+			Tunit unit = store.get(i);
+			int unitMap = useSequence ? unit.getSequenceBitmap() : unit.getChannelBitmap();
+			if (unitMap == 0 || (unitMap & map) != 0) {
+				before = unit;
+			}
+		}
+		for (int i = ind; i < n && after == null; i++) {
+			Tunit unit = store.get(i);
+			int unitMap = useSequence ? unit.getSequenceBitmap() : unit.getChannelBitmap();
+			if (unitMap == 0 || (unitMap & map) != 0) {
+				after = unit;
+			}
+		}
+		if (before == null && after == null) {
+			return store.get(n - 1);
+		}
+		if (before == null) {
+			return after;
+		}
+		if (after == null) {
+			return before;
+		}
+		if (startTime - before.getTimeMilliseconds() <= after.getTimeMilliseconds() - startTime) {
+			return before;
+		}
+		return after;
+	}
+
 	/**
 	 * @return The sample rate of the data contained in the block
 	 */
@@ -2823,7 +2968,12 @@ public class PamDataBlock<Tunit extends PamDataUnit> extends PamObservable {
 	 * @return a list iterator ...
 	 */
 	public ListIterator<Tunit> getListIteratorFromStart(long startTime, int channels, int match, int position) {
-		ListIterator<Tunit> iterator = getListIterator(0);
+		/*
+		 * If the store is in time order, jump straight to the first unit at or 
+		 * after startTime, since everything before it would be skipped anyway.
+		 */
+		DataUnitStore<Tunit> store = getTimeOrderedStore();
+		ListIterator<Tunit> iterator = getListIterator(store == null ? 0 : store.indexOfFirstAtOrAfterMillis(startTime));
 		Tunit thisOne = null;
 		try {
 			while (iterator.hasNext()) {
@@ -2900,7 +3050,8 @@ public class PamDataBlock<Tunit extends PamDataUnit> extends PamObservable {
 	 */
 	public ListIterator<Tunit> getListIteratorFromEnd(long startTime, int channels, int match, int position) {
 		synchronized (synchronizationLock) {
-			ListIterator<Tunit> iterator = getListIterator(ITERATOR_END);
+			DataUnitStore<Tunit> store = getTimeOrderedStore();
+			ListIterator<Tunit> iterator = getListIterator(store == null ? ITERATOR_END : store.indexOfFirstAtOrAfterMillis(startTime + 1));
 			Tunit thisOne = null;
 			try {
 				while (iterator.hasPrevious()) {
@@ -2975,11 +3126,13 @@ public class PamDataBlock<Tunit extends PamDataUnit> extends PamObservable {
 	 * @return temporary complete copy of the data in a new array. 
 	 */
 	public ArrayList<Tunit> getDataCopy() {
-		ArrayList<Tunit> copy = null;
-		synchronized (getSynchLock()) {
-			copy = new ArrayList<>(pamDataUnits);
+		synchronized (synchronizationLock) {
+			if (pamDataUnits instanceof DataUnitStore) {
+				// copy directly rather than via a snapshot, which would stop the store releasing old units. 
+				return ((DataUnitStore<Tunit>) pamDataUnits).copy(0, pamDataUnits.size());
+			}
+			return new ArrayList<>(pamDataUnits);
 		}
-		return copy;
 	}
 
 	/**
@@ -3023,6 +3176,12 @@ public class PamDataBlock<Tunit extends PamDataUnit> extends PamObservable {
 	public ArrayList<Tunit> getDataCopy(long t1, long t2, boolean assumeOrder) {
 		ArrayList<Tunit> copy = new ArrayList<>();
 		synchronized (getSynchLock()) {
+			DataUnitStore<Tunit> store = getTimeOrderedStore();
+			if (store != null) {
+				int i1 = store.indexOfFirstAtOrAfterMillis(t1);
+				int i2 = assumeOrder ? Math.max(i1, store.indexOfFirstAtOrAfterMillis(t2 + 1)) : store.size();
+				return store.copy(i1, i2);
+			}
 			ListIterator<Tunit> it = pamDataUnits.listIterator();
 			while (it.hasNext()) {
 				Tunit dataUnit = it.next();
@@ -3053,7 +3212,8 @@ public class PamDataBlock<Tunit extends PamDataUnit> extends PamObservable {
 		else {
 			ArrayList<Tunit> copy = new ArrayList<>();
 			synchronized (getSynchLock()) {
-				ListIterator<Tunit> it = pamDataUnits.listIterator();
+				DataUnitStore<Tunit> store = getTimeOrderedStore();
+				ListIterator<Tunit> it = pamDataUnits.listIterator(store == null ? 0 : store.indexOfFirstAtOrAfterMillis(t1));
 				while (it.hasNext()) {
 					Tunit dataUnit = it.next();
 					if (dataUnit.getTimeMilliseconds() < t1) {
@@ -236,6 +236,9 @@ abstract public class PamDataUnit<T extends PamDataUnit, U extends PamDataUnit>
 	 */
 	public void setTimeMilliseconds(long timeMilliseconds) {
 		basicData.setTimeMilliseconds(timeMilliseconds);
+		if (parentDataBlock != null) {
+			parentDataBlock.unitOrderChanged();
+		}
 	}
 
 	/**
@@ -262,6 +265,9 @@ abstract public class PamDataUnit<T extends PamDataUnit, U extends PamDataUnit>
 	 */
 	public void setStartSample(Long startSample) {
 		basicData.setStartSample(startSample);
+		if (parentDataBlock != null) {
+			parentDataBlock.unitOrderChanged();
+		}
 	}
 	
 	/**
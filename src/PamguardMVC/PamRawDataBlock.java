@@ -63,6 +63,16 @@ public class PamRawDataBlock extends AcousticDataBlock<RawDataUnit> {
 
 	private DCFilter dcFilter;
 
+	/**
+	 * Pool of raw data arrays, null unless buffer pooling is enabled. 
+	 */
+	private RawDataBufferPool bufferPool;
+
+	/**
+	 * Contiguous copy of recent samples for each channel, null unless enabled. 
+	 */
+	private volatile RawSampleRingBuffer sampleBuffer;
+
 	/**
 	 * Keep a record of the last sample added. 
 	 */
@@ -86,6 +96,109 @@ public class PamRawDataBlock extends AcousticDataBlock<RawDataUnit> {
 		return n;
 	}
 
+	@Override
+	protected void removedDataUnit(RawDataUnit pamUnit) {
+		super.removedDataUnit(pamUnit);
+		RawDataBufferPool pool = bufferPool;
+		if (pool != null && pamUnit.isRawDataHeld() == false && canRecycleBuffers()) {
+			int chan = PamUtils.getSingleChannel(pamUnit.getChannelBitmap());
+			pool.releaseBuffer(chan, pamUnit.releaseRawData());
+		}
+	}
+
+	/**
+	 * Check whether arrays from removed units can safely be reused. This is only the case 
+	 * if every observer is known not to keep references to the sample arrays once it has 
+	 * processed a unit. Other observers (e.g. the click detector) keep the previous block 
+	 * of data, so could still be reading an array after its unit has been removed. Threaded 
+	 * observers are checked by the observer they wrap. Units they have queued are held 
+	 * (see RawDataUnit#holdRawData()) so aren't recycled until they've been processed. 
+	 * @return true if arrays can be returned to the buffer pool. 
+	 */
+	private boolean canRecycleBuffers() {
+		int n = countObservers();
+		for (int i = 0; i < n; i++) {
+			PamObserver observer;
+			try {
+				observer = getPamObserver(i);
+			}
+			catch (IndexOutOfBoundsException e) {
+				// observers changed while checking.
+				return false;
+			}
+			if (observer instanceof ThreadedObserver) {
+				observer = ((ThreadedObserver) observer).getObserverObject();
+			}
+			if (observer instanceof RawDataCopyingObserver == false) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Enable or disable pooling of raw data arrays. When enabled, the sample arrays 
+	 * of units removed from this block are put into a pool and can be taken 
+	 * back out with getBufferPool().getBuffer(...) by the acquisition system 
+	 * for new data, which greatly reduces the amount of garbage created when
+	 * processing high sample rate files. 
+	 * <p>
+ 	 * Arrays are only recycled while every observer of the block implements 
+	 * RawDataCopyingObserver, otherwise removed units keep their data and the pool 
+	 * simply allocates new arrays. Recycled units have their raw data set to null.  
+	 * @param pooling enable buffer pooling
+	 */
+	public void setBufferPooling(boolean pooling) {
+		if (pooling && bufferPool == null) {
+			bufferPool = new RawDataBufferPool();
+		}
+		else if (!pooling) {
+			bufferPool = null;
+		}
+	}
+
+	/**
+	 * Get the pool of raw data arrays.
+	 * @return buffer pool, or null if buffer pooling is not enabled. 
+	 */
+	public RawDataBufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	/**
+	 * Enable or disable the raw sample buffer. When enabled, samples from all data 
+	 * units added to this block are also copied into a per channel circular buffer and 
+	 * getSamples(...) and getSamplesForMillis(...) copy straight out of that without 
+	 * locking the data block, so they don't hold up the acquisition or each other. 
+	 * Requests for data older than the buffer holds fall back to the data units, as do 
+	 * all requests for channels which would take the buffer over its total memory limit. 
+	 * <p>
+	 * The buffer is sized from the natural lifetime of the block and the history 
+	 * required by its observers, so should be enabled after the sample rate has been 
+	 * set and observers have been prepared. 
+	 * @param enable enable the sample buffer
+	 */
+	public void setSampleBuffer(boolean enable) {
+		if (enable) {
+			float sr = getSampleRate();
+			long keepMillis = Math.max(getNaturalLifetimeMillis(), getRequiredHistory());
+			// same minimum as removeOldUnitsS, plus a margin for data in transit. 
+			keepMillis = Math.max(keepMillis, sr > 100000 ? 500 : 1000) + 1000;
+			sampleBuffer = new RawSampleRingBuffer((long) (keepMillis * sr / 1000.));
+		}
+		else {
+			sampleBuffer = null;
+		}
+	}
+
+	/**
+	 * Get the raw sample buffer.
+	 * @return sample buffer, or null if it's not enabled. 
+	 */
+	public RawSampleRingBuffer getSampleBuffer() {
+		return sampleBuffer;
+	}
+
 	/**
 	 * Check the data block integrity - that is that all units are
 	 * in order and that the sample numbers increase correctly.
@@ -167,6 +280,10 @@ public class PamRawDataBlock extends AcousticDataBlock<RawDataUnit> {
 	public void reset() {
 		desiredSample = -1;
 		prevChannelSample = new long[PamConstants.MAX_CHANNELS];
+		RawSampleRingBuffer buffer = sampleBuffer;
+		if (buffer != null) {
+			buffer.clear();
+		}
 		summaryTotals = new double[PamConstants.MAX_CHANNELS];
 		summaryTotals2 = new double[PamConstants.MAX_CHANNELS];
 		summaryMaxVal = new double[PamConstants.MAX_CHANNELS];
@@ -210,6 +327,15 @@ public class PamRawDataBlock extends AcousticDataBlock<RawDataUnit> {
 		//				pamDataUnit.getStartSample(), thisChannel, getDataName(), desiredSample));
 		addSummaryData(thisChannel, pamDataUnit);
 
+		RawSampleRingBuffer buffer = sampleBuffer;
+		if (buffer != null) {
+			double[] rawData = pamDataUnit.getRawData();
+			if (rawData != null) {
+				buffer.write(thisChannel, pamDataUnit.getStartSample(), rawData, 
+						(int) Math.min(rawData.length, pamDataUnit.getSampleDuration()));
+			}
+		}
+
 		super.addPamData(pamDataUnit);
 	}
 
@@ -328,7 +454,7 @@ public class PamRawDataBlock extends AcousticDataBlock<RawDataUnit> {
 	 * @return
 	 * @throws RawDataUnavailableException
 	 */
-	synchronized public double[][] getSamplesForMillis(long startMillis, long durationMillis, int channelMap) throws RawDataUnavailableException {
+	public double[][] getSamplesForMillis(long startMillis, long durationMillis, int channelMap) throws RawDataUnavailableException {
 		RawDataUnit firstUnit = getFirstUnit();
 		if (firstUnit == null) {
 			throw new RawDataUnavailableException(this, RawDataUnavailableException.DATA_NOT_ARRIVED, 0, 0, startMillis, (int) durationMillis);
@@ -346,7 +472,7 @@ public class PamRawDataBlock extends AcousticDataBlock<RawDataUnit> {
 	 * @param channelMap
 	 * @return double array of raw data
 	 */
-	synchronized public double[][] getSamples(long startSample, int duration, int channelMap) throws RawDataUnavailableException {
+	public double[][] getSamples(long startSample, int duration, int channelMap) throws RawDataUnavailableException {
 		// run  a few tests ...
 		int chanOverlap = channelMap & getChannelMap();
 		if (chanOverlap != channelMap) {
@@ -355,6 +481,52 @@ public class PamRawDataBlock extends AcousticDataBlock<RawDataUnit> {
 		if (duration < 0) {
 			throw new RawDataUnavailableException(this, RawDataUnavailableException.NEGATIVE_DURATION,0,0, startSample, duration);
 		}
+		RawSampleRingBuffer buffer = sampleBuffer;
+		if (buffer != null) {
+			double[][] wavData = new double[PamUtils.getNumChannels(channelMap)][duration];
+			if (readSampleBuffer(buffer, startSample, duration, channelMap, wavData)) {
+				return wavData;
+			}
+		}
+		return getSamplesFromUnits(startSample, duration, channelMap);
+	}
+
+	/**
+	 * Try to get samples from the raw sample buffer. 
+	 * @param buffer sample buffer
+	 * @param startSample first sample
+	 * @param duration number of samples
+	 * @param channelMap channel map
+	 * @param wavData array to fill, must have one array per channel of at least duration samples. 
+	 * @return true if the samples were read, false if some were not in the buffer. 
+	 * @throws RawDataUnavailableException if the data have not arrived yet.
+	 */
+	private boolean readSampleBuffer(RawSampleRingBuffer buffer, long startSample, int duration, int channelMap, 
+			double[][] wavData) throws RawDataUnavailableException {
+		int nChan = wavData.length;
+		for (int i = 0; i < nChan; i++) {
+			int iChan = PamUtils.getNthChannel(i, channelMap);
+			int ans = buffer.read(iChan, startSample, wavData[i], 0, duration);
+			if (ans == RawSampleRingBuffer.READ_NOT_ARRIVED) {
+				throw new RawDataUnavailableException(this, RawDataUnavailableException.DATA_NOT_ARRIVED,
+						buffer.getFirstSample(iChan), buffer.getEndSample(iChan), startSample, duration);
+			}
+			if (ans != RawSampleRingBuffer.READ_OK) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get samples by searching the list of data units. 
+	 * @param startSample
+	 * @param duration
+	 * @param channelMap
+	 * @return double array of raw data
+	 * @throws RawDataUnavailableException
+	 */
+	synchronized private double[][] getSamplesFromUnits(long startSample, int duration, int channelMap) throws RawDataUnavailableException {
 
 		RawDataUnit dataUnit = getFirstUnit();
 		if (dataUnit == null) {
@@ -420,16 +592,28 @@ public class PamRawDataBlock extends AcousticDataBlock<RawDataUnit> {
 	 * @param wavData
 	 * @return double array of raw data
 	 */
-	synchronized public double[][] getSamples(long startSample, int duration, int channelMap, double[][] wavData) {
+	public double[][] getSamples(long startSample, int duration, int channelMap, double[][] wavData) {
 		int nChan = PamUtils.getNumChannels(channelMap);
 		if (duration < 1) return null;
 		if (wavData == null || nChan != wavData.length || duration != wavData[0].length) {
 			wavData = new double[nChan][duration];
 		}
-		if (getTheSamples(startSample, duration, channelMap, wavData)) {
-			return wavData;
+		RawSampleRingBuffer buffer = sampleBuffer;
+		if (buffer != null) {
+			try {
+				if (readSampleBuffer(buffer, startSample, duration, channelMap, wavData)) {
+					return wavData;
+				}
+			} catch (RawDataUnavailableException e) {
+				return null;
+			}
+		}
+		synchronized (this) {
+			if (getTheSamples(startSample, duration, channelMap, wavData)) {
+				return wavData;
+			}
+			getTheSamples(startSample, duration, channelMap, wavData);
 		}
-		getTheSamples(startSample, duration, channelMap, wavData);
 		return null;
 	}
 
@@ -725,6 +909,10 @@ public class PamRawDataBlock extends AcousticDataBlock<RawDataUnit> {
 		//		StackTraceElement[] stack = Thread.currentThread().getStackTrace();
 		//		System.out.printf("ClearAll() in %s called from %s\n", getLongDataName(), stack[2].toString());
 		super.clearAll();
+		RawSampleRingBuffer buffer = sampleBuffer;
+		if (buffer != null) {
+			buffer.clear();
+		}
 	}
 
 	@Override
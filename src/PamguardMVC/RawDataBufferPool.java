@@ -0,0 +1,218 @@
+package PamguardMVC;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+
+/**
+ * Per channel pool of sample arrays for raw data. When buffer pooling is
+ * enabled in a PamRawDataBlock, arrays belonging to RawDataUnits which are
+ * removed from the block are returned to the pool and can be handed out
+ * again to the acquisition system for the next blocks of data, rather than
+ * allocating new double[][] arrays for every block read from a file.
+ * <p>
+ * Arrays are only reused for blocks of the same length, which is nearly always
+ * the case since acquisition systems read fixed size blocks. Arrays of the wrong
+ * length are simply left for the garbage collector.
+ * <p>
+ * The pool also records how many bytes of array it has allocated and reused, and
+ * the garbage collections since it was made or cleared, so the effect of pooling can
+ * be seen in the summary from toString().
+ *
+ * @see PamRawDataBlock#setBufferPooling(boolean)
+ */
+public class RawDataBufferPool {
+
+	/**
+	 * Default maximum number of arrays held per channel.
+	 */
+	public static final int DEFAULT_MAX_PER_CHANNEL = 64;
+
+	private ArrayDeque<double[]>[] channelPools;
+
+	private int maxPerChannel;
+
+	private long allocatedCount, reusedCount, releasedCount, discardedCount;
+
+	private long allocatedBytes, reusedBytes;
+
+	private long gcCountStart, gcTimeStart;
+
+	/**
+	 * Make a pool with the default maximum number of arrays per channel.
+	 */
+	public RawDataBufferPool() {
+		this(DEFAULT_MAX_PER_CHANNEL);
+	}
+
+	/**
+	 * @param maxPerChannel maximum number of arrays held per channel.
+	 */
+	@SuppressWarnings("unchecked")
+	public RawDataBufferPool(int maxPerChannel) {
+		this.maxPerChannel = maxPerChannel;
+		channelPools = new ArrayDeque[PamConstants.MAX_CHANNELS];
+		for (int i = 0; i < channelPools.length; i++) {
+			channelPools[i] = new ArrayDeque<>();
+		}
+		resetGCStart();
+	}
+
+	/**
+	 * Get an array for raw data, reusing one from the pool if possible. Note that
+	 * the content of a reused array is whatever was in it before, so the caller must
+	 * fill all of it.
+	 * @param channel channel number
+	 * @param length number of samples
+	 * @return array of length samples
+	 */
+	public synchronized double[] getBuffer(int channel, int length) {
+		ArrayDeque<double[]> pool = channelPools[channel];
+		double[] buffer;
+		while ((buffer = pool.pollLast()) != null) {
+			if (buffer.length == length) {
+				reusedCount++;
+				reusedBytes += (long) length * Double.BYTES;
+				return buffer;
+			}
+			discardedCount++;
+		}
+		allocatedCount++;
+		allocatedBytes += (long) length * Double.BYTES;
+		return new double[length];
+	}
+
+	/**
+	 * Get arrays for a block of multi channel data.
+	 * @param firstChannel channel number of the first array
+	 * @param nChannels number of channels
+	 * @param length number of samples per channel
+	 * @return array of nChannels arrays, each of length samples
+	 */
+	public synchronized double[][] getBuffers(int firstChannel, int nChannels, int length) {
+		double[][] buffers = new double[nChannels][];
+		for (int i = 0; i < nChannels; i++) {
+			buffers[i] = getBuffer(firstChannel + i, length);
+		}
+		return buffers;
+	}
+
+	/**
+	 * Return an array to the pool. The array must not be used again
+	 * by whatever had it before.
+	 * @param channel channel number
+	 * @param buffer array of raw data
+	 */
+	public synchronized void releaseBuffer(int channel, double[] buffer) {
+		if (buffer == null || channel < 0 || channel >= channelPools.length) {
+			return;
+		}
+		ArrayDeque<double[]> pool = channelPools[channel];
+		if (pool.size() < maxPerChannel) {
+			pool.addLast(buffer);
+			releasedCount++;
+		}
+		else {
+			discardedCount++;
+		}
+	}
+
+	/**
+	 * Empty the pool and reset the counters and garbage collection measurement.
+	 */
+	public synchronized void clear() {
+		for (int i = 0; i < channelPools.length; i++) {
+			channelPools[i].clear();
+		}
+		allocatedCount = reusedCount = releasedCount = discardedCount = 0;
+		allocatedBytes = reusedBytes = 0;
+		resetGCStart();
+	}
+
+	private void resetGCStart() {
+		long[] gc = getGCTotals();
+		gcCountStart = gc[0];
+		gcTimeStart = gc[1];
+	}
+
+	/**
+	 * @return total number of collections and collection time in milliseconds 
+	 * for all garbage collectors in the JVM. 
+	 */
+	private static long[] getGCTotals() {
+		long[] totals = new long[2];
+		for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			// either can be -1 if the collector doesn't support it. 
+			totals[0] += Math.max(0, gcBean.getCollectionCount());
+			totals[1] += Math.max(0, gcBean.getCollectionTime());
+		}
+		return totals;
+	}
+
+	/**
+	 * @return number of new arrays which have been allocated
+	 */
+	public synchronized long getAllocatedCount() {
+		return allocatedCount;
+	}
+
+	/**
+	 * @return number of arrays which have been reused
+	 */
+	public synchronized long getReusedCount() {
+		return reusedCount;
+	}
+
+	/**
+	 * @return number of arrays returned to the pool
+	 */
+	public synchronized long getReleasedCount() {
+		return releasedCount;
+	}
+
+	/**
+	 * @return number of arrays thrown away because the pool was full or they were the wrong length
+	 */
+	public synchronized long getDiscardedCount() {
+		return discardedCount;
+	}
+
+	/**
+	 * @return bytes of new arrays which have been allocated
+	 */
+	public synchronized long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * @return bytes of arrays which have been reused rather than allocated
+	 */
+	public synchronized long getReusedBytes() {
+		return reusedBytes;
+	}
+
+	/**
+	 * @return number of garbage collections (all collectors) since the pool was made or cleared
+	 */
+	public synchronized long getGCCount() {
+		return getGCTotals()[0] - gcCountStart;
+	}
+
+	/**
+	 * @return time spent in garbage collection in milliseconds since the pool was made or cleared
+	 */
+	public synchronized long getGCTimeMillis() {
+		return getGCTotals()[1] - gcTimeStart;
+	}
+
+	@Override
+	public synchronized String toString() {
+		long total = allocatedCount + reusedCount;
+		double pc = total == 0 ? 0 : 100. * reusedCount / total;
+		long[] gc = getGCTotals();
+		return String.format("Raw data buffers: %d allocated (%d MB), %d reused (%3.1f%%, %d MB), %d discarded; %d GCs taking %d ms",
+				allocatedCount, allocatedBytes>>20, reusedCount, pc, reusedBytes>>20, discardedCount, 
+				gc[0] - gcCountStart, gc[1] - gcTimeStart);
+	}
+
+}
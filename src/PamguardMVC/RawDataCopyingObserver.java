@@ -0,0 +1,18 @@
+package PamguardMVC;
+
+/**
+ * Marker for observers of a PamRawDataBlock which copy whatever they need out of
+ * the sample arrays of raw data units during addData and never keep a reference
+ * to the arrays themselves.
+ * <p>
+ * Raw data buffer pooling is only used if every observer of the raw data block is
+ * marked with this interface, since otherwise something might still be reading an
+ * array after its data unit has been removed from the block and the array has been
+ * handed out again for new data. Observers which hand the work on to other threads
+ * must hold the unit (RawDataUnit#holdRawData()) until they've finished with it.
+ *
+ * @see PamRawDataBlock#setBufferPooling(boolean)
+ */
+public interface RawDataCopyingObserver {
+
+}
@@ -0,0 +1,428 @@
+package PamguardMVC;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+
+import PamUtils.complex.ComplexArray;
+import clipgenerator.ClipSpectrogram;
+
+/**
+ * Global cache of spectra, analytic waveforms, filtered waveforms and spectrograms
+ * made by RawDataTransforms.
+ * <p>
+ * Without this, every data unit holds on to every transform that's been calculated for
+ * it, which with a few hundred thousand clicks loaded in the viewer can use up all the
+ * memory. Instead, when the cache is enabled, transforms are held here against the data
+ * block, data unit UID, transform type and transform parameters, up to an overall memory
+ * budget. The least recently used transforms are discarded when the budget is exceeded
+ * and will be recalculated if they are needed again.
+ * <p>
+ * Transforms are shared by anything (displays, classifiers, etc.) asking for the same 
+ * transform of the same data unit. They are only removed when the data unit's waveform is 
+ * changed (see RawDataTransforms#clearTransforms()). Freeing memory in a data unit, removing it
+ * from its data block or reloading data in the viewer leaves cached transforms in place, since 
+ * the block serial number and UID still identify the same data when it's reloaded. Anything no 
+ * longer wanted is discarded by the memory budget. 
+ * <p>
+ * Data blocks are identified by a serial number rather than held in the keys, so the cache
+ * never stops a data block which is no longer used from being garbage collected. 
+ * <p>
+ * The cache is disabled (budget 0) by default, in which case RawDataTransforms holds
+ * transforms with each data unit as before.
+ *
+ * @see RawDataTransforms
+ */
+public class RawDataTransformCache {
+
+	/**
+	 * Rough overhead for each cached entry, for the key, map entry and array headers.
+	 */
+	private static final long ENTRY_OVERHEAD = 128;
+
+	private static final RawDataTransformCache singleInstance = new RawDataTransformCache();
+
+	/**
+	 * Read without locking by isEnabled(), which is called every time a transform is requested. 
+	 */
+	private volatile long budgetBytes;
+
+	private long bytesHeld;
+
+	private long hits, misses, evictions;
+
+	private LinkedHashMap<TransformKey, CacheEntry> cache = new LinkedHashMap<>(1024, 0.75f, true);
+
+	/**
+	 * Keys of everything held for each data unit, so that they can be removed without
+	 * searching the whole cache. 
+	 */
+	private HashMap<UnitKey, ArrayList<TransformKey>> unitIndex = new HashMap<>();
+
+	/**
+	 * Serial numbers for data blocks which have had transforms cached. 
+	 */
+	private WeakHashMap<PamDataBlock, Long> blockIds = new WeakHashMap<>();
+
+	private long nextBlockId = 1;
+
+	private RawDataTransformCache() {
+	}
+
+	/**
+	 * @return the global transform cache
+	 */
+	public static RawDataTransformCache getInstance() {
+		return singleInstance;
+	}
+
+	/**
+	 * Types of cached transform
+	 */
+	public enum TransformType {POWERSPECTRUM, TOTALPOWERSPECTRUM, COMPLEXSPECTRUM, ANALYTICWAVEFORM,
+		FILTEREDWAVEFORM, SPECTROGRAM}
+
+	/**
+	 * Identifies a data unit by data block serial number and UID. 
+	 */
+	private static class UnitKey {
+
+		private long blockId;
+
+		private long uid;
+
+		private UnitKey(long blockId, long uid) {
+			this.blockId = blockId;
+			this.uid = uid;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * Long.hashCode(blockId) + Long.hashCode(uid);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof UnitKey == false) {
+				return false;
+			}
+			UnitKey other = (UnitKey) obj;
+			return other.blockId == blockId && other.uid == uid;
+		}
+	}
+
+	private static class TransformKey {
+
+		private UnitKey unitKey;
+
+		private TransformType type;
+
+		private int channel;
+
+		private Object[] params;
+
+		private int hash;
+
+		private TransformKey(UnitKey unitKey, TransformType type, int channel, Object[] params) {
+			this.unitKey = unitKey;
+			this.type = type;
+			this.channel = channel;
+			this.params = params;
+			int h = unitKey.hashCode();
+			h = 31 * h + type.hashCode();
+			h = 31 * h + channel;
+			hash = 31 * h + Arrays.hashCode(params);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof TransformKey == false) {
+				return false;
+			}
+			TransformKey other = (TransformKey) obj;
+			return other.unitKey.equals(unitKey) && other.type == type && other.channel == channel
+					&& Arrays.equals(other.params, params);
+		}
+	}
+
+	private static class CacheEntry {
+
+		private Object value;
+
+		private long bytes;
+
+		private CacheEntry(Object value, long bytes) {
+			this.value = value;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * @return true if the cache is enabled.
+	 */
+	public boolean isEnabled() {
+		return budgetBytes > 0;
+	}
+
+	/**
+	 * Set the memory budget. Setting this to 0 disables the cache and
+	 * discards everything in it.
+	 * @param budgetBytes maximum size of cached transforms in bytes
+	 */
+	public synchronized void setBudgetBytes(long budgetBytes) {
+		this.budgetBytes = Math.max(budgetBytes, 0);
+		trim();
+	}
+
+	/**
+	 * @return the memory budget in bytes.
+	 */
+	public long getBudgetBytes() {
+		return budgetBytes;
+	}
+
+	/**
+	 * Get a transform from the cache, calculating it if it isn't there.
+	 * @param dataUnit data unit the transform is for. Must be in a data block and have a UID.
+	 * @param type transform type
+	 * @param channel channel index, or -1 if the transform is for all channels
+	 * @param params parameters which affect the transform, such as FFT length. These must
+	 * have equals and hashCode implemented by value, so should normally be numbers.
+	 * @param maker calculates the transform on a miss.
+	 * @return transform, or null if it couldn't be calculated.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(PamDataUnit dataUnit, TransformType type, int channel, Object[] params, Supplier<T> maker) {
+		TransformKey key;
+		synchronized (this) {
+			key = new TransformKey(getUnitKey(dataUnit, true), type, channel, params);
+			CacheEntry entry = cache.get(key);
+			if (entry != null) {
+				hits++;
+				return (T) entry.value;
+			}
+			misses++;
+		}
+		/*
+		 * Calculate outside the lock so that one slow transform doesn't hold up everything
+		 * else. Two threads may occasionally both calculate the same thing, in which case the
+		 * second result replaces the first.
+		 */
+		T value = maker.get();
+		long bytes = value == null ? 0 : sizeOf(value);
+		synchronized (this) {
+			/*
+			 * Don't keep it if the data unit was invalidated while it was being calculated, 
+			 * since it may have been made from the old waveform. 
+			 */
+			if (value != null && budgetBytes > 0 && bytes <= budgetBytes && unitIndex.containsKey(key.unitKey)) {
+				CacheEntry old = cache.put(key, new CacheEntry(value, bytes));
+				if (old != null) {
+					bytesHeld -= old.bytes;
+				}
+				else {
+					unitIndex.get(key.unitKey).add(key);
+				}
+				bytesHeld += bytes;
+				trim();
+			}
+			else {
+				ArrayList<TransformKey> unitKeys = unitIndex.get(key.unitKey);
+				if (unitKeys != null && unitKeys.isEmpty()) {
+					unitIndex.remove(key.unitKey);
+				}
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Get a transform if it's in the cache, without calculating it.
+	 * @param dataUnit data unit
+	 * @param type transform type
+	 * @param channel channel index
+	 * @param params transform parameters
+	 * @return transform or null
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized <T> T peek(PamDataUnit dataUnit, TransformType type, int channel, Object[] params) {
+		UnitKey unitKey = getUnitKey(dataUnit, false);
+		if (unitKey == null) {
+			return null;
+		}
+		CacheEntry entry = cache.get(new TransformKey(unitKey, type, channel, params));
+		return entry == null ? null : (T) entry.value;
+	}
+
+	/**
+	 * Get the key for a data unit. When creating a key, the data unit is also added to 
+	 * the unit index, which marks it as being OK to cache transforms for. 
+	 * @param dataUnit data unit
+	 * @param create create a new key if one doesn't exist
+	 * @return key, or null if create is false and nothing is held for the data unit. 
+	 */
+	private UnitKey getUnitKey(PamDataUnit dataUnit, boolean create) {
+		PamDataBlock dataBlock = dataUnit.getParentDataBlock();
+		Long blockId = blockIds.get(dataBlock);
+		if (blockId == null) {
+			if (create == false) {
+				return null;
+			}
+			blockId = nextBlockId++;
+			blockIds.put(dataBlock, blockId);
+		}
+		UnitKey unitKey = new UnitKey(blockId, dataUnit.getUID());
+		if (create) {
+			unitIndex.computeIfAbsent(unitKey, k -> new ArrayList<>(2));
+		}
+		else if (unitIndex.containsKey(unitKey) == false) {
+			return null;
+		}
+		return unitKey;
+	}
+
+	/**
+	 * Remove everything held for a data unit, e.g. if its waveform has changed. 
+	 * @param dataUnit data unit
+	 */
+	public void remove(PamDataUnit dataUnit) {
+		if (isEnabled() == false || dataUnit.getParentDataBlock() == null) {
+			return;
+		}
+		synchronized (this) {
+			UnitKey unitKey = getUnitKey(dataUnit, false);
+			if (unitKey == null) {
+				return;
+			}
+			for (TransformKey key : unitIndex.remove(unitKey)) {
+				CacheEntry entry = cache.remove(key);
+				if (entry != null) {
+					bytesHeld -= entry.bytes;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Discard everything.
+	 */
+	public synchronized void clear() {
+		cache.clear();
+		unitIndex.clear();
+		bytesHeld = 0;
+	}
+
+	/**
+	 * Remove least recently used transforms until within budget.
+	 */
+	private void trim() {
+		Iterator<Map.Entry<TransformKey, CacheEntry>> it = cache.entrySet().iterator();
+		while (bytesHeld > budgetBytes && it.hasNext()) {
+			Map.Entry<TransformKey, CacheEntry> entry = it.next();
+			bytesHeld -= entry.getValue().bytes;
+			it.remove();
+			ArrayList<TransformKey> unitKeys = unitIndex.get(entry.getKey().unitKey);
+			if (unitKeys != null) {
+				unitKeys.remove(entry.getKey());
+				if (unitKeys.isEmpty()) {
+					unitIndex.remove(entry.getKey().unitKey);
+				}
+			}
+			evictions++;
+		}
+		if (budgetBytes == 0) {
+			unitIndex.clear();
+		}
+	}
+
+	/**
+	 * Estimate the memory used by a transform.
+	 * @param value transform
+	 * @return approximate size in bytes.
+	 */
+	private static long sizeOf(Object value) {
+		long bytes = ENTRY_OVERHEAD;
+		if (value instanceof double[]) {
+			bytes += 8L * ((double[]) value).length;
+		}
+		else if (value instanceof double[][]) {
+			for (double[] d : (double[][]) value) {
+				if (d != null) {
+					bytes += 16 + 8L * d.length;
+				}
+			}
+		}
+		else if (value instanceof ComplexArray) {
+			bytes += 16L * ((ComplexArray) value).length();
+		}
+		else if (value instanceof ClipSpectrogram) {
+			ArrayList<double[][]> spec = ((ClipSpectrogram) value).getSpectrogram();
+			if (spec != null) {
+				for (double[][] s : spec) {
+					bytes += sizeOf(s);
+				}
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return the number of bytes currently held.
+	 */
+	public synchronized long getBytesHeld() {
+		return bytesHeld;
+	}
+
+	/**
+	 * @return the number of transforms currently held.
+	 */
+	public synchronized int getEntryCount() {
+		return cache.size();
+	}
+
+	/**
+	 * @return the number of requests found in the cache.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of requests which had to be calculated.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the number of transforms discarded to keep within the budget.
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Reset the hit, miss and eviction counts.
+	 */
+	public synchronized void resetStats() {
+		hits = misses = evictions = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		double hitRate = hits + misses == 0 ? 0 : 100. * hits / (hits + misses);
+		return String.format("Transform cache: %d transforms, %3.1f of %3.1f MBytes, %d hits, %d misses (%3.1f%% hit rate), %d evictions",
+				cache.size(), bytesHeld / 1048576., budgetBytes / 1048576., hits, misses, hitRate, evictions);
+	}
+
+}
@@ -3,11 +3,13 @@ package PamguardMVC;
 import java.util.Arrays;
 
 import PamUtils.PamUtils;
+import PamguardMVC.RawDataTransformCache.TransformType;
 import PamUtils.complex.ComplexArray;
 import clickDetector.ClickDetection;
 import clipgenerator.ClipSpectrogram;
 import fftFilter.FFTFilter;
 import fftFilter.FFTFilterParams;
+import fftManager.FFTService;
 import fftManager.FastFFT;
 import signal.Hilbert;
 
@@ -16,6 +18,10 @@ import signal.Hilbert;
  * data unit that implements RawDataHolder. 
  * <p>
  * This provides similar functionality to the many functions in ClickDetection without the need for repeating code. 
+ * <p>
+ * If the global RawDataTransformCache is enabled, spectra, analytic and filtered waveforms and 
+ * spectrograms are held there rather than in this object, so that memory use is limited and 
+ * transforms can be shared between anything using the same data unit. 
  * @author Jamie Macaulay 
  *
  */
@@ -122,12 +128,33 @@ public class RawDataTransforms {
 	}
 
 
+	/**
+	 * Get the global transform cache if it's enabled and this data unit 
+	 * can be identified in it. 
+	 * @return transform cache or null if transforms should be held locally. 
+	 */
+	private RawDataTransformCache getTransformCache() {
+		RawDataTransformCache cache = RawDataTransformCache.getInstance();
+		if (cache.isEnabled() && dataUnit.getParentDataBlock() != null && dataUnit.getUID() != 0) {
+			return cache;
+		}
+		return null;
+	}
+
 	/**
 	 * Get the power spectrum. 
 	 * @return the power spectrum.
 	 */
 	public double[][] getPowerSpectrum(int fftLength){
-		for (int i=0; i<PamUtils.getNumChannels(dataUnit.getChannelBitmap()); i++){
+		int nChan = PamUtils.getNumChannels(dataUnit.getChannelBitmap());
+		if (getTransformCache() != null) {
+			double[][] spectra = new double[nChan][];
+			for (int i=0; i<nChan; i++){
+				spectra[i] = getPowerSpectrum(i, fftLength); 
+			}
+			return spectra;
+		}
+		for (int i=0; i<nChan; i++){
 			getPowerSpectrum(i, fftLength); 
 		}
 		return powerSpectra; 
@@ -192,37 +219,48 @@ public class RawDataTransforms {
 	 */
 	public  double[] getPowerSpectrum(int channel, int fftLength, boolean Hann) {
 		synchronized (synchObject) {
-			if (powerSpectra == null) {
-				powerSpectra = new double[PamUtils.getNumChannels(dataUnit.getChannelBitmap())][];
-			}
 			if (fftLength == 0) {
 				fftLength = getCurrentSpectrumLength();
 			}
+			RawDataTransformCache cache = getTransformCache();
+			if (cache != null) {
+				currentSpecLen = fftLength;
+				int len = fftLength;
+				return cache.get(dataUnit, TransformType.POWERSPECTRUM, channel, new Object[] {len, Hann}, 
+						() -> makePowerSpectrum(channel, len, Hann));
+			}
+			if (powerSpectra == null) {
+				powerSpectra = new double[PamUtils.getNumChannels(dataUnit.getChannelBitmap())][];
+			}
 
 			if (powerSpectra[channel] == null
 					|| powerSpectra[channel].length != fftLength / 2) {
-				ComplexArray cData;
-				if (Hann) {
-					cData = getComplexSpectrumHann(channel, fftLength);
-				}
-				else {
-					cData = getComplexSpectrum(channel, fftLength);
-				}
 				currentSpecLen = fftLength;
-				powerSpectra[channel] = cData.magsq();
-				if (powerSpectra==null){
-					System.err.println("RawDataTransforms: could not calculate power spectra");
-					return null;
-
-				}
-				if (powerSpectra[channel].length != fftLength/2) {
-					powerSpectra[channel] = Arrays.copyOf(powerSpectra[channel], fftLength/2);
-				}
+				powerSpectra[channel] = makePowerSpectrum(channel, fftLength, Hann);
 			}
 			return powerSpectra[channel];
 		}
 	}
 
+	private double[] makePowerSpectrum(int channel, int fftLength, boolean Hann) {
+		ComplexArray cData;
+		if (Hann) {
+			cData = getComplexSpectrumHann(channel, fftLength);
+		}
+		else {
+			cData = getComplexSpectrum(channel, fftLength);
+		}
+		double[] powerSpectrum = cData.magsq();
+		if (powerSpectrum == null){
+			System.err.println("RawDataTransforms: could not calculate power spectra");
+			return null;
+		}
+		if (powerSpectrum.length != fftLength/2) {
+			powerSpectrum = Arrays.copyOf(powerSpectrum, fftLength/2);
+		}
+		return powerSpectrum;
+	}
+
 	/**
 	 * Returns the power spectrum for a given channel (square of magnitude of
 	 * complex spectrum)
@@ -251,21 +289,32 @@ public class RawDataTransforms {
 			if (fftLength == 0) {
 				fftLength = PamUtils.getMinFftLength(getSampleDuration());
 			}
-			double[] ps;
+			RawDataTransformCache cache = getTransformCache();
+			if (cache != null) {
+				int len = fftLength;
+				return cache.get(dataUnit, TransformType.TOTALPOWERSPECTRUM, -1, new Object[] {len}, 
+						() -> makeTotalPowerSpectrum(len));
+			}
 			if (totalPowerSpectrum == null
 					|| totalPowerSpectrum.length != fftLength / 2) {
-				totalPowerSpectrum = new double[fftLength / 2];
-				for (int c = 0; c < PamUtils.getNumChannels(this.dataUnit.getChannelBitmap()); c++) {
-					ps = getPowerSpectrum(c, fftLength);
-					for (int i = 0; i < fftLength / 2; i++) {
-						totalPowerSpectrum[i] += ps[i];
-					}
-				}
+				totalPowerSpectrum = makeTotalPowerSpectrum(fftLength);
 			}
 			return totalPowerSpectrum;
 		}
 	}
 
+	private double[] makeTotalPowerSpectrum(int fftLength) {
+		double[] ps;
+		double[] total = new double[fftLength / 2];
+		for (int c = 0; c < PamUtils.getNumChannels(this.dataUnit.getChannelBitmap()); c++) {
+			ps = getPowerSpectrum(c, fftLength);
+			for (int i = 0; i < fftLength / 2; i++) {
+				total[i] += ps[i];
+			}
+		}
+		return total;
+	}
+
 
 
 
@@ -280,6 +329,12 @@ public class RawDataTransforms {
 	 */
 	public ComplexArray getComplexSpectrumHann(int channel, int fftLength) {
 		synchronized (synchObject) {
+			RawDataTransformCache cache = getTransformCache();
+			if (cache != null) {
+				currentSpecLen = fftLength;
+				return cache.get(dataUnit, TransformType.COMPLEXSPECTRUM, channel, new Object[] {fftLength, true}, 
+						() -> getComplexSpectrumHann(rawData.getWaveData()[channel], fftLength));
+			}
 			complexSpectrum = new ComplexArray[PamUtils.getNumChannels(dataUnit.getChannelBitmap())];
 			if (complexSpectrum[channel] == null
 					|| complexSpectrum.length != fftLength / 2) {
@@ -315,9 +370,7 @@ public class RawDataTransforms {
 			paddedRawData[i] = 0;
 		}
 
-		FastFFT fastFFT = new FastFFT();
-
-		complexSpectrum= fastFFT.rfft(paddedRawData, fftLength);
+		complexSpectrum= FFTService.getInstance().rfftInPlace(paddedRawData);
 		return complexSpectrum;		
 	}
 
@@ -356,6 +409,14 @@ public class RawDataTransforms {
 	 * @return a spectrogram clip (dB/Hz ).
 	 */
 	public ClipSpectrogram getSpectrogram(int fftSize, int fftHop, int windowType) {
+		RawDataTransformCache cache = getTransformCache();
+		if (cache != null) {
+			return cache.get(dataUnit, TransformType.SPECTROGRAM, -1, new Object[] {fftSize, fftHop, windowType}, () -> {
+				ClipSpectrogram spectrogram = new ClipSpectrogram(dataUnit); 
+				spectrogram.calcSpectrogram(rawData.getWaveData(), fftSize, fftHop, windowType); 
+				return spectrogram;
+			});
+		}
 		if (dlSpectrogram==null || dlSpectrogram.getFFTHop()!=fftHop || dlSpectrogram.getFFTSize()!=fftSize ||  dlSpectrogram.getWindowType()!=windowType) {
 			dlSpectrogram = new ClipSpectrogram(dataUnit); 
 			dlSpectrogram.calcSpectrogram(rawData.getWaveData(), fftSize, fftHop, windowType); 
@@ -391,7 +452,8 @@ public class RawDataTransforms {
 		}
 		int fftLength = cepLength * 2;
 		//		int logFFTLength = FastFFT.log2(fftLength);
-		ComplexArray spec = getComplexSpectrum(channel, fftLength);
+		// copy, since the ifft is done in place and the spectrum may be cached. 
+		ComplexArray spec = getComplexSpectrum(channel, fftLength).clone();
 		// the complex spec will have been returned at half the fft length. We need the whole thing
 		// back and also it's log amplitude !
 		ComplexArray specData = new ComplexArray(fftLength);
@@ -418,39 +480,47 @@ public class RawDataTransforms {
 	 */
 	public ComplexArray getComplexSpectrum(int channel, int fftLength) {
 		synchronized (synchObject) {
-			double[] paddedRawData;
-			double[] rawData;
-			int i, mn;
-
+			RawDataTransformCache cache = getTransformCache();
+			if (cache != null) {
+				return cache.get(dataUnit, TransformType.COMPLEXSPECTRUM, channel, new Object[] {fftLength, false}, 
+						() -> makeComplexSpectrum(channel, fftLength));
+			}
 			if (complexSpectrum == null) {
 				complexSpectrum = new ComplexArray[getNChan()];
 			}
 			if (complexSpectrum[channel] == null
 					|| complexSpectrum.length != fftLength / 2) {
-				paddedRawData = new double[fftLength];
-				rawData = getWaveData(channel);
-				//double[] rotData = getRotationCorrection(channel);
-
-				/**
-				 *FIXME
-				 * 11/07 Changed from getSampleDuration because an error sometimes occurs where the sample duration
-				 * is not the same as the wavefom length...not sure why. 
-				 */
-				//mn = Math.min(fftLength, getSampleDuration().intValue());
-				mn = Math.min(fftLength, rawData.length);
-				//				System.out.println("fftLength: " + rawData.length + " " + getSampleDuration().intValue() + " mn " +mn);
-				for (i = 0; i < mn; i++) {
-					paddedRawData[i] = rawData[i];//-rotData[i];
-				}
-				for (i = mn; i < fftLength; i++) {
-					paddedRawData[i] = 0;
-				}
-				complexSpectrum[channel] = fastFFT.rfft(paddedRawData, fftLength);
+				complexSpectrum[channel] = makeComplexSpectrum(channel, fftLength);
 			}
 			return complexSpectrum[channel];
 		}
 	}
 
+	private ComplexArray makeComplexSpectrum(int channel, int fftLength) {
+		double[] paddedRawData;
+		double[] rawData;
+		int i, mn;
+		paddedRawData = new double[fftLength];
+		rawData = getWaveData(channel);
+		//double[] rotData = getRotationCorrection(channel);
+
+		/**
+		 *FIXME
+		 * 11/07 Changed from getSampleDuration because an error sometimes occurs where the sample duration
+		 * is not the same as the wavefom length...not sure why. 
+		 */
+		//mn = Math.min(fftLength, getSampleDuration().intValue());
+		mn = Math.min(fftLength, rawData.length);
+		//				System.out.println("fftLength: " + rawData.length + " " + getSampleDuration().intValue() + " mn " +mn);
+		for (i = 0; i < mn; i++) {
+			paddedRawData[i] = rawData[i];//-rotData[i];
+		}
+		for (i = mn; i < fftLength; i++) {
+			paddedRawData[i] = 0;
+		}
+		return FFTService.getInstance().rfftInPlace(paddedRawData);
+	}
+
 
 	/**
 	 * Get the analytic waveform for  a given channel
@@ -459,6 +529,11 @@ public class RawDataTransforms {
 	 */
 	public double[] getAnalyticWaveform(int iChan) {
 		synchronized (synchObject) {
+			RawDataTransformCache cache = getTransformCache();
+			if (cache != null) {
+				return cache.get(dataUnit, TransformType.ANALYTICWAVEFORM, iChan, new Object[0], 
+						() -> hilbert.getHilbert(getWaveData(iChan)));
+			}
 			if (analyticWaveform == null) {
 				analyticWaveform = new double[getNChan()][];
 			}
@@ -499,6 +574,11 @@ public class RawDataTransforms {
 
 	public double[] getFilteredAnalyticWaveform(FFTFilterParams fftFilterParams, int iChan) {
 		synchronized (synchObject) {
+			RawDataTransformCache cache = getTransformCache();
+			if (cache != null) {
+				return cache.get(dataUnit, TransformType.ANALYTICWAVEFORM, iChan, getFilterKey(fftFilterParams), 
+						() -> hilbert.getHilbert(getFilteredWaveData(fftFilterParams, iChan)));
+			}
 			if (analyticWaveform == null) {
 				analyticWaveform = new double[getNChan()][];
 			}
@@ -517,6 +597,14 @@ public class RawDataTransforms {
 	 * @return analystic waveforms 
 	 */
 	public double[][] getFilteredAnalyticWaveform(FFTFilterParams fftFilterParams) {
+		if (getTransformCache() != null) {
+			double[][] waveforms = new double[getNChan()][];
+			for (int iChan = 0; iChan < getNChan(); iChan++) {
+				waveforms[iChan] = fftFilterParams == null ? getAnalyticWaveform(iChan) : 
+					getFilteredAnalyticWaveform(fftFilterParams, iChan);
+			}
+			return waveforms;
+		}
 		if (analyticWaveform == null) {
 			analyticWaveform = new double[getNChan()][];
 		}
@@ -543,8 +631,11 @@ public class RawDataTransforms {
 
 	public double[] getFilteredWaveData(FFTFilterParams filterParams, int channelIndex) {
 		synchronized (synchObject) {
-			filteredWaveData = getFilteredWaveData(filterParams);
-			return filteredWaveData[channelIndex];
+			double[][] filtered = getFilteredWaveData(filterParams);
+			if (getTransformCache() == null) {
+				filteredWaveData = filtered;
+			}
+			return filtered[channelIndex];
 		}
 	}
 
@@ -558,13 +649,32 @@ public class RawDataTransforms {
 	public double[][] getFilteredWaveData(FFTFilterParams filterParams) {
 		synchronized (synchObject) {
 			//System.out.println("Make filterred wave data!: " + (filterParams != oldFFTFilterParams));
+			RawDataTransformCache cache = getTransformCache();
+			if (cache != null) {
+				return cache.get(dataUnit, TransformType.FILTEREDWAVEFORM, -1, getFilterKey(filterParams), 
+						() -> makeFilteredWaveData(filterParams));
+			}
 			if (filteredWaveData == null || filterParams != oldFFTFilterParams) {
 				filteredWaveData = makeFilteredWaveData(filterParams);
+				oldFFTFilterParams = filterParams;
 			}
 			return filteredWaveData;
 		}
 	}
 
+	/**
+	 * Make a cache key for filtered data. Filter parameters may be changed
+	 * in place, so the key is made from their values, not the object.  
+	 * @param filterParams filter parameters
+	 * @return values which affect the filtered data
+	 */
+	private Object[] getFilterKey(FFTFilterParams filterParams) {
+		if (filterParams == null) {
+			return new Object[] {getSampleRate()};
+		}
+		return new Object[] {filterParams.filterBand, filterParams.lowPassFreq, filterParams.highPassFreq, getSampleRate()};
+	}
+
 	private double[][] makeFilteredWaveData(FFTFilterParams filterParams) {
 		double[][] waveData = this.rawData.getWaveData();
 		if (waveData == null || waveData[0].length == 0) {
@@ -581,13 +691,12 @@ public class RawDataTransforms {
 		}
 		int nChan = waveData.length;
 		int dataLen = waveData[0].length;
-		filteredWaveData = new double[nChan][dataLen];
+		double[][] filtered = new double[nChan][dataLen];
 		FFTFilter filter = getFFTFilter(filterParams);
 		for (int i = 0; i < nChan; i++) {
-			filter.runFilter(rotData[i], filteredWaveData[i]);
+			filter.runFilter(rotData[i], filtered[i]);
 		}
-		oldFFTFilterParams = filterParams;
-		return filteredWaveData;
+		return filtered;
 	}
 
 	//	private FFTFilter getFFTFilter(FFTFilterParams filterParams) {
@@ -690,6 +799,18 @@ public class RawDataTransforms {
 	 * @return the current power spectra
 	 */
 	public double[][] getCurrentPowerSpectra() {
+		RawDataTransformCache cache = getTransformCache();
+		if (cache != null && currentSpecLen > 0) {
+			int nChan = PamUtils.getNumChannels(dataUnit.getChannelBitmap());
+			double[][] spectra = new double[nChan][];
+			for (int i = 0; i < nChan; i++) {
+				spectra[i] = cache.peek(dataUnit, TransformType.POWERSPECTRUM, i, new Object[] {currentSpecLen, true});
+				if (spectra[i] == null) {
+					return null;
+				}
+			}
+			return spectra;
+		}
 		return powerSpectra;
 	}
 
@@ -712,6 +833,8 @@ public class RawDataTransforms {
 
 	/**
 	 * Free eup some memory by deleting the filtered wave data, power spectra and analytic waveform. 
+	 * Only transforms held in this object are dropped. Anything in the RawDataTransformCache is 
+	 * left there, since it's already within the cache memory budget. 
 	 */
 	public void freeMemory() {
 		filteredWaveData = null;
@@ -719,6 +842,22 @@ public class RawDataTransforms {
 		analyticWaveform = null;
 	}
 
+	/**
+	 * Discard all transforms, whether held here or in the RawDataTransformCache. Must be
+	 * called whenever the waveform of the data unit is changed. 
+	 */
+	public void clearTransforms() {
+		synchronized (synchObject) {
+			powerSpectra = null;
+			totalPowerSpectrum = null;
+			complexSpectrum = null;
+			analyticWaveform = null;
+			filteredWaveData = null;
+			dlSpectrogram = null;
+		}
+		RawDataTransformCache.getInstance().remove(dataUnit);
+	}
+
 
 
 
@@ -0,0 +1,310 @@
+package PamguardMVC;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Per channel circular buffer of raw samples, indexed by absolute sample number.
+ * <p>
+ * When enabled in a PamRawDataBlock, every RawDataUnit added to the block is also
+ * copied into this buffer, so that a range of samples can be read with an offset
+ * calculation and one or two array copies, rather than by searching the list of data
+ * units and stitching them together sample by sample.
+ * <p>
+ * There is a single writer (the thread adding data to the raw data block) and any
+ * number of readers. Readers don't take a lock, so never hold up the writer. Instead,
+ * after copying data they check whether the writer has moved far enough on in the
+ * meantime to have overwritten any of the samples they copied, in which case the read
+ * fails and the caller can fall back to the data units. Restarting a channel (see below)
+ * is guarded by a sequence lock, so a read which overlaps a restart also fails.
+ * <p>
+ * If a unit arrives which doesn't follow on from the last sample of that channel
+ * (e.g. data were dropped, or sample numbers restarted) the channel is restarted from
+ * the new sample and older samples are no longer available from the buffer.
+ * <p>
+ * The total memory used by all channels is limited. Channels which would take the total
+ * over the limit are not buffered, so reads for them always return READ_NOT_HELD and
+ * callers use the data units instead.
+ *
+ * @see PamRawDataBlock#setSampleBuffer(boolean)
+ */
+public class RawSampleRingBuffer {
+
+	/**
+	 * All requested samples were copied
+	 */
+	public static final int READ_OK = 0;
+
+	/**
+	 * Some of the requested samples haven't arrived yet
+	 */
+	public static final int READ_NOT_ARRIVED = 1;
+
+	/**
+	 * Some of the requested samples are no longer (or never were) in the buffer.
+	 */
+	public static final int READ_NOT_HELD = 2;
+
+	/**
+	 * Largest buffer length in samples per channel.
+	 */
+	public static final int MAX_CAPACITY = 1<<26;
+
+	/**
+	 * Default limit on the memory used by all channels together, in bytes.
+	 */
+	public static final long DEFAULT_MAX_TOTAL_BYTES = 1L<<29;
+
+	private int capacity;
+
+	private long maxTotalBytes;
+
+	/**
+	 * Bytes allocated so far. Only changed by the writer.
+	 */
+	private long totalBytes;
+
+	/**
+	 * Channels which couldn't be buffered without exceeding maxTotalBytes.
+	 */
+	private boolean[] refused = new boolean[PamConstants.MAX_CHANNELS];
+
+	private int mask;
+
+	private AtomicReferenceArray<ChannelRing> channels = new AtomicReferenceArray<>(PamConstants.MAX_CHANNELS);
+
+	private AtomicLong readsOK = new AtomicLong(), readsNotArrived = new AtomicLong(), readsNotHeld = new AtomicLong();
+
+	/**
+	 * @param minSamples minimum number of samples to hold per channel. This is
+	 * rounded up to a power of 2.
+	 */
+	public RawSampleRingBuffer(long minSamples) {
+		this(minSamples, DEFAULT_MAX_TOTAL_BYTES);
+	}
+
+	/**
+	 * @param minSamples minimum number of samples to hold per channel. This is
+	 * rounded up to a power of 2.
+	 * @param maxTotalBytes maximum memory to use for all channels together. 
+	 */
+	public RawSampleRingBuffer(long minSamples, long maxTotalBytes) {
+		this.maxTotalBytes = maxTotalBytes;
+		capacity = 1024;
+		while (capacity < minSamples && capacity < MAX_CAPACITY) {
+			capacity <<= 1;
+		}
+		mask = capacity-1;
+	}
+
+	/**
+	 * Samples for a single channel. start, end and generation are only changed by the
+	 * writer.
+	 */
+	private class ChannelRing {
+
+		private double[] data = new double[capacity];
+
+		/**
+		 * First sample written since the channel was last restarted.
+		 */
+		private volatile long start;
+
+		/**
+		 * One past the last sample that has been completely written.
+		 */
+		private volatile long end;
+
+		/**
+		 * One past the last sample that may be in the process of being written.
+		 * Set before the data are copied in, so readers can tell what might
+		 * have been overwritten.
+		 */
+		private volatile long writeLimit;
+
+		/**
+		 * Sequence lock for restarts. Odd while start, end and writeLimit are being
+		 * reset and even otherwise, so readers can tell if they may have seen a mix 
+		 * of old and new values. 
+		 */
+		private volatile int generation;
+
+		private void restart(long startSample) {
+			generation++;
+			start = end = writeLimit = startSample;
+			generation++;
+		}
+	}
+
+	/**
+	 * Add samples for a channel. Must only be called from one thread.
+	 * @param channel channel number
+	 * @param startSample sample number of the first sample
+	 * @param samples sample data
+	 * @param n number of samples to add from the start of the array
+	 */
+	public void write(int channel, long startSample, double[] samples, int n) {
+		if (samples == null || n <= 0) {
+			return;
+		}
+		ChannelRing ring = channels.get(channel);
+		if (ring == null) {
+			if (refused[channel]) {
+				return;
+			}
+			long ringBytes = (long) capacity * Double.BYTES;
+			if (totalBytes + ringBytes > maxTotalBytes) {
+				refused[channel] = true;
+				return;
+			}
+			totalBytes += ringBytes;
+			ring = new ChannelRing();
+			ring.restart(startSample);
+			channels.set(channel, ring);
+		}
+		else if (startSample != ring.end) {
+			ring.restart(startSample);
+		}
+		int offset = 0;
+		if (n > capacity) {
+			// only the last capacity samples will fit.
+			offset = n - capacity;
+			ring.restart(startSample + offset);
+			n = capacity;
+		}
+		long first = startSample + offset;
+		ring.writeLimit = first + n;
+		// readers must see the new write limit before any of the new data.
+		VarHandle.storeStoreFence();
+		int pos = (int) (first & mask);
+		int n1 = Math.min(n, capacity - pos);
+		System.arraycopy(samples, offset, ring.data, pos, n1);
+		if (n1 < n) {
+			System.arraycopy(samples, offset + n1, ring.data, 0, n - n1);
+		}
+		ring.end = first + n;
+	}
+
+	/**
+	 * Copy samples for one channel into an array.
+	 * @param channel channel number
+	 * @param startSample first sample wanted
+	 * @param dest destination array
+	 * @param destPos first position to fill in the destination array
+	 * @param n number of samples
+	 * @return READ_OK, READ_NOT_ARRIVED or READ_NOT_HELD.
+	 */
+	public int read(int channel, long startSample, double[] dest, int destPos, int n) {
+		ChannelRing ring = channels.get(channel);
+		if (ring == null) {
+			readsNotHeld.incrementAndGet();
+			return READ_NOT_HELD;
+		}
+		int generation = ring.generation;
+		if ((generation & 1) != 0) {
+			// the channel is being restarted. 
+			readsNotHeld.incrementAndGet();
+			return READ_NOT_HELD;
+		}
+		long end = ring.end;
+		if (startSample + n > end) {
+			readsNotArrived.incrementAndGet();
+			return READ_NOT_ARRIVED;
+		}
+		if (startSample < getFirstHeld(ring.start, end)) {
+			readsNotHeld.incrementAndGet();
+			return READ_NOT_HELD;
+		}
+		int pos = (int) (startSample & mask);
+		int n1 = Math.min(n, capacity - pos);
+		System.arraycopy(ring.data, pos, dest, destPos, n1);
+		if (n1 < n) {
+			System.arraycopy(ring.data, 0, dest, destPos + n1, n - n1);
+		}
+		/*
+		 * Make sure the copy is complete before checking whether the writer
+		 * has restarted the channel or overwritten any of it.
+		 */
+		VarHandle.acquireFence();
+		if (ring.generation != generation || startSample < ring.writeLimit - capacity) {
+			readsNotHeld.incrementAndGet();
+			return READ_NOT_HELD;
+		}
+		readsOK.incrementAndGet();
+		return READ_OK;
+	}
+
+	private long getFirstHeld(long start, long end) {
+		return Math.max(start, end - capacity);
+	}
+
+	/**
+	 * @param channel channel number
+	 * @return the first sample for a channel which can currently be read, or -1 if
+	 * there are no data for that channel.
+	 */
+	public long getFirstSample(int channel) {
+		ChannelRing ring = channels.get(channel);
+		if (ring == null) {
+			return -1;
+		}
+		return getFirstHeld(ring.start, ring.end);
+	}
+
+	/**
+	 * @param channel channel number
+	 * @return one past the last sample written for a channel, or -1 if there are no
+	 * data for that channel.
+	 */
+	public long getEndSample(int channel) {
+		ChannelRing ring = channels.get(channel);
+		if (ring == null) {
+			return -1;
+		}
+		return ring.end;
+	}
+
+	/**
+	 * @return the number of samples held per channel.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Discard all data. Must be called from the writing thread, or when nothing is
+	 * being written.
+	 */
+	public void clear() {
+		for (int i = 0; i < channels.length(); i++) {
+			ChannelRing ring = channels.get(i);
+			if (ring != null) {
+				ring.restart(0);
+			}
+		}
+	}
+
+	/**
+	 * @return total memory allocated for all channels in bytes. 
+	 */
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * @param channel channel number
+	 * @return true if the channel is not being buffered because the buffers for
+	 * other channels already use the maximum total memory. 
+	 */
+	public boolean isRefused(int channel) {
+		return refused[channel];
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Raw sample buffer %d samples per channel: %d reads from buffer, %d not arrived, %d not held",
+				capacity, readsOK.get(), readsNotArrived.get(), readsNotHeld.get());
+	}
+
+}
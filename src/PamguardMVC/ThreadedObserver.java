@@ -3,10 +3,14 @@ package PamguardMVC;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import Acquisition.AcquisitionControl;
 import Acquisition.AcquisitionProcess;
 import Acquisition.DaqSystem;
+import PamDetection.RawDataUnit;
 import PamController.PamController;
 import PamModel.PamModel;
 import PamUtils.PamCalendar;
@@ -22,6 +26,11 @@ import warnings.WarningSystem;
  * There is a bit of jiggledy piggledy to get the data history times
  * right since they may need to be extended slightly to allow for 
  * data that are not yet used. 
+ * <p>
+ * If lock free queues are enabled in the threading settings, data are 
+ * queued in an ObserverRingBuffer rather than a synchronised list. Producers
+ * and the observer thread then park and wake each other, rather than sleep polling,
+ * and the observer thread takes data from the queue in batches. 
  *  
  * @author Doug Gillespie
  *
@@ -42,6 +51,42 @@ public class ThreadedObserver implements PamObserver {
 	private Object synchLock = new Object();
 	
 	private List<ObservedObject> toDoList;
+	
+	/**
+	 * Lock free queue, used instead of toDoList if lock free queues are enabled.
+	 */
+	private ObserverRingBuffer ringBuffer;
+	
+	/**
+	 * Size of the ring buffer. Data normally get held back by the jitter time 
+	 * long before this fills. 
+	 */
+	private static final int RINGBUFFERSIZE = 8192;
+	
+	/**
+	 * Objects the observer thread has queued for itself which didn't fit in the ring 
+	 * buffer. The observer thread can't wait for space, since it's the only thing that 
+	 * makes any, so these are held here and moved into the ring buffer as space allows, 
+	 * so that they are still processed after anything queued before them. 
+	 */
+	private ConcurrentLinkedQueue<ObservedObject> selfOverflow = new ConcurrentLinkedQueue<>();
+	private AtomicInteger selfOverflowCount = new AtomicInteger();
+	
+	/**
+	 * Maximum number of objects the observer thread takes from the ring buffer at once. 
+	 */
+	private static final int MAXBATCHSIZE = 256;
+	
+	/**
+	 * Number of objects taken out of the ring buffer by the observer thread which
+	 * have not yet been processed, and the time of the first of them. These still
+	 * count as queued when working out data history times.
+	 */
+	private volatile int batchRemaining;
+	private volatile long batchFirstMillis;
+	private volatile long lastQueuedMillis;
+	
+	private ObserverQueueStats queueStats = new ObserverQueueStats();
 
 	/**
 	 * Make an intermediate observer of a PamObservable (i.e. datablock)
@@ -56,6 +101,10 @@ public class ThreadedObserver implements PamObserver {
 		maxJitter = pamObservable.getMaxThreadJitter();
 		jitterSleep = getPreferredJitter(maxJitter);
 		toDoList = Collections.synchronizedList(new LinkedList<ObservedObject>());
+		PamModel pamModel = PamModel.getPamModel();
+		if (pamModel != null && pamModel.getPamModelSettings().lockFreeQueues) {
+			ringBuffer = new ObserverRingBuffer(RINGBUFFERSIZE);
+		}
 		String threadName = "Threaded Observer for " + singleThreadObserver.getClass().getName();
 		try {
 			threadName = singleThreadObserver.getObserverName() + " ThreadedObserver";
@@ -119,7 +168,13 @@ public class ThreadedObserver implements PamObserver {
 		 * first data to now. 
 		 */
 		long h = singleThreadObserver.getRequiredDataHistory(o, arg);
-		synchronized (synchLock) { 
+		if (ringBuffer != null) {
+			long[] limits = getQueueLimits();
+			if (limits != null) {
+				h += (PamCalendar.getTimeInMillis() - limits[0]);
+			}
+		}
+		else synchronized (synchLock) { 
 			if (toDoList.size() > 0) {
 				long firstTime = 0;
 				try {
@@ -143,9 +198,29 @@ public class ThreadedObserver implements PamObserver {
 	 * @return number of objests
 	 */
 	public int getInterThreadListSize() {
+		if (ringBuffer != null) {
+			return ringBuffer.size() + batchRemaining + selfOverflowCount.get();
+		}
 		return toDoList.size();
 	}
 
+	/**
+	 * Get queue depth and latency statistics for this observer. 
+	 * @return queue statistics
+	 */
+	public ObserverQueueStats getQueueStats() {
+		return queueStats;
+	}
+
+	/**
+	 * 
+	 * @return true if this observer is using a lock free ring buffer rather
+	 * than a synchronised list. 
+	 */
+	public boolean isLockFree() {
+		return ringBuffer != null;
+	}
+
 	@Override
 	public void noteNewSettings() {
 		if (canMultiThread()) {
@@ -163,11 +238,14 @@ public class ThreadedObserver implements PamObserver {
 	 */
 	public void terminateThread() {
 		killThread = true;
+		if (ringBuffer != null) {
+			ringBuffer.signalConsumer();
+		}
 	}
 
 	@Override
 	public void removeObservable(PamObservable o) {
-		killThread = true;
+		terminateThread();
 		singleThreadObserver.removeObservable(o);
 	}
 
@@ -197,6 +275,10 @@ public class ThreadedObserver implements PamObserver {
 	public void addData(PamObservable o, PamDataUnit newDataUnit) {
 		if (canMultiThread()) {
 			ObservedObject newObject = new ObservedObject(PamCalendar.getTimeInMillis(), ObservedObject.ADDDATA, o, newDataUnit);
+			if (newDataUnit instanceof RawDataUnit) {
+				// stop the array being recycled until the observer thread has used it. 
+				((RawDataUnit) newDataUnit).holdRawData();
+			}
 			addToList(newObject);
 		}
 		else {
@@ -264,14 +346,67 @@ public class ThreadedObserver implements PamObserver {
 	 * @param theObject
 	 */
 	private void addToList(ObservedObject theObject) {
+		long waitStart = System.nanoTime();
+		if (ringBuffer != null) {
+			addToRingBuffer(theObject, waitStart);
+			return;
+		}
 		waitForQueueToBeReady(theObject);
 		
 		/**
 		 * Add the data into the list. 
 		 */
+		long now = System.nanoTime();
+		queueStats.noteBlocked(now - waitStart);
+		theObject.setQueuedNanos(now);
+		int depth;
 		synchronized (synchLock) {
 			toDoList.add(theObject);
+			depth = toDoList.size();
 		}	
+		queueStats.noteQueued(depth);
+	}
+	
+	/**
+	 * Add an object to the ring buffer, waiting if there is too much data 
+	 * in the buffer or if it's full. 
+	 * @param theObject object to add
+	 * @param waitStart nanotime the producer started trying to add the object
+	 */
+	private void addToRingBuffer(ObservedObject theObject, long waitStart) {
+		if (Thread.currentThread() == observerThread) {
+			/*
+			 * The observer is feeding itself. Can't wait for it to empty
+			 * the queue, since that would lock, so if the buffer is full, or
+			 * earlier objects are already waiting for space, hold the object 
+			 * until the observer thread has made space for it. 
+			 */
+			theObject.setQueuedNanos(waitStart);
+			if (selfOverflow.isEmpty() && ringBuffer.offer(theObject)) {
+				queueStats.noteQueued(ringBuffer.size());
+			}
+			else {
+				selfOverflow.add(theObject);
+				queueStats.noteQueued(ringBuffer.size() + selfOverflowCount.incrementAndGet());
+			}
+			lastQueuedMillis = theObject.getTimeMillis();
+			return;
+		}
+		waitForQueueToBeReady(theObject);
+		theObject.setQueuedNanos(System.nanoTime());
+		while (!ringBuffer.offer(theObject, TimeUnit.MILLISECONDS.toNanos(jitterSleep))) {
+			if (killThread) {
+				long nDropped = queueStats.noteDropped();
+				if (nDropped == 1) {
+					System.out.printf("Threaded observer %s stopped with a full queue. Data are being discarded\n", 
+							singleThreadObserver.getObserverName());
+				}
+				return;
+			}
+		}
+		lastQueuedMillis = theObject.getTimeMillis();
+		queueStats.noteBlocked(theObject.getQueuedNanos() - waitStart);
+		queueStats.noteQueued(ringBuffer.size());
 	}
 	
 	/**
@@ -279,6 +414,9 @@ public class ThreadedObserver implements PamObserver {
 	 * @return first and last times, or null if the queue is empty. 
 	 */
 	public long[] getQueueLimits() {
+		if (ringBuffer != null) {
+			return getRingBufferLimits();
+		}
 		synchronized (synchLock) {
 			if (toDoList.size() == 0) {
 				return null;				
@@ -290,6 +428,31 @@ public class ThreadedObserver implements PamObserver {
 		}
 	}
 	
+	/**
+	 * Get the first and last times of data in the ring buffer, including 
+	 * any objects the observer thread has taken out but not yet processed. 
+	 * @return first and last times, or null if the queue is empty. 
+	 */
+	private long[] getRingBufferLimits() {
+		ObservedObject oldest = ringBuffer.peek();
+		long[] limits = null;
+		if (batchRemaining > 0) {
+			limits = new long[2];
+			limits[0] = limits[1] = batchFirstMillis;
+		}
+		if (oldest == null) {
+			oldest = selfOverflow.peek();
+		}
+		if (oldest != null) {
+			if (limits == null) {
+				limits = new long[2];
+				limits[0] = oldest.getTimeMillis();
+			}
+			limits[1] = lastQueuedMillis;
+		}
+		return limits;
+	}
+
 	/**
 	 * Check to see if the queue is ready to accept a new Object.  If the queue is
 	 * currently full, then wait <strong>inside</strong> this method until the queue has emptied out.<p>Note
@@ -299,6 +462,10 @@ public class ThreadedObserver implements PamObserver {
 	 * @param theObject The Object waiting to be added to the queue
 	 */
 	protected void waitForQueueToBeReady(ObservedObject theObject) {
+		if (ringBuffer != null) {
+			waitForRingBuffer(theObject);
+			return;
+		}
 		boolean needSleep = true;
 		int nSleeps = 0;
 		ObservedObject oldestObject = null;
@@ -339,6 +506,24 @@ public class ThreadedObserver implements PamObserver {
 		}
 	}
 	
+	/**
+	 * Equivalent of waitForQueueToBeReady for the ring buffer. The producer parks
+	 * until the observer thread has processed enough data to bring the queue 
+	 * within the jitter time, giving up after the same time as the list version
+	 * would have taken for 100 sleeps. 
+	 * @param theObject The Object waiting to be added to the queue
+	 */
+	private void waitForRingBuffer(ObservedObject theObject) {
+		long giveUp = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(jitterSleep * 100L);
+		long[] limits;
+		while ((limits = getRingBufferLimits()) != null) {
+			if (theObject.getTimeMillis() - limits[0] < maxJitter || System.nanoTime() > giveUp || killThread) {
+				break;
+			}
+			sleepWriter();
+		}
+	}
+	
 	/**
 	 * Wait for the queue to be empty. This REALLY must not get called from the NewObserverThread
 	 * or you'll get a thread lock, so don't
@@ -353,7 +538,10 @@ public class ThreadedObserver implements PamObserver {
 		long start = System.currentTimeMillis();
 		int n = 0;
 		do {
-			synchronized (synchLock) {
+			if (ringBuffer != null) {
+				n = getInterThreadListSize();
+			}
+			else synchronized (synchLock) {
 				n = toDoList.size();
 			}
 			if (n == 0) {
@@ -371,9 +559,15 @@ public class ThreadedObserver implements PamObserver {
 	}
 	
 	/**
-	 * Sleep the writing thread by jittersleep (default 10ms)
+	 * Sleep the writing thread by jittersleep (default 10ms). If using the 
+	 * ring buffer, the thread is parked and will wake as soon as the observer 
+	 * thread has processed more data. 
 	 */
 	public void sleepWriter() {
+		if (ringBuffer != null) {
+			ringBuffer.awaitProgress(TimeUnit.MILLISECONDS.toNanos(jitterSleep));
+			return;
+		}
 		try {
 			Thread.sleep(jitterSleep);
 		} catch (InterruptedException e) {
@@ -425,6 +619,10 @@ public class ThreadedObserver implements PamObserver {
 
 		@Override
 		public void run() {
+			if (ringBuffer != null) {
+				runRingBuffer();
+				return;
+			}
 			boolean alreadyDisplayed = false;
 			
 			
@@ -453,6 +651,7 @@ public class ThreadedObserver implements PamObserver {
 				// otherwise, process the first in the list
 				else {
 					emptyRead = false;
+					queueStats.noteBatch();
 					int lc=0;
 					ObservedObject observedObject;
 					while (!toDoList.isEmpty()) {
@@ -478,30 +677,7 @@ public class ThreadedObserver implements PamObserver {
 							}
 						}
 						// need to do this bit outside of the synch block. 
-						try {
-							performAction(observedObject);
-						}
-						catch (Exception e) {
-							// definitely print the stack trace
-							// but with additional information
-							System.out.println("************************************************************************************");
-							System.out.println("*                                                                                   *");
-							System.out.printf("%s %s. Please report this error to the PAMGuard team\n", MODULEEXCEPTIONLINE, getObserverName());
-							e.printStackTrace();
-							System.out.println("*                                                                                   *");
-							System.out.println("************************************************************************************");
-							// and also show something in the PAMWarning area ...
-							long now = PamCalendar.getTimeInMillis();
-							if (threadWarning != null && threadWarning.getEndOfLife() <= now) {
-								// don't need to make it since it's probably already showing. 
-							}
-							else {
-								// make a new warning. 
-								threadWarning = new PamWarning(getObserverName(), e.getMessage(), 2);
-							}
-							threadWarning.setEndOfLife(PamCalendar.getTimeInMillis() + 5000);
-							WarningSystem.getWarningSystem().addWarning(threadWarning);
-						}
+						processObject(observedObject);
 //						synchronized(synchLock) {
 //							if (toDoList.size() > 0) { // list may have been cleared during a shut down. 
 //								toDoList.remove(0);
@@ -513,6 +689,91 @@ public class ThreadedObserver implements PamObserver {
 //			Debug.out.println("End of runnable in ThreadedObserver " + singleThreadObserver.getObserverName());
 		}
 		
+		/**
+		 * Take objects out of the ring buffer in batches and process them, 
+		 * parking the thread when the buffer is empty. 
+		 */
+		private void runRingBuffer() {
+			ObservedObject[] batch = new ObservedObject[MAXBATCHSIZE];
+			while (!killThread) {
+				moveSelfOverflow();
+				if (ringBuffer.isEmpty()) {
+					emptyRead = true;
+					ringBuffer.awaitData(TimeUnit.MILLISECONDS.toNanos(100));
+					continue;
+				}
+				emptyRead = false;
+				int n = ringBuffer.drainTo(batch, MAXBATCHSIZE);
+				if (n == 0) {
+					continue;
+				}
+				batchFirstMillis = batch[0].getTimeMillis();
+				batchRemaining = n;
+				queueStats.noteBatch();
+				for (int i = 0; i < n; i++) {
+					if (batchRemaining == 0) {
+						// batch was cleared by clearEverything
+						batch[i] = null;
+						continue;
+					}
+					batchFirstMillis = batch[i].getTimeMillis();
+					batchRemaining = n - i;
+					processObject(batch[i]);
+					batch[i] = null;
+					ringBuffer.signalProducers();
+				}
+				batchRemaining = 0;
+			}
+		}
+		
+		/**
+		 * Move objects the observer thread queued for itself when the ring buffer was full
+		 * into the ring buffer, in order, for as long as there is space. 
+		 */
+		private void moveSelfOverflow() {
+			ObservedObject next;
+			while ((next = selfOverflow.peek()) != null) {
+				if (!ringBuffer.offer(next)) {
+					return;
+				}
+				selfOverflow.poll();
+				selfOverflowCount.decrementAndGet();
+			}
+		}
+
+		/**
+		 * Process an object taken from the queue, catching and reporting 
+		 * any exception thrown by the observer. 
+		 * @param observedObject
+		 */
+		private void processObject(ObservedObject observedObject) {
+			queueStats.noteProcessed(System.nanoTime() - observedObject.getQueuedNanos());
+			try {
+				performAction(observedObject);
+			}
+			catch (Exception e) {
+				// definitely print the stack trace
+				// but with additional information
+				System.out.println("************************************************************************************");
+				System.out.println("*                                                                                   *");
+				System.out.printf("%s %s. Please report this error to the PAMGuard team\n", MODULEEXCEPTIONLINE, getObserverName());
+				e.printStackTrace();
+				System.out.println("*                                                                                   *");
+				System.out.println("************************************************************************************");
+				// and also show something in the PAMWarning area ...
+				long now = PamCalendar.getTimeInMillis();
+				if (threadWarning != null && threadWarning.getEndOfLife() <= now) {
+					// don't need to make it since it's probably already showing. 
+				}
+				else {
+					// make a new warning. 
+					threadWarning = new PamWarning(getObserverName(), e.getMessage(), 2);
+				}
+				threadWarning.setEndOfLife(PamCalendar.getTimeInMillis() + 5000);
+				WarningSystem.getWarningSystem().addWarning(threadWarning);
+			}
+		}
+
 		/**
 		 * Perform the action specified by the ObservedObject
 		 * 
@@ -525,9 +786,15 @@ public class ThreadedObserver implements PamObserver {
 
 			// Case 0: add dataunit
 			case ObservedObject.ADDDATA:
-				singleThreadObserver.addData(
-						(PamObservable) observedObject.getObserved()[0],
-						(PamDataUnit) observedObject.getObserved()[1]);
+				PamDataUnit dataUnit = (PamDataUnit) observedObject.getObserved()[1];
+				try {
+					singleThreadObserver.addData((PamObservable) observedObject.getObserved()[0], dataUnit);
+				}
+				finally {
+					if (dataUnit instanceof RawDataUnit) {
+						((RawDataUnit) dataUnit).holdDone();
+					}
+				}
 				break;
 
 			// Case 1: update dataunit
@@ -575,15 +842,21 @@ public class ThreadedObserver implements PamObserver {
 //			System.out.printf("Clearing %d objects from todo list in %s\n", toDoList.size(), singleThreadObserver.getObserverName());
 			toDoList.clear();
 		}		
+		if (ringBuffer != null) {
+			ringBuffer.clear();
+			selfOverflow.clear();
+			selfOverflowCount.set(0);
+			batchRemaining = 0;
+		}
 	}
 
 	public void dumpBufferStatus(String message, boolean sayEmpties) {
-		int n = toDoList.size();
+		int n = getInterThreadListSize();
 		if (!sayEmpties && n == 0) {
 			return;
 		}
 		String name = singleThreadObserver.getObserverName();
-		System.out.printf("Threaded observer %s has %d objects in queue\n", name, n);
+		System.out.printf("Threaded observer %s has %d objects in queue (%s)\n", name, n, queueStats);
 	}
 
 }
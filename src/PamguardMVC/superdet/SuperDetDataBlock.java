@@ -4,6 +4,7 @@ import java.io.File;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 
@@ -44,6 +45,15 @@ public class SuperDetDataBlock<Tunit extends SuperDetection, TSubDet extends Pam
 
 	private Class<TSubDet> subDetectionClass;
 	
+	/**
+	 * Super detection times change as sub detections are added, so use a plain list
+	 * rather than one which relies on units staying in time order. 
+	 */
+	@Override
+	protected List<Tunit> createUnitStore() {
+		return Collections.synchronizedList(new LinkedList<Tunit>());
+	}
+
 	public SuperDetDataBlock(Class unitClass, String dataName, PamProcess parentProcess, int channelMap,
 			boolean isOffline, ViewerLoadPolicy viewerLoadPolicy) {
 		super(unitClass, dataName, parentProcess, channelMap, isOffline);
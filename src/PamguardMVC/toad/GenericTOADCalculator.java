@@ -11,6 +11,7 @@ import Array.ArrayManager;
 import Array.SnapshotGeometry;
 import Localiser.DelayMeasurementParams;
 import Localiser.algorithms.Correlations;
+import Localiser.algorithms.MultiChannelCorrelations;
 import Localiser.algorithms.TimeDelayData;
 import Localiser.controls.RawOrFFTParams;
 import Localiser.controls.TOADTimingParams;
@@ -63,6 +64,8 @@ public class GenericTOADCalculator implements TOADCalculator, PamSettings {
 
 	private Correlations correlations = new Correlations();
 	
+	private MultiChannelCorrelations multiCorrelations = new MultiChannelCorrelations();
+	
 	private DelayMeasurementParams delayMeasurementParams = new DelayMeasurementParams();
 	
 	private boolean canUseEnvelope = false;
@@ -190,6 +193,13 @@ public class GenericTOADCalculator implements TOADCalculator, PamSettings {
 		int[] hydrophoneList = new int[nChan];
 		int hydrophoneMap = 0;
 		iDD = 0;
+		/*
+		 * If there is a single FFT for each channel, as there is for clicks, then 
+		 * do all the pairs in one go, which doesn't have to keep recalculating channel
+		 * powers and can do pairs in parallel. 
+		 */
+		TimeDelayData[] singleFrameDelays = getSingleFrameDelays(channelFFTData, totalFFTList.getSampleRate(), maxDelays);
+		int iPair = 0;
 		for (int i = 0; i < nChan; i++) {
 			channelList[i] = PamUtils.getNthChannel(i, totalFFTList.getChannelMap());
 			if (acquisitionControl == null) {
@@ -199,8 +209,14 @@ public class GenericTOADCalculator implements TOADCalculator, PamSettings {
 				hydrophoneList[i] = acquisitionControl.getChannelHydrophone(channelList[i]);
 			}
 			hydrophoneMap |= (1<<hydrophoneList[i]);
-			for (int j = i+1; j < nChan; j++) {
-				TimeDelayData tdData = getDelayFromLists(channelFFTData[i], channelFFTData[j], totalFFTList.getSampleRate(), maxDelays[i][j]);
+			for (int j = i+1; j < nChan; j++, iPair++) {
+				TimeDelayData tdData;
+				if (singleFrameDelays != null) {
+					tdData = singleFrameDelays[iPair];
+				}
+				else {
+					tdData = getDelayFromLists(channelFFTData[i], channelFFTData[j], totalFFTList.getSampleRate(), maxDelays[i][j]);
+				}
 				if (tdData == null) {
 					continue;
 				}
@@ -336,6 +352,50 @@ public class GenericTOADCalculator implements TOADCalculator, PamSettings {
 		return tdData;
 	}
 	
+	/**
+	 * Work out the delays between all pairs of channels when every channel has 
+	 * a single FFT of the same length. 
+	 * @param channelFFTData channel separated FFT data
+	 * @param sampleRate sample rate of the FFT data
+	 * @param maxDelaySecs Maximum TOAD for each pair of channels in seconds. 
+	 * @return delays for each pair of channels in seconds, or null if the data 
+	 * aren't a single FFT per channel. 
+	 */
+	private TimeDelayData[] getSingleFrameDelays(FFTDataUnit[][] channelFFTData, double sampleRate, double[][] maxDelaySecs) {
+		int nChan = channelFFTData.length;
+		ComplexArray[] spectra = new ComplexArray[nChan];
+		int[][] binRanges = new int[nChan][];
+		for (int i = 0; i < nChan; i++) {
+			if (channelFFTData[i] == null || channelFFTData[i].length != 1) {
+				return null;
+			}
+			spectra[i] = channelFFTData[i][0].getFftData();
+			if (spectra[i] == null || spectra[i].length() != spectra[0].length()) {
+				return null;
+			}
+			binRanges[i] = channelFFTData[i][0].getUsefulBinRange();
+		}
+		int nPairs = nChan*(nChan-1)/2;
+		double[] maxDelaySamples = new double[nPairs];
+		for (int i = 0, p = 0; i < nChan; i++) {
+			for (int j = i+1; j < nChan; j++, p++) {
+				maxDelaySamples[p] = maxDelaySecs[i][j] * sampleRate;
+			}
+		}
+		TimeDelayData[] delays = multiCorrelations.getDelays(spectra, spectra[0].length()*2, maxDelaySamples, binRanges);
+		for (int i = 0, p = 0; i < nChan; i++) {
+			for (int j = i+1; j < nChan; j++, p++) {
+				if (delays[p] == null) {
+					continue;
+				}
+				long delayOffset = channelFFTData[j][0].getStartSample() - channelFFTData[i][0].getStartSample();
+				delays[p].addDelayOffset(delayOffset);
+				delays[p].scaleDelay(1. / sampleRate);
+			}
+		}
+		return delays;
+	}
+	
 	private TimeDelayData getSlidingBestDelay(FFTDataUnit[] fftListA, FFTDataUnit[] fftListB, double maxDelaySamples) {
 		int nA = fftListA.length;
 		int nB = fftListB.length;
@@ -0,0 +1,88 @@
+package PamguardMVC.unitstore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import PamguardMVC.PamDataUnit;
+
+/**
+ * Storage for the data units held within a PamDataBlock. A store is a normal 
+ * List so that all existing iterator based code in PamDataBlock and its subclasses 
+ * continues to work, but it also provides fast searches by time and sample number 
+ * and lightweight snapshots of the data which can be iterated through without holding 
+ * the datablock synchronisation lock. 
+ * <p>
+ * All methods must be thread safe in the same way as a list wrapped with 
+ * Collections.synchronizedList, i.e. individual calls are atomic, but iteration 
+ * must still be synchronised externally unless a snapshot is used. 
+ * 
+ * @param <Tunit> type of data unit held in the store
+ */
+public interface DataUnitStore<Tunit extends PamDataUnit> extends List<Tunit> {
+
+	/**
+	 * 
+	 * @return true if the units in the store are in ascending order of 
+	 * millisecond time, so that the time search functions can be used. 
+	 */
+	public boolean isTimeOrdered();
+
+	/**
+	 * 
+	 * @return true if the units in the store are in ascending order of 
+	 * start sample, so that the sample search functions can be used. 
+	 */
+	public boolean isSampleOrdered();
+
+	/**
+	 * Called when the time or start sample of a unit already in the store has 
+	 * changed, so the order of the units must be checked again before the next 
+	 * search. 
+	 */
+	public void unitOrderChanged();
+
+	/**
+	 * Find the index of the first data unit with a time at or after the 
+	 * given time. Only valid if isTimeOrdered() is true. 
+	 * @param timeMillis time in milliseconds
+	 * @return index of first unit at or after timeMillis, or size() if all units
+	 * are before that time. 
+	 */
+	public int indexOfFirstAtOrAfterMillis(long timeMillis);
+
+	/**
+	 * Find the index of the first data unit with a start sample at or after the 
+	 * given sample number. Only valid if isSampleOrdered() is true. 
+	 * @param sampleNumber sample number
+	 * @return index of first unit at or after sampleNumber, or size() if all units
+	 * are before that sample. 
+	 */
+	public int indexOfFirstAtOrAfterSample(long sampleNumber);
+
+	/**
+	 * Get a read only snapshot of the entire store. The snapshot will not change 
+	 * if units are subsequently added or removed, so can be iterated through without 
+	 * any synchronisation. 
+	 * @return read only snapshot of the data. 
+	 */
+	public List<Tunit> snapshot();
+
+	/**
+	 * Get a read only snapshot of part of the store. 
+	 * @param fromIndex first index (inclusive)
+	 * @param toIndex last index (exclusive)
+	 * @return read only snapshot of the data. 
+	 */
+	public List<Tunit> snapshot(int fromIndex, int toIndex);
+
+	/**
+	 * Copy part of the store into a new list. Unlike a snapshot, the copy 
+	 * doesn't share anything with the store, so use this rather than copying 
+	 * a snapshot if the data are going to be copied anyway. 
+	 * @param fromIndex first index (inclusive)
+	 * @param toIndex last index (exclusive)
+	 * @return new list containing the data. 
+	 */
+	public ArrayList<Tunit> copy(int fromIndex, int toIndex);
+
+}
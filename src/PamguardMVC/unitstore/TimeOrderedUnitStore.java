@@ -0,0 +1,407 @@
+package PamguardMVC.unitstore;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.RandomAccess;
+
+import PamguardMVC.PamDataUnit;
+
+/**
+ * Array based data unit store, optimised for the way PAMGuard data blocks are
+ * normally used, i.e. units are appended in time order at the end and removed
+ * from the front as they pass their natural lifetime.
+ * <p>
+ * Units are held in a single array between a head and a tail index. Removing
+ * the first unit just moves the head, so is O(1), and appending is amortised O(1).
+ * When the tail reaches the end of the array, live units are compacted into a
+ * new array. While units remain in time order, searches by time or sample number
+ * are binary searches rather than the linear scans needed with a LinkedList.
+ * <p>
+ * Snapshots share the underlying array. Any slot which may be visible to an
+ * existing snapshot is never overwritten in place - if such a slot needs to change
+ * (e.g. an insert or removal in the middle of the list) the live data are first
+ * copied into a new array. Snapshots are therefore immutable without ever having
+ * to copy the data when they are taken.
+ *
+ * @param <Tunit> type of data unit held in the store
+ */
+public class TimeOrderedUnitStore<Tunit extends PamDataUnit> extends AbstractList<Tunit> implements DataUnitStore<Tunit>, RandomAccess {
+
+	private static final int MIN_CAPACITY = 16;
+
+	private Object[] units;
+
+	/**
+	 * Index of first live unit in units array
+	 */
+	private int head;
+
+	/**
+	 * Index one after the last live unit in the units array
+	 */
+	private int tail;
+
+	/**
+	 * Slots in the current array below this index may be referenced
+	 * by a snapshot, so must not be overwritten.
+	 */
+	private int sharedLimit;
+
+	private boolean timeOrdered = true;
+
+	private boolean sampleOrdered = true;
+
+	/**
+	 * A unit's time or sample has changed since the order flags were set.
+	 */
+	private boolean orderChanged;
+
+	public TimeOrderedUnitStore() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * @param initialCapacity initial size of the underlying array.
+	 */
+	public TimeOrderedUnitStore(int initialCapacity) {
+		units = new Object[Math.max(initialCapacity, MIN_CAPACITY)];
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public synchronized Tunit get(int index) {
+		checkIndex(index, tail-head);
+		return (Tunit) units[head+index];
+	}
+
+	@Override
+	public synchronized int size() {
+		return tail-head;
+	}
+
+	@Override
+	public synchronized boolean isEmpty() {
+		return tail == head;
+	}
+
+	@Override
+	public synchronized boolean add(Tunit dataUnit) {
+		if (tail == units.length) {
+			reallocate(tail-head+1);
+		}
+		if (tail > head) {
+			checkOrder(getUnit(tail-1), dataUnit);
+		}
+		else {
+			checkOrder(null, dataUnit);
+		}
+		units[tail++] = dataUnit;
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public synchronized void add(int index, Tunit dataUnit) {
+		int n = tail-head;
+		if (index == n) {
+			add(dataUnit);
+			return;
+		}
+		checkIndex(index, n);
+		if (tail == units.length || head+index < sharedLimit) {
+			reallocate(n+1);
+		}
+		int pos = head+index;
+		checkOrder(index > 0 ? getUnit(pos-1) : null, dataUnit);
+		checkOrder(dataUnit, getUnit(pos));
+		System.arraycopy(units, pos, units, pos+1, tail-pos);
+		units[pos] = dataUnit;
+		tail++;
+		modCount++;
+	}
+
+	@Override
+	public synchronized Tunit remove(int index) {
+		int n = tail-head;
+		checkIndex(index, n);
+		Tunit removed = getUnit(head+index);
+		if (index == 0) {
+			/*
+			 * Normal removal of old data. Only clear the slot if no snapshot
+			 * can see it so that removed units can get garbage collected.
+			 */
+			if (head >= sharedLimit) {
+				units[head] = null;
+			}
+			head++;
+		}
+		else {
+			if (head+index < sharedLimit) {
+				reallocate(n);
+			}
+			int pos = head+index;
+			System.arraycopy(units, pos+1, units, pos, tail-pos-1);
+			units[--tail] = null;
+		}
+		if (head == tail && sharedLimit == 0) {
+			head = tail = 0;
+		}
+		modCount++;
+		return removed;
+	}
+
+	@Override
+	public synchronized Tunit set(int index, Tunit dataUnit) {
+		int n = tail-head;
+		checkIndex(index, n);
+		if (head+index < sharedLimit) {
+			reallocate(n);
+		}
+		int pos = head+index;
+		Tunit old = getUnit(pos);
+		checkOrder(index > 0 ? getUnit(pos-1) : null, dataUnit);
+		if (index < n-1) {
+			checkOrder(dataUnit, getUnit(pos+1));
+		}
+		units[pos] = dataUnit;
+		return old;
+	}
+
+	@Override
+	public synchronized void clear() {
+		if (sharedLimit > 0) {
+			units = new Object[units.length];
+			sharedLimit = 0;
+		}
+		else {
+			Arrays.fill(units, head, tail, null);
+		}
+		head = tail = 0;
+		timeOrdered = sampleOrdered = true;
+		orderChanged = false;
+		modCount++;
+	}
+
+	@Override
+	public synchronized Object[] toArray() {
+		return Arrays.copyOfRange(units, head, tail);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public synchronized <T> T[] toArray(T[] a) {
+		int n = tail-head;
+		if (a.length < n) {
+			return (T[]) Arrays.copyOfRange(units, head, tail, a.getClass());
+		}
+		System.arraycopy(units, head, a, 0, n);
+		if (a.length > n) {
+			a[n] = null;
+		}
+		return a;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public synchronized void sort(Comparator<? super Tunit> c) {
+		int n = tail-head;
+		Object[] sorted = new Object[Math.max(units.length, MIN_CAPACITY)];
+		System.arraycopy(units, head, sorted, 0, n);
+		Arrays.sort(sorted, 0, n, (Comparator) c);
+		units = sorted;
+		head = 0;
+		tail = n;
+		sharedLimit = 0;
+		recheckOrder();
+		modCount++;
+	}
+
+	@Override
+	public synchronized boolean isTimeOrdered() {
+		if (orderChanged) {
+			recheckOrder();
+		}
+		return timeOrdered;
+	}
+
+	@Override
+	public synchronized boolean isSampleOrdered() {
+		if (orderChanged) {
+			recheckOrder();
+		}
+		return sampleOrdered;
+	}
+
+	@Override
+	public synchronized void unitOrderChanged() {
+		orderChanged = true;
+	}
+
+	/**
+	 * Set the order flags by checking every unit. 
+	 */
+	private void recheckOrder() {
+		timeOrdered = sampleOrdered = true;
+		orderChanged = false;
+		if (tail > head) {
+			checkOrder(null, getUnit(head));
+		}
+		for (int i = head+1; i < tail; i++) {
+			checkOrder(getUnit(i-1), getUnit(i));
+		}
+	}
+
+	@Override
+	public synchronized int indexOfFirstAtOrAfterMillis(long timeMillis) {
+		int lo = head, hi = tail;
+		while (lo < hi) {
+			int mid = (lo+hi) >>> 1;
+			if (getUnit(mid).getTimeMilliseconds() < timeMillis) {
+				lo = mid+1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo-head;
+	}
+
+	@Override
+	public synchronized int indexOfFirstAtOrAfterSample(long sampleNumber) {
+		int lo = head, hi = tail;
+		while (lo < hi) {
+			int mid = (lo+hi) >>> 1;
+			if (getUnit(mid).getStartSample() < sampleNumber) {
+				lo = mid+1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo-head;
+	}
+
+	@Override
+	public synchronized List<Tunit> snapshot() {
+		return snapshot(0, tail-head);
+	}
+
+	@Override
+	public synchronized List<Tunit> snapshot(int fromIndex, int toIndex) {
+		int n = tail-head;
+		if (fromIndex < 0 || toIndex > n || fromIndex > toIndex) {
+			throw new IndexOutOfBoundsException(String.format("Snapshot range %d to %d, size %d", fromIndex, toIndex, n));
+		}
+		if (fromIndex == toIndex) {
+			return Collections.emptyList();
+		}
+		sharedLimit = Math.max(sharedLimit, head+toIndex);
+		return new Snapshot<Tunit>(units, head+fromIndex, head+toIndex);
+	}
+
+	@Override
+	public synchronized ArrayList<Tunit> copy(int fromIndex, int toIndex) {
+		int n = tail-head;
+		if (fromIndex < 0 || toIndex > n || fromIndex > toIndex) {
+			throw new IndexOutOfBoundsException(String.format("Copy range %d to %d, size %d", fromIndex, toIndex, n));
+		}
+		ArrayList<Tunit> copy = new ArrayList<Tunit>(toIndex-fromIndex);
+		for (int i = head+fromIndex; i < head+toIndex; i++) {
+			copy.add(getUnit(i));
+		}
+		return copy;
+	}
+
+	/**
+	 * Move the live data to the start of a new array with space for at
+	 * least the given number of units. Snapshots keep the old array.
+	 * @param required number of units the new array must be able to hold.
+	 */
+	private void reallocate(int required) {
+		int n = tail-head;
+		int newLength = Math.max(MIN_CAPACITY, required*2);
+		if (sharedLimit == 0 && newLength <= units.length && head > 0) {
+			// no snapshots, so can compact in place.
+			System.arraycopy(units, head, units, 0, n);
+			Arrays.fill(units, n, tail, null);
+		}
+		else {
+			Object[] newUnits = new Object[Math.max(newLength, units.length)];
+			System.arraycopy(units, head, newUnits, 0, n);
+			units = newUnits;
+			sharedLimit = 0;
+		}
+		head = 0;
+		tail = n;
+	}
+
+	/**
+	 * Update the order flags for a unit that will follow another.
+	 * @param before preceding unit (may be null)
+	 * @param after following unit
+	 */
+	private void checkOrder(PamDataUnit before, PamDataUnit after) {
+		if (after.getStartSample() == null) {
+			sampleOrdered = false;
+		}
+		if (before == null) {
+			return;
+		}
+		if (after.getTimeMilliseconds() < before.getTimeMilliseconds()) {
+			timeOrdered = false;
+		}
+		if (sampleOrdered && after.getStartSample() < before.getStartSample()) {
+			sampleOrdered = false;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Tunit getUnit(int pos) {
+		return (Tunit) units[pos];
+	}
+
+	private static void checkIndex(int index, int size) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException(String.format("Index %d, size %d", index, size));
+		}
+	}
+
+	/**
+	 * Read only view of a section of an array which will never be modified.
+	 */
+	private static class Snapshot<T> extends AbstractList<T> implements RandomAccess {
+
+		private final Object[] array;
+
+		private final int from, to;
+
+		private Snapshot(Object[] array, int from, int to) {
+			this.array = array;
+			this.from = from;
+			this.to = to;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public T get(int index) {
+			checkIndex(index, to-from);
+			return (T) array[from+index];
+		}
+
+		@Override
+		public int size() {
+			return to-from;
+		}
+
+		@Override
+		public Object[] toArray() {
+			return Arrays.copyOfRange(array, from, to);
+		}
+
+	}
+
+}
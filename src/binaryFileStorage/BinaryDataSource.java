@@ -188,10 +188,22 @@ public abstract class BinaryDataSource {
 	 * @param pamDataUnit
 	 */
 	public final boolean saveData(PamDataUnit pamDataUnit) {
+		return saveData(pamDataUnit, getBinaryStorageStream());
+	}
+
+	/**
+	 * Save data into a specific binary stream rather than the data source's own storage 
+	 * stream. Used when several files for the same data block are being rewritten at the 
+	 * same time on different threads. 
+	 * @param pamDataUnit data unit to save
+	 * @param binaryStorageStream binary stream to save to. 
+	 * @return true if saved
+	 */
+	public final boolean saveData(PamDataUnit pamDataUnit, BinaryOutputStream binaryStorageStream) {
 		
 		//System.out.println("Save data: " + pamDataUnit);
 
-		if (getBinaryStorageStream() == null) {
+		if (binaryStorageStream == null) {
 			return false;
 		}
 		
@@ -232,18 +244,21 @@ public abstract class BinaryDataSource {
 			else {
 				data = getPackedData(pamDataUnit);
 			}
+			/*
+			 * Then put it back to how it was a moment ago.
+			 */
+			pamDataUnit.setChannelBitmap(shiftedBitmap);
+
+			// now get any annotation data that goes with this binary object. 
+			if (data != null) {
+				getPackedAnnotationData(pamDataUnit, data);
+			}
 		}
-		/*
-		 * Then put it back to how it was a moment ago.
-		 */
-		pamDataUnit.setChannelBitmap(shiftedBitmap);
 		
 		if (data == null) {
 			return false;
 		}
 		
-		// now get any annotation data that goes with this binary object. 
-		getPackedAnnotationData(pamDataUnit, data);
 		pamDataUnit.getBasicData().setHasBinaryAnnotations(data.getAnnotationDataLength() != 0);
 		
 		/*
@@ -260,11 +275,7 @@ public abstract class BinaryDataSource {
 		}
 		
 		//sometimes get a null pointer exception here when trying to close PAMGuard?
-		if (getBinaryStorageStream() == null) {
-			return false;
-		}
-				
-		return getBinaryStorageStream().storeData(data.getObjectType(), pamDataUnit.getBasicData(), data);
+		return binaryStorageStream.storeData(data.getObjectType(), pamDataUnit.getBasicData(), data);
 	}
 
 	/**
@@ -23,4 +23,14 @@ public class BinaryHeaderAndFooter {
 	
 	public int nDatas;
 	
+	/**
+	 * Length of the data file when the header and footer were read. 
+	 */
+	public long fileLength = -1;
+	
+	/**
+	 * Last modified time of the data file when the header and footer were read. 
+	 */
+	public long fileModified = -1;
+	
 }
@@ -105,6 +105,48 @@ public class BinaryInputStream {
 	}
 
 	long prevPos = 0;
+	
+	/**
+	 * Move to a different position in the file. This must be the start
+	 * of an object, e.g. a position taken from a BinaryTimeIndex. 
+	 * @param filePos byte position in the file
+	 * @param objectNumber number of data objects in the file before this position
+	 * @return true if successful
+	 */
+	protected boolean seek(long filePos, int objectNumber) {
+		if (fileInputStream == null || inputStream == null) {
+			return false;
+		}
+		try {
+			fileInputStream.getChannel().position(filePos);
+		} catch (IOException e) {
+			System.out.println(String.format("Seek error in file %s: %s", currentFile.getName(), e.getMessage()));
+			return false;
+		}
+		/*
+		 * The old buffered streams may have read ahead, so make new ones 
+		 * starting at the new position. Don't close the old ones since 
+		 * that would close the file.  
+		 */
+		countingInputStream = new CountingInputStream(new BufferedInputStream(fileInputStream), filePos);
+		inputStream = new DataInputStream(countingInputStream);
+		unitsRead = objectNumber;
+		return true;
+	}
+	
+	/**
+	 * @return position in the file of the start of the last object read
+	 */
+	public long getLastObjectPosition() {
+		return prevPos;
+	}
+	
+	/**
+	 * @return the current byte position in the file
+	 */
+	public long getFilePosition() {
+		return countingInputStream == null ? 0 : countingInputStream.getPos();
+	}
 	/**
 	 * Read the next object from the file. 
 	 * <p>The object data will be packed up in a 
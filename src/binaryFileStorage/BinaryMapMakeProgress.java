@@ -19,6 +19,8 @@ public class BinaryMapMakeProgress extends PamTaskUpdate {
 	private int totalStreams;
 
 	private int currentStream;
+	
+	private double filesPerSecond;
 
 	public BinaryMapMakeProgress(int status, String streamName, int totalStreams,
 			int currentStream) {
@@ -87,6 +89,20 @@ public class BinaryMapMakeProgress extends PamTaskUpdate {
 		this.currentStream = currentStream;
 	}
 	
+	/**
+	 * @return the rate at which files are being mapped in files per second
+	 */
+	public double getFilesPerSecond() {
+		return filesPerSecond;
+	}
+
+	/**
+	 * @param filesPerSecond the rate at which files are being mapped in files per second
+	 */
+	public void setFilesPerSecond(double filesPerSecond) {
+		this.filesPerSecond = filesPerSecond;
+	}
+	
 	@Override
 	public double getProgress(){
 //		System.out.println("BinaryProgress: " + currentStream + " of: " + totalStreams + " status: " + getStatus()); 
@@ -113,6 +129,9 @@ public class BinaryMapMakeProgress extends PamTaskUpdate {
 	
 	@Override
 	public String getProgressString() {
+		if (status == STATUS_ANALYSING_FILES && filesPerSecond > 0) {
+			return String.format("%s (%d of %d, %3.0f files/s)", streamName, currentStream, totalStreams, filesPerSecond);
+		}
 		return this.streamName;
 	}
 }
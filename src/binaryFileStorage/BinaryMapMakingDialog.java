@@ -26,6 +26,8 @@ public class BinaryMapMakingDialog extends PamDialog {
 	
 	private JLabel streamName;
 	
+	private JLabel mapRate;
+	
 	private BinaryMapMakingDialog(Window parentFrame) {
 		super(parentFrame, "Binary Data Mapping", false);
 		
@@ -34,6 +36,7 @@ public class BinaryMapMakingDialog extends PamDialog {
 		p.setLayout(new BoxLayout(p, BoxLayout.PAGE_AXIS));
 		p.add(streamName = new JLabel(" - "));
 		p.add(streamProgress = new JProgressBar());
+		p.add(mapRate = new JLabel(" "));
 //		p.setPreferredSize(new Dimension(400, 200));
 		Dimension ps = streamName.getPreferredSize();
 		ps.width = 250;
@@ -111,6 +114,10 @@ public class BinaryMapMakingDialog extends PamDialog {
 			streamName.setText(binaryMapMakeProgress.getStreamName());
 			streamProgress.setMaximum(binaryMapMakeProgress.getTotalStreams());
 			streamProgress.setValue(binaryMapMakeProgress.getCurrentStream());
+			if (binaryMapMakeProgress.getFilesPerSecond() > 0) {
+				mapRate.setText(String.format("File %d of %d, %3.0f files/s", binaryMapMakeProgress.getCurrentStream(), 
+						binaryMapMakeProgress.getTotalStreams(), binaryMapMakeProgress.getFilesPerSecond()));
+			}
 			return;
 		}
 	}
@@ -32,6 +32,12 @@ public class BinaryOfflineDataMapPoint extends OfflineDataMapPoint implements Se
 
 	private transient BinaryStore binaryStore;
 	
+	/**
+	 * Header and footer information read from the file, kept so that the 
+	 * map point can be written to the data map cache. 
+	 */
+	private transient BinaryHeaderAndFooter headerAndFooter;
+	
 	/*
 	 * 
 	 * relPathInsideBinStorage will store at pos0 the filename and the parent at pos1 etc etc.
@@ -96,6 +102,8 @@ public class BinaryOfflineDataMapPoint extends OfflineDataMapPoint implements Se
 		this.binaryFooter = binaryFooter;
 		this.moduleHeader = moduleHeader;
 		this.moduleFooter = moduleFooter;
+		// cached header and footer information no longer matches the file. 
+		headerAndFooter = null;
 		setDatagram(datagram);
 	}
 
@@ -283,6 +291,21 @@ public class BinaryOfflineDataMapPoint extends OfflineDataMapPoint implements Se
 		
 	}
 
+	/**
+	 * @return the header and footer information read from the file, or null
+	 * if it's not known or out of date. 
+	 */
+	public BinaryHeaderAndFooter getHeaderAndFooter() {
+		return headerAndFooter;
+	}
+
+	/**
+	 * @param headerAndFooter the header and footer information read from the file
+	 */
+	public void setHeaderAndFooter(BinaryHeaderAndFooter headerAndFooter) {
+		this.headerAndFooter = headerAndFooter;
+	}
+
 	/**
 	 * @param binaryHeader the binaryHeader to set
 	 */
@@ -63,6 +63,11 @@ public class BinaryOutputStream {
 	private int lastObjectType = Integer.MIN_VALUE;
 	
 	private File outputFile;
+	
+	/**
+	 * Index of data object positions in the main pgdf file.
+	 */
+	private BinaryTimeIndex timeIndex;
 
 	public BinaryOutputStream(BinaryStore binaryStore,
 			PamDataBlock parentDataBlock) {
@@ -205,6 +210,7 @@ public class BinaryOutputStream {
 				binaryDataSource.getStreamName(), BinaryStore.getCurrentFileFormat());
 		//		header.setExtraInfo(binaryDataSource.getModuleHeader());
 		storedObjects = 0;
+		timeIndex = new BinaryTimeIndex();
 		FileOutputStream fileOutputStream;
 		try {
 			dataOutputStream = new DataOutputStream(new BufferedOutputStream(fileOutputStream = new 
@@ -300,6 +306,9 @@ public class BinaryOutputStream {
 			if (currentDataMapPoint != null) {
 				currentDataMapPoint.setBinaryFooter(footer);
 			}
+			if (timeIndex != null) {
+				timeIndex.finish(dataOutputStream.size());
+			}
 			try {
 				dataOutputStream.close();
 			} catch (IOException e) {
@@ -471,6 +480,10 @@ public class BinaryOutputStream {
 			objectLength += dataLength;
 		}
 
+		if (outputStream == dataOutputStream && timeIndex != null) {
+			timeIndex.setTailOffset(outputStream.size());
+		}
+
 		try {
 			outputStream.writeInt(objectLength);
 			outputStream.writeInt(BinaryTypes.MODULE_FOOTER);
@@ -602,6 +615,17 @@ public class BinaryOutputStream {
 			reOpen(PamCalendar.getTimeInMillis(), System.currentTimeMillis(), BinaryFooter.END_FILETOOBIG);
 		}
 
+		if (outputStream == dataOutputStream && timeIndex != null) {
+			int filePos = outputStream.size();
+			if (filePos == Integer.MAX_VALUE) {
+				// size() stops counting at 2GB, so positions are no longer known
+				timeIndex.invalidate();
+			}
+			else {
+				timeIndex.addDataObject(filePos, baseData.getTimeMilliseconds());
+			}
+		}
+
 		try {
 			outputStream.writeInt(lengthInFile);
 			outputStream.writeInt(objectId);
@@ -686,6 +710,13 @@ public class BinaryOutputStream {
 //			e.printStackTrace();
 			reportStreamError(e);
 		}
+		
+		/*
+		 * And the time index of object positions in the pgdf file
+		 */
+		if (timeIndex != null) {
+			timeIndex.writeIndex(binaryStore.swapFileType(indexFile, BinaryStore.timeIndexFileType), outputFile);
+		}
 
 		return true;
 	}
@@ -60,7 +60,8 @@ public class BinarySettingsStorage implements PamSettingsSource {
 		String filePath = binaryStore.getFolderName(timeStamp, true);
 		filePath += PamCalendar.createFileName(timeStamp, 
 				SETTINGSFILENAME, BinaryStore.settingsFileType);
-		return PSFXReadWriter.getInstance().writePSFX(filePath, timeStamp);
+		// written in the background so that it doesn't hold up the start. 
+		return PSFXReadWriter.getInstance().writePSFXInBackground(filePath, timeStamp, null);
 /*
 		// get an object containing everything we'll need to know. 
 		PamSettingsGroup psg = PamSettingManager.getInstance().getCurrentSettingsGroup();
@@ -17,6 +17,10 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.TimerTask;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.JFrame;
 import javax.swing.JMenu;
@@ -104,6 +108,18 @@ PamSettingsSource, DataOutputStore {
 
 	public static final String noiseFileType = "pgnf";
 
+	/**
+	 * Index of times and positions of objects in the pgdf file. 
+	 * @see BinaryTimeIndex
+	 */
+	public static final String timeIndexFileType = "pgti";
+
+	/**
+	 * Maximum number of threads used to read file headers and footers
+	 * when making the data map. 
+	 */
+	private static final int MAX_MAP_THREADS = 8;
+
 	/**
 	 * Current format for writing files.
 	 * Reved up to 7 for NOAA GPL work since we've added more noise measures to 
@@ -898,17 +914,12 @@ PamSettingsSource, DataOutputStore {
 				}
 				ArrayList<PamDataBlock> streams = getStreamingDataBlocks(true);
 
-				File serFile = new File(binaryStoreSettings.getStoreLocation() + FileParts.getFileSeparator() + "serialisedBinaryMap.data");
-				long serFileDate = Long.MAX_VALUE;
-				if (serFile != null && serFile.exists()) {
-					serFileDate = serFile.lastModified();
-				}
+				File serFile = new File(binaryStoreSettings.getStoreLocation() + FileParts.getFileSeparator() + DataMapSerialiser.cacheFileName);
 				createBinaryDataMaps(streams);
 
 				publish(new BinaryMapMakeProgress(BinaryMapMakeProgress.STATUS_DESERIALIZING, null, 0, 0));
 				dataMapSerialiser.loadDataMap(streams, serFile);
 
-				BinaryHeaderAndFooter bhf;
 				int nStreams = streams.size();
 				if (nStreams == 0) {
 					return null;
@@ -921,44 +932,51 @@ PamSettingsSource, DataOutputStore {
 				}
 				int nFiles = fileList.size();
 				int updateAt = Math.max(nFiles/100,1);
-				int fileIndex;
-				int nNew = 0;
-				for (int i = 0; i < nFiles; i++) {
-					if (i%updateAt == 0){
-						publish(new BinaryMapMakeProgress(BinaryMapMakeProgress.STATUS_ANALYSING_FILES, 
-								fileList.get(i).toString(), nFiles, i));
+				AtomicInteger nCachedFiles = new AtomicInteger();
+				/*
+				 * Files are checked against the cache and, if necessary, read on a pool of 
+				 * threads. Map points have to be added to the maps from this thread, but 
+				 * it takes the results in the same order as the file list, so maps
+				 * are made in exactly the same way as when files were read one at a time. 
+				 */
+				int nThreads = Math.min(MAX_MAP_THREADS, Math.max(2, Runtime.getRuntime().availableProcessors()));
+				ExecutorService mapExecutor = Executors.newFixedThreadPool(nThreads, r -> {
+					Thread t = new Thread(r, "Binary data map maker");
+					t.setDaemon(true);
+					return t;
+				});
+				long startNanos = System.nanoTime();
+				try {
+					ArrayList<Future<BinaryHeaderAndFooter>> mapFutures = new ArrayList<>(nFiles);
+					for (File aFile : fileList) {
+						mapFutures.add(mapExecutor.submit(() -> getMapFileInfo(aFile, nCachedFiles)));
 					}
-
-					boolean killwhatever = false;
-					//					if (fileList.get(i).getName().contains("Click_Detector_Click_Detector_Clicks_20140526_105200")) {
-					//						System.out.println(fileList.get(i).getName());
-					//						killwhatever = true;
-					//					}
-					//				Thread.sleep(10);
-					/*
-					 * go through the real data files and check that each one is included in the map
-					 */
-					fileIndex = dataMapSerialiser.findFile(fileList.get(i));
-					if (fileIndex >= 0) {
-						/*
-						 * Check the date of the existing file and if 
-						 * it's been modified AFTER the serialised map, re-read it. 
-						 */
-						long fileDate = fileList.get(i).lastModified();
-						if (fileDate > serFileDate - 600000L || killwhatever) {
-							dataMapSerialiser.removeFileAtIndex(fileIndex);
-							removeMapPoint(fileList.get(i), streams);
+					for (int i = 0; i < nFiles; i++) {
+						BinaryHeaderAndFooter bhf = mapFutures.get(i).get();
+						mapFutures.set(i, null);
+						if (bhf != null && !createMapPoint(fileList.get(i), bhf, streams)) {
+							// keep in the cache anyway so it doesn't get read every time. 
+							dataMapSerialiser.addUnmappedFile(fileList.get(i), bhf);
 						}
-						else {
-							// consider updating some information in the appropriate data map point in 
-							// order to ensure the file has the correct path., 
-							continue;
+						if (i%updateAt == 0){
+							double secs = (System.nanoTime() - startNanos) / 1.e9;
+							BinaryMapMakeProgress progress = new BinaryMapMakeProgress(BinaryMapMakeProgress.STATUS_ANALYSING_FILES, 
+									fileList.get(i).toString(), nFiles, i);
+							progress.setFilesPerSecond(secs > 0 ? (i+1) / secs : 0);
+							publish(progress);
 						}
 					}
-					bhf = getFileHeaderAndFooter(fileList.get(i));
-					createMapPoint(fileList.get(i), bhf, streams);
-					nNew++;
 				}
+				finally {
+					mapExecutor.shutdownNow();
+				}
+				int nCached = nCachedFiles.get();
+				int nNew = nFiles - nCached;
+				if (nCached != dataMapSerialiser.getNumCachedFiles()) {
+					// files have been removed or have changed. 
+					dataMapSerialiser.setHasChanges(true);
+				}
+				dataMapSerialiser.clearCache();
 
 				sortBinaryDataMaps(streams);
 
@@ -1025,6 +1043,31 @@ PamSettingsSource, DataOutputStore {
 	}
 
 
+	/**
+	 * Get the header and footer information for a file when making the data map, 
+	 * either from the data map cache, or by reading the file. Called from 
+	 * the map making thread pool. 
+	 * @param aFile binary data file
+	 * @param nCached counter of files found in the cache
+	 * @return header and footer information. 
+	 */
+	private BinaryHeaderAndFooter getMapFileInfo(File aFile, AtomicInteger nCached) {
+		BinaryHeaderAndFooter bhf = dataMapSerialiser.findCachedFile(aFile);
+		if (bhf != null) {
+			nCached.incrementAndGet();
+			return bhf;
+		}
+		// get the file details before reading so that if it changes while being read it will be read again next time.
+		long fileLength = aFile.length();
+		long fileModified = aFile.lastModified();
+		bhf = getFileHeaderAndFooter(aFile);
+		if (bhf != null) {
+			bhf.fileLength = fileLength;
+			bhf.fileModified = fileModified;
+		}
+		return bhf;
+	}
+
 	/**
 	 * Make a set of empty datamaps. One for each datablock
 	 * @param streams list of data blocks to map
@@ -1058,6 +1101,17 @@ PamSettingsSource, DataOutputStore {
 		}
 	}
 
+	/**
+	 * Save the data map cache now. This is called every few minutes while datagrams are 
+	 * being made, so that if a long datagram calculation is interrupted, the datagrams 
+	 * made so far are in the cache and won't be made again next time.  
+	 * @return true if the cache was written. 
+	 */
+	public boolean saveDataMapCache() {
+		dataMapSerialiser.setHasChanges(true);
+		return dataMapSerialiser.saveDataMaps();
+	}
+
 	class SaveDataMap implements Runnable {
 		@Override
 		public void run() {
@@ -1265,6 +1319,7 @@ PamSettingsSource, DataOutputStore {
 		}
 		BinaryOfflineDataMapPoint mapPoint = new BinaryOfflineDataMapPoint(this,aFile, bhf.binaryHeader,
 				bhf.binaryFooter, mh, mf, bhf.datagram);
+		mapPoint.setHeaderAndFooter(bhf);
 		if (bhf.binaryFooter == null) {
 			mapPoint.setEndTime(bhf.lastDataTime);
 			mapPoint.setNDatas(bhf.nDatas);
@@ -1712,6 +1767,15 @@ PamSettingsSource, DataOutputStore {
 
 		boolean passedBad = false;
 
+		/*
+		 * Use the time index to jump over data outside the load period. If there isn't one, 
+		 * build one as the file is read so that it can be used next time.  
+		 */
+		File dataFile = mapPoint.getBinaryFile(this);
+		File timeIndexFile = swapFileType(dataFile, timeIndexFileType);
+		BinaryTimeIndex timeIndex = BinaryTimeIndex.readIndex(timeIndexFile, dataFile);
+		BinaryTimeIndex newTimeIndex = timeIndex == null ? new BinaryTimeIndex() : null;
+
 		BinaryObjectData binaryObjectData;
 		while ((binaryObjectData = inputStream.readNextObject(inputFormat)) != null) {
 			//			if (binaryObjectData.getObjectNumber() == 371){
@@ -1722,8 +1786,18 @@ PamSettingsSource, DataOutputStore {
 				mh = binarySource.sinkModuleHeader(binaryObjectData, bh);
 				moduleVersion = binaryObjectData.getVersionNumber();
 				dataSink.newModuleHeader(binaryObjectData, mh);
+				if (timeIndex != null && inputStream.getUnitsRead() == 0) {
+					int checkPoint = timeIndex.findStartCheckpoint(dataStart);
+					if (checkPoint > 0 && timeIndex.getOffset(checkPoint) > inputStream.getFilePosition()) {
+						// if this fails, the stream is unchanged and will just carry on reading everything
+						inputStream.seek(timeIndex.getOffset(checkPoint), timeIndex.getObjectCount(checkPoint));
+					}
+				}
 				break;
 			case  BinaryTypes.MODULE_FOOTER:
+				if (newTimeIndex != null) {
+					newTimeIndex.setTailOffset(inputStream.getLastObjectPosition());
+				}
 				mf = binarySource.sinkModuleFooter(binaryObjectData, bh, mh);
 				dataSink.newModuleFooter(binaryObjectData, mf);
 				break;
@@ -1747,6 +1821,18 @@ PamSettingsSource, DataOutputStore {
 				//				if (passedBad) {
 				//								System.out.println(binaryObjectData.getDataUnitBaseData().getTimeMilliseconds());
 				//				}
+				if (newTimeIndex != null) {
+					newTimeIndex.addDataObject(inputStream.getLastObjectPosition(), objectTime);
+				}
+				else if (timeIndex != null && timeIndex.canSkipToTail(binaryObjectData.getObjectNumber(), dataEnd)) {
+					/*
+					 * Everything from here on is after the end of the load period, so 
+					 * go straight to the module footer.  
+					 */
+					inputStream.seek(timeIndex.getTailOffset(), timeIndex.getNumObjects());
+					timeIndex = null;
+					continue;
+				}
 				if (objectTime < dataStart) {
 					continue;
 				}
@@ -1793,6 +1879,10 @@ PamSettingsSource, DataOutputStore {
 			}
 		}
 		bf = inputStream.getBinaryFooter();
+		if (newTimeIndex != null && bf != null) {
+			newTimeIndex.finish(dataFile.length());
+			newTimeIndex.writeIndex(timeIndexFile, dataFile);
+		}
 		inputStream.closeFile();
 
 
@@ -2158,10 +2248,33 @@ PamSettingsSource, DataOutputStore {
 	 */
 	public boolean updateBinaryFile(PamDataBlock pamDataBlock, BinaryOfflineDataMapPoint mapPoint, 
 			File srcFile, File dstFile, boolean createIndexFile) {
+		return updateBinaryFile(pamDataBlock, mapPoint, srcFile, dstFile, createIndexFile, null);
+	}
+
+	/**
+	 * Update a binary file, by reading it all in, and writing it all out again in the
+	 * latest format, optionally passing every data unit through a processor on the way. 
+	 * <p>
+	 * With a processor, the file is only replaced if the processor changed at least one data 
+	 * unit and data are written to the new file's own output stream rather than the data source's 
+	 * storage stream, so several files from the same data block can be updated at once on 
+	 * different threads. Only one data unit from the file is in memory at a time. 
+	 * @param pamDataBlock data block
+	 * @param mapPoint map point for the file (can be null) 
+	 * @param srcFile source file 
+	 * @param dstFile destination file, which may be the same as the source file
+	 * @param createIndexFile create a new index file
+	 * @param unitProcessor processor for each data unit, or null. 
+	 * @return true if successful
+	 */
+	public boolean updateBinaryFile(PamDataBlock pamDataBlock, BinaryOfflineDataMapPoint mapPoint, 
+			File srcFile, File dstFile, boolean createIndexFile, BinaryUnitProcessor unitProcessor) {
 
 		BinaryDataSource binarySource = pamDataBlock.getBinaryDataSource();
 		BinaryOutputStream outputStream = new BinaryOutputStream(this, pamDataBlock);
-		binarySource.setBinaryStorageStream(outputStream);
+		if (unitProcessor == null) {
+			binarySource.setBinaryStorageStream(outputStream);
+		}
 		File tempFile = new File(dstFile.getAbsolutePath() + ".tmp");
 		/*
 		 * Check the path (subfolder) of the binary output. 
@@ -2211,11 +2324,15 @@ PamSettingsSource, DataOutputStore {
 
 		outputStream.writeHeader(binaryHeader.getDataDate(), binaryHeader.getAnalysisDate());
 		//		ModuleHeader mh = 
-		byte[] moduleHeaderData = binarySource.getModuleHeaderData();
+		byte[] moduleHeaderData;
+		synchronized (binarySource) {
+			moduleHeaderData = binarySource.getModuleHeaderData();
+		}
 		outputStream.writeModuleHeader(moduleHeaderData);
 
 
 		PamDataUnit aDataUnit;
+		boolean unitsChanged = false;
 		int n=0;
 		long time = 0;
 		long time2 =0;
@@ -2229,7 +2346,9 @@ PamSettingsSource, DataOutputStore {
 			case BinaryTypes.FILE_FOOTER:
 				break;
 			case BinaryTypes.MODULE_HEADER:
-				mh = binarySource.sinkModuleHeader(binaryObjectData, binaryHeader);
+				synchronized (binarySource) {
+					mh = binarySource.sinkModuleHeader(binaryObjectData, binaryHeader);
+				}
 				oldModuleVersion = binaryObjectData.getVersionNumber();
 				break;
 			case BinaryTypes.MODULE_FOOTER:
@@ -2247,13 +2366,20 @@ PamSettingsSource, DataOutputStore {
 				//				if (n%500==0){
 				//					System.out.println("BinaryStore: aDataUnit = null:");
 				//				}
-				aDataUnit = binarySource.sinkData(binaryObjectData, binaryHeader, oldModuleVersion);
+				synchronized (binarySource) {
+					aDataUnit = binarySource.sinkData(binaryObjectData, binaryHeader, oldModuleVersion);
+				}
 				if (aDataUnit == null) {
 					continue;
 				}
 				aDataUnit.getBasicData().mergeBaseData(binaryObjectData.getDataUnitBaseData());
 				unpackAnnotationData(binaryHeader.getHeaderFormat(), aDataUnit, binaryObjectData, null);
-				binarySource.saveData(aDataUnit);
+				if (unitProcessor != null) {
+					aDataUnit.setParentDataBlock(pamDataBlock);
+					aDataUnit.setDataUnitFileInformation(new DataUnitFileInformation(this, srcFile, binaryObjectData.getObjectNumber()));
+					unitsChanged |= unitProcessor.processDataUnit(aDataUnit);
+				}
+				binarySource.saveData(aDataUnit, outputStream);
 				n++;
 				//					outputStream.storeData(binaryObjectData);
 
@@ -2263,7 +2389,10 @@ PamSettingsSource, DataOutputStore {
 		}
 		//	System.out.printf("Finished saving data units in %s ...\n", tempFile.getAbsolutePath());
 
-		byte[] moduleFooterData = binarySource.getModuleFooterData(); //saving (copying file)
+		byte[] moduleFooterData;
+		synchronized (binarySource) {
+			moduleFooterData = binarySource.getModuleFooterData(); //saving (copying file)
+		}
 		outputStream.writeModuleFooter(moduleFooterData);
 
 		binaryFooter = inputStream.getBinaryFooter();
@@ -2278,6 +2407,12 @@ PamSettingsSource, DataOutputStore {
 		outputStream.closeFile();
 		inputStream.closeFile();
 
+		if (unitProcessor != null && !unitsChanged && srcFile.equals(dstFile)) {
+			// nothing changed, so leave the original file alone. 
+			tempFile.delete();
+			return true;
+		}
+
 		/*
 		 * Now file final stage - copy the temp file in place of the 
 		 * original file. This may be the same file, in which case it needs to be
@@ -2511,7 +2646,7 @@ PamSettingsSource, DataOutputStore {
 
 
 
-	boolean reportError(String string) {
+	synchronized boolean reportError(String string) {
 		System.out.println(string);
 		if (repeatWarning == null) {
 			repeatWarning = new RepeatWarning(getUnitName(), 50, 20);
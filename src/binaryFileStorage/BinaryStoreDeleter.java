@@ -66,6 +66,7 @@ public class BinaryStoreDeleter {
 		PamFileFilter binaryDataFilter = new PamFileFilter("Binary Data Files", BinaryStore.fileType);
 		binaryDataFilter.addFileType(BinaryStore.indexFileType);
 		binaryDataFilter.addFileType(BinaryStore.noiseFileType);
+		binaryDataFilter.addFileType(BinaryStore.timeIndexFileType);
 		binaryDataFilter.setAcceptFolders(true);
 
 		binaryStore.listDataFiles(fileList, rootFolder, binaryDataFilter);
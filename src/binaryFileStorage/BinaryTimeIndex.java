@@ -0,0 +1,346 @@
+package binaryFileStorage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact index of byte offsets within a binary data (pgdf) file so that
+ * data loads for a short time window can seek straight to the right part of
+ * the file rather than reading and discarding everything before it.
+ * <p>
+ * The index is held in a small file alongside the pgdf and pgdx files, with
+ * the same name and the type {@link BinaryStore#timeIndexFileType}. It is written
+ * by the BinaryOutputStream when a file is closed and, for older data, is created
+ * the first time a whole file is read during a data load.
+ * <p>
+ * A checkpoint is made every {@link #DEFAULT_STRIDE} data objects. Objects are not
+ * always written in strict time order (e.g. long whistles are written when they end),
+ * so each checkpoint holds the maximum time of all objects before it and the minimum time of
+ * all objects from it to the end of the file. Seeking to the last checkpoint before
+ * which all objects are earlier than the load start can therefore never miss data, and
+ * once a checkpoint is reached after which all objects are later than the load end,
+ * reading can skip straight to the module and file footers.
+ * <p>
+ * An index is only used if the length and modification time of the data file match those 
+ * recorded in the index and the index checksum is correct, so an index left over from before 
+ * a file was rewritten, or one that has been damaged, will be ignored.
+ *
+ */
+public class BinaryTimeIndex {
+
+	/**
+	 * Number of data objects between checkpoints
+	 */
+	public static final int DEFAULT_STRIDE = 64;
+
+	private static final int FILE_IDENTIFIER = 0x50475449; // "PGTI"
+
+	private static final int INDEX_VERSION = 2;
+
+	private int stride = DEFAULT_STRIDE;
+
+	private int nCheckpoints;
+
+	private long[] offsets = new long[16];
+
+	private long[] maxTimeBefore = new long[16];
+
+	private long[] minTimeFrom = new long[16];
+
+	private int nObjects;
+
+	private long maxTime = Long.MIN_VALUE;
+
+	private long lastObjectOffset = -1;
+
+	private long tailOffset = -1;
+
+	private long fileLength = -1;
+
+	private boolean valid = true;
+
+	/**
+	 * Create an empty index which will be filled as data are written or read.
+	 */
+	public BinaryTimeIndex() {
+	}
+
+	/**
+	 * Add a data object. Must be called for every data object in the file
+	 * (including background noise data), in the order they are in the file.
+	 * @param fileOffset byte offset of the start of the object in the file
+	 * @param timeMillis object time
+	 */
+	public void addDataObject(long fileOffset, long timeMillis) {
+		if (fileOffset < 0 || fileOffset <= lastObjectOffset) {
+			valid = false;
+		}
+		if (nObjects % stride == 0) {
+			if (nCheckpoints == offsets.length) {
+				int newLen = nCheckpoints * 2;
+				offsets = Arrays.copyOf(offsets, newLen);
+				maxTimeBefore = Arrays.copyOf(maxTimeBefore, newLen);
+				minTimeFrom = Arrays.copyOf(minTimeFrom, newLen);
+			}
+			offsets[nCheckpoints] = fileOffset;
+			maxTimeBefore[nCheckpoints] = maxTime;
+			minTimeFrom[nCheckpoints] = Long.MAX_VALUE;
+			nCheckpoints++;
+		}
+		// for now minTimeFrom holds the minimum time within each block.
+		minTimeFrom[nCheckpoints-1] = Math.min(minTimeFrom[nCheckpoints-1], timeMillis);
+		maxTime = Math.max(maxTime, timeMillis);
+		lastObjectOffset = fileOffset;
+		nObjects++;
+	}
+
+	/**
+	 * Set the offset of the first object after all the data, i.e. the
+	 * module footer.
+	 * @param tailOffset byte offset of the module footer.
+	 */
+	public void setTailOffset(long tailOffset) {
+		if (this.tailOffset < 0) {
+			this.tailOffset = tailOffset;
+		}
+	}
+
+	/**
+	 * Call once all data have been added.
+	 * @param fileLength total length of the data file in bytes.
+	 */
+	public void finish(long fileLength) {
+		this.fileLength = fileLength;
+		if (tailOffset <= lastObjectOffset) {
+			// something odd, e.g. data after the module footer, so never skip to the end.
+			tailOffset = -1;
+		}
+		// convert block minimums into minimums of everything from each checkpoint to the end.
+		for (int i = nCheckpoints-2; i >= 0; i--) {
+			minTimeFrom[i] = Math.min(minTimeFrom[i], minTimeFrom[i+1]);
+		}
+	}
+
+	/**
+	 * Invalidate the index, e.g. if a file position could not
+	 * be worked out. An invalid index will not be written.
+	 */
+	public void invalidate() {
+		valid = false;
+	}
+
+	/**
+	 * @return true if the index is valid
+	 */
+	public boolean isValid() {
+		return valid;
+	}
+
+	/**
+	 * Find the checkpoint to start reading from for data at or after
+	 * the given time.
+	 * @param dataStart load start time
+	 * @return checkpoint number, or -1 if there are no checkpoints.
+	 */
+	public int findStartCheckpoint(long dataStart) {
+		// maxTimeBefore never decreases, so can binary search for the last entry < dataStart
+		int lo = 0, hi = nCheckpoints;
+		while (lo < hi) {
+			int mid = (lo+hi) >>> 1;
+			if (maxTimeBefore[mid] < dataStart) {
+				lo = mid+1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo-1;
+	}
+
+	/**
+	 * Work out whether reading can jump to the module footer at a given
+	 * data object, because it's at a checkpoint and all objects from there
+	 * to the end of the file are after the load end time.
+	 * @param objectNumber number of the data object in the file (0 based)
+	 * @param dataEnd load end time
+	 * @return true if it's OK to seek to the tail offset.
+	 */
+	public boolean canSkipToTail(int objectNumber, long dataEnd) {
+		if (tailOffset < 0 || objectNumber % stride != 0) {
+			return false;
+		}
+		int cp = objectNumber / stride;
+		return cp < nCheckpoints && minTimeFrom[cp] > dataEnd;
+	}
+
+	/**
+	 * @param checkpoint checkpoint number
+	 * @return byte offset of the checkpoint in the data file
+	 */
+	public long getOffset(int checkpoint) {
+		return offsets[checkpoint];
+	}
+
+	/**
+	 * @param checkpoint checkpoint number
+	 * @return number of data objects in the file before the checkpoint.
+	 */
+	public int getObjectCount(int checkpoint) {
+		return checkpoint * stride;
+	}
+
+	/**
+	 * @return number of checkpoints
+	 */
+	public int getNumCheckpoints() {
+		return nCheckpoints;
+	}
+
+	/**
+	 * @return total number of data objects in the file
+	 */
+	public int getNumObjects() {
+		return nObjects;
+	}
+
+	/**
+	 * @return offset of the module footer, or -1 if unknown.
+	 */
+	public long getTailOffset() {
+		return tailOffset;
+	}
+
+	/**
+	 * @return length of the data file the index was made for
+	 */
+	public long getFileLength() {
+		return fileLength;
+	}
+
+	/**
+	 * Write the index to file. The index is written to a temporary file which then
+	 * replaces any existing index, so a reader never sees a partly written file.
+	 * @param indexFile file to write
+	 * @param dataFile data file the index is for. Must be closed, since its
+	 * modification time is stored in the index.
+	 * @return true if written successfully
+	 */
+	public boolean writeIndex(File indexFile, File dataFile) {
+		if (!valid || fileLength < 0 || dataFile == null || dataFile.length() != fileLength) {
+			return false;
+		}
+		// unique temporary name, since two loads of the same file may both try to write an index. 
+		File tempFile;
+		try {
+			tempFile = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getAbsoluteFile().getParentFile());
+		}
+		catch (IOException e) {
+			return false;
+		}
+		CRC32 crc = new CRC32();
+		try (DataOutputStream dos = new DataOutputStream(new CheckedOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tempFile)), crc))) {
+			dos.writeInt(FILE_IDENTIFIER);
+			dos.writeInt(INDEX_VERSION);
+			dos.writeLong(fileLength);
+			dos.writeLong(dataFile.lastModified());
+			dos.writeInt(stride);
+			dos.writeInt(nObjects);
+			dos.writeLong(tailOffset);
+			dos.writeInt(nCheckpoints);
+			for (int i = 0; i < nCheckpoints; i++) {
+				dos.writeLong(offsets[i]);
+				dos.writeLong(maxTimeBefore[i]);
+				dos.writeLong(minTimeFrom[i]);
+			}
+			dos.flush();
+			// checksum of everything before it. 
+			dos.writeLong(crc.getValue());
+		}
+		catch (IOException e) {
+			// often just a read only data folder, so don't make a fuss.
+			tempFile.delete();
+			return false;
+		}
+		try {
+			try {
+				Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, 
+						StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		catch (IOException e) {
+			tempFile.delete();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Read an index from file.
+	 * @param indexFile index file
+	 * @param dataFile data file the index is for. The index is only returned
+	 * if the length and modification time of this match those recorded in the index. 
+	 * @return index or null if it doesn't exist, can't be read, is corrupt or is out of date.
+	 */
+	public static BinaryTimeIndex readIndex(File indexFile, File dataFile) {
+		if (indexFile == null || !indexFile.exists() || dataFile == null) {
+			return null;
+		}
+		CRC32 crc = new CRC32();
+		try (DataInputStream dis = new DataInputStream(new CheckedInputStream(
+				new BufferedInputStream(new FileInputStream(indexFile)), crc))) {
+			if (dis.readInt() != FILE_IDENTIFIER || dis.readInt() != INDEX_VERSION) {
+				// older versions had no checksum, so will get rebuilt. 
+				return null;
+			}
+			BinaryTimeIndex index = new BinaryTimeIndex();
+			index.fileLength = dis.readLong();
+			long dataModified = dis.readLong();
+			if (index.fileLength != dataFile.length() || dataModified != dataFile.lastModified()) {
+				return null;
+			}
+			index.stride = dis.readInt();
+			index.nObjects = dis.readInt();
+			index.tailOffset = dis.readLong();
+			int n = dis.readInt();
+			if (index.stride <= 0 || n < 0 || n > index.nObjects / index.stride + 1 || 
+					(long) n * 24 > indexFile.length()) {
+				return null;
+			}
+			index.nCheckpoints = n;
+			index.offsets = new long[n];
+			index.maxTimeBefore = new long[n];
+			index.minTimeFrom = new long[n];
+			for (int i = 0; i < n; i++) {
+				index.offsets[i] = dis.readLong();
+				index.maxTimeBefore[i] = dis.readLong();
+				index.minTimeFrom[i] = dis.readLong();
+			}
+			long expectedCrc = crc.getValue();
+			if (dis.readLong() != expectedCrc || dis.read() >= 0) {
+				return null;
+			}
+			return index;
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+}
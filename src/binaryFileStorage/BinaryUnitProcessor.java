@@ -0,0 +1,22 @@
+package binaryFileStorage;
+
+import PamguardMVC.PamDataUnit;
+
+/**
+ * Processes data units as they are read from a binary file which is being rewritten
+ * by {@link BinaryStore#updateBinaryFile(PamguardMVC.PamDataBlock, BinaryOfflineDataMapPoint, java.io.File, java.io.File, boolean, BinaryUnitProcessor)}, 
+ * before they are written back to the new file. 
+ * <p>
+ * Several files may be processed at the same time on different threads, so implementations 
+ * must be thread safe. 
+ */
+public interface BinaryUnitProcessor {
+
+	/**
+	 * Process a data unit. 
+	 * @param dataUnit data unit read from the file
+	 * @return true if the data unit was changed. 
+	 */
+	public boolean processDataUnit(PamDataUnit dataUnit);
+	
+}
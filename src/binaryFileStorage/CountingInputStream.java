@@ -22,6 +22,16 @@ public class CountingInputStream extends InputStream {
 		super();
 		this.parentStream = parentStream;
 	}
+	
+	/**
+	 * Counting stream for a parent stream which is not at the start of a file
+	 * @param parentStream parent stream
+	 * @param startPos current position of the parent stream in the file
+	 */
+	public CountingInputStream(InputStream parentStream, long startPos) {
+		this(parentStream);
+		this.pos = startPos;
+	}
 
 	@Override
 	public int read() throws IOException {
@@ -2,41 +2,74 @@ package binaryFileStorage;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.NotSerializableException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.ListIterator;
 
 import PamguardMVC.PamDataBlock;
+import dataGram.Datagram;
 import dataMap.OfflineDataMap;
+import dataMap.OfflineDataMapPoint;
 
+/**
+ * Cache of binary file header and footer information so that the data map
+ * can be made quickly without opening every file each time PAMGuard Viewer starts.
+ * <p>
+ * This used to write the lists of map points using Java object serialisation, which was
+ * slow for large data sets and broke whenever any class held in a map point changed.
+ * The cache is now a simple versioned binary file holding, for each data file, its path
+ * relative to the binary store, its length and modified time and the header, footer,
+ * module header and footer data and datagram in the same formats used in the binary files.
+ * When the map is made, files with the same length and modified time as in the cache
+ * are taken from the cache and all other files are read again, so the cache is
+ * updated incrementally as files are added or changed. Map points are then made from the
+ * cached information in exactly the same way as from information read from the files.
+ */
 public class DataMapSerialiser {
 
+	/**
+	 * Name of the cache file in the binary store folder.
+	 */
+	public static final String cacheFileName = "binaryDataMap.pgmc";
+
+	/**
+	 * Name of the old object serialised data map file, which can't be read 
+	 * any more so is deleted once the new cache has been written. 
+	 */
+	private static final String legacyFileName = "serialisedBinaryMap.data";
+
+	private static final int FILE_IDENTIFIER = 0x50474D43; // "PGMC"
+
+	private static final int CACHE_VERSION = 1;
 
 	/*
 	 *  This was changed to binaryStore rather than offlinedataStore so when
 	 *  it calls checkfilesExist and listAllFiles it can tell it the BinaryStore
 	 *  to look in meaning the BinaryStore can be moved. but retain the same
 	 *  mappoints as now the hold only the relative path.
-	 *  
+	 *
 	 *    both checkfilesExist and listAllFiles currently rely on the mappoint
 	 *    being of a binaryStore if undone they could just cast it to binaryStore
 	 *    Graham Weatherup 11Jul2012
 	 */
 	private BinaryStore binaryStore;
 
-	private ArrayList<String> allFiles = new ArrayList<String>();
+	private HashMap<String, BinaryHeaderAndFooter> cachedFiles = new HashMap<>();
+
+	private HashMap<String, BinaryHeaderAndFooter> unmappedFiles = new HashMap<>();
 
 	private boolean hasChanges;
 
@@ -48,214 +81,257 @@ public class DataMapSerialiser {
 		this.binaryStore = binaryStore;
 	}
 
+	/**
+	 * Load the cache file. Map points are not created here, but cached information for
+	 * each file can then be found with {@link #findCachedFile(File)}.
+	 * @param streams data blocks that will be mapped
+	 * @param file cache file
+	 * @return true if the cache was read.
+	 */
 	public boolean loadDataMap(ArrayList<PamDataBlock> streams, File file) {
 		this.streams = streams;
 		this.serialisedFile = file;
-		InputStream os;
-		String streamName;
-		List mapPoints;
-		PamDataBlock dataBlock;
-		int nRemovals;
-		ObjectInputStream oos = null;
-		try {
-			os = new FileInputStream(file);
-			oos = new ObjectInputStream(new BufferedInputStream(os));
-		} catch (FileNotFoundException e) {
-			System.out.println("Cached datamap file " + file.getAbsolutePath() + " not found.");
-			return false;
-		} catch (IOException e) {
-			System.out.println("Cached datamap file " + file.getAbsolutePath() + " corrupted or unreadable.");
-			e.printStackTrace();
+		cachedFiles.clear();
+		unmappedFiles.clear();
+		if (file == null || !file.exists()) {
+			System.out.println("Cached datamap file " + file + " not found.");
 			return false;
 		}
-		while (true) {
-			try {
-				OfflineDataMap dm;
-				//			Object o;
-				//			for (int i = 0; i < streams.size(); i++) {
-				streamName = (String) oos.readObject();
-				mapPoints = (List) oos.readObject();
-				
-				// if there are no map points, try to match up the stream using only the stream name
-				if (mapPoints.isEmpty()) {
-					dataBlock = findDataStream(streams, streamName);
-				}
-				
-				// if there are map points, get the unit name and type from the header of the first map point and use those
-				// as well as the stream name.  What we should be doing is changing findDataStream to match by the long name
-				// instead of just the name, but changing it now may cause headaches for existing data maps.  Safer just
-				// to add extra checks to make sure we're really matching up the correct information
-				else {
-					String mapPointsName = ((BinaryOfflineDataMapPoint) mapPoints.get(0)).getBinaryHeader().getModuleName();
-					String mapPointsType = ((BinaryOfflineDataMapPoint) mapPoints.get(0)).getBinaryHeader().getModuleType();
-					dataBlock = findDataStream(streams, streamName, mapPointsName, mapPointsType);
-				}
-				
-				if (dataBlock == null) {
-					System.out.println("No data block match found for data map stream " + streamName);
-					continue;
-				}
-				System.out.println("Matched data map stream " + streamName + " to data block " + dataBlock.getLongDataName());
-				dm = dataBlock.getOfflineDataMap(binaryStore);
-				if (dm == null) {
-					continue;
-				}
-				nRemovals = checkFilesExist(mapPoints);
-				if (nRemovals > 0) {
-					System.out.println(String.format("%d files referred to in the serialised data map for %s cannot be found. This will occurr if the ",
-							nRemovals, dataBlock.getDataName()));
-					System.out.println("   binary storage location has moved of if files were deleted and may not be a problem");
+		try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536))) {
+			if (dis.readInt() != FILE_IDENTIFIER) {
+				System.out.println("Cached datamap file " + file.getAbsolutePath() + " is not a data map file.");
+				return false;
+			}
+			int version = dis.readInt();
+			if (version > CACHE_VERSION) {
+				System.out.println("Cached datamap file " + file.getAbsolutePath() + " was written by a later version of PAMGuard.");
+				return false;
+			}
+			int nFiles = dis.readInt();
+			for (int i = 0; i < nFiles; i++) {
+				String path = dis.readUTF();
+				BinaryHeaderAndFooter bhf = readCacheEntry(dis);
+				if (bhf == null) {
+					break;
 				}
-				dm.setMapPoints(mapPoints);
-				dm.setParentDataBlock(dataBlock);
-				dm.sortRanges();
-				listAllFiles(mapPoints);
-			} catch (EOFException eof) {
-				break;
-			}catch (IOException e) {
-				System.out.println("Error reading datamap file " + file.getAbsolutePath() + " - not all data map streams may have been matched to data blocks");
-				System.out.println(e.getMessage());
-//				e.printStackTrace();
-				break;
-				//			break;
-			} catch (ClassNotFoundException e) {
-				System.out.println("Error reading datamap file " + file.getAbsolutePath() + " - not all data map streams may have been matched to data blocks");
-//				e.printStackTrace();
-				break;
-			} 
-			
+				cachedFiles.put(path, bhf);
+			}
 		}
-		try {
-			oos.close();
-		} catch (IOException e) {
-//			e.printStackTrace();
-			System.out.println("loadDataMap: " + e.getMessage());
+		catch (EOFException eof) {
+			System.out.println("Cached datamap file " + file.getAbsolutePath() + " is incomplete.");
+		}
+		catch (IOException e) {
+			System.out.println("Error reading datamap file " + file.getAbsolutePath() + " - not all files may be in the cache");
+			System.out.println(e.getMessage());
 		}
-		/*
-		 * Now sort the files so we can use a fast find algorithm later on
-		 */
-		Collections.sort(allFiles);
 		return true;
 	}
 
-	private int checkFilesExist(List<BinaryOfflineDataMapPoint> mapPoints) {
-		/*
-		 * Check all the files in the list exist - and remove them 
-		 * if they don't. Start at the back of the list and remove
-		 * from there - will be quicker for an array list. 
-		 */
-		if (mapPoints == null || mapPoints.size() == 0) {
-			return 0;
+	/**
+	 * Find cached header and footer information for a file. This can be called
+	 * from any number of threads at the same time once the cache has been loaded.
+	 * @param dataFile binary data file
+	 * @return header and footer information or null if the file isn't in the cache,
+	 * or has changed length or modified time since it was cached.
+	 */
+	public BinaryHeaderAndFooter findCachedFile(File dataFile) {
+		BinaryHeaderAndFooter bhf = cachedFiles.get(getRelativePath(dataFile));
+		if (bhf == null) {
+			return null;
 		}
-		int nRemovals = 0;
-		ListIterator<BinaryOfflineDataMapPoint> it = mapPoints.listIterator(mapPoints.size());
-		BinaryOfflineDataMapPoint aPoint;
-		File file;
-		while (it.hasPrevious()) {
-			aPoint = it.previous();
-			file = aPoint.getBinaryFile(binaryStore);
-			if (file == null || !file.exists()) {
-				it.remove();
-				nRemovals ++;
-			}
+		if (bhf.fileLength != dataFile.length() || bhf.fileModified != dataFile.lastModified()) {
+			return null;
 		}
-		return nRemovals;
+		return bhf;
 	}
 
-	private void listAllFiles(List<BinaryOfflineDataMapPoint> mapPoints) {
-		ListIterator<BinaryOfflineDataMapPoint> it = mapPoints.listIterator();
-		BinaryOfflineDataMapPoint aPoint;
-		File aFile;
-		while (it.hasNext()) {
-			aPoint = it.next();
-			aFile = aPoint.getBinaryFile(binaryStore);
-			allFiles.add(aFile.getName());
+	/**
+	 * Add information for a file which could not be added to a data map, 
+	 * usually because it's from a module that isn't in the current configuration. 
+	 * It will still be written to the cache so it doesn't need to be read again
+	 * next time. 
+	 * @param dataFile binary data file
+	 * @param bhf header and footer information
+	 */
+	public void addUnmappedFile(File dataFile, BinaryHeaderAndFooter bhf) {
+		if (bhf.binaryHeader == null) {
+			return;
 		}
+		unmappedFiles.put(getRelativePath(dataFile), bhf);
 	}
 
 	/**
-	 * Search to see if a file exists already, in which case it won't 
-	 * be necessary to add it to the data map. 
-	 * @param aFile file to search for. Note that the search is done only on the 
-	 * final name part of the file. 
-	 * @return index of file in list or -1 if not found
+	 * @return the number of files in the loaded cache
 	 */
-	public int findFile(File aFile) {
-		String fileName = aFile.getName();
-		return Collections.binarySearch(allFiles, fileName);
+	public int getNumCachedFiles() {
+		return cachedFiles.size();
 	}
 
 	/**
-	 * Remove a file from the datamap 
-	 * @param fileIndex index of file
-	 * @return true if file was found and removed. 
+	 * Clear the loaded cache. Call once the map has been made to free memory.
 	 */
-	public boolean removeFileAtIndex(int fileIndex) {
-		try {
-			String a = allFiles.remove(fileIndex);
-			return (a != null);
+	public void clearCache() {
+		cachedFiles.clear();
+	}
+
+	private String getRelativePath(File dataFile) {
+		URI rootURI = new File(binaryStore.binaryStoreSettings.getStoreLocation()).toURI();
+		return rootURI.relativize(dataFile.toURI()).toString();
+	}
+
+	private BinaryHeaderAndFooter readCacheEntry(DataInputStream dis) throws IOException {
+		BinaryHeaderAndFooter bhf = new BinaryHeaderAndFooter();
+		bhf.fileLength = dis.readLong();
+		bhf.fileModified = dis.readLong();
+		// header is held as a block of bytes since BinaryHeader.readHeader is not safe
+		// to use on a buffered stream which holds more than the header.
+		byte[] headerBytes = new byte[dis.readInt()];
+		dis.readFully(headerBytes);
+		BinaryHeader bh = new BinaryHeader();
+		if (!bh.readHeader(new DataInputStream(new ByteArrayInputStream(headerBytes)))) {
+			return null;
 		}
-		catch (IndexOutOfBoundsException e) {
-			return false;
+		bhf.binaryHeader = bh;
+		int fileFormat = bh.getHeaderFormat();
+		if (dis.readBoolean()) {
+			dis.readInt(); // footer length
+			dis.readInt(); // footer type
+			BinaryFooter bf = new BinaryFooter();
+			if (!bf.readFooterData(dis, fileFormat)) {
+				return null;
+			}
+			bhf.binaryFooter = bf;
+		}
+		bhf.moduleHeaderData = readObjectData(dis, BinaryTypes.MODULE_HEADER);
+		bhf.moduleFooterData = readObjectData(dis, BinaryTypes.MODULE_FOOTER);
+		if (dis.readBoolean()) {
+			int objectLength = dis.readInt();
+			dis.readInt(); // datagram type
+			bhf.datagram = new Datagram(0);
+			bhf.datagram.readDatagramData(dis, objectLength);
 		}
+		bhf.lastDataTime = dis.readLong();
+		bhf.nDatas = dis.readInt();
+		return bhf;
 	}
 
-	private PamDataBlock findDataStream(ArrayList<PamDataBlock> streams, String streamName) {
-		for (int i = 0; i < streams.size(); i++) {
-			if (streams.get(i).getDataName().equals(streamName)) {
-				return streams.get(i);
-			}
+	private BinaryObjectData readObjectData(DataInputStream dis, int objectType) throws IOException {
+		if (!dis.readBoolean()) {
+			return null;
 		}
-		return null;
+		int version = dis.readInt();
+		int length = dis.readInt();
+		byte[] data = new byte[length];
+		dis.readFully(data);
+		return new BinaryObjectData(version, objectType, data, length);
 	}
-	
-	private PamDataBlock findDataStream(ArrayList<PamDataBlock> streams, String streamName, String mapName, String mapType) {
-		for (int i = 0; i < streams.size(); i++) {
-			if (streams.get(i).getDataName().equals(streamName) &&
-					streams.get(i).getParentProcess().getPamControlledUnit().getUnitName().equals(mapName) &&
-					streams.get(i).getParentProcess().getPamControlledUnit().getUnitType().equals(mapType) )
-					{
-				return streams.get(i);
-			}
+
+	private void writeCacheEntry(DataOutputStream dos, BinaryHeaderAndFooter bhf, Datagram datagram) throws IOException {
+		dos.writeLong(bhf.fileLength);
+		dos.writeLong(bhf.fileModified);
+		ByteArrayOutputStream headerBytes = new ByteArrayOutputStream(256);
+		bhf.binaryHeader.writeHeader(new DataOutputStream(headerBytes));
+		dos.writeInt(headerBytes.size());
+		headerBytes.writeTo(dos);
+		dos.writeBoolean(bhf.binaryFooter != null);
+		if (bhf.binaryFooter != null) {
+			bhf.binaryFooter.writeFooter(dos, bhf.binaryHeader.getHeaderFormat());
+		}
+		writeObjectData(dos, bhf.moduleHeaderData);
+		writeObjectData(dos, bhf.moduleFooterData);
+		dos.writeBoolean(datagram != null);
+		if (datagram != null) {
+			datagram.writeDatagram(dos);
 		}
-		return null;
+		dos.writeLong(bhf.lastDataTime);
+		dos.writeInt(bhf.nDatas);
 	}
-	
-	
 
-	public boolean saveDataMaps() {
-		OutputStream os;
-		try {
-			os = new FileOutputStream(serialisedFile);
-		} catch (FileNotFoundException e) {
+	private void writeObjectData(DataOutputStream dos, BinaryObjectData objectData) throws IOException {
+		dos.writeBoolean(objectData != null);
+		if (objectData != null) {
+			dos.writeInt(objectData.getVersionNumber());
+			dos.writeInt(objectData.getDataLength());
+			dos.write(objectData.getData(), 0, objectData.getDataLength());
+		}
+	}
+
+	/**
+	 * Write all map points which have header and footer information into the
+	 * cache file. The file is written to a temporary file first and then renamed,
+	 * so the old cache remains intact if anything goes wrong.
+	 * @return true if the cache file was written
+	 */
+	public synchronized boolean saveDataMaps() {
+		if (serialisedFile == null || streams == null) {
+			return false;
+		}
+		List<BinaryOfflineDataMapPoint> cachePoints = new ArrayList<>();
+		for (int i = 0; i < streams.size(); i++) {
+			OfflineDataMap dm = streams.get(i).getOfflineDataMap(binaryStore);
+			if (dm == null) {
+				continue;
+			}
+			List<OfflineDataMapPoint> mapPoints = dm.getMapPoints();
+			synchronized (mapPoints) {
+				for (OfflineDataMapPoint mapPoint : mapPoints) {
+					if (mapPoint instanceof BinaryOfflineDataMapPoint) {
+						BinaryOfflineDataMapPoint binaryPoint = (BinaryOfflineDataMapPoint) mapPoint;
+						if (binaryPoint.getHeaderAndFooter() != null) {
+							cachePoints.add(binaryPoint);
+						}
+					}
+				}
+			}
+		}
+		File tempFile = new File(serialisedFile.getAbsolutePath() + ".tmp");
+		try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 65536))) {
+			dos.writeInt(FILE_IDENTIFIER);
+			dos.writeInt(CACHE_VERSION);
+			dos.writeInt(cachePoints.size() + unmappedFiles.size());
+			for (BinaryOfflineDataMapPoint mapPoint : cachePoints) {
+				dos.writeUTF(getRelativePath(mapPoint.getBinaryFile(binaryStore)));
+				writeCacheEntry(dos, mapPoint.getHeaderAndFooter(), mapPoint.getDatagram());
+			}
+			for (String path : unmappedFiles.keySet()) {
+				BinaryHeaderAndFooter bhf = unmappedFiles.get(path);
+				dos.writeUTF(path);
+				writeCacheEntry(dos, bhf, bhf.datagram);
+			}
+		} catch (IOException e) {
 			e.printStackTrace();
+			tempFile.delete();
 			return false;
 		}
 		try {
-			ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(os));
-			OfflineDataMap dm;
-			Object o;
-			for (int i = 0; i < streams.size(); i++) {
-				dm = streams.get(i).getOfflineDataMap(binaryStore);
-				if (dm == null) {
-					continue;
-				}
-				oos.writeObject(streams.get(i).getDataName());
-				try {
-				oos.writeObject(dm.getMapPoints());
-				}
-				catch (NotSerializableException se) {
-					se.printStackTrace();
-				}
+			try {
+				Files.move(tempFile.toPath(), serialisedFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile.toPath(), serialisedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
 			}
-			oos.close();
 		} catch (IOException e) {
 			e.printStackTrace();
+			tempFile.delete();
 			return false;
 		}
+		hasChanges = false;
+		deleteLegacyFile();
 		return true;
 	}
 
+	/**
+	 * Delete the old serialised data map from the same folder as the cache, since 
+	 * everything in it has now been replaced by the new cache. 
+	 */
+	private void deleteLegacyFile() {
+		File legacyFile = new File(serialisedFile.getAbsoluteFile().getParentFile(), legacyFileName);
+		if (legacyFile.exists() && !legacyFile.delete()) {
+			System.out.println("Unable to delete old data map file " + legacyFile.getAbsolutePath());
+		}
+	}
+
 	public void setHasChanges(boolean hasChanges) {
 		this.hasChanges = hasChanges;
 	}
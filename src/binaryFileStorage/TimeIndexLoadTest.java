@@ -0,0 +1,220 @@
+package binaryFileStorage;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import PamguardMVC.DataUnitBaseData;
+
+/**
+ * Benchmark for the binary file time index. Times loading short periods of
+ * data from a large binary file by reading everything and discarding data outside
+ * the load period, as BinaryStore.loadData used to, and by using a BinaryTimeIndex
+ * to jump straight to the right part of the file.
+ * <p>
+ * Run with the path of an existing pgdf file as an argument, or with no arguments to
+ * generate a one hour file of one million 200 byte objects in the temp folder.
+ */
+public class TimeIndexLoadTest {
+
+	private static final int nObjects = 1000000;
+
+	private static final int objectBytes = 200;
+
+	private static final long fileDuration = 3600000L;
+
+	private static final int nRepeats = 5;
+
+	public static void main(String[] args) {
+		File dataFile;
+		try {
+			if (args.length > 0) {
+				dataFile = new File(args[0]);
+			}
+			else {
+				dataFile = File.createTempFile("TimeIndexLoadTest", "." + BinaryStore.fileType);
+				dataFile.deleteOnExit();
+				System.out.printf("Writing %d objects to %s\n", nObjects, dataFile.getAbsolutePath());
+				writeTestFile(dataFile);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		File indexFile = new File(dataFile.getAbsolutePath().replace("." + BinaryStore.fileType, "." + BinaryStore.timeIndexFileType));
+		if (args.length == 0) {
+			indexFile.deleteOnExit();
+		}
+
+		long t0 = System.nanoTime();
+		BinaryTimeIndex timeIndex = buildIndex(dataFile);
+		long t1 = System.nanoTime();
+		if (timeIndex == null) {
+			System.out.println("Unable to read file " + dataFile);
+			return;
+		}
+		timeIndex.writeIndex(indexFile, dataFile);
+		System.out.printf("File %3.1f MBytes, %d objects, index built in %3.1fms, %d bytes\n", dataFile.length() / 1048576.,
+				timeIndex.getNumObjects(), (t1-t0)/1.e6, indexFile.length());
+		BinaryTimeIndex readIndex = BinaryTimeIndex.readIndex(indexFile, dataFile);
+
+		long[] times = readTimeRange(dataFile);
+		long fileStart = times[0], fileEnd = times[1];
+		double[] windowFractions = {0.001, 0.01, 0.1, 1.0};
+		for (double frac : windowFractions) {
+			long window = (long) ((fileEnd-fileStart) * frac);
+			long[] starts = {fileStart, fileStart + (fileEnd-fileStart-window)/2, fileEnd-window};
+			String[] where = {"start", "middle", "end"};
+			for (int i = 0; i < starts.length; i++) {
+				long start = starts[i], end = starts[i] + window;
+				int[] seqCount = null, idxCount = null;
+				long seqTime = Long.MAX_VALUE, idxTime = Long.MAX_VALUE;
+				for (int r = 0; r < nRepeats; r++) {
+					t0 = System.nanoTime();
+					seqCount = loadData(dataFile, null, start, end);
+					t1 = System.nanoTime();
+					idxCount = loadData(dataFile, readIndex, start, end);
+					long t2 = System.nanoTime();
+					seqTime = Math.min(seqTime, t1-t0);
+					idxTime = Math.min(idxTime, t2-t1);
+				}
+				System.out.printf("%5.1f%% of file at %-6s: %7d units, sequential %7.1fms (%7d objects read), indexed %7.1fms (%7d objects read)%s\n",
+						frac*100, where[i], seqCount[0], seqTime/1.e6, seqCount[1], idxTime/1.e6, idxCount[1],
+						seqCount[0] == idxCount[0] ? "" : " MISMATCH");
+			}
+		}
+	}
+
+	/**
+	 * Read data between two times in the same way as BinaryStore.loadData, but without
+	 * unpacking the data into data units.
+	 * @param dataFile data file
+	 * @param timeIndex time index (can be null for a sequential read)
+	 * @param dataStart load start
+	 * @param dataEnd load end
+	 * @return number of objects within the time window and total number of objects read.
+	 */
+	private static int[] loadData(File dataFile, BinaryTimeIndex timeIndex, long dataStart, long dataEnd) {
+		BinaryInputStream inputStream = new BinaryInputStream(null, null);
+		int nLoaded = 0, nRead = 0;
+		if (!inputStream.openFile(dataFile)) {
+			return null;
+		}
+		BinaryHeader bh = inputStream.readHeader();
+		int format = bh.getHeaderFormat();
+		BinaryObjectData objectData;
+		while ((objectData = inputStream.readNextObject(format)) != null) {
+			switch (objectData.getObjectType()) {
+			case BinaryTypes.MODULE_HEADER:
+				if (timeIndex != null) {
+					int checkPoint = timeIndex.findStartCheckpoint(dataStart);
+					if (checkPoint > 0) {
+						inputStream.seek(timeIndex.getOffset(checkPoint), timeIndex.getObjectCount(checkPoint));
+					}
+				}
+				break;
+			case BinaryTypes.MODULE_FOOTER:
+			case BinaryTypes.FILE_FOOTER:
+			case BinaryTypes.DATAGRAM:
+				break;
+			default:
+				nRead++;
+				if (timeIndex != null && timeIndex.canSkipToTail(objectData.getObjectNumber(), dataEnd)) {
+					inputStream.seek(timeIndex.getTailOffset(), timeIndex.getNumObjects());
+					timeIndex = null;
+					continue;
+				}
+				long t = objectData.getTimeMilliseconds();
+				if (t >= dataStart && t <= dataEnd) {
+					nLoaded++;
+				}
+			}
+		}
+		inputStream.closeFile();
+		int[] counts = {nLoaded, nRead};
+		return counts;
+	}
+
+	private static BinaryTimeIndex buildIndex(File dataFile) {
+		BinaryInputStream inputStream = new BinaryInputStream(null, null);
+		if (!inputStream.openFile(dataFile)) {
+			return null;
+		}
+		BinaryHeader bh = inputStream.readHeader();
+		if (bh == null) {
+			return null;
+		}
+		BinaryTimeIndex timeIndex = new BinaryTimeIndex();
+		BinaryObjectData objectData;
+		while ((objectData = inputStream.readNextObject(bh.getHeaderFormat())) != null) {
+			switch (objectData.getObjectType()) {
+			case BinaryTypes.MODULE_HEADER:
+			case BinaryTypes.FILE_FOOTER:
+			case BinaryTypes.DATAGRAM:
+				break;
+			case BinaryTypes.MODULE_FOOTER:
+				timeIndex.setTailOffset(inputStream.getLastObjectPosition());
+				break;
+			default:
+				timeIndex.addDataObject(inputStream.getLastObjectPosition(), objectData.getTimeMilliseconds());
+			}
+		}
+		inputStream.closeFile();
+		timeIndex.finish(dataFile.length());
+		return timeIndex;
+	}
+
+	private static long[] readTimeRange(File dataFile) {
+		long[] range = {Long.MAX_VALUE, Long.MIN_VALUE};
+		BinaryInputStream inputStream = new BinaryInputStream(null, null);
+		inputStream.openFile(dataFile);
+		BinaryHeader bh = inputStream.readHeader();
+		BinaryObjectData objectData;
+		while ((objectData = inputStream.readNextObject(bh.getHeaderFormat())) != null) {
+			if (objectData.getObjectType() >= 0) {
+				long t = objectData.getTimeMilliseconds();
+				range[0] = Math.min(range[0], t);
+				range[1] = Math.max(range[1], t);
+			}
+		}
+		inputStream.closeFile();
+		return range;
+	}
+
+	/**
+	 * Write a file in the same format as BinaryOutputStream.
+	 */
+	private static void writeTestFile(File file) throws IOException {
+		int format = BinaryStore.getCurrentFileFormat();
+		long startTime = System.currentTimeMillis() - fileDuration;
+		try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			BinaryHeader header = new BinaryHeader("Test", "Time Index Test", "Data", format);
+			header.setDataDate(startTime);
+			header.writeHeader(dos);
+			dos.writeInt(16);
+			dos.writeInt(BinaryTypes.MODULE_HEADER);
+			dos.writeInt(0);
+			dos.writeInt(0);
+			byte[] data = new byte[objectBytes];
+			for (int i = 0; i < nObjects; i++) {
+				long t = startTime + fileDuration * i / nObjects;
+				// jitter times a bit so that they are not in strict order.
+				t -= (i * 7919L) % 500;
+				DataUnitBaseData baseData = new DataUnitBaseData(t, 1);
+				dos.writeInt(objectBytes + baseData.getBaseDataBinaryLength() + 12);
+				dos.writeInt(1);
+				baseData.writeBaseData(dos, format);
+				dos.writeInt(objectBytes);
+				dos.write(data);
+			}
+			dos.writeInt(12);
+			dos.writeInt(BinaryTypes.MODULE_FOOTER);
+			dos.writeInt(0);
+			BinaryFooter footer = new BinaryFooter(startTime+fileDuration, System.currentTimeMillis(), nObjects, dos.size());
+			footer.writeFooter(dos, format);
+		}
+	}
+
+}
@@ -73,4 +73,13 @@ public class ClickDatagramProvider implements DatagramProvider {
 		return new DatagramScaleInformation(0, maxFreq/ff.getScale(), ff.getUnitText());
 	}
 
+	/**
+	 * Each click is unpacked and has its spectrum calculated independently,
+	 * so several files can be processed at once.
+	 */
+	@Override
+	public boolean canProcessFilesConcurrently() {
+		return true;
+	}
+
 }
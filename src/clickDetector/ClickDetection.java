@@ -389,7 +389,8 @@ public class ClickDetection extends PamDataUnit<PamDataUnit, PamDataUnit> implem
 		}
 		int fftLength = cepLength * 2;
 		//		int logFFTLength = FastFFT.log2(fftLength);
-		ComplexArray spec = getComplexSpectrum(channel, fftLength);
+		// copy, since the ifft is done in place and the spectrum may be cached. 
+		ComplexArray spec = getComplexSpectrum(channel, fftLength).clone();
 		// the complex spec will have been returned at half the fft length. We need the whole thing
 		// back and also it's log amplitude !
 		ComplexArray specData = new ComplexArray(fftLength);
@@ -1045,6 +1046,7 @@ public class ClickDetection extends PamDataUnit<PamDataUnit, PamDataUnit> implem
 
 	public void setWaveData(double[][] waveData) {
 		this.waveData = waveData;
+		rawdataTransforms.clearTransforms();
 	}
 
 	/**
@@ -1085,6 +1087,7 @@ public class ClickDetection extends PamDataUnit<PamDataUnit, PamDataUnit> implem
 	public void setCompressedData(byte[][] compressedWaveData, double waveAmplitude) {
 		this.compressedWaveData = compressedWaveData;
 		this.waveAmplitude = waveAmplitude;
+		rawdataTransforms.clearTransforms();
 	}
 
 	/**
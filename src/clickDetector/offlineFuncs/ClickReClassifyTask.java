@@ -89,4 +89,14 @@ public class ClickReClassifyTask extends OfflineTask<ClickDetection> {
 		clickClassifier = clickControl.getClickIdentifier();
 	}
 
+	@Override
+	public boolean canRunParallel() {
+		/*
+		 * each click is classified on it's own. The basic classifier only reads its 
+		 * parameters and the click, the sweep classifier synchronises identify and the 
+		 * null classifier does nothing, so identify can be called from several threads. 
+		 */
+		return true;
+	}
+
 }
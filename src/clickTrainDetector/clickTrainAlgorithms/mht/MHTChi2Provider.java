@@ -66,4 +66,14 @@ public interface MHTChi2Provider<T> {
 	public void clearKernelGarbage(int newRefIndex);
 
 	
+	/**
+	 * Check whether chi^2 values for different track possibilities can be updated on 
+	 * different threads at the same time. Only ever called between detections, i.e. 
+	 * addDetection is never called whilst updates are running. 
+	 * @return true if chi^2 values can be updated in parallel. 
+	 */
+	public default boolean isThreadSafe() {
+		return false; 
+	}
+
 }
\ No newline at end of file
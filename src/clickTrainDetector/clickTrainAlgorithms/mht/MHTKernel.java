@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.stream.IntStream;
 
 import PamUtils.PamArrayUtils;
 import PamguardMVC.debug.Debug;
@@ -29,6 +30,11 @@ public class MHTKernel<T> {
 
 	public static int verbosity=0; 
 
+	/**
+	 * The minimum number of track possibilities before chi^2 values are calculated 
+	 * in parallel in high throughput mode. 
+	 */
+	public static final int MIN_PARALLEL_TRACKS = 32; 
 
 	/**
 	 * Array which holds a reference to to all data units. 
@@ -103,6 +109,16 @@ public class MHTKernel<T> {
 	 */
 	int debugFlag = 0;
 
+	/**
+	 * Pool of bitsets from discarded tracks which are reused in high throughput mode. 
+	 */
+	private TrackBitSetPool bitSetPool = new TrackBitSetPool(); 
+
+	/**
+	 * Working bitset used to compare the start of tracks without creating new bitsets. 
+	 */
+	private BitSet scratchBitSet = new BitSet(); 
+
 	/**
 	 * Constructor for the MHT kernel. This handles the data. 
 	 */
@@ -125,6 +141,7 @@ public class MHTKernel<T> {
 			confirmedTracks=null;
 			dataUnits = null; //garbage collector will delete all data units referenced in list and nowhere else.
 			mhtChi2Provider.clear();
+			bitSetPool.clear(); 
 			kcount=0;
 		}
 	}
@@ -286,9 +303,26 @@ public class MHTKernel<T> {
 			//and exclude the new data unit.
 			//index is the total detection count-1;
 			int index=kcount-1;
+			boolean highThroughput = mHTParams.highThroughput; 
 			synchronized(trackSynchronisation) {
 				for (int i=0; i<possibleTracks.size(); i++) {
 
+					if (highThroughput) {
+						//the old possibility matrix is not used again so the existing bitset can go 
+						//straight to the coasting branch without being changed - the new bit is 
+						//always clear. Only the branch which includes the detection needs a copy 
+						//and that comes from the pool of discarded bitsets. Both branches still need 
+						//their own copy of the chi^2. 
+						BitSet baseBitSet=possibleTracks.get(i).trackBitSet;
+
+						BitSet withDetection=bitSetPool.copyOf(baseBitSet);
+						withDetection.set(index, true);
+						newPossibilities.add(new TrackBitSet(withDetection, possibleTracks.get(i).chi2Track.cloneMHTChi2()));
+
+						newPossibilities.add(new TrackBitSet(baseBitSet, possibleTracks.get(i).chi2Track.cloneMHTChi2()));
+						continue; 
+					}
+
 					//the existing branch's bitset. Clone it for both new branches rather than
 					//mutating it in place: the original is still referenced by the current
 					//possibleTracks list (and by activeTracks / reader threads), so mutating it
@@ -313,8 +347,17 @@ public class MHTKernel<T> {
 
 
 		//now update all the chi2 values. 
-		for (int i=0; i<newPossibilities.size(); i++) {
-			newPossibilities.get(i).chi2Track.update(detection, newPossibilities.get(i), this.kcount); 
+		if (mHTParams.highThroughput && mhtChi2Provider.isThreadSafe() && newPossibilities.size()>=MIN_PARALLEL_TRACKS) {
+			//each possibility has its own chi^2 so these can be updated on the common fork join pool. 
+			final int kcount = this.kcount; 
+			IntStream.range(0, newPossibilities.size()).parallel().forEach((i)->{
+				newPossibilities.get(i).chi2Track.update(detection, newPossibilities.get(i), kcount); 
+			});
+		}
+		else {
+			for (int i=0; i<newPossibilities.size(); i++) {
+				newPossibilities.get(i).chi2Track.update(detection, newPossibilities.get(i), this.kcount); 
+			}
 		}
 
 		long time3 = System.currentTimeMillis(); 
@@ -338,29 +381,10 @@ public class MHTKernel<T> {
 			//long time1=System.currentTimeMillis();
 			ArrayList<TrackBitSet> newPossibleTracks=possibleTracks;
 
-			//first sort the tracks by increasing chi2 values. 
-			//sort the possible tracks by chi2 values
-			//now sort the chi2 values so they correspond to the track list.  
-//			Collections.sort(newPossibleTracks, (left, right)->{
-//				//Note- this is definitely in the correct order
-//				return Double.compare(left.chi2Track.getChi2(), right.chi2Track.getChi2());
-//			});		
-			//Double.compare gives a total order (NaN sorts last consistently), and all
-			//mutation of the possibility list is now serialised on trackSynchronisation, so
-			//the sort can no longer see chi2 values change underneath it.
-			Collections.sort(newPossibleTracks, new Comparator<TrackBitSet>() {
-				@Override
-				public int compare(TrackBitSet left, TrackBitSet right) {
-					return Double.compare(left.chi2Track.getChi2(), right.chi2Track.getChi2());
-				}
-			});
+			//define prune back to use. 
+			int pruneback=mHTParams.nPruneback; 
 
-			//			for (int i=0; i<newPossibleTracks.size(); i++) {
-			//				System.out.print("Possibility chi2: " + i +  "  " + String.format("%.3f", newPossibleTracks.get(i).chi2Track.getChi2()));
-			//				System.out.println("   " + MHTKernel.bitSetString(newPossibleTracks.get(i).trackBitSet, kcount));
-			//				System.out.println("Chi2 info: " + newPossibleTracks.get(i).chi2Track.getMHTChi2Info().getInfoString());
-			//				System.out.println("********");
-			//			}
+			if (confirmAll) pruneback=0; //pruneback is zero because we have to extract the current active branches to last detection
 
 			//set up an array for pruned tracks. These are the tracks which 
 			//have survived the prune. 
@@ -375,77 +399,157 @@ public class MHTKernel<T> {
 			//new possibilities. Usually used for plotting. 
 			ArrayList<TrackBitSet> activeTracks= new ArrayList<TrackBitSet>(); 
 
+			if (mHTParams.highThroughput) {
+				holdTracksFast(newPossibleTracks, confirmAll, pruneback, possibleTracksPrune, confirmedTracks, activeTracks); 
+			}
+			else {
+				holdTracks(newPossibleTracks, confirmAll, pruneback, possibleTracksPrune, confirmedTracks, activeTracks); 
+			}
 
-			//now find nHold branches after pruning back by nPruneBack. 
-			TrackBitSet testBranch; //the branch being tested
-			BitSet testBitSet; 
-			TrackBitSet currentBranch; //the current branch being kept in the prune back
-			BitSet currentBitSet; 
+			//long time3=System.currentTimeMillis();
 
-			boolean[] indexConfirm; //list of branches to keep from possibility matrix
-			boolean[] indexRemove; //list of branches to get rid of from probability matrix. 
+			//reset possible tracks
+			this.possibleTracks=possibleTracksPrune; 
+			this.activeTracks=activeTracks; 
 
-			//define prune back to use. 
-			int pruneback=mHTParams.nPruneback; 
+			//now for good measure add a track which is ALL coasts. i.e. has no 
+			//current detection if one does not exist already. 
+			TrackBitSet coasts=new TrackBitSet(kcount, this.mhtChi2Provider.newMHTChi2(null) );
+			boolean add=true; 
+			@SuppressWarnings("unused")
+			int countC=0; 
+			for (int j=0; j<possibleTracks.size(); j++) {
+				//count backwards for efficiency (because zero tracks are usually at the end)
+				if (possibleTracks.get(possibleTracks.size()-j-1).trackBitSet.equals(coasts.trackBitSet)) {
+					add=false; 
+					countC++; 
+					//break; //no need to add. 
+				}
+			}
+			if (add) this.possibleTracks.add(coasts); 
 
-			if (confirmAll) pruneback=0; //pruneback is zero because we have to extract the current active branches to last detection
+			//add confirmed tracks to array 
+			if (this.confirmedTracks==null) this.confirmedTracks= new ArrayList<TrackBitSet>(); 
+			this.confirmedTracks.addAll(confirmedTracks); 
 
-			//long time2=System.currentTimeMillis();
+			//for debugging. 
+			if (this.debugFlag>0) {
+				//printMHTKernalData2(Integer.MAX_VALUE); 
+				debugFlag--; 
+			}
 
-			for (int i=0; i<mHTParams.nHold; i++) {
+			//long time4 = System.currentTimeMillis();
 
-				//System.out.println("New possible tracks size: " +newPossibleTracks.size() + "  i: "+i);
+			//System.out.println("Time32: " +(time3-time2) + " time21: " + (time2-time1)+" time43: " + (time4-time3));
 
-				//long time1a=System.currentTimeMillis();
+		}
+	}
 
-				//all possibilities have been removed. 
-				if (newPossibleTracks.size()==0) {
-					break;
-				}
 
-				//the branch to test, starting at lowest chi2 value. 
-				currentBranch=newPossibleTracks.get(0); 
+	/**
+	 * Find the nHold best branches after pruning back and sort them into tracks which 
+	 * are kept in the possibility matrix, tracks which are confirmed and active tracks. 
+	 * @param newPossibleTracks - all track possibilities. 
+	 * @param confirmAll - true to confirm all tracks.
+	 * @param pruneback - the prune back to use. 
+	 * @param possibleTracksPrune - list to add the tracks which survive the prune to. 
+	 * @param confirmedTracks - list to add confirmed tracks to. 
+	 * @param activeTracks - list to add active tracks to. 
+	 */
+	@SuppressWarnings("unchecked")
+	private void holdTracks(ArrayList<TrackBitSet> newPossibleTracks, boolean confirmAll, int pruneback, 
+			ArrayList<TrackBitSet> possibleTracksPrune, ArrayList<TrackBitSet> confirmedTracks, ArrayList<TrackBitSet> activeTracks) {
+		//first sort the tracks by increasing chi2 values. 
+		//sort the possible tracks by chi2 values
+		//now sort the chi2 values so they correspond to the track list.  
+//			Collections.sort(newPossibleTracks, (left, right)->{
+//				//Note- this is definitely in the correct order
+//				return Double.compare(left.chi2Track.getChi2(), right.chi2Track.getChi2());
+//			});		
+		//Double.compare gives a total order (NaN sorts last consistently), and all
+		//mutation of the possibility list is now serialised on trackSynchronisation, so
+		//the sort can no longer see chi2 values change underneath it.
+		Collections.sort(newPossibleTracks, new Comparator<TrackBitSet>() {
+			@Override
+			public int compare(TrackBitSet left, TrackBitSet right) {
+				return Double.compare(left.chi2Track.getChi2(), right.chi2Track.getChi2());
+			}
+		});
 
-				//remove part of test branch which will not be used. 
-				currentBitSet=currentBranch.trackBitSet.get(0, kcount-(pruneback));
+		//			for (int i=0; i<newPossibleTracks.size(); i++) {
+		//				System.out.print("Possibility chi2: " + i +  "  " + String.format("%.3f", newPossibleTracks.get(i).chi2Track.getChi2()));
+		//				System.out.println("   " + MHTKernel.bitSetString(newPossibleTracks.get(i).trackBitSet, kcount));
+		//				System.out.println("Chi2 info: " + newPossibleTracks.get(i).chi2Track.getMHTChi2Info().getInfoString());
+		//				System.out.println("********");
+		//			}
 
-				//System.out.println("The bitset to test: " + printBitSet(currentBitSet));
 
-				indexConfirm= new boolean[newPossibleTracks.size()]; 
-				indexRemove= new boolean[newPossibleTracks.size()]; 
+		//now find nHold branches after pruning back by nPruneBack. 
+		TrackBitSet testBranch; //the branch being tested
+		BitSet testBitSet; 
+		TrackBitSet currentBranch; //the current branch being kept in the prune back
+		BitSet currentBitSet; 
 
-				//test the testBranch against all other branches. 
-				for (int j=0; j<newPossibleTracks.size(); j++) {
-					//test whether branch is the same 
-					testBranch = newPossibleTracks.get(j); 
-					testBitSet=testBranch.trackBitSet.get(0, kcount-(pruneback));
+		boolean[] indexConfirm; //list of branches to keep from possibility matrix
+		boolean[] indexRemove; //list of branches to get rid of from probability matrix. 
 
-					
-					//now test whether the current and test branch are the same. 
-					if (testBitSet.equals(currentBitSet)) {
-						indexConfirm[j]=true; 
-					}
-					else {
-						//if the branch is not equal check whether it has any detections 
-						//in it which are the same as the the detections in currentBranch
-						if (testBitSet.intersects(currentBitSet)) {
-							indexRemove[j]=true; 	
-						}						
-					}
-					
+
+		//long time2=System.currentTimeMillis();
+
+		for (int i=0; i<mHTParams.nHold; i++) {
+
+			//System.out.println("New possible tracks size: " +newPossibleTracks.size() + "  i: "+i);
+
+			//long time1a=System.currentTimeMillis();
+
+			//all possibilities have been removed. 
+			if (newPossibleTracks.size()==0) {
+				break;
+			}
+
+			//the branch to test, starting at lowest chi2 value. 
+			currentBranch=newPossibleTracks.get(0); 
+
+			//remove part of test branch which will not be used. 
+			currentBitSet=currentBranch.trackBitSet.get(0, kcount-(pruneback));
+
+			//System.out.println("The bitset to test: " + printBitSet(currentBitSet));
+
+			indexConfirm= new boolean[newPossibleTracks.size()]; 
+			indexRemove= new boolean[newPossibleTracks.size()]; 
+
+			//test the testBranch against all other branches. 
+			for (int j=0; j<newPossibleTracks.size(); j++) {
+				//test whether branch is the same 
+				testBranch = newPossibleTracks.get(j); 
+				testBitSet=testBranch.trackBitSet.get(0, kcount-(pruneback));
+
+				
+				//now test whether the current and test branch are the same. 
+				if (testBitSet.equals(currentBitSet)) {
+					indexConfirm[j]=true; 
 				}
+				else {
+					//if the branch is not equal check whether it has any detections 
+					//in it which are the same as the the detections in currentBranch
+					if (testBitSet.intersects(currentBitSet)) {
+						indexRemove[j]=true; 	
+					}						
+				}
+				
+			}
 
-				//long time2a=System.currentTimeMillis();
+			//long time2a=System.currentTimeMillis();
 
-				//now need to remove confirmed tracks, add still going tracks and remove 
-				//any tracks with duplicate values. 
+			//now need to remove confirmed tracks, add still going tracks and remove 
+			//any tracks with duplicate values. 
 
-				//check the number of coasts for the new branch. 
-				int nCoasts=currentBranch.chi2Track.getNCoasts();
+			//check the number of coasts for the new branch. 
+			int nCoasts=currentBranch.chi2Track.getNCoasts();
 
 
-				if (nCoasts>=this.mHTParams.maxCoast || confirmAll || currentBranch.flag==TrackBitSet.JUNK_TRACK) {
-					//the branch needs to be confirmed. 
+			if (nCoasts>=this.mHTParams.maxCoast || confirmAll || currentBranch.flag==TrackBitSet.JUNK_TRACK) {
+				//the branch needs to be confirmed. 
 
 //					System.out.println(i + " DONE: " + (nCoasts >= this.mHTParams.maxCoast) + "  " + confirmAll + "  "
 //							+ (currentBranch.flag == TrackBitSet.JUNK_TRACK) + " "
@@ -453,114 +557,228 @@ public class MHTKernel<T> {
 //							+ String.format("%d 	", currentBranch.chi2Track.getNCoasts())
 //							+ MHTKernel.bitSetString(currentBranch.trackBitSet, kcount));
 
-					/**
-					 * 27/02/2020
-					 *  The track has only been tested up to it's pruneback. The rest of the clicks may
-					 *  be correct or may be junk. Crucially though, they may be part of other tracks. There 
-					 *  are two choices here; take the complete track removing all the clicks past the pruneback
-					 *  from the possibility mix or only include clicks up to the pruneback. Turns out the latter
-					 *  choice works a lot better because you do not remove clicks from other tracks. 
-					 */
-					/**
-					 * 2/06/2021
-					 * The above statement is not correct. The chi2 for the track is indeed tested up to it's last chi2. The chi2 though 
-					 * included the new possible clicks which may be junk. 
-					 */
-					//if confirm all then we want to grab the last track as this will not have any effect on limiting other
-					//track possibilities. 
-					if (!confirmAll) currentBranch.trackBitSet=currentBranch.trackBitSet.get(0, kcount-1);
-
-					//add confirmed track
-					confirmedTracks.add(currentBranch); 
-					
-					////					//if a branch is confirmed then all the tracks which include it's clicks must also be removed. 
-					////					//test the testBranch against all other branches. TODO - Is this the most efficient code -could add if statements to above loop?
-					for (int j=0; j<newPossibleTracks.size(); j++) {
-						//test whether branch is the same 
-						testBranch = newPossibleTracks.get(j); 
-						testBitSet=testBranch.trackBitSet; 
-						if (testBitSet.intersects(currentBranch.trackBitSet)) {
-							indexRemove[j]=true; 	
-						}					
-					}
-					
+				/**
+				 * 27/02/2020
+				 *  The track has only been tested up to it's pruneback. The rest of the clicks may
+				 *  be correct or may be junk. Crucially though, they may be part of other tracks. There 
+				 *  are two choices here; take the complete track removing all the clicks past the pruneback
+				 *  from the possibility mix or only include clicks up to the pruneback. Turns out the latter
+				 *  choice works a lot better because you do not remove clicks from other tracks. 
+				 */
+				/**
+				 * 2/06/2021
+				 * The above statement is not correct. The chi2 for the track is indeed tested up to it's last chi2. The chi2 though 
+				 * included the new possible clicks which may be junk. 
+				 */
+				//if confirm all then we want to grab the last track as this will not have any effect on limiting other
+				//track possibilities. 
+				if (!confirmAll) currentBranch.trackBitSet=currentBranch.trackBitSet.get(0, kcount-1);
+
+				//add confirmed track
+				confirmedTracks.add(currentBranch); 
+				
+				////					//if a branch is confirmed then all the tracks which include it's clicks must also be removed. 
+				////					//test the testBranch against all other branches. TODO - Is this the most efficient code -could add if statements to above loop?
+				for (int j=0; j<newPossibleTracks.size(); j++) {
+					//test whether branch is the same 
+					testBranch = newPossibleTracks.get(j); 
+					testBitSet=testBranch.trackBitSet; 
+					if (testBitSet.intersects(currentBranch.trackBitSet)) {
+						indexRemove[j]=true; 	
+					}					
 				}
-				else {
-					//save as an active track. 
-					activeTracks.add(new TrackBitSet(currentBitSet,currentBranch.chi2Track.cloneMHTChi2())); 
-
-					//add any possibilities to a new array. 
-					for (int j=0; j<indexConfirm.length; j++) {
-						if (indexConfirm[j]) {
-							possibleTracksPrune.add(newPossibleTracks.get(j)); 
-						}
+				
+			}
+			else {
+				//save as an active track. 
+				activeTracks.add(new TrackBitSet(currentBitSet,currentBranch.chi2Track.cloneMHTChi2())); 
+
+				//add any possibilities to a new array. 
+				for (int j=0; j<indexConfirm.length; j++) {
+					if (indexConfirm[j]) {
+						possibleTracksPrune.add(newPossibleTracks.get(j)); 
 					}
 				}
+			}
 
-				//long time3a=System.currentTimeMillis();
+			//long time3a=System.currentTimeMillis();
 
-				//now remove both the confirmed tracks and the tracks which are 
-				//need to be removed because they contain the same possibility as
-				//the new possible tracks
-				ArrayList<TrackBitSet> newNewPossibleTracks=new ArrayList<TrackBitSet>(); 
+			//now remove both the confirmed tracks and the tracks which are 
+			//need to be removed because they contain the same possibility as
+			//the new possible tracks
+			ArrayList<TrackBitSet> newNewPossibleTracks=new ArrayList<TrackBitSet>(); 
 
-				for (int j=0; j<newPossibleTracks.size(); j++) {
-					if (!indexRemove[j] && !indexConfirm[j]) {
-						newNewPossibleTracks.add(newPossibleTracks.get(j)); 
-					}
+			for (int j=0; j<newPossibleTracks.size(); j++) {
+				if (!indexRemove[j] && !indexConfirm[j]) {
+					newNewPossibleTracks.add(newPossibleTracks.get(j)); 
 				}
-				//long time4a=System.currentTimeMillis();
+			}
+			//long time4a=System.currentTimeMillis();
 
-				//remove all pruned and remove branches from the array 
-				//newPossibleTracks.removeAll(toRemove); // <- this is a bit slow. 
-				newPossibleTracks = newNewPossibleTracks; 
+			//remove all pruned and remove branches from the array 
+			//newPossibleTracks.removeAll(toRemove); // <- this is a bit slow. 
+			newPossibleTracks = newNewPossibleTracks; 
 
-				//long time5a=System.currentTimeMillis();
+			//long time5a=System.currentTimeMillis();
 
-				//System.out.println(" --> + time54a: " + (time5a-time4a) + " time43a " +(time4a-time3a) + " time32a: " + (time3a-time2a)+" time21a: " + (time2a-time1a) );
+			//System.out.println(" --> + time54a: " + (time5a-time4a) + " time43a " +(time4a-time3a) + " time32a: " + (time3a-time2a)+" time21a: " + (time2a-time1a) );
 
-				//now loops back round for another possibility
-			}
+			//now loops back round for another possibility
+		}
+	}
 
-			//long time3=System.currentTimeMillis();
+	/**
+	 * High throughput version of {@link #holdTracks}, which gives exactly the same result. 
+	 * <p>
+	 * Rather than sorting every possibility, the lowest chi^2 branch which is left is found
+	 * whilst removing the branches which clash with the last branch to be held, so only nHold 
+	 * branches are ever selected. Ties are broken by position in the possibility list, as a 
+	 * stable sort would. The start of each branch is compared with a working bitset rather 
+	 * than a new bitset for every comparison and the bitsets of all tracks which are discarded 
+	 * are returned to the pool. 
+	 * @param newPossibleTracks - all track possibilities. 
+	 * @param confirmAll - true to confirm all tracks.
+	 * @param pruneback - the prune back to use. 
+	 * @param possibleTracksPrune - list to add the tracks which survive the prune to. 
+	 * @param confirmedTracks - list to add confirmed tracks to. 
+	 * @param activeTracks - list to add active tracks to. 
+	 */
+	@SuppressWarnings("unchecked")
+	private void holdTracksFast(ArrayList<TrackBitSet> newPossibleTracks, boolean confirmAll, int pruneback, 
+			ArrayList<TrackBitSet> possibleTracksPrune, ArrayList<TrackBitSet> confirmedTracks, ArrayList<TrackBitSet> activeTracks) {
 
-			//reset possible tracks
-			this.possibleTracks=possibleTracksPrune; 
-			this.activeTracks=activeTracks; 
+		int nTracks = newPossibleTracks.size(); 
+		int prefixLength = kcount-pruneback; 
 
-			//now for good measure add a track which is ALL coasts. i.e. has no 
-			//current detection if one does not exist already. 
-			TrackBitSet coasts=new TrackBitSet(kcount, this.mhtChi2Provider.newMHTChi2(null) );
-			boolean add=true; 
-			@SuppressWarnings("unused")
-			int countC=0; 
-			for (int j=0; j<possibleTracks.size(); j++) {
-				//count backwards for efficiency (because zero tracks are usually at the end)
-				if (possibleTracks.get(possibleTracks.size()-j-1).trackBitSet.equals(coasts.trackBitSet)) {
-					add=false; 
-					countC++; 
-					//break; //no need to add. 
+		//chi2 values do not change during the prune so only get them once. 
+		double[] chi2 = new double[nTracks]; 
+		for (int j=0; j<nTracks; j++) {
+			chi2[j] = newPossibleTracks.get(j).chi2Track.getChi2(); 
+		}
+
+		//indices of the branches still in the mix, in their original order. 
+		int[] remaining = new int[nTracks]; 
+		int nRemaining = nTracks; 
+		int best = -1; 
+		for (int j=0; j<nTracks; j++) {
+			remaining[j] = j; 
+			if (best<0 || compareTracks(chi2, j, best)<0) best = j; 
+		}
+
+		//branches which are kept (and so whose bitsets must not be recycled)
+		boolean[] kept = new boolean[nTracks]; 
+		int[] group = new int[nTracks]; 
+
+		for (int i=0; i<mHTParams.nHold && nRemaining>0; i++) {
+
+			int current = best; 
+			TrackBitSet currentBranch = newPossibleTracks.get(current); 
+			BitSet currentBitSet = currentBranch.trackBitSet.get(0, prefixLength); 
+
+			int nCoasts=currentBranch.chi2Track.getNCoasts();
+			boolean confirm = nCoasts>=this.mHTParams.maxCoast || confirmAll || currentBranch.flag==TrackBitSet.JUNK_TRACK; 
+
+			if (confirm) {
+				//see holdTracks for why the end of the track is removed. 
+				if (!confirmAll) {
+					BitSet fullBitSet = currentBranch.trackBitSet; 
+					currentBranch.trackBitSet=fullBitSet.get(0, kcount-1);
+					bitSetPool.release(fullBitSet); 
 				}
+				confirmedTracks.add(currentBranch); 
+				kept[current] = true; 
+			}
+			else {
+				activeTracks.add(new TrackBitSet(currentBitSet,currentBranch.chi2Track.cloneMHTChi2())); 
 			}
-			if (add) this.possibleTracks.add(coasts); 
 
-			//add confirmed tracks to array 
-			if (this.confirmedTracks==null) this.confirmedTracks= new ArrayList<TrackBitSet>(); 
-			this.confirmedTracks.addAll(confirmedTracks); 
+			//remove branches which are the same as the current branch up to the prune back, or 
+			//which share any detections with it, and find the best branch which is left. 
+			int nGroup = 0; 
+			int nLeft = 0; 
+			best = -1; 
+			for (int r=0; r<nRemaining; r++) {
+				int j = remaining[r]; 
+				BitSet testBitSet = newPossibleTracks.get(j).trackBitSet; 
+				boolean same; 
+				boolean remove; 
+				if (j==current) {
+					//the end of a confirmed branch may have been removed so don't test it. 
+					same = true; 
+					remove = false; 
+				}
+				else if (testBitSet.intersects(currentBitSet)) {
+					same = isSamePrefix(testBitSet, currentBitSet, prefixLength); 
+					remove = !same; 
+				}
+				else {
+					same = currentBitSet.isEmpty() && isSamePrefix(testBitSet, currentBitSet, prefixLength); 
+					remove = false; 
+				}
+				if (confirm) {
+					remove = remove || same || testBitSet.intersects(currentBranch.trackBitSet); 
+				}
+				else if (same) {
+					group[nGroup++] = j; 
+				}
+				if (!remove && !same) {
+					remaining[nLeft++] = j; 
+					if (best<0 || compareTracks(chi2, j, best)<0) best = j; 
+				}
+			}
+			nRemaining = nLeft; 
 
-			//for debugging. 
-			if (this.debugFlag>0) {
-				//printMHTKernalData2(Integer.MAX_VALUE); 
-				debugFlag--; 
+			//add the branches which are the same as the current branch in chi2 order. 
+			sortTracks(chi2, group, nGroup); 
+			for (int g=0; g<nGroup; g++) {
+				possibleTracksPrune.add(newPossibleTracks.get(group[g])); 
+				kept[group[g]] = true; 
 			}
+		}
 
-			//long time4 = System.currentTimeMillis();
+		//everything else is finished with. 
+		for (int j=0; j<nTracks; j++) {
+			if (!kept[j]) bitSetPool.release(newPossibleTracks.get(j).trackBitSet); 
+		}
+	}
 
-			//System.out.println("Time32: " +(time3-time2) + " time21: " + (time2-time1)+" time43: " + (time4-time3));
+	/**
+	 * Check whether the start of a track is the same as a bitset. 
+	 * @param bitSet - the track bitset. 
+	 * @param prefix - bitset with no bits set at or past prefixLength. 
+	 * @param prefixLength - the number of bits to compare. 
+	 * @return true if the first prefixLength bits of the track are the same as prefix. 
+	 */
+	private boolean isSamePrefix(BitSet bitSet, BitSet prefix, int prefixLength) {
+		scratchBitSet.clear(); 
+		scratchBitSet.or(bitSet); 
+		int length = scratchBitSet.length(); 
+		if (length>prefixLength) scratchBitSet.clear(prefixLength, length); 
+		return scratchBitSet.equals(prefix); 
+	}
 
-		}
+	/**
+	 * Compare two tracks by chi^2 and then by position in the possibility list. 
+	 */
+	private static int compareTracks(double[] chi2, int a, int b) {
+		int c = Double.compare(chi2[a], chi2[b]); 
+		return c!=0 ? c : Integer.compare(a, b); 
 	}
 
+	/**
+	 * Insertion sort of a (usually short) list of track indices into chi^2 order. 
+	 */
+	private static void sortTracks(double[] chi2, int[] tracks, int n) {
+		for (int i=1; i<n; i++) {
+			int t = tracks[i]; 
+			int j = i-1; 
+			while (j>=0 && compareTracks(chi2, tracks[j], t)>0) {
+				tracks[j+1] = tracks[j]; 
+				j--; 
+			}
+			tracks[j+1] = t; 
+		}
+	}
 
 	/**
 	 * Get the chi^2 provider. This handles chi^2 calculations for possible tracks. . 
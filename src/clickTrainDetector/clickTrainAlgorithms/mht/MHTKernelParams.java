@@ -41,6 +41,14 @@ public class MHTKernelParams implements Cloneable,  Serializable, ManagedParamet
 	 */
 	public int maxCoast = 3; //should be 5 
 	
+	/**
+	 * High throughput mode. Track bitsets are recycled from a pool rather than cloned, 
+	 * chi^2 values for new track possibilities are calculated in parallel (if the chi^2
+	 * provider is thread safe) and only the best tracks are selected during the prune 
+	 * back rather than sorting every possibility. Gives the same results as the standard mode. 
+	 */
+	public boolean highThroughput = false; 
+	
 	@Override
 	public MHTKernelParams clone() {
 		try {
@@ -59,6 +67,7 @@ public class MHTKernelParams implements Cloneable,  Serializable, ManagedParamet
 		System.out.println("N Prune Back Start: " + nPruneBackStart);
 		System.out.println("Max Coasts: " + maxCoast);
 		System.out.println("N Hold: " + nHold);
+		System.out.println("High throughput: " + highThroughput);
 		System.out.println("/****************************/");
 	}
 	
@@ -127,6 +127,12 @@ public class StandardMHTChi2Provider implements MHTChi2Provider<PamDataUnit> {
 	public MHTChi2Params getChi2Params() {
 		return getPamMHTChi2Params();
 	}
+	
+	@Override
+	public boolean isThreadSafe() {
+		//the IDI manager does not change track values and correlation values are synchronised. 
+		return true;
+	}
 
 
 
@@ -0,0 +1,103 @@
+package clickTrainDetector.clickTrainAlgorithms.mht;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+
+/**
+ * Pool of track bitsets which can be reused by the MHT kernel.
+ * <p>
+ * Every detection doubles the number of track possibilities and most of these are
+ * thrown away again during the prune back. Rather than cloning a new bitset for every
+ * branch (and leaving the garbage collector to deal with the discarded ones) the bitsets
+ * of discarded tracks are returned to the pool and copied over when a new branch is
+ * needed. BitSets keep their word array when cleared, so a recycled bitset will usually
+ * already be big enough.
+ * <p>
+ * The pool is not thread safe. It should only be used from the thread which grows and
+ * prunes the possibility matrix.
+ */
+public class TrackBitSetPool {
+
+	/**
+	 * The default maximum number of bitsets to hold.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 4096;
+
+	private ArrayDeque<BitSet> pool = new ArrayDeque<BitSet>();
+
+	private int maxSize;
+
+	private long nReused = 0;
+
+	private long nCreated = 0;
+
+	public TrackBitSetPool() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * Create a pool.
+	 * @param maxSize - the maximum number of bitsets to hold. Extra bitsets
+	 * are left for the garbage collector.
+	 */
+	public TrackBitSetPool(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Get a copy of a bitset, using a bitset from the pool if one is available.
+	 * @param bitSet - the bitset to copy.
+	 * @return a bitset with the same bits set.
+	 */
+	public BitSet copyOf(BitSet bitSet) {
+		BitSet copy = pool.poll();
+		if (copy == null) {
+			nCreated++;
+			return (BitSet) bitSet.clone();
+		}
+		nReused++;
+		copy.clear();
+		copy.or(bitSet);
+		return copy;
+	}
+
+	/**
+	 * Return a bitset to the pool. The bitset must not be referenced anywhere
+	 * else once it has been released.
+	 * @param bitSet - the bitset to release.
+	 */
+	public void release(BitSet bitSet) {
+		if (bitSet != null && pool.size() < maxSize) {
+			pool.add(bitSet);
+		}
+	}
+
+	/**
+	 * Clear the pool.
+	 */
+	public void clear() {
+		pool.clear();
+	}
+
+	/**
+	 * @return the number of bitsets currently in the pool.
+	 */
+	public int size() {
+		return pool.size();
+	}
+
+	/**
+	 * @return the number of copies which reused a bitset from the pool.
+	 */
+	public long getNReused() {
+		return nReused;
+	}
+
+	/**
+	 * @return the number of copies which had to create a new bitset.
+	 */
+	public long getNCreated() {
+		return nCreated;
+	}
+
+}
@@ -11,6 +11,9 @@ import fftFilter.FFTFilterParams;
 /**
  * Manages correlation values and ensures  correlation calculation between 
  * two data units is stored and not calculated multiple times. 
+ * <p>
+ * Access to the stored values is synchronized since chi^2 values for different
+ * track possibilities may be calculated on different threads. 
  * 
  * @author Jamie Macaulay 
  *
@@ -55,7 +58,7 @@ public class CorrelationManager {
 	 * Called when a new detection is added. 
 	 * @param dataUnit - the data unit to add to the correlation index. 
 	 */
-	public void addDetection(PamDataUnit dataUnit) {
+	public synchronized void addDetection(PamDataUnit dataUnit) {
 		correlationIndexRef.put(dataUnit.getUID(), new CorrelationMap(dataUnit.getUID()));
 	}
 	
@@ -68,7 +71,7 @@ public class CorrelationManager {
 	 * @param filterParams - the filter params to use to filter data,. 
 	 * @return the correlation value between the two units. The returned value is between 0 and 1.
 	 */
-	public CorrelationValue getCorrelationValue(PamDataUnit dataUnit1, PamDataUnit dataUnit2, FFTFilterParams filterParams) {
+	public synchronized CorrelationValue getCorrelationValue(PamDataUnit dataUnit1, PamDataUnit dataUnit2, FFTFilterParams filterParams) {
 		//what is faster, an array or a hashmap. Array is faster but will not works unless one to one
 		//correspondence with the master unit list. Going for Hashmap for now. 		
 		if (fftFilter==null && filterParams!=null) fftFilter= new FFTFilter(filterParams, 1); 
@@ -162,7 +165,7 @@ public class CorrelationManager {
 	/**
 	 * Clear the correlation manager.
 	 */
-	public void clear() {
+	public synchronized void clear() {
 		correlationIndexRef.clear(); 
 	}
 
@@ -362,18 +362,16 @@ public class IDIManager {
 	}
 
 	/**
-	 * Get the IDI series for a track in seconds
+	 * Get the IDI series for a track in seconds. This does not use or change any of 
+	 * the cached track values, so can be called for different tracks from different threads
+	 * at the same time, as long as no detections are being added. 
 	 * @param bitSet - the track bitset.
 	 * @return the IDI series of the positive track detections. 
 	 */
 	public IDIData getIDIStruct(BitSet bitSet) {
 		//if (forceCalc || !bitSet.equals(this.lastBitSet)) {
-		calcTrackTimeIDISeries(bitSet); 
-		bitSet=lastBitSet; 
-		forceCalc=false; 
+		return calcIDIData(bitSet); 
 		//}
-		return new IDIData(medianICI, idiSeries, timeSeries, (masterTimeSeries[iciCount-1]
-				-timeSeries[timeSeries.length-1])); 
 	}
 
 	/**
@@ -381,6 +379,18 @@ public class IDIManager {
 	 * and save as fields until new bitset. 
 	 */
 	private void calcTrackTimeIDISeries(BitSet bitSet) {
+		IDIData idiData = calcIDIData(bitSet); 
+		this.timeSeries=idiData.timeSeries; 
+		this.idiSeries=idiData.idiSeries; 
+		this.medianICI=idiData.medianIDI; 
+	}
+	
+	/**
+	 * Calculate the IDI and time series of a track from the current ICI data. 
+	 * @param bitSet - the track bitset.
+	 * @return the IDI data for the track. 
+	 */
+	private IDIData calcIDIData(BitSet bitSet) {
 		int ndets=bitSet.cardinality();
 		int npos = Math.min(ndets, iciCount);
 		double[] timeSeries=new double[npos]; 
@@ -396,11 +406,13 @@ public class IDIManager {
 				n=n+1; 
 			}
 		}
-		this.timeSeries=timeSeries; 
-		this.idiSeries=idiSeries; 
 		//this.idiSeries = timeSeries2IDI(timeSeries); 
-		if (ndets>=2) this.medianICI= PamArrayUtils.median(idiSeries);
+		Double medianICI; 
+		if (ndets>=2) medianICI= PamArrayUtils.median(idiSeries);
 		else medianICI=-1.; 
+		
+		double timeDiff = timeSeries.length > 0 ? masterTimeSeries[iciCount-1]-timeSeries[timeSeries.length-1] : Double.NaN; 
+		return new IDIData(medianICI, idiSeries, timeSeries, timeDiff); 
 	}
 
 
@@ -0,0 +1,133 @@
+package clickTrainDetector.clickTrainAlgorithms.mht.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+
+import PamguardMVC.PamDataUnit;
+import clickTrainDetector.clickTrainAlgorithms.mht.MHTKernel;
+import clickTrainDetector.clickTrainAlgorithms.mht.MHTKernelParams;
+import clickTrainDetector.clickTrainAlgorithms.mht.StandardMHTChi2Params;
+import clickTrainDetector.clickTrainAlgorithms.mht.StandardMHTChi2Provider;
+import clickTrainDetector.clickTrainAlgorithms.mht.mhtMAT.SimpleClick;
+
+/**
+ * Speed test for the MHT kernel, comparing the standard mode with the high throughput
+ * mode. Each mode is run a few times to warm up and then timed over a number of runs,
+ * giving the mean and standard deviation of the number of clicks processed per second.
+ * Also checks that both modes find exactly the same click trains.
+ * <p>
+ * Run with the path of a .mat file of simulated clicks (see ExampleClickTrains) as
+ * an argument or with no arguments to use several overlapping simulated click trains.
+ */
+public class MHTKernelSpeed {
+
+	private static final int nWarmUp = 3;
+
+	private static final int nRuns = 10;
+
+	public static void main(String[] args) {
+		ExampleClickTrains exampleClickTrains = new ExampleClickTrains();
+		SimpleClickDataBlock clickDataBlock;
+		if (args.length > 0) {
+			clickDataBlock = exampleClickTrains.importSimClicks(new File(args[0]));
+		}
+		else {
+			ArrayList<SimpleClick> simpleClicks = new ArrayList<SimpleClick>();
+			simpleClicks.addAll(exampleClickTrains.generateClickSet(0.32, 160, 0, 60, 0.01, 10));
+			simpleClicks.addAll(exampleClickTrains.generateClickSet(0.2, 110, 0.01, 60, 0.00001, 5));
+			simpleClicks.addAll(exampleClickTrains.generateClickSet(0.05, 130, 10, 40, 0.0001, 2));
+			simpleClicks.addAll(exampleClickTrains.generateClickSet(0.11, 140, 5, 55, 0.001, 4));
+			Collections.sort(simpleClicks, (a, b) -> a.compareTo(b));
+			clickDataBlock = new SimpleClickDataBlock();
+			clickDataBlock.addPamData(simpleClicks);
+		}
+		if (clickDataBlock == null) {
+			System.out.println("No clicks to test");
+			return;
+		}
+		ArrayList<SimpleClick> clicks = clickDataBlock.getDataCopy();
+		System.out.printf("%d clicks, %d warm up runs and %d timed runs\n", clicks.size(), nWarmUp, nRuns);
+
+		ArrayList<BitSet> standardTracks = runTest("Standard", clicks, false);
+		ArrayList<BitSet> fastTracks = runTest("High throughput", clicks, true);
+
+		if (standardTracks.equals(fastTracks)) {
+			System.out.printf("Both modes found the same %d click trains\n", standardTracks.size());
+		}
+		else {
+			System.out.printf("Click trains are different: standard %d, high throughput %d\n", standardTracks.size(), fastTracks.size());
+		}
+	}
+
+	/**
+	 * Run the MHT kernel over the clicks several times.
+	 * @param name - name of the test.
+	 * @param clicks - the clicks.
+	 * @param highThroughput - true to use the high throughput mode.
+	 * @return the confirmed tracks from the last run.
+	 */
+	private static ArrayList<BitSet> runTest(String name, ArrayList<SimpleClick> clicks, boolean highThroughput) {
+		double[] clicksPerSecond = new double[nRuns];
+		ArrayList<BitSet> tracks = null;
+		for (int i = 0; i < nWarmUp + nRuns; i++) {
+			MHTKernel<PamDataUnit> mhtKernel = createKernel(highThroughput);
+			long t0 = System.nanoTime();
+			for (SimpleClick click : clicks) {
+				mhtKernel.addDetection(click);
+			}
+			mhtKernel.confirmRemainingTracks();
+			long t1 = System.nanoTime();
+			if (i >= nWarmUp) {
+				clicksPerSecond[i - nWarmUp] = clicks.size() / ((t1 - t0) / 1.e9);
+			}
+			tracks = new ArrayList<BitSet>();
+			for (int j = 0; j < mhtKernel.getNConfrimedTracks(); j++) {
+				tracks.add(mhtKernel.getConfirmedTrack(j).trackBitSet);
+			}
+		}
+		double mean = 0;
+		for (int i = 0; i < nRuns; i++) {
+			mean += clicksPerSecond[i];
+		}
+		mean /= nRuns;
+		double var = 0;
+		for (int i = 0; i < nRuns; i++) {
+			var += Math.pow(clicksPerSecond[i] - mean, 2);
+		}
+		double sd = Math.sqrt(var / Math.max(1, nRuns - 1));
+		System.out.printf("%-16s %10.1f +/- %8.1f clicks per second, %d click trains\n", name, mean, sd, tracks.size());
+		return tracks;
+	}
+
+	/**
+	 * Create an MHT kernel with the same settings as MHTTestAlgorithm.
+	 * @param highThroughput - true to use the high throughput mode.
+	 * @return the MHT kernel.
+	 */
+	private static MHTKernel<PamDataUnit> createKernel(boolean highThroughput) {
+		StandardMHTChi2Params pamMHTChi2Params = new StandardMHTChi2Params();
+		//ICI and amplitude only.
+		pamMHTChi2Params.enable= new boolean[] {true, true, false, false, false, false, false};
+		pamMHTChi2Params.maxICI=0.5;
+		pamMHTChi2Params.newTrackPenalty=50;
+		pamMHTChi2Params.newTrackN=2;
+		pamMHTChi2Params.longTrackExponent = 0.1;
+		pamMHTChi2Params.lowICIExponent = 0.2;
+		pamMHTChi2Params.coastPenalty=5;
+
+		MHTKernelParams mHTkernalParams= new MHTKernelParams();
+		mHTkernalParams.nPruneback=5;
+		mHTkernalParams.nPruneBackStart=7;
+		mHTkernalParams.maxCoast=5;
+		mHTkernalParams.nHold=50;
+		mHTkernalParams.highThroughput = highThroughput;
+
+		StandardMHTChi2Provider mhtChi2 =  new StandardMHTChi2Provider(pamMHTChi2Params,  mHTkernalParams);
+		MHTKernel<PamDataUnit> mhtKernel = new MHTKernel<PamDataUnit>(mhtChi2);
+		mhtKernel.setMHTParams(mHTkernalParams);
+		return mhtKernel;
+	}
+
+}
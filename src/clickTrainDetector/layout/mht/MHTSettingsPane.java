@@ -11,6 +11,7 @@ import clickTrainDetector.layout.ClickTrainAlgorithmPaneFX;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.MenuButton;
 import javafx.scene.control.MenuItem;
@@ -63,6 +64,11 @@ public class MHTSettingsPane extends SettingsPane<MHTParams> {
 	 */
 	private PamSpinner<Integer> pruneStartSpinner; 
 
+	/**
+	 * Use the high throughput MHT kernel. 
+	 */
+	private CheckBox highThroughputBox; 
+
 	/**
 	 * Reference to the MHT Click train algorithm. 
 	 */
@@ -179,6 +185,12 @@ public class MHTSettingsPane extends SettingsPane<MHTParams> {
 		nHoldSpinner.setTooltip(new Tooltip("The maximum number of unique click trains that can be tracked at the same time."));
 		gridPane.add(nHoldSpinner, 3, gridY); 
 
+		gridY++;
+		highThroughputBox = new CheckBox("High throughput"); 
+		highThroughputBox.setTooltip(new Tooltip("Reuse track memory, calculate X\u00b2 values on several threads and only select the best\n"
+				+ "tracks when pruning. Gives the same click trains but is faster for data with lots of detections."));
+		gridPane.add(highThroughputBox, 0, gridY, 2, 1); 
+
 		pamVBox.getChildren().addAll(label, gridPane); 
 
 		pamVBox.setPadding(new Insets(10,0,0,0));
@@ -250,6 +262,7 @@ public class MHTSettingsPane extends SettingsPane<MHTParams> {
 			currParams2.mhtKernal.maxCoast=nCoastsSpinner.getValue(); 
 			currParams2.mhtKernal.nHold=nHoldSpinner.getValue(); 
 			currParams2.mhtKernal.nPruneBackStart=this.pruneStartSpinner.getValue(); 
+			currParams2.mhtKernal.highThroughput=highThroughputBox.isSelected(); 
 
 			//Chi2 settings. 
 			//can;t get this work with bounded generic parameter- why?
@@ -273,6 +286,7 @@ public class MHTSettingsPane extends SettingsPane<MHTParams> {
 		nCoastsSpinner.getValueFactory().setValue(currParams.mhtKernal.maxCoast);
 		nHoldSpinner.getValueFactory().setValue(currParams.mhtKernal.nHold);
 		pruneStartSpinner.getValueFactory().setValue(currParams.mhtKernal.nPruneBackStart); 
+		highThroughputBox.setSelected(currParams.mhtKernal.highThroughput);
 
 		//MHT set params 
 		mhtChi2Pane.setParams(currParams.chi2Params);
@@ -503,6 +503,10 @@ public class ClipDataUnit extends PamDataUnit<PamDataUnit, SuperDetection> imple
 	public void setRawData(double[][] rawData) {
 //		this.rawData = rawData;
 		compressData(rawData);
+		// null when called from the constructor. 
+		if (rawDataTransforms != null) {
+			rawDataTransforms.clearTransforms();
+		}
 	}
 
 	/**
@@ -2,9 +2,16 @@ package dataGram;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.swing.JOptionPane;
 import javax.swing.SwingWorker;
@@ -21,8 +28,16 @@ import PamView.CancelObserver;
 import PamguardMVC.PamDataBlock;
 import PamguardMVC.PamDataUnit;
 import PamguardMVC.dataOffline.OfflineDataLoadInfo;
+import binaryFileStorage.BinaryDataSink;
+import binaryFileStorage.BinaryFooter;
+import binaryFileStorage.BinaryHeader;
+import binaryFileStorage.BinaryObjectData;
 import binaryFileStorage.BinaryOfflineDataMap;
 import binaryFileStorage.BinaryOfflineDataMapPoint;
+import binaryFileStorage.BinaryStore;
+import binaryFileStorage.BinaryTypes;
+import binaryFileStorage.ModuleFooter;
+import binaryFileStorage.ModuleHeader;
 import dataMap.OfflineDataMap;
 import dataMap.OfflineDataMapPoint;
 import javafx.concurrent.Task;
@@ -32,8 +47,42 @@ import pamguard.GlobalArguments;
 
 public class DatagramManager {
 
+	/**
+	 * Maximum number of binary files to make datagrams for at the same time. All
+	 * the data from each file are held in memory while it's processed, so this
+	 * is kept quite small.
+	 */
+	public static final int MAX_PARALLEL_FILES = 4;
+
+	/**
+	 * Interval between saves of the binary data map cache while datagrams are
+	 * being made, so that not too much is lost if the calculation is interrupted.
+	 */
+	private static final long CACHE_SAVE_MILLIS = 120000;
+
 	private DatagramSettings datagramSettings = new DatagramSettings();
 
+	/**
+	 * Multi-resolution summaries of the datagrams for each data block.
+	 */
+	private HashMap<PamDataBlock, DatagramSummary> datagramSummaries = new HashMap<>();
+
+	/**
+	 * Data blocks which have a summary being made on the summary thread. 
+	 */
+	private HashSet<PamDataBlock> summariesInProgress = new HashSet<>();
+
+	/**
+	 * Incremented whenever summaries are cleared, so that a summary which was being
+	 * made from old datagrams at the time isn't used. 
+	 */
+	private int summaryGeneration;
+
+	/**
+	 * Single thread for making summaries, so they are never made on the paint thread. 
+	 */
+	private ExecutorService summaryExecutor;
+
 	private OfflineDataStore offlineDataStore;
 
 	private DatagramSettingsStore settingsStore;
@@ -379,6 +428,8 @@ public class DatagramManager {
 		private ArrayList<PamDataBlock> updateList;
 
 		private volatile boolean cancelNow = false;
+
+		private long lastCacheSave = System.currentTimeMillis();
 		/**
 		 * @param updateList
 		 */
@@ -394,7 +445,9 @@ public class DatagramManager {
 
 				for (int i = 0; i < updateList.size(); i++) {
 					processDataBlock(updateList.get(i));
+					clearSummary(updateList.get(i));
 				}
+				saveDataMapCache();
 			}
 			catch (Exception ex) {
 				ex.printStackTrace();
@@ -412,37 +465,38 @@ public class DatagramManager {
 				return;
 			}
 
-			int nMapPoints = dm.getNumMapPoints();
 			BinaryOfflineDataMapPoint dmp;
 			Datagram datagram;
 			/**
-			 * Loop through a first time to see now many map points need updating. 
+			 * Loop through a first time to find the map points which need updating. 
 			 */
+			ArrayList<BinaryOfflineDataMapPoint> updatePoints = new ArrayList<>();
 			Iterator<BinaryOfflineDataMapPoint> it = dm.getListIterator();
-			int nToUpdate = 0;
 			while (it.hasNext()) {
 				dmp = it.next();
 				datagram = dmp.getDatagram();
 				if (datagram == null || datagram.getIntervalSeconds() != datagramSettings.datagramSeconds) {
-					nToUpdate++;
+					updatePoints.add(dmp);
 				}
 			}
+			int nToUpdate = updatePoints.size();
 			publish(new DatagramProgress(DatagramProgress.STATUS_STARTINGBLOCK, pamDataBlock, nToUpdate));
 			/*
-			 * then loop through again and update the actual map points...
+			 * then update the actual map points, several files at a time if the data allow it. 
 			 */
-			it = dm.getListIterator();
-			int iPoint = 0;
-			while (it.hasNext()) {
-				dmp = it.next();
-				datagram = dmp.getDatagram();
-				if (datagram == null || datagram.getIntervalSeconds() != datagramSettings.datagramSeconds) {
-					publish(new DatagramProgress(DatagramProgress.STATUS_STARTINGFILE, dmp, ++iPoint));
+			int nThreads = Math.min(nToUpdate, getNumCreationThreads());
+			if (nThreads > 1 && offlineDataStore instanceof BinaryStore && datagramProvider.canProcessFilesConcurrently()) {
+				processConcurrently(pamDataBlock, updatePoints, nThreads);
+			}
+			else {
+				for (int i = 0; i < nToUpdate; i++) {
+					dmp = updatePoints.get(i);
+					publish(new DatagramProgress(DatagramProgress.STATUS_STARTINGFILE, dmp, i+1));
 					processDataMapPoint(pamDataBlock, dmp);
-					publish(new DatagramProgress(DatagramProgress.STATUS_ENDINGFILE, dmp, iPoint));
-				}
-				if (cancelNow) {
-					break;
+					publish(new DatagramProgress(DatagramProgress.STATUS_ENDINGFILE, dmp, i+1));
+					if (cancelNow) {
+						break;
+					}
 				}
 			}
 
@@ -450,7 +504,65 @@ public class DatagramManager {
 		}
 
 		/**
-		 * Process a single data map point
+		 * Make datagrams for several files at once on a small pool of threads. Each 
+		 * file is read straight from the binary store into a list of its own rather than
+		 * into the data block, so files don't interfere with each other. Datagrams are 
+		 * taken back in map order and added to the map and written to the index files 
+		 * from this thread, one at a time. 
+		 * @param dataBlock data block
+		 * @param updatePoints map points needing new datagrams
+		 * @param nThreads number of threads to use
+		 */
+		private void processConcurrently(PamDataBlock dataBlock, ArrayList<BinaryOfflineDataMapPoint> updatePoints, int nThreads) {
+			BinaryStore binaryStore = (BinaryStore) offlineDataStore;
+			DatagramProvider datagramProvider = dataBlock.getDatagramProvider();
+			int nPoints = updatePoints.size();
+			ExecutorService executor = Executors.newFixedThreadPool(nThreads, r -> {
+				Thread t = new Thread(r, "Datagram creator");
+				t.setDaemon(true);
+				return t;
+			});
+			ArrayList<Future<Datagram>> futures = new ArrayList<>(nPoints);
+			for (BinaryOfflineDataMapPoint mapPoint : updatePoints) {
+				futures.add(executor.submit(() -> {
+					if (cancelNow) {
+						return null;
+					}
+					ArrayList<PamDataUnit> units = loadFileUnits(binaryStore, dataBlock, mapPoint);
+					return makeDatagram(datagramProvider, mapPoint.getStartTime(), mapPoint.getEndTime(), 
+							units.iterator(), units.size(), false);
+				}));
+			}
+			try {
+				for (int i = 0; i < nPoints; i++) {
+					BinaryOfflineDataMapPoint mapPoint = updatePoints.get(i);
+					Datagram datagram = null;
+					try {
+						datagram = futures.get(i).get();
+						futures.set(i, null);
+					} catch (CancellationException e) {
+						continue;
+					} catch (InterruptedException | ExecutionException e) {
+						e.printStackTrace();
+					}
+					if (datagram != null) {
+						setMapPointDatagram(dataBlock, mapPoint, datagram);
+					}
+					publish(new DatagramProgress(DatagramProgress.STATUS_ENDINGFILE, mapPoint, i+1));
+					if (cancelNow) {
+						for (int j = i+1; j < nPoints; j++) {
+							futures.get(j).cancel(false);
+						}
+					}
+				}
+			}
+			finally {
+				executor.shutdownNow();
+			}
+		}
+
+		/**
+		 * Process a single data map point, loading the data into the data block. 
 		 * @param dataBlock
 		 * @param dmp
 		 */
@@ -466,6 +578,33 @@ public class DatagramManager {
 			//sometimes can get corrupt end times.
 			
 			DatagramProvider datagramProvider = dataBlock.getDatagramProvider();
+			/*
+			 * first load all the data from a single file ...
+			 */
+			dataBlock.clearAll();
+			Runtime.getRuntime().gc();
+			dataBlock.loadViewerData(new OfflineDataLoadInfo(startTime, endTime), null);
+			int totalUnits = dataBlock.getUnitsCount();
+			ListIterator<PamDataUnit> li = dataBlock.getListIterator(0);
+			Datagram datagram = makeDatagram(datagramProvider, startTime, endTime, li, totalUnits, true);
+			if (datagram != null) {
+				setMapPointDatagram(dataBlock, dmp, datagram);
+			}
+		}
+
+		/**
+		 * Make the datagram for a single map point. 
+		 * @param datagramProvider datagram provider
+		 * @param startTime map point start time
+		 * @param endTime map point end time
+		 * @param li iterator through the data units, in time order
+		 * @param totalUnits total number of data units
+		 * @param showUnitProgress publish progress through the data units. Only used
+		 * when one file is processed at a time. 
+		 * @return new datagram, or null if the creator was cancelled. 
+		 */
+		private Datagram makeDatagram(DatagramProvider datagramProvider, long startTime, long endTime, 
+				Iterator<PamDataUnit> li, int totalUnits, boolean showUnitProgress) {
 			int nPoints = datagramProvider.getNumDataGramPoints();
 			float[] tempData = new float[nPoints]; // temp holder - gets converted to float later on
 			float[] gramData;
@@ -478,18 +617,12 @@ public class DatagramManager {
 			long currentStart = startTime;
 			long currentEnd = currentStart + datagramMillis;
 			DatagramDataPoint datagramPoint;
-			/*
-			 * first load all the data from a single file ...
-			 */
-			dataBlock.clearAll();
-			Runtime.getRuntime().gc();
-			dataBlock.loadViewerData(new OfflineDataLoadInfo(startTime, endTime), null);
-			int totalUnits = dataBlock.getUnitsCount();
-			ListIterator<PamDataUnit> li = dataBlock.getListIterator(0);
 			PamDataUnit dataUnit;
 			int usedDataUnits = 0;
 			int doneUnits = 0;
-			publish(new DatagramProgress(DatagramProgress.STATUS_UNITCOUNT, totalUnits, doneUnits));
+			if (showUnitProgress) {
+				publish(new DatagramProgress(DatagramProgress.STATUS_UNITCOUNT, totalUnits, doneUnits));
+			}
 			while (currentStart <= endTime) {
 				datagramPoint = new DatagramDataPoint(datagram, currentStart, currentStart+datagramMillis, nPoints);
 				usedDataUnits = 0;
@@ -503,13 +636,13 @@ public class DatagramManager {
 					usedDataUnits++;
 					doneUnits++;
 					long t2 = System.currentTimeMillis();
-					if (t2-t > 500) {
+					if (showUnitProgress && t2-t > 500) {
 						t = t2;
 						publish(new DatagramProgress(DatagramProgress.STATUS_UNITCOUNT, totalUnits, doneUnits));
 					}
 
 					if (cancelNow) {
-						return;
+						return null;
 					}
 				}
 				/**
@@ -528,12 +661,38 @@ public class DatagramManager {
 				currentStart = currentEnd;
 				currentEnd = currentStart+datagramMillis;
 			}
+			return datagram;
+		}
+
+		/**
+		 * Give a new datagram to a map point and write it to the index file. The data map 
+		 * cache is also saved every few minutes so that if a long run is interrupted, it 
+		 * will carry on from where it got to next time. 
+		 * @param dataBlock data block
+		 * @param dmp map point
+		 * @param datagram new datagram
+		 */
+		private void setMapPointDatagram(PamDataBlock dataBlock, OfflineDataMapPoint dmp, Datagram datagram) {
 			if (DatagramPoint.class.isAssignableFrom(dmp.getClass())) {
 				((DatagramPoint) dmp).setDatagram(datagram);
 			}
 
 			offlineDataStore.rewriteIndexFile(dataBlock, dmp);
 
+			long now = System.currentTimeMillis();
+			if (now - lastCacheSave > CACHE_SAVE_MILLIS) {
+				saveDataMapCache();
+				lastCacheSave = now;
+			}
+		}
+
+		/**
+		 * Save the binary data map cache, which holds the datagrams. 
+		 */
+		private void saveDataMapCache() {
+			if (offlineDataStore instanceof BinaryStore) {
+				((BinaryStore) offlineDataStore).saveDataMapCache();
+			}
 		}
 
 		@Override
@@ -569,6 +728,70 @@ public class DatagramManager {
 
 	}
 
+	/**
+	 * @return number of binary files to make datagrams for at the same time. 
+	 */
+	private int getNumCreationThreads() {
+		return Math.min(MAX_PARALLEL_FILES, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Read all the data units from a single binary file into a list, without 
+	 * putting them into the data block. 
+	 * @param binaryStore binary store
+	 * @param dataBlock data block
+	 * @param mapPoint map point for the file
+	 * @return data units in time order
+	 */
+	private ArrayList<PamDataUnit> loadFileUnits(BinaryStore binaryStore, PamDataBlock dataBlock, BinaryOfflineDataMapPoint mapPoint) {
+		ArrayList<PamDataUnit> units = new ArrayList<>();
+		binaryStore.loadData(dataBlock, mapPoint, mapPoint.getStartTime(), mapPoint.getEndTime(), new UnitListSink(units));
+		units.sort((a, b) -> Long.compare(a.getTimeMilliseconds(), b.getTimeMilliseconds()));
+		return units;
+	}
+
+	/**
+	 * Data sink which puts data units into a list instead of the data block. 
+	 */
+	private class UnitListSink implements BinaryDataSink {
+
+		private ArrayList<PamDataUnit> units;
+
+		public UnitListSink(ArrayList<PamDataUnit> units) {
+			this.units = units;
+		}
+
+		@Override
+		public void newFileHeader(BinaryHeader binaryHeader) {
+		}
+
+		@Override
+		public void newModuleHeader(BinaryObjectData binaryObjectData, ModuleHeader moduleHeader) {
+		}
+
+		@Override
+		public void newModuleFooter(BinaryObjectData binaryObjectData, ModuleFooter moduleFooter) {
+		}
+
+		@Override
+		public void newFileFooter(BinaryObjectData binaryObjectData, BinaryFooter binaryFooter) {
+		}
+
+		@Override
+		public boolean newDataUnit(BinaryObjectData binaryObjectData, PamDataBlock dataBlock, PamDataUnit dataUnit) {
+			if (binaryObjectData.getObjectType() != BinaryTypes.BACKGROUND_DATA) {
+				dataUnit.setParentDataBlock(dataBlock);
+				units.add(dataUnit);
+			}
+			return true;
+		}
+
+		@Override
+		public void newDatagram(BinaryObjectData binaryObjectData) {
+		}
+
+	}
+
 	public void showProgress(DatagramProgress datagramProgress, DatagramCreator datagramCreator) {
 		if (PamGUIManager.isSwing()) {
 			if (datagramProgressDialog == null) {
@@ -593,6 +816,67 @@ public class DatagramManager {
 	 */
 	public void setDatagramSettings(DatagramSettings datagramSettings) {
 		this.datagramSettings = datagramSettings;
+		clearSummary(null);
+	}
+
+	/**
+	 * Clear the multi-resolution summary for a data block, e.g. when its datagrams
+	 * have changed. 
+	 * @param dataBlock data block, or null to clear all summaries. 
+	 */
+	public synchronized void clearSummary(PamDataBlock dataBlock) {
+		summaryGeneration++;
+		if (dataBlock == null) {
+			datagramSummaries.clear();
+		}
+		else {
+			datagramSummaries.remove(dataBlock);
+		}
+	}
+
+	/**
+	 * Get the multi-resolution summary for a data block. If there isn't one or the data map 
+	 * has changed since it was made, a new one is started on the summary thread and null 
+	 * is returned, in which case the image has to be made from all the datagrams. Called 
+	 * holding the lock on this. 
+	 * @param dataBlock data block
+	 * @param offlineDataMap data map for the data block
+	 * @param nYPoints number of points in each datagram line
+	 * @return datagram summary, or null if it's not ready yet. 
+	 */
+	private DatagramSummary getSummary(PamDataBlock dataBlock, OfflineDataMap offlineDataMap, int nYPoints) {
+		int intervalSeconds = datagramSettings.datagramSeconds;
+		DatagramSummary summary = datagramSummaries.get(dataBlock);
+		if (summary != null && summary.isCurrent(offlineDataMap, intervalSeconds, nYPoints)) {
+			return summary;
+		}
+		datagramSummaries.remove(dataBlock);
+		if (summariesInProgress.add(dataBlock)) {
+			if (summaryExecutor == null) {
+				summaryExecutor = Executors.newSingleThreadExecutor(r -> {
+					Thread t = new Thread(r, "Datagram summary");
+					t.setDaemon(true);
+					return t;
+				});
+			}
+			final int generation = summaryGeneration;
+			summaryExecutor.submit(() -> {
+				DatagramSummary newSummary = null;
+				try {
+					newSummary = new DatagramSummary(offlineDataMap, intervalSeconds, nYPoints);
+				}
+				catch (Exception e) {
+					e.printStackTrace();
+				}
+				synchronized (DatagramManager.this) {
+					summariesInProgress.remove(dataBlock);
+					if (newSummary != null && generation == summaryGeneration) {
+						datagramSummaries.put(dataBlock, newSummary);
+					}
+				}
+			});
+		}
+		return null;
 	}
 
 
@@ -670,32 +954,12 @@ public class DatagramManager {
 		endTimeMillis *= datagramMillis;
 		
 
-		/**
-		 * Need to work out the resolution of the datagram data for this 
-		 * to work, if files are hsort it may be<< datagramMillis
+		/*
+		 * Don't start before the first map point. 
 		 */
 		Iterator<OfflineDataMapPoint> iterator = offlineDataMap.getListIterator();
-		long minLen = Long.MAX_VALUE;
-		long maxLen = 0;
-		long meanLen = 0;
-		long nLen = 0;
-		boolean first = true;
-		while (iterator.hasNext()) {
-			OfflineDataMapPoint mapPoint = iterator.next();
-			if (first) {
-				first = false;
-				startTimeMillis = Math.max(startTimeMillis, mapPoint.getStartTime());
-			}
-			
-			long ptLen = mapPoint.getEndTime()-mapPoint.getStartTime();
-			minLen = Math.min(minLen, ptLen);
-			maxLen = Math.max(maxLen, ptLen);
-			meanLen += ptLen;
-			nLen ++;
-		}
-		if (nLen > 0) {
-			meanLen /= nLen;
-//			datagramMillis = Math.max(meanLen,1000);
+		if (iterator.hasNext()) {
+			startTimeMillis = Math.max(startTimeMillis, iterator.next().getStartTime());
 		}
 
 		// first work out how many points there should naturally be ...
@@ -716,8 +980,21 @@ public class DatagramManager {
 		double[][] datagramArray = new double[nTimePoints][nYPoints];
 		int[][] scaleCount = new int[nTimePoints][nYPoints];
 
+		/*
+		 * Most of the data come from the summary, which will use a coarser level when
+		 * there are many datagram points per pixel. 
+		 */
+		DatagramSummary summary = getSummary(dataBlock, offlineDataMap, nYPoints);
+		int nSummaryPoints = 0;
+		if (summary != null) {
+			summary.addToImage(startTimeMillis, xScale, datagramArray, scaleCount);
+			nSummaryPoints = summary.getNumMapPoints();
+		}
 
-//		Iterator<OfflineDataMapPoint> 
+		/*
+		 * then add any map points which aren't in the summary, i.e. the last one
+		 * which may still be changing, or all of them if the summary isn't ready yet. 
+		 */
 		iterator = offlineDataMap.getListIterator();
 		OfflineDataMapPoint mapPoint;
 		DatagramPoint datagramPoint;
@@ -727,27 +1004,19 @@ public class DatagramManager {
 		DatagramDataPoint dataPoint;
 		int nDataPoints;
 		float[] data;
-		first = true;
-		/**
-		 * will need to get the real image times, which may not be the full 
-		 * requested range depending on data availability. 
-		 */
-		long imageStart = startTimeMillis;
-		long imageEnd = endTimeMillis;
+		int iMapPoint = 0;
 		while (iterator.hasNext()) {
 			mapPoint = iterator.next();
-			if (first) {
-				first = false;
-				imageStart = mapPoint.getStartTime();
+			if (iMapPoint++ < nSummaryPoints) {
+				continue;
 			}
-			imageEnd = mapPoint.getEndTime();
 			if (!DatagramPoint.class.isAssignableFrom(mapPoint.getClass())) {
 				continue;
 			}
 			datagramPoint = (DatagramPoint) mapPoint;
 			pointStart = mapPoint.getStartTime();
 			pointEnd = mapPoint.getEndTime();
-			if (pointEnd < startTimeMillis - datagramSettings.datagramSeconds*5000) {
+			if (pointEnd < startTimeMillis) {
 				continue;
 			}
 			if (pointStart > endTimeMillis) {
@@ -757,14 +1026,11 @@ public class DatagramManager {
 			if (datagram == null) {
 				continue;
 			}
-			//			System.out.println("Add map point starting at " + PamCalendar.formatDateTime(mapPoint.getStartTime()));
 			nDataPoints = datagram.getNumDataPoints();
 			for (int i = 0; i < nDataPoints; i++) {
 				dataPoint = datagram.getDataPoint(i);
-				//				System.out.println("   .... add Datagram point starting at " + 
-				//						PamCalendar.formatDateTime(dataPoint.getStartTime()));
+				if (dataPoint.getStartTime() < startTimeMillis) continue;
 				xBin = (int)((dataPoint.getStartTime()-startTimeMillis)/xScale);
-				if (xBin < 0) continue;
 				if (xBin >= nTimePoints) break;
 				data = dataPoint.getData();
 				for (int j = 0; j < Math.min(nYPoints, data.length); j++) {
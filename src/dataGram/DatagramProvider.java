@@ -33,4 +33,14 @@ public interface DatagramProvider {
 	 */
 	DatagramScaleInformation getScaleInformation();
 
+	/**
+	 * Say whether datagrams can be made for several binary files at the same time on 
+	 * different threads. This is only safe if addDatagramData and the binary data source
+	 * for these data don't share any working data between data units. 
+	 * @return true if binary files can be processed concurrently. Default is false. 
+	 */
+	default boolean canProcessFilesConcurrently() {
+		return false;
+	}
+
 }
@@ -0,0 +1,360 @@
+package dataGram;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import dataMap.OfflineDataMap;
+import dataMap.OfflineDataMapPoint;
+
+/**
+ * Multi-resolution summary of all the datagrams for one data block, used by
+ * DatagramManager.getImageData so that an image of a long time range doesn't need
+ * to go through every single DatagramDataPoint each time it's drawn.
+ * <p>
+ * Level 0 is every DatagramDataPoint in time order. Each higher level combines LEVEL_FACTOR
+ * bins of the level below and holds the sum and the number of data points in each datagram
+ * bin, so the mean over a set of level bins is exactly the same as the mean over all the
+ * data points within them. Images are made from the coarsest bins which fit entirely within
+ * an image pixel, going down to finer levels only at the pixel edges, so the image is
+ * exactly the same as one made from all the individual data points.
+ * <p>
+ * The last map point is left out of the summary since data may still be being added to
+ * its datagram during acquisition.
+ * <p>
+ * Making a summary of a large data set takes a while, so DatagramManager makes them on a 
+ * background thread rather than when an image is being drawn. 
+ */
+public class DatagramSummary {
+
+	/**
+	 * Number of bins from each level which are combined in the next level up.
+	 */
+	public static final int LEVEL_FACTOR = 8;
+
+	/**
+	 * Maximum number of levels, including level 0.
+	 */
+	public static final int MAX_LEVELS = 8;
+
+	private int intervalSeconds;
+
+	private int nYPoints;
+
+	private int nMapPoints;
+
+	private OfflineDataMapPoint firstMapPoint, lastMapPoint;
+
+	/**
+	 * Level 0 start times and data. The data arrays are the ones in the datagrams, not copies.
+	 */
+	private long[] pointTimes;
+
+	private float[][] pointData;
+
+	/**
+	 * Bin length for each level
+	 */
+	private long[] levelMillis;
+
+	/**
+	 * Start time of the first and last data points in each bin for each level.
+	 */
+	private long[][] binTimes, binLastTimes;
+
+	/**
+	 * Index of the first bin in the level below for each bin, with one extra
+	 * value at the end, for level 1 and above.
+	 */
+	private int[][] binChildren;
+
+	/**
+	 * Sum and count of the data in each bin, nYPoints values per bin.
+	 */
+	private double[][] binSums;
+
+	private int[][] binCounts;
+
+	/**
+	 * Make a summary of every map point except the last one.
+	 * @param offlineDataMap data map
+	 * @param intervalSeconds datagram interval in seconds
+	 * @param nYPoints number of points in each datagram line
+	 */
+	public DatagramSummary(OfflineDataMap offlineDataMap, int intervalSeconds, int nYPoints) {
+		this.intervalSeconds = intervalSeconds;
+		this.nYPoints = nYPoints;
+		ArrayList<DatagramDataPoint> dataPoints = new ArrayList<>();
+		List<OfflineDataMapPoint> mapPoints = offlineDataMap.getMapPoints();
+		synchronized (mapPoints) {
+			nMapPoints = Math.max(0, offlineDataMap.getNumMapPoints() - 1);
+			Iterator<OfflineDataMapPoint> iterator = mapPoints.iterator();
+			for (int i = 0; i < nMapPoints && iterator.hasNext(); i++) {
+				OfflineDataMapPoint mapPoint = iterator.next();
+				if (i == 0) {
+					firstMapPoint = mapPoint;
+				}
+				lastMapPoint = mapPoint;
+				if (!(mapPoint instanceof DatagramPoint)) {
+					continue;
+				}
+				Datagram datagram = ((DatagramPoint) mapPoint).getDatagram();
+				if (datagram == null) {
+					continue;
+				}
+				int n = datagram.getNumDataPoints();
+				for (int p = 0; p < n; p++) {
+					dataPoints.add(datagram.getDataPoint(p));
+				}
+			}
+		}
+		// map points should already be in order, but make sure for the binary search.
+		dataPoints.sort((a, b) -> Long.compare(a.getStartTime(), b.getStartTime()));
+		int n = dataPoints.size();
+		pointTimes = new long[n];
+		pointData = new float[n][];
+		for (int i = 0; i < n; i++) {
+			pointTimes[i] = dataPoints.get(i).getStartTime();
+			pointData[i] = dataPoints.get(i).getData();
+		}
+		makeLevels();
+	}
+
+	/**
+	 * Make the higher levels. Bins are aligned to multiples of the bin length. A
+	 * level which wouldn't combine any bins (only possible for very sparse data)
+	 * is left out.
+	 */
+	private void makeLevels() {
+		long gramMillis = Math.max(1, intervalSeconds * 1000L);
+		ArrayList<Long> millis = new ArrayList<>();
+		ArrayList<long[]> times = new ArrayList<>();
+		ArrayList<double[]> sums = new ArrayList<>();
+		ArrayList<int[]> counts = new ArrayList<>();
+		ArrayList<long[]> lastTimes = new ArrayList<>();
+		ArrayList<int[]> children = new ArrayList<>();
+		millis.add(gramMillis);
+		times.add(pointTimes);
+		lastTimes.add(pointTimes);
+		sums.add(null);
+		counts.add(null);
+		children.add(null);
+		long[] belowTimes = pointTimes;
+		long[] belowLastTimes = pointTimes;
+		double[] belowSums = null;
+		int[] belowCounts = null;
+		long binMillis = gramMillis;
+		for (int level = 1; level < MAX_LEVELS && belowTimes.length > 1; level++) {
+			binMillis *= LEVEL_FACTOR;
+			int nBelow = belowTimes.length;
+			/*
+			 * Count the bins first, so arrays are only as big as the level, not the level below.
+			 */
+			int nBins = 0;
+			long currentBin = 0;
+			for (int i = 0; i < nBelow; i++) {
+				long bin = Math.floorDiv(belowTimes[i], binMillis);
+				if (nBins == 0 || bin != currentBin) {
+					nBins++;
+					currentBin = bin;
+				}
+			}
+			if (nBins == nBelow) {
+				continue;
+			}
+			long nValues = (long) nBins * nYPoints;
+			if (nValues > Integer.MAX_VALUE - 8) {
+				// too big to summarise, so stop here and use the finer levels. 
+				break;
+			}
+			long[] newTimes = new long[nBins];
+			long[] newLastTimes = new long[nBins];
+			int[] newChildren = new int[nBins+1];
+			double[] newSums = new double[(int) nValues];
+			int[] newCounts = new int[(int) nValues];
+			nBins = 0;
+			for (int i = 0; i < nBelow; i++) {
+				long bin = Math.floorDiv(belowTimes[i], binMillis);
+				if (nBins == 0 || bin != currentBin) {
+					newChildren[nBins] = i;
+					newTimes[nBins++] = belowTimes[i];
+					currentBin = bin;
+				}
+				newLastTimes[nBins-1] = belowLastTimes[i];
+				int off = (nBins-1)*nYPoints;
+				if (belowSums == null) {
+					float[] data = pointData[i];
+					int nj = Math.min(nYPoints, data.length);
+					for (int j = 0; j < nj; j++) {
+						newSums[off+j] += data[j];
+						newCounts[off+j]++;
+					}
+				}
+				else {
+					for (int j = 0, k = i*nYPoints; j < nYPoints; j++, k++) {
+						newSums[off+j] += belowSums[k];
+						newCounts[off+j] += belowCounts[k];
+					}
+				}
+			}
+			newChildren[nBins] = nBelow;
+			belowTimes = newTimes;
+			belowLastTimes = newLastTimes;
+			belowSums = newSums;
+			belowCounts = newCounts;
+			millis.add(binMillis);
+			times.add(belowTimes);
+			lastTimes.add(belowLastTimes);
+			children.add(newChildren);
+			sums.add(belowSums);
+			counts.add(belowCounts);
+		}
+		int nLevels = times.size();
+		levelMillis = new long[nLevels];
+		for (int i = 0; i < nLevels; i++) {
+			levelMillis[i] = millis.get(i);
+		}
+		binTimes = times.toArray(new long[nLevels][]);
+		binLastTimes = lastTimes.toArray(new long[nLevels][]);
+		binChildren = children.toArray(new int[nLevels][]);
+		binSums = sums.toArray(new double[nLevels][]);
+		binCounts = counts.toArray(new int[nLevels][]);
+	}
+
+	/**
+	 * Check the summary is still valid for a data map.
+	 * @param offlineDataMap data map
+	 * @param intervalSeconds current datagram interval
+	 * @param nYPoints current number of points in each datagram line
+	 * @return true if the summary can still be used.
+	 */
+	public boolean isCurrent(OfflineDataMap offlineDataMap, int intervalSeconds, int nYPoints) {
+		if (intervalSeconds != this.intervalSeconds || nYPoints != this.nYPoints) {
+			return false;
+		}
+		if (Math.max(0, offlineDataMap.getNumMapPoints() - 1) != nMapPoints) {
+			return false;
+		}
+		if (nMapPoints == 0) {
+			return true;
+		}
+		List<OfflineDataMapPoint> mapPoints = offlineDataMap.getMapPoints();
+		synchronized (mapPoints) {
+			return mapPoints.size() > nMapPoints && mapPoints.get(0) == firstMapPoint &&
+					mapPoints.get(nMapPoints-1) == lastMapPoint;
+		}
+	}
+
+	/**
+	 * Add the summarised data into image arrays. Data points go into pixel
+	 * (int) ((pointStart - startMillis) / xScale) and points before the start are left out.
+	 * @param startMillis image start time
+	 * @param xScale milliseconds per image pixel
+	 * @param imageSums sum of datagram data for each pixel
+	 * @param imageCounts number of data points added to each pixel
+	 */
+	public void addToImage(long startMillis, double xScale, double[][] imageSums, int[][] imageCounts) {
+		/*
+		 * Start at the coarsest level with bins no longer than a pixel, since
+		 * longer bins will rarely fit in a pixel. 
+		 */
+		int level = 0;
+		for (int i = levelMillis.length-1; i > 0; i--) {
+			if (levelMillis[i] <= xScale) {
+				level = i;
+				break;
+			}
+		}
+		long[] lastTimes = binLastTimes[level];
+		// first bin which has any data after the start. 
+		int first = Arrays.binarySearch(lastTimes, startMillis);
+		if (first < 0) {
+			first = -first-1;
+		}
+		else {
+			while (first > 0 && lastTimes[first-1] == startMillis) {
+				first--;
+			}
+		}
+		addBins(level, first, lastTimes.length, startMillis, xScale, imageSums, imageCounts);
+	}
+
+	/**
+	 * Add a range of bins from one level into the image. Bins which fall entirely within 
+	 * one pixel are added in one go, others are split into the bins of the level below. 
+	 * @return false once the end of the image has been reached. 
+	 */
+	private boolean addBins(int level, int i0, int i1, long startMillis, double xScale, 
+			double[][] imageSums, int[][] imageCounts) {
+		int nTimePoints = imageSums.length;
+		long[] times = binTimes[level];
+		long[] lastTimes = binLastTimes[level];
+		for (int i = i0; i < i1; i++) {
+			int xBin = getXBin(times[i], startMillis, xScale);
+			if (xBin >= nTimePoints) {
+				return false;
+			}
+			if (level > 0 && (xBin < 0 || xBin != getXBin(lastTimes[i], startMillis, xScale))) {
+				if (!addBins(level-1, binChildren[level][i], binChildren[level][i+1], 
+						startMillis, xScale, imageSums, imageCounts)) {
+					return false;
+				}
+				continue;
+			}
+			if (xBin < 0) {
+				continue;
+			}
+			double[] sums = imageSums[xBin];
+			int[] counts = imageCounts[xBin];
+			int ny = Math.min(nYPoints, sums.length);
+			if (level == 0) {
+				float[] data = pointData[i];
+				ny = Math.min(ny, data.length);
+				for (int j = 0; j < ny; j++) {
+					sums[j] += data[j];
+					counts[j]++;
+				}
+			}
+			else {
+				double[] levelSums = binSums[level];
+				int[] levelCounts = binCounts[level];
+				for (int j = 0, k = i*nYPoints; j < ny; j++, k++) {
+					sums[j] += levelSums[k];
+					counts[j] += levelCounts[k];
+				}
+			}
+		}
+		return true;
+	}
+
+	private int getXBin(long timeMillis, long startMillis, double xScale) {
+		if (timeMillis < startMillis) {
+			return -1;
+		}
+		return (int) ((timeMillis-startMillis)/xScale);
+	}
+
+	/**
+	 * @return the number of map points in the summary.
+	 */
+	public int getNumMapPoints() {
+		return nMapPoints;
+	}
+
+	/**
+	 * @return the number of levels, including level 0
+	 */
+	public int getNumLevels() {
+		return levelMillis.length;
+	}
+
+	/**
+	 * @param level level number
+	 * @return number of bins in a level
+	 */
+	public int getNumBins(int level) {
+		return binTimes[level].length;
+	}
+
+}
@@ -1,5 +1,5 @@
 package decimator;
 
 public enum DecimatorMethod {
-FILTER, FFT
+FILTER, FFT, POLYPHASE
 }
@@ -41,6 +41,24 @@ public class DecimatorParams implements Serializable, Cloneable, ManagedParamete
 	public FilterParams filterParams;
 	
 	public int interpolation = 0;
+	
+	/**
+	 * Decimation method. FILTER filters the data at the higher sample rate, then picks 
+	 * output samples. POLYPHASE uses a polyphase FIR resampler which only calculates the 
+	 * output samples. Null (from older configurations) is the same as FILTER. 
+	 */
+	public DecimatorMethod decimatorMethod = DecimatorMethod.FILTER;
+	
+	/**
+	 * Length of the polyphase resampler filter in samples at the lower of the 
+	 * input and output sample rates.  
+	 */
+	public int polyphaseLength = PolyphaseResampler.DEFAULT_FILTER_LENGTH;
+	
+	/**
+	 * Decimate different channels at the same time on multiple threads. 
+	 */
+	public boolean parallelChannels = false;
 
 	/**
 	 * Create decimator params with a nominal output sample rate of 2Kz and 
@@ -103,6 +121,26 @@ public class DecimatorParams implements Serializable, Cloneable, ManagedParamete
 		}
 	}
 
+	/**
+	 * @return the decimation method, never null. 
+	 */
+	public DecimatorMethod getDecimatorMethod() {
+		if (decimatorMethod == null) {
+			decimatorMethod = DecimatorMethod.FILTER;
+		}
+		return decimatorMethod;
+	}
+
+	/**
+	 * @return the length of the polyphase resampler filter
+	 */
+	public int getPolyphaseLength() {
+		if (polyphaseLength <= 0) {
+			polyphaseLength = PolyphaseResampler.DEFAULT_FILTER_LENGTH;
+		}
+		return polyphaseLength;
+	}
+
 	@Override
 	public PamParameterSet getParameterSet() {
 		PamParameterSet ps = PamParameterSet.autoGenerate(this, ParameterSetType.DETECTOR);
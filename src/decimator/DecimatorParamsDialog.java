@@ -9,6 +9,7 @@ import java.awt.event.ActionListener;
 
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -62,6 +63,10 @@ public class DecimatorParamsDialog extends PamDialog {
 	
 	private JComboBox<String> interpolator;
 	
+	private JComboBox<String> decimatorMethod;
+	
+	private JCheckBox parallelChannels;
+	
 	private DecimatorParamsDialog(Frame parentFrame, DecimatorControl decimatorControl) {
 		
 		super(parentFrame, "Decimator ...", true);
@@ -121,6 +126,25 @@ public class DecimatorParamsDialog extends PamDialog {
 		interpolator.addItem("None");
 		interpolator.addItem("Linear");
 		interpolator.addItem("Quadratic");
+		constraints.gridx = 0;
+		constraints.gridwidth = 1;
+		constraints.gridy++;
+		addComponent(decimatorPanel, new JLabel("Method: ", SwingConstants.RIGHT), constraints);
+		constraints.gridx += constraints.gridwidth;
+		constraints.gridwidth = 2;
+		addComponent(decimatorPanel, decimatorMethod = new JComboBox<String>(), constraints);
+		decimatorMethod.addItem("Filter and pick samples");
+		decimatorMethod.addItem("Polyphase FIR resampler");
+		decimatorMethod.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				enableControls();
+			}
+		});
+		constraints.gridx = 0;
+		constraints.gridwidth = 3;
+		constraints.gridy++;
+		addComponent(decimatorPanel, parallelChannels = new JCheckBox("Decimate channels in parallel"), constraints);
 
 		isViewer = PamController.getInstance().getRunMode() == PamController.RUN_PAMVIEW;
 		if (isViewer) {
@@ -138,6 +162,9 @@ public class DecimatorParamsDialog extends PamDialog {
 		filterButton.setToolTipText("Manual adjustment of filter settings");
 		defaultFilterButton.setToolTipText("Set a default filter (6th order Butterworth low pass at Decimator Nyquist frequency)");
 		interpolator.setToolTipText("If Decimation / upsampling is not by an integer value, you should use interpolation to improve waveform reconstruction");
+		decimatorMethod.setToolTipText("<html>The polyphase FIR resampler only calculates the output samples, so is much faster for large decimation factors.<p>"
+				+ "It uses a low pass FIR filter with the cut off frequency and stop band attenuation from the filter settings</html>");
+		parallelChannels.setToolTipText("Decimate each channel on a different thread");
 	}
 	
 		
@@ -216,7 +243,19 @@ public class DecimatorParamsDialog extends PamDialog {
 			offlineDAQDialogPanel.setParams();
 		}
 		interpolator.setSelectedIndex(decimatorParams.interpolation);
+		decimatorMethod.setSelectedIndex(decimatorParams.getDecimatorMethod() == DecimatorMethod.POLYPHASE ? 1 : 0);
+		parallelChannels.setSelected(decimatorParams.parallelChannels);
 		sayFilter();
+		enableControls();
+	}
+	
+	private boolean isPolyphase() {
+		return decimatorMethod.getSelectedIndex() == 1;
+	}
+	
+	private void enableControls() {
+		// polyphase resampler doesn't need any interpolation
+		interpolator.setEnabled(!isPolyphase());
 	}
 	
 	/**
@@ -268,6 +307,15 @@ public class DecimatorParamsDialog extends PamDialog {
 		}
 		
 		decimatorParams.interpolation = interpolator.getSelectedIndex();
+		decimatorParams.decimatorMethod = isPolyphase() ? DecimatorMethod.POLYPHASE : DecimatorMethod.FILTER;
+		decimatorParams.parallelChannels = parallelChannels.isSelected();
+		if (isPolyphase()) {
+			if (PolyphaseResampler.getRateFactors(sourcePanel.getSource().getSampleRate(), decimatorParams.newSampleRate) == null) {
+				return showWarning("The polyphase resampler can't be used when the ratio of the input and output sample rates is not a simple fraction");
+			}
+			decimatorParams.interpolation = 0;
+			return true;
+		}
 		boolean isInt = decimatorControl.isIntegerDecimation(sourcePanel.getSource().getSampleRate(), decimatorParams.newSampleRate);
 		if (isInt && decimatorParams.interpolation > 0) {
 			int ans = WarnOnce.showWarning("Decimator", "With in / out sample rate ratio equal to a whole number, there is no need to interpolate", WarnOnce.OK_CANCEL_OPTION);
@@ -36,6 +36,7 @@ import PamguardMVC.PamDataUnit;
 import PamguardMVC.PamObservable;
 import PamguardMVC.PamProcess;
 import PamguardMVC.PamRawDataBlock;
+import PamguardMVC.RawDataCopyingObserver;
 import PamguardMVC.dataOffline.OfflineDataLoadInfo;
 
 /**
@@ -47,7 +48,7 @@ import PamguardMVC.dataOffline.OfflineDataLoadInfo;
  * which is much better at upsampling. 
  */
 @Deprecated
-public class DecimatorProcess extends PamProcess {
+public class DecimatorProcess extends PamProcess implements RawDataCopyingObserver {
 
 	// float sourceSampleRate;
 	// int nChan;
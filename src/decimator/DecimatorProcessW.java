@@ -9,6 +9,8 @@ import Filters.FilterType;
 import PamController.PamControlledUnit;
 import PamController.PamController;
 import PamDetection.RawDataUnit;
+import PamUtils.PamUtils;
+import PamguardMVC.PamConstants;
 import PamguardMVC.PamDataBlock;
 import PamguardMVC.PamDataUnit;
 import PamguardMVC.PamObservable;
@@ -35,6 +37,14 @@ public class DecimatorProcessW extends PamProcess {
 	private double decimateFactor = 1;
 
 	private float sourceSampleRate;
+	
+	/**
+	 * Data units waiting until there is one for every channel, when
+	 * decimating channels in parallel.  
+	 */
+	private RawDataUnit[] pendingUnits = new RawDataUnit[PamConstants.MAX_CHANNELS];
+	
+	private int nPending, pendingChannels;
 
 	public DecimatorProcessW(DecimatorControl decimatorControl) {
 		super(decimatorControl, null);
@@ -56,6 +66,7 @@ public class DecimatorProcessW extends PamProcess {
 
 	@Override
 	public void pamStart() {
+		clearPending();
 		outputDataBlock.reset();
 		if (decimatorWorker != null) {
 			decimatorWorker.reset();
@@ -64,8 +75,9 @@ public class DecimatorProcessW extends PamProcess {
 
 	@Override
 	public void pamStop() {
-		// TODO Auto-generated method stub
-
+		synchronized (this) {
+			processPending();
+		}
 	}
 	@Override
 	public void setSampleRate(float sampleRate, boolean notify) {
@@ -121,6 +133,7 @@ public class DecimatorProcessW extends PamProcess {
 	private synchronized void setupDecimator() {
 		decimatorParams.filterParams = checkFilterParams(decimatorParams.filterParams);
 		decimateFactor = sourceSampleRate / decimatorParams.newSampleRate;
+		clearPending();
 		decimatorWorker = new DecimatorWorker(decimatorParams, outputDataBlock.getChannelMap(), sourceSampleRate, decimatorParams.newSampleRate);
 		if(this.decimatorControl!=null) {
 			this.decimatorControl.decimatorParams = this.decimatorParams;
@@ -153,11 +166,51 @@ public class DecimatorProcessW extends PamProcess {
 		if ((rawDataUnit.getChannelBitmap() & outputDataBlock.getChannelMap()) == 0) {
 			return;
 		}
-		RawDataUnit decData = decimatorWorker.process(rawDataUnit);
-		if (decData != null) {
-			outputDataBlock.addPamData(decData);
+		int outputChannels = outputDataBlock.getChannelMap();
+		if (!decimatorParams.parallelChannels || PamUtils.getNumChannels(outputChannels) < 2) {
+			RawDataUnit decData = decimatorWorker.process(rawDataUnit);
+			if (decData != null) {
+				outputDataBlock.addPamData(decData);
+			}
+			return;
+		}
+		/*
+		 * Hold on to data units until there is one for each channel, then 
+		 * decimate them all at once. 
+		 */
+		if (nPending > 0 && (pendingUnits[0].getStartSample() != rawDataUnit.getStartSample() || 
+				(pendingChannels & rawDataUnit.getChannelBitmap()) != 0)) {
+			processPending();
+		}
+		pendingUnits[nPending++] = rawDataUnit;
+		pendingChannels |= rawDataUnit.getChannelBitmap();
+		if ((pendingChannels & outputChannels) == outputChannels) {
+			processPending();
+		}
+	}
+	
+	/**
+	 * Decimate any data units waiting for other channels. 
+	 */
+	private void processPending() {
+		if (nPending == 0 || decimatorWorker == null) {
+			clearPending();
+			return;
+		}
+		RawDataUnit[] decData = decimatorWorker.process(Arrays.copyOf(pendingUnits, nPending));
+		clearPending();
+		for (int i = 0; i < decData.length; i++) {
+			if (decData[i] != null) {
+				outputDataBlock.addPamData(decData[i]);
+			}
 		}
 	}
+	
+	private void clearPending() {
+		Arrays.fill(pendingUnits, null);
+		nPending = 0;
+		pendingChannels = 0;
+	}
 
 	public PamRawDataBlock getOutputDataBlock() {
 		return outputDataBlock;
@@ -0,0 +1,168 @@
+package decimator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import Filters.FilterBand;
+import Filters.FilterParams;
+import Filters.FilterType;
+import PamDetection.RawDataUnit;
+
+/**
+ * Speed test comparing the standard decimator (6th order Butterworth filter at the
+ * input sample rate, then pick samples) with the polyphase FIR resampler, with channels
+ * decimated one at a time and in parallel.
+ * <p>
+ * Run with the path of a 16 bit multi-channel wav file and an output sample rate as
+ * arguments, or with no arguments to use 10s of 4 channel noise at 500kHz decimated to 48kHz.
+ */
+public class DecimatorSpeed {
+
+	private static final int blockSamples = 50000;
+
+	private static final int nRepeats = 3;
+
+	public static void main(String[] args) {
+		double inputRate = 500000;
+		double outputRate = 48000;
+		double[][] data;
+		if (args.length > 0) {
+			try {
+				AudioInputStream audioStream = AudioSystem.getAudioInputStream(new File(args[0]));
+				inputRate = audioStream.getFormat().getSampleRate();
+				data = readWav(audioStream);
+			} catch (UnsupportedAudioFileException | IOException e) {
+				e.printStackTrace();
+				return;
+			}
+			if (args.length > 1) {
+				outputRate = Double.valueOf(args[1]);
+			}
+		}
+		else {
+			int nChan = 4;
+			int nSamples = (int) (inputRate * 10);
+			data = new double[nChan][nSamples];
+			Random r = new Random(1);
+			for (int c = 0; c < nChan; c++) {
+				for (int i = 0; i < nSamples; i++) {
+					data[c][i] = r.nextGaussian() * 0.1 + 0.5 * Math.sin(2 * Math.PI * 1000 * i / inputRate);
+				}
+			}
+		}
+		int nChan = data.length;
+		ArrayList<RawDataUnit[]> blocks = makeBlocks(data);
+		double seconds = data[0].length / inputRate;
+		System.out.printf("%d channels, %3.1fs of data at %3.1fkHz, decimating to %3.1fkHz in blocks of %d samples\n",
+				nChan, seconds, inputRate/1000., outputRate/1000., blockSamples);
+
+		runTest("Butterworth and pick", DecimatorMethod.FILTER, false, blocks, nChan, inputRate, outputRate);
+		runTest("Butterworth and pick, parallel", DecimatorMethod.FILTER, true, blocks, nChan, inputRate, outputRate);
+		runTest("Polyphase", DecimatorMethod.POLYPHASE, false, blocks, nChan, inputRate, outputRate);
+		runTest("Polyphase, parallel", DecimatorMethod.POLYPHASE, true, blocks, nChan, inputRate, outputRate);
+	}
+
+	private static void runTest(String name, DecimatorMethod method, boolean parallel, ArrayList<RawDataUnit[]> blocks,
+			int nChan, double inputRate, double outputRate) {
+		DecimatorParams params = new DecimatorParams((float) outputRate);
+		params.filterParams = new FilterParams();
+		params.filterParams.filterType = FilterType.BUTTERWORTH;
+		params.filterParams.filterBand = FilterBand.LOWPASS;
+		params.filterParams.filterOrder = 6;
+		params.filterParams.lowPassFreq = (float) (outputRate / 2);
+		params.decimatorMethod = method;
+		int channelMap = (1<<nChan) - 1;
+		long bestTime = Long.MAX_VALUE;
+		long nOut = 0;
+		double sumSq = 0;
+		for (int rep = 0; rep < nRepeats; rep++) {
+			DecimatorWorker worker = new DecimatorWorker(params, channelMap, inputRate, outputRate);
+			nOut = 0;
+			sumSq = 0;
+			long t0 = System.nanoTime();
+			for (RawDataUnit[] block : blocks) {
+				RawDataUnit[] outUnits;
+				if (parallel) {
+					outUnits = worker.process(block);
+				}
+				else {
+					outUnits = new RawDataUnit[block.length];
+					for (int i = 0; i < block.length; i++) {
+						outUnits[i] = worker.process(block[i]);
+					}
+				}
+				for (RawDataUnit outUnit : outUnits) {
+					if (outUnit == null) {
+						continue;
+					}
+					double[] d = outUnit.getRawData();
+					nOut += d.length;
+					for (int i = 0; i < d.length; i++) {
+						sumSq += d[i]*d[i];
+					}
+				}
+			}
+			bestTime = Math.min(bestTime, System.nanoTime() - t0);
+		}
+		System.out.printf("%-32s %8.1fms, %9d output samples, output rms %6.4f\n", name, bestTime / 1.e6, nOut,
+				Math.sqrt(sumSq / Math.max(1, nOut)));
+	}
+
+	/**
+	 * Split the data into raw data units, one array of units per block of data.
+	 */
+	private static ArrayList<RawDataUnit[]> makeBlocks(double[][] data) {
+		ArrayList<RawDataUnit[]> blocks = new ArrayList<>();
+		int nChan = data.length;
+		int nSamples = data[0].length;
+		for (int s = 0; s + blockSamples <= nSamples; s += blockSamples) {
+			RawDataUnit[] block = new RawDataUnit[nChan];
+			for (int c = 0; c < nChan; c++) {
+				double[] d = new double[blockSamples];
+				System.arraycopy(data[c], s, d, 0, blockSamples);
+				block[c] = new RawDataUnit(s, 1<<c, s, blockSamples);
+				block[c].setRawData(d);
+			}
+			blocks.add(block);
+		}
+		return blocks;
+	}
+
+	private static double[][] readWav(AudioInputStream audioStream) throws IOException {
+		AudioFormat format = audioStream.getFormat();
+		int nChan = format.getChannels();
+		if (format.getSampleSizeInBits() != 16) {
+			throw new IOException("Only 16 bit wav files are supported");
+		}
+		boolean bigEndian = format.isBigEndian();
+		int nFrames = (int) audioStream.getFrameLength();
+		byte[] bytes = new byte[nFrames * nChan * 2];
+		int nRead = 0;
+		while (nRead < bytes.length) {
+			int n = audioStream.read(bytes, nRead, bytes.length - nRead);
+			if (n < 0) {
+				break;
+			}
+			nRead += n;
+		}
+		nFrames = nRead / nChan / 2;
+		double[][] data = new double[nChan][nFrames];
+		int ind = 0;
+		for (int i = 0; i < nFrames; i++) {
+			for (int c = 0; c < nChan; c++) {
+				int b1 = bytes[ind++], b2 = bytes[ind++];
+				short val = bigEndian ? (short) ((b1 << 8) | (b2 & 0xFF)) : (short) ((b2 << 8) | (b1 & 0xFF));
+				data[c][i] = val / 32768.;
+			}
+		}
+		audioStream.close();
+		return data;
+	}
+}
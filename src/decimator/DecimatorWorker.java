@@ -1,6 +1,7 @@
 package decimator;
 
 import java.util.Arrays;
+import java.util.stream.IntStream;
 
 import Acquisition.DaqSourceInfo;
 import Filters.Filter;
@@ -21,6 +22,8 @@ import PamUtils.PamUtils;
  * <br> Note that this can both decimate and upsample. If decimating, filtering 
  * takes place before data are copied to output array. If upsampling, filtering takes
  * place AFTER data are copied to the output array. 
+ * <br> If the decimator method is POLYPHASE, a polyphase FIR resampler is used instead 
+ * of the filter and interpolator, so only the output samples are calculated. 
  * @author dg50
  *
  */
@@ -38,6 +41,7 @@ public class DecimatorWorker {
 	private double outputRate;
 	private Interpolator[] interpolators;
 	private DecimatorParams decimatorParams;
+	private PolyphaseResampler[] resamplers;
 //	private DaqSourceInfo[] daqSourceInfos;
 
 	/**
@@ -97,12 +101,21 @@ public class DecimatorWorker {
 		outputData = new double[highestChan+1][];
 		outputStartMillis = new long[highestChan+1];
 		interpolators = new Interpolator[highestChan+1];
+		resamplers = null;
 //		daqSourceInfos = new DaqSourceInfo[highestChan+1];
+		PolyphaseResampler protoResampler = createResampler();
+		if (protoResampler != null) {
+			resamplers = new PolyphaseResampler[highestChan+1];
+		}
 		double fs = Math.max(inputRate, outputRate);
 		for (int i = 0; i <= highestChan; i++) {
 			if ((1<<i & channelMap) == 0) {
 				continue;
 			}
+			if (protoResampler != null) {
+				resamplers[i] = new PolyphaseResampler(protoResampler);
+				continue;
+			}
 			FilterMethod filterMethod = FilterMethod.createFilterMethod(fs, decimatorParams.filterParams);
 			filters[i] = filterMethod.createFilter(i);
 			filters[i].prepareFilter();
@@ -118,6 +131,31 @@ public class DecimatorWorker {
 		totalPutSamples = null;//new long[highestChan+1];
 	}
 	
+	/**
+	 * Make a polyphase resampler if it's been selected in the parameters. 
+	 * @return resampler or null if not selected or the sample rates don't have a 
+	 * simple enough ratio, in which case the normal filter is used.  
+	 */
+	private PolyphaseResampler createResampler() {
+		if (decimatorParams.getDecimatorMethod() != DecimatorMethod.POLYPHASE) {
+			return null;
+		}
+		FilterParams filterParams = decimatorParams.filterParams;
+		double cutOff = 0;
+		double gamma = 3;
+		if (filterParams != null) {
+			cutOff = filterParams.lowPassFreq;
+			gamma = filterParams.chebyGamma;
+		}
+		PolyphaseResampler resampler = PolyphaseResampler.create(inputRate, outputRate, cutOff, 
+				decimatorParams.getPolyphaseLength(), gamma);
+		if (resampler == null) {
+			System.out.printf("Decimator: Unable to make polyphase resampler for %3.1f to %3.1f Hz, using standard filter\n", 
+					inputRate, outputRate);
+		}
+		return resampler;
+	}
+	
 	private Interpolator makeInterpolator(int order) {
 		switch (order) {
 		case 0:
@@ -139,22 +177,16 @@ public class DecimatorWorker {
 	 * @return a new data unit or null
 	 */
 	public RawDataUnit process(RawDataUnit inputData) {
-		if (totalPutSamples == null) {
-			/**
-			 * Have to do this here, since the sample number of the first data unit may be 
-			 * >> 0 if we're skipping the start of a file, so need to apply a scaled
-			 * version of this offset to the output data to get correct sample numbers. 
-			 */
-			long firstSample = (long) (inputData.getStartSample() * outputRate / inputRate);
-			totalPutSamples = new long[putSample.length];
-			Arrays.fill(totalPutSamples, firstSample);
-		}
+		checkSampleCount(inputData);
 		RawDataUnit retUnit = null;
 		int chanMap = inputData.getChannelBitmap();
 		if ((chanMap & channelMap) == 0) {
 			return null;
 		}
 		int chan = PamUtils.getSingleChannel(chanMap);
+		if (resamplers != null && resamplers[chan] != null) {
+			return processPolyphase(inputData, chan);
+		}
 		long nInputSamps = inputData.getSampleDuration();
 		if (inputRate > outputRate) { // decimation
 			if (filteredData[chan] == null || filteredData[chan].length != nInputSamps) {
@@ -224,6 +256,90 @@ public class DecimatorWorker {
 		}
 		return retUnit;
 	}
+	
+	/**
+	 * Process data units from several channels, on multiple threads 
+	 * if there is more than one. Each data unit must be from a different channel. 
+	 * @param inputData input data units, one per channel
+	 * @return output data units, in the same order as the input, with null 
+	 * elements for inputs which didn't complete an output data unit. 
+	 */
+	public RawDataUnit[] process(RawDataUnit[] inputData) {
+		RawDataUnit[] outputData = new RawDataUnit[inputData.length];
+		if (inputData.length == 0) {
+			return outputData;
+		}
+		// set this up before going multi thread. 
+		checkSampleCount(inputData[0]);
+		if (inputData.length == 1) {
+			outputData[0] = process(inputData[0]);
+		}
+		else {
+			// all the state used by process is held separately for each channel.
+			IntStream.range(0, inputData.length).parallel().forEach(i -> outputData[i] = process(inputData[i]));
+		}
+		return outputData;
+	}
+
+	/**
+	 * Set the sample count of the output data. Have to do this when the first data arrive, 
+	 * since the sample number of the first data unit may be 
+	 * >> 0 if we're skipping the start of a file, so need to apply a scaled
+	 * version of this offset to the output data to get correct sample numbers. 
+	 * @param inputData first input data unit
+	 */
+	private void checkSampleCount(RawDataUnit inputData) {
+		if (totalPutSamples == null) {
+			long firstSample = (long) (inputData.getStartSample() * outputRate / inputRate);
+			long[] putSamples = new long[putSample.length];
+			Arrays.fill(putSamples, firstSample);
+			totalPutSamples = putSamples;
+		}
+	}
+	
+	/**
+	 * Run the polyphase resampler on a channel of data, copying the output into 
+	 * output data units of the same length as would be made by the standard filter. 
+	 * @param inputData input data
+	 * @param chan channel number
+	 * @return a new data unit or null
+	 */
+	private RawDataUnit processPolyphase(RawDataUnit inputData, int chan) {
+		PolyphaseResampler resampler = resamplers[chan];
+		double[] rawData = inputData.getRawData();
+		int nResampled = resampler.resample(rawData, rawData.length);
+		double[] resampled = resampler.getOutput();
+		if (outputData[chan] == null) {
+			int nOutSamps = (int) Math.ceil(rawData.length * outputRate / inputRate);
+			outputData[chan] = new double[nOutSamps];
+			outputStartMillis[chan] = inputData.getTimeMilliseconds() + (long) (resampler.getOutputPosition(0) / inputRate * 1000.);
+		}
+		int nOutSamps = outputData[chan].length;
+		RawDataUnit retUnit = null;
+		int nCopied = 0;
+		while (nCopied < nResampled) {
+			int n = Math.min(nResampled - nCopied, nOutSamps - putSample[chan]);
+			System.arraycopy(resampled, nCopied, outputData[chan], putSample[chan], n);
+			putSample[chan] += n;
+			nCopied += n;
+			totalPutSamples[chan] += n;
+			if (putSample[chan] == nOutSamps) {
+				retUnit = new RawDataUnit(outputStartMillis[chan], inputData.getChannelBitmap(), totalPutSamples[chan]-nOutSamps, nOutSamps);
+				retUnit.setRawData(outputData[chan], true);
+				outputData[chan] = new double[nOutSamps];
+				outputStartMillis[chan] = inputData.getTimeMilliseconds() + (long) (resampler.getOutputPosition(nCopied) / inputRate * 1000.);
+				putSample[chan] = 0;
+			}
+		}
+		return retUnit;
+	}
+	
+	/**
+	 * @return true if the polyphase resampler is being used
+	 */
+	public boolean isPolyphase() {
+		return resamplers != null;
+	}
 
 	
 }
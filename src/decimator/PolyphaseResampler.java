@@ -0,0 +1,294 @@
+package decimator;
+
+/**
+ * Polyphase FIR resampler for a single channel of data. Changes the sample rate by
+ * a rational factor L/M (up by L, down by M) using a single windowed sinc low pass filter
+ * designed at L times the input sample rate, but only ever calculates the output
+ * samples which are kept, rather than filtering every input sample and then throwing
+ * most of them away.
+ * <p>
+ * The filter state (the last few input samples) and the position of the next output
+ * sample are kept between calls, so data can be passed in blocks of any size and the
+ * output will be continuous. Input and output buffers are reused between calls.
+ * <p>
+ * Coefficients are shared between copies made with {@link #PolyphaseResampler(PolyphaseResampler)},
+ * so one resampler can be designed and then copied for each channel. Each copy has its own state
+ * and copies can be run on different threads.
+ * <p>
+ * The filter length is set in samples at the lower of the input and output rates, so 
+ * the shape of the filter response relative to the output Nyquist frequency is the 
+ * same for any decimation factor. 
+ * <p>
+ * Output is delayed by half the filter length, i.e. tapsPerPhase / 2 input samples.
+ */
+public class PolyphaseResampler {
+
+	/**
+	 * Largest up sampling factor allowed. Used to limit the size of the filter
+	 * when the input and output rates don't have a simple ratio.
+	 */
+	public static final int MAX_UP_FACTOR = 1024;
+
+	/**
+	 * Default filter length in samples at the lower of the input and output rates.
+	 */
+	public static final int DEFAULT_FILTER_LENGTH = 16;
+
+	private int upFactor, downFactor;
+
+	private int tapsPerPhase;
+
+	/**
+	 * Filter coefficients, arranged so that the coefficients for each phase are together.
+	 */
+	private double[] coefficients;
+
+	/**
+	 * Last tapsPerPhase-1 input samples, followed by the latest input.
+	 */
+	private double[] workBuffer;
+
+	private double[] outputBuffer;
+
+	/**
+	 * Position of the next output sample in units of 1/upFactor input samples, relative
+	 * to the start of the next input block.
+	 */
+	private long nextPosition;
+
+	/**
+	 * Position of the first output sample in the last call to resample.
+	 */
+	private long firstPosition;
+
+	private PolyphaseResampler(int upFactor, int downFactor, int tapsPerPhase, double[] coefficients) {
+		this.upFactor = upFactor;
+		this.downFactor = downFactor;
+		this.tapsPerPhase = tapsPerPhase;
+		this.coefficients = coefficients;
+		reset();
+	}
+
+	/**
+	 * Make a new resampler with the same filter as an existing one, but
+	 * with its own state.
+	 * @param other existing resampler
+	 */
+	public PolyphaseResampler(PolyphaseResampler other) {
+		this(other.upFactor, other.downFactor, other.tapsPerPhase, other.coefficients);
+	}
+
+	/**
+	 * Design a resampler.
+	 * @param inputRate input sample rate
+	 * @param outputRate output sample rate
+	 * @param cutOff filter cut off frequency. This is limited to half the lower of
+	 * the two sample rates.
+	 * @param filterLength filter length in samples at the lower of the input and output sample 
+	 * rates. Longer filters have a sharper cut off.
+	 * @param stopBandGamma stop band attenuation is 20*gamma dB, as for the Chebychev window
+	 * used in other PAMGuard FIR filters.
+	 * @return resampler or null if the input and output rates don't have a rational
+	 * ratio with an up sampling factor of no more than {@link #MAX_UP_FACTOR}
+	 */
+	public static PolyphaseResampler create(double inputRate, double outputRate, double cutOff, int filterLength, double stopBandGamma) {
+		int[] factors = getRateFactors(inputRate, outputRate);
+		if (factors == null) {
+			return null;
+		}
+		int L = factors[0];
+		int M = factors[1];
+		if (filterLength <= 0) {
+			filterLength = DEFAULT_FILTER_LENGTH;
+		}
+		// taps per phase is the filter length in input samples. 
+		int tapsPerPhase = (int) Math.ceil(filterLength * Math.max(1., (double) M / L));
+		if (stopBandGamma <= 0) {
+			stopBandGamma = 3;
+		}
+		double maxCutOff = Math.min(inputRate, outputRate) / 2.;
+		if (cutOff <= 0 || cutOff > maxCutOff) {
+			cutOff = maxCutOff;
+		}
+		int nTaps = L * tapsPerPhase;
+		double[] proto = designFilter(nTaps, cutOff / (inputRate * L), 20. * stopBandGamma);
+		/*
+		 * Gain of L, since after up sampling by putting L-1 zeros between each sample
+		 * only one in L samples has any energy.
+		 */
+		double[] coeffs = new double[nTaps];
+		for (int p = 0; p < L; p++) {
+			for (int k = 0; k < tapsPerPhase; k++) {
+				coeffs[p * tapsPerPhase + k] = proto[p + k * L] * L;
+			}
+		}
+		return new PolyphaseResampler(L, M, tapsPerPhase, coeffs);
+	}
+
+	/**
+	 * Work out the up and down sampling factors for a pair of sample rates.
+	 * @param inputRate input sample rate
+	 * @param outputRate output sample rate
+	 * @return up and down factors, or null if there isn't a simple ratio.
+	 */
+	public static int[] getRateFactors(double inputRate, double outputRate) {
+		if (inputRate <= 0 || outputRate <= 0) {
+			return null;
+		}
+		double ratio = outputRate / inputRate;
+		for (int L = 1; L <= MAX_UP_FACTOR; L++) {
+			double M = L / ratio;
+			long roundM = Math.round(M);
+			if (roundM > 0 && Math.abs(M - roundM) < 1e-6 * M) {
+				int[] factors = {L, (int) roundM};
+				return factors;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Design a Kaiser windowed sinc low pass filter
+	 * @param nTaps number of taps
+	 * @param cutOff cut off as a fraction of the sample rate
+	 * @param attenuation stop band attenuation in dB
+	 * @return filter coefficients
+	 */
+	private static double[] designFilter(int nTaps, double cutOff, double attenuation) {
+		double beta;
+		if (attenuation > 50) {
+			beta = 0.1102 * (attenuation - 8.7);
+		}
+		else if (attenuation > 21) {
+			beta = 0.5842 * Math.pow(attenuation - 21, 0.4) + 0.07886 * (attenuation - 21);
+		}
+		else {
+			beta = 0;
+		}
+		double i0Beta = besselI0(beta);
+		double centre = (nTaps - 1) / 2.;
+		double[] taps = new double[nTaps];
+		for (int i = 0; i < nTaps; i++) {
+			double x = i - centre;
+			double sinc = x == 0 ? 2 * cutOff : Math.sin(2 * Math.PI * cutOff * x) / (Math.PI * x);
+			double r = x / centre;
+			double win = nTaps == 1 ? 1 : besselI0(beta * Math.sqrt(Math.max(0, 1 - r * r))) / i0Beta;
+			taps[i] = sinc * win;
+		}
+		return taps;
+	}
+
+	/**
+	 * Zeroth order modified Bessel function of the first kind.
+	 */
+	private static double besselI0(double x) {
+		double sum = 1, term = 1, halfX = x / 2;
+		for (int k = 1; k < 50; k++) {
+			term *= (halfX / k) * (halfX / k);
+			sum += term;
+			if (term < sum * 1e-12) {
+				break;
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Clear the filter state, e.g. at the start of a run.
+	 */
+	public void reset() {
+		workBuffer = new double[tapsPerPhase - 1];
+		nextPosition = 0;
+		firstPosition = 0;
+	}
+
+	/**
+	 * Resample a block of data. Output goes into a buffer which is reused on the
+	 * next call, so copy it before calling again.
+	 * @param input input data
+	 * @param nInput number of input samples to use
+	 * @return number of output samples.
+	 * @see #getOutput()
+	 */
+	public int resample(double[] input, int nInput) {
+		int nHist = tapsPerPhase - 1;
+		if (workBuffer.length < nHist + nInput) {
+			double[] newWork = new double[nHist + nInput];
+			System.arraycopy(workBuffer, 0, newWork, 0, nHist);
+			workBuffer = newWork;
+		}
+		System.arraycopy(input, 0, workBuffer, nHist, nInput);
+
+		long endPosition = (long) nInput * upFactor;
+		int maxOut = (int) ((endPosition - nextPosition + downFactor - 1) / downFactor) + 1;
+		if (outputBuffer == null || outputBuffer.length < maxOut) {
+			outputBuffer = new double[maxOut];
+		}
+		firstPosition = nextPosition;
+		double[] work = workBuffer;
+		double[] coeffs = coefficients;
+		int K = tapsPerPhase;
+		int nOut = 0;
+		long pos = nextPosition;
+		while (pos < endPosition) {
+			int inInd = (int) (pos / upFactor);
+			int phase = (int) (pos - (long) inInd * upFactor);
+			int c = phase * K;
+			int w = inInd + nHist;
+			double sum = 0;
+			for (int k = 0; k < K; k++) {
+				sum += coeffs[c + k] * work[w - k];
+			}
+			outputBuffer[nOut++] = sum;
+			pos += downFactor;
+		}
+		nextPosition = pos - endPosition;
+		// keep the end of the input for the next call.
+		System.arraycopy(work, nInput, work, 0, nHist);
+		return nOut;
+	}
+
+	/**
+	 * @return output from the last call to resample.
+	 */
+	public double[] getOutput() {
+		return outputBuffer;
+	}
+
+	/**
+	 * Get the position of an output sample from the last call to resample, in
+	 * input samples from the start of the input block.
+	 * @param outputIndex index of output sample
+	 * @return position in input samples (not allowing for the filter delay).
+	 */
+	public double getOutputPosition(int outputIndex) {
+		return (double) (firstPosition + (long) outputIndex * downFactor) / upFactor;
+	}
+
+	/**
+	 * @return the up sampling factor, L
+	 */
+	public int getUpFactor() {
+		return upFactor;
+	}
+
+	/**
+	 * @return the down sampling factor, M
+	 */
+	public int getDownFactor() {
+		return downFactor;
+	}
+
+	/**
+	 * @return the number of filter taps per phase
+	 */
+	public int getTapsPerPhase() {
+		return tapsPerPhase;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Polyphase resampler up %d down %d, %d taps per phase", upFactor, downFactor, tapsPerPhase);
+	}
+
+}
@@ -56,6 +56,12 @@ public class FFTParameters implements Serializable, ManagedParameters, Cloneable
 	
 	public int clickPower = 6;
 	
+	/**
+	 * Window and transform each channel on a separate thread. Output 
+	 * data are still in the same channel / time order. 
+	 */
+	public boolean parallelChannels = false;
+	
 	public SpectrogramNoiseSettings spectrogramNoiseSettings = new SpectrogramNoiseSettings();
 
 	public String getName() {
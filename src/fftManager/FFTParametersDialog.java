@@ -79,6 +79,8 @@ public class FFTParametersDialog extends PamDialog implements FFTLengthModeled {
 	
 	private JCheckBox clickRemoval;
 	
+	private JCheckBox parallelChannels;
+	
 	private JTextField clickThreshold, clickPower;
 	
 	private SpectrogramNoiseDialogPanel spectrogramNoiseDialogPanel;
@@ -174,6 +176,11 @@ public class FFTParametersDialog extends PamDialog implements FFTLengthModeled {
 		con.gridx = 1;
 		con.gridy++;
 		addComponent(f, resolutionPanel.getPanel(), con);
+		con.gridx = 0;
+		con.gridy++;
+		con.gridwidth = 3;
+		addComponent(f, parallelChannels = new JCheckBox("Calculate channels in parallel"), con);
+		parallelChannels.setToolTipText("Use several processor cores to calculate FFT data for different channels at the same time");
 		
 		sourcePanel.addSelectionListener(fftChangeListener);
 		
@@ -280,6 +287,8 @@ public class FFTParametersDialog extends PamDialog implements FFTLengthModeled {
 		}
 		windowFunction.setSelectedIndex(fftParameters.windowFunction);
 		
+		parallelChannels.setSelected(fftParameters.parallelChannels);
+		
 		clickRemoval.setSelected(fftParameters.clickRemoval);
 		if (fftParameters.clickThreshold == 0) {
 			fftParameters.clickThreshold = ClickRemoval.defaultClickThreshold;
@@ -304,6 +313,8 @@ public class FFTParametersDialog extends PamDialog implements FFTLengthModeled {
 			fftParameters.fftHop = Integer.valueOf(fftHopData.getText());
 			fftParameters.channelMap = sourcePanel.getChannelList();
 			
+			fftParameters.parallelChannels = parallelChannels.isSelected();
+			
 			fftParameters.clickRemoval = clickRemoval.isSelected();
 			if (fftParameters.clickRemoval) {
 				fftParameters.clickThreshold = Double.valueOf(clickThreshold.getText());
@@ -0,0 +1,221 @@
+package fftManager;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import PamUtils.complex.ComplexArray;
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
+
+/**
+ * FFT service which can be used from any number of threads at the same time
+ * without any locking.
+ * <p>
+ * FFT plans (the twiddle factor tables in DoubleFFT_1D) are cached by length, so
+ * a plan is only ever made once for each FFT length rather than every time a
+ * FastFFT object is asked for a different length. For power of 2 lengths the
+ * plans are only read once they have been made, so a single plan is shared by all
+ * threads. For other lengths JTransforms keeps some working data in the plan, so
+ * those plans are cached per thread. Working arrays needed to unpack data are also
+ * held per thread.
+ * <p>
+ * As well as the standard transforms which return new arrays, there are versions which
+ * transform data in place or write into caller supplied ComplexArray's, and batch
+ * transforms for many frames of the same length, e.g. all channels of one slice of
+ * FFT data.
+ *
+ * @see FastFFT
+ */
+public class FFTService {
+
+	private static final FFTService singleInstance = new FFTService();
+
+	/**
+	 * Minimum total number of points (frames * FFT length) in a batch before
+	 * the frames are transformed in parallel.
+	 */
+	public static final int MIN_PARALLEL_POINTS = 1<<16;
+
+	private final ConcurrentHashMap<Integer, DoubleFFT_1D> sharedPlans = new ConcurrentHashMap<>();
+
+	private final ThreadLocal<HashMap<Integer, DoubleFFT_1D>> threadPlans = ThreadLocal.withInitial(HashMap::new);
+
+	private final ThreadLocal<double[]> scratch = new ThreadLocal<>();
+
+	private FFTService() {
+	}
+
+	/**
+	 * @return the single FFT service
+	 */
+	public static FFTService getInstance() {
+		return singleInstance;
+	}
+
+	/**
+	 * Get an FFT plan for the given length. The plan should only be used
+	 * by the calling thread, though for power of 2 lengths the same plan will
+	 * be returned to all threads.
+	 * @param n FFT length
+	 * @return FFT plan
+	 */
+	public DoubleFFT_1D getPlan(int n) {
+		if (n > 0 && (n & (n-1)) == 0) {
+			return sharedPlans.computeIfAbsent(n, DoubleFFT_1D::new);
+		}
+		return threadPlans.get().computeIfAbsent(n, DoubleFFT_1D::new);
+	}
+
+	/**
+	 * Get a per thread working array of the given length. The content
+	 * is undefined and the array will be reused by the next call from the same thread,
+	 * so it must not be kept.
+	 * @param n array length
+	 * @return working array
+	 */
+	public double[] getScratch(int n) {
+		double[] s = scratch.get();
+		if (s == null || s.length != n) {
+			s = new double[n];
+			scratch.set(s);
+		}
+		return s;
+	}
+
+	/**
+	 * FFT of real data. Same as FastFFT.rfft(x, n), returning the first half
+	 * of the FFT in a new ComplexArray.
+	 * @param x waveform (will be padded or truncated to length n)
+	 * @param n length of FFT
+	 * @return Complex spectrum
+	 */
+	public ComplexArray rfft(double[] x, int n) {
+		return rfft(x, n, null);
+	}
+
+	/**
+	 * FFT of real data writing the output into a caller supplied ComplexArray.
+	 * The output array will be used if it holds n/2 complex values, otherwise
+	 * a new array will be created.
+	 * @param x waveform (will be padded or truncated to length n and is not changed)
+	 * @param n length of FFT
+	 * @param out array for output data (can be null)
+	 * @return Complex spectrum, which will be out if out was the right size.
+	 */
+	public ComplexArray rfft(double[] x, int n, ComplexArray out) {
+		double[] data;
+		if (out != null && out.getData() != null && out.getData().length == n) {
+			data = out.getData();
+		}
+		else {
+			data = new double[n];
+			if (out == null) {
+				out = new ComplexArray(data);
+			}
+			else {
+				out.setData(data);
+			}
+		}
+		int nCopy = Math.min(n, x.length);
+		System.arraycopy(x, 0, data, 0, nCopy);
+		for (int i = nCopy; i < n; i++) {
+			data[i] = 0;
+		}
+		getPlan(n).realForward(data);
+		return out;
+	}
+
+	/**
+	 * In place FFT of real data. On exit the array holds the interleaved real and imaginary
+	 * parts of the first half of the spectrum, in the same format used by ComplexArray,
+	 * so can be wrapped into a ComplexArray without copying.
+	 * @param data real data, the length of which is the FFT length.
+	 * @return ComplexArray wrapping the transformed data.
+	 */
+	public ComplexArray rfftInPlace(double[] data) {
+		getPlan(data.length).realForward(data);
+		return new ComplexArray(data);
+	}
+
+	/**
+	 * Batch FFT of many frames of real data of the same length, e.g. all the channels
+	 * of one slice of an FFT data block. Large batches are transformed in parallel.
+	 * @param x frames of waveform data (each will be padded or truncated to length n)
+	 * @param n FFT length
+	 * @param out array of output arrays (can be null, or contain nulls)
+	 * @return Complex spectra for each frame.
+	 */
+	public ComplexArray[] rfft(double[][] x, int n, ComplexArray[] out) {
+		if (out == null || out.length != x.length) {
+			out = new ComplexArray[x.length];
+		}
+		ComplexArray[] output = out;
+		IntStream frames = IntStream.range(0, x.length);
+		if (x.length > 1 && x.length * n >= MIN_PARALLEL_POINTS) {
+			frames = frames.parallel();
+		}
+		frames.forEach(i -> output[i] = rfft(x[i], n, output[i]));
+		return output;
+	}
+
+	/**
+	 * Batch in place FFT of many frames of real data of the same length.
+	 * Large batches are transformed in parallel.
+	 * @param data frames of real data, each of which will be transformed in place.
+	 * @return Complex spectra for each frame, wrapping the input arrays.
+	 */
+	public ComplexArray[] rfftInPlace(double[][] data) {
+		ComplexArray[] out = new ComplexArray[data.length];
+		int n = data.length > 0 ? data[0].length : 0;
+		IntStream frames = IntStream.range(0, data.length);
+		if (data.length > 1 && data.length * n >= MIN_PARALLEL_POINTS) {
+			frames = frames.parallel();
+		}
+		frames.forEach(i -> out[i] = rfftInPlace(data[i]));
+		return out;
+	}
+
+	/**
+	 * In place complex FFT of complex data.
+	 * @param x Complex data array.
+	 */
+	public void fft(ComplexArray x) {
+		getPlan(x.length()).complexForward(x.getData());
+	}
+
+	/**
+	 * In place inverse FFT of complex data.
+	 * @param x ComplexArray - the input data
+	 * @param n the FFT length
+	 * @param scale - true for scaling to be performed
+	 */
+	public void ifft(ComplexArray x, int n, boolean scale) {
+		double[] data = x.getData();
+		if (data.length != 2*n) {
+			data = Arrays.copyOf(data, 2*n);
+			x.setData(data);
+		}
+		getPlan(n).complexInverse(data, scale);
+	}
+
+	/**
+	 * Inverse transform of what was real data, assuming the second half of the
+	 * spectrum is the complex conjugate of the first. See FastFFT.realInverse.
+	 * @param x Complex input data, which originally came from real.
+	 * @param out array for output data. Used if it's the same length as the
+	 * double array within x, otherwise a new array is created.
+	 * @return real data array 2x the length of the complex input.
+	 */
+	public double[] realInverse(ComplexArray x, double[] out) {
+		double[] data = x.getData();
+		int n = data.length;
+		if (out == null || out.length != n) {
+			out = new double[n];
+		}
+		System.arraycopy(data, 0, out, 0, n);
+		getPlan(n).realInverse(out, true);
+		return out;
+	}
+
+}
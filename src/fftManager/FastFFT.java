@@ -3,7 +3,6 @@ package fftManager;
 import java.util.Arrays;
 
 import PamUtils.complex.ComplexArray;
-import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
 import edu.emory.mathcs.jtransforms.fft.DoubleFFT_2D;
 
 /**
@@ -17,21 +16,16 @@ import edu.emory.mathcs.jtransforms.fft.DoubleFFT_2D;
  */
 public class FastFFT  {
 	
-	private DoubleFFT_1D doubleFFT_1D;
-	
-	private DoubleFFT_2D doubleFFT_2D;
-	
-	private int transformSize = 0;
+	/**
+	 * Plans and working arrays come from the FFT service, so a FastFFT object
+	 * holds no state of it's own and can be used by several threads at once. 
+	 */
+	private FFTService fftService = FFTService.getInstance();
 	
 	public FastFFT() {
 		
 	}
 
-	/**
-	 * Dummy data for input to the doubleFFT_1D function
-	 */
-	private double[] dummyX;
-	
 	/**
 	 * Fast FFT function for real data. 
 	 * @param x real data array
@@ -39,25 +33,21 @@ public class FastFFT  {
 	 * @param m log2 of the FFT length (sorry !)
 	 * @return Complex FFT data. 
 	 */
-	public synchronized Complex[] rfft(double[] x, Complex[] y, int m) {
+	public Complex[] rfft(double[] x, Complex[] y, int m) {
 		int n = 1<<m;
 		/*
 		 * Copy the double array since it's going to be transformed 
 		 * and we won't want to mess with x.
 		 */
-		dummyX = Arrays.copyOf(x, n);
+		double[] dummyX = fftService.getScratch(n);
+		int nCopy = Math.min(n, x.length);
+		System.arraycopy(x, 0, dummyX, 0, nCopy);
+		Arrays.fill(dummyX, nCopy, n, 0.);
 	
-		/*
-		 * Check the transform has been created with the right fft length
-		 */
-		if (doubleFFT_1D == null || transformSize != n) {
-			doubleFFT_1D = new DoubleFFT_1D(transformSize = n);
-		}
-		
 		/*
 		 * Run the FFT
 		 */
-		doubleFFT_1D.realForward(dummyX);
+		fftService.getPlan(n).realForward(dummyX);
 		
 		/*
 		 * Now copy the interleaved data out of the double array back into the 
@@ -75,24 +65,17 @@ public class FastFFT  {
 	 * @param n length of FFT
 	 * @return Complex spectrum
 	 */
-	public synchronized ComplexArray rfft(double[] x, int n) {
+	public ComplexArray rfft(double[] x, int n) {
 		/*
 		 * Copy the double array since it's going to be transformed 
 		 * and we won't want to mess with x.
 		 */
 		double[] y = Arrays.copyOf(x, n);
 
-		/*
-		 * Check the transform has been created with the right fft length
-		 */
-		if (doubleFFT_1D == null || transformSize != n) {
-			doubleFFT_1D = new DoubleFFT_1D(transformSize = n);
-		}
-		
 		/*
 		 * Run the FFT
 		 */
-		doubleFFT_1D.realForward(y);
+		fftService.getPlan(n).realForward(y);
 		
 		/*
 		 * Now return the data as a complex array object. 
@@ -101,7 +84,7 @@ public class FastFFT  {
 	}
 	
 	
-	public synchronized ComplexArray rfftFull(double[] x, int n) {
+	public ComplexArray rfftFull(double[] x, int n) {
 		/*
 		 * Copy the double array since it's going to be transformed 
 		 * and we won't want to mess with x.
@@ -109,18 +92,10 @@ public class FastFFT  {
 		double[] y = new double[2*n];
 		 System.arraycopy(x, 0, y, 0, x.length);
 
-		/*
-		 * Check the transform has been created with the right fft length
-		 */
-		if (doubleFFT_1D == null || transformSize != n) {
-			transformSize = n;
-			doubleFFT_1D = new DoubleFFT_1D(n);
-		}
-		
 		/*
 		 * Run the FFT
 		 */
-		doubleFFT_1D.realForwardFull(y);
+		fftService.getPlan(n).realForwardFull(y);
 		
 		/*
 		 * Now return the data as a complex array object. 
@@ -133,13 +108,10 @@ public class FastFFT  {
 	 * In place fft of complex data. 
 	 * @param x complex array
 	 */
-	public synchronized void fft(Complex[] x) {
-		double[] d = packComplexToDouble(x, dummyX);
+	public void fft(Complex[] x) {
+		double[] d = packComplexToDouble(x, fftService.getScratch(2*x.length));
 		int n = x.length;
-		if (doubleFFT_1D == null || transformSize != n) {
-			doubleFFT_1D = new DoubleFFT_1D(transformSize = n);
-		}
-		doubleFFT_1D.complexForward(d);
+		fftService.getPlan(n).complexForward(d);
 		packDoubleToComplex(d, x);
 	}
 	
@@ -147,12 +119,9 @@ public class FastFFT  {
 	 * In place complex fft of complex data. 
 	 * @param x Complex data array. 
 	 */
-	public synchronized void fft(ComplexArray x) {
+	public void fft(ComplexArray x) {
 		int n = x.length();
-		if (doubleFFT_1D == null || transformSize != n) {
-			doubleFFT_1D = new DoubleFFT_1D(transformSize = n);
-		}
-		doubleFFT_1D.complexForward(x.getData());
+		fftService.getPlan(n).complexForward(x.getData());
 	}
 	
 	/**
@@ -161,10 +130,10 @@ public class FastFFT  {
 	 * JTransofrms library. 
 	 * @param x
 	 */
-	public synchronized void fft(Complex[][] x) {
+	public void fft(Complex[][] x) {
 		int rows = x.length;
 		int cols = x[0].length;
-		doubleFFT_2D = new DoubleFFT_2D(rows, cols);
+		DoubleFFT_2D doubleFFT_2D = new DoubleFFT_2D(rows, cols);
 		double[][] d = packComplexToDouble(x);
 		doubleFFT_2D.complexForward(d);
 		x = packDoubleToComplex(d, x);
@@ -176,20 +145,14 @@ public class FastFFT  {
 	 * @param x Complex Data
 	 * @param m log2 of the FFT length (sorry !)
 	 */
-	public synchronized void ifft(Complex[] x, int m) {
+	public void ifft(Complex[] x, int m) {
 		int n = 1<<m;
 		Complex[] inData = x; 
 		/*
 		 * Pack the complex data into a double array
 		 */
-		double[] d = packComplexToDouble(x, dummyX);
-		/*
-		 * Check the transform has been created with the right fft length
-		 */
-		if (doubleFFT_1D == null || transformSize != n) {
-			doubleFFT_1D = new DoubleFFT_1D(transformSize = n);
-		}
-		doubleFFT_1D.complexInverse(d, false);
+		double[] d = packComplexToDouble(x, fftService.getScratch(2*x.length));
+		fftService.getPlan(n).complexInverse(d, false);
 		/*
 		 * Unpack the double data back into a complex array. 
 		 */
@@ -206,7 +169,7 @@ public class FastFFT  {
 	 * @param x ComplexArray - the input data. 
 	 * @param n the FFT length
 	 */
-	public synchronized void ifft(ComplexArray x, int n) {
+	public void ifft(ComplexArray x, int n) {
 		 ifft( x,  n, false);  
 	}
 	
@@ -220,17 +183,11 @@ public class FastFFT  {
 	 * @return real data array 2x the length of the Complex input (i.e. same length as 
 	 * double array within complex input). 
 	 */
-	public synchronized double[] realInverse(ComplexArray x) {
+	public double[] realInverse(ComplexArray x) {
 		double[] data = x.getData().clone();
 		int n = data.length; // i.e. 2* the number of complex numbers. 
-		/*
-		 * Check the transform has been created with the right fft length
-		 */
-		if (doubleFFT_1D == null || transformSize != n) {
-			doubleFFT_1D = new DoubleFFT_1D(transformSize = n);
-		}
 		
-		doubleFFT_1D.realInverse(data, true);
+		fftService.getPlan(n).realInverse(data, true);
 		return data;
 	}
 	
@@ -241,19 +198,13 @@ public class FastFFT  {
 	 * @param scale - true for scaling to be performed
 	 * @param n the FFT length
 	 */
-	public synchronized void ifft(ComplexArray x, int n, boolean scale ) {
+	public void ifft(ComplexArray x, int n, boolean scale ) {
 		double[] data = x.getData();
 		if (data.length != 2*n) {
 			data = Arrays.copyOf(data, 2*n);
 		}
-		/*
-		 * Check the transform has been created with the right fft length
-		 */
-		if (doubleFFT_1D == null || transformSize != n) {
-			doubleFFT_1D = new DoubleFFT_1D(transformSize = n);
-		}
 		
-		doubleFFT_1D.complexInverse(data, scale);
+		fftService.getPlan(n).complexInverse(data, scale);
 		
 		x.setData(data);
 	}
@@ -268,7 +219,7 @@ public class FastFFT  {
 	 * @return The next highest 2^ of the input, unless input is itself a binary
 	 *         exponential.
 	 */
-	public synchronized static int nextBinaryExp(int sourceNumber) {
+	public static int nextBinaryExp(int sourceNumber) {
 		int power = 0;
 
 		for (int i = 0; i < 31; i++) {
@@ -290,7 +241,7 @@ public class FastFFT  {
 	 * @return The next highest 2^ of the input, unless input is itself a binary
 	 *         exponential.
 	 */
-	public synchronized static int nextBinaryExp(int startPower, int sourceNumber) {
+	public static int nextBinaryExp(int startPower, int sourceNumber) {
 		int power = startPower;
 
 		for (int i = startPower; i < 31; i++) {
@@ -306,7 +257,7 @@ public class FastFFT  {
 	 * @param FFTlength
 	 * @return log2 of FFTlength, -1 if not natural power of 2
 	 */
-	public synchronized static int log2(int num) {
+	public static int log2(int num) {
 		// return -1 if it's not a natural power of 2
 		for (int i = 0; i < 32; i++) {
 			if (1<<i == num) return i;
@@ -23,6 +23,9 @@ package fftManager;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 import PamController.PamController;
@@ -36,6 +39,7 @@ import PamguardMVC.PamDataUnit;
 import PamguardMVC.PamObservable;
 import PamguardMVC.PamProcess;
 import PamguardMVC.PamRawDataBlock;
+import PamguardMVC.RawDataCopyingObserver;
 import Spectrogram.WindowFunction;
 
 /**
@@ -56,7 +60,7 @@ import Spectrogram.WindowFunction;
  * PamDataBlock of type PamFFTDataBlock
  * 
  */
-public class PamFFTProcess extends PamProcess {
+public class PamFFTProcess extends PamProcess implements RawDataCopyingObserver {
 	
 	private int logFftLength;
 
@@ -71,15 +75,16 @@ public class PamFFTProcess extends PamProcess {
 
 	private double[][] windowedData = new double[PamConstants.MAX_CHANNELS][];
 	
-	private double[] dataToFFT;
+	/**
+	 * Per channel arrays for data after click removal. 
+	 */
+	private double[][] clickRemovedData = new double[PamConstants.MAX_CHANNELS][];
 
 //	private ComplexArray fftData;
 
-	private double[] fftRealBlock;
-
 	private PamNotFFTControl fftControl;
 		
-	private ClickRemoval clickRemoval = new ClickRemoval();
+	private ClickRemoval[] clickRemoval = new ClickRemoval[PamConstants.MAX_CHANNELS];
 	
 	private int[] rawBlocks = new int[PamConstants.MAX_CHANNELS];
 	
@@ -94,7 +99,13 @@ public class PamFFTProcess extends PamProcess {
 	
 	private long[] lastChannelMillis = new long[PamConstants.MAX_CHANNELS];
 	
-	private FastFFT fastFFT = new FastFFT();
+	private FFTService fftService = FFTService.getInstance();
+	
+	/**
+	 * Outstanding FFT tasks for each channel when running in parallel mode. 
+	 */
+	@SuppressWarnings("unchecked")
+	private CompletableFuture<Void>[] channelTasks = new CompletableFuture[PamConstants.MAX_CHANNELS];
 	
 	private Vector<ProcessAnnotation> fftAnnotations;
 
@@ -144,6 +155,7 @@ public class PamFFTProcess extends PamProcess {
 //		System.out.println("In call to setupFFT in " + getProcessName());
 		// need to find the existing source data block and remove from observing it.
 		// then find the new one and subscribe to that instead.
+		waitForChannelTasks(0xFFFFFFFF);
 		channelCounts = new int[PamConstants.MAX_CHANNELS];
 		// since it's used so much, make a local reference
 
@@ -238,7 +250,6 @@ public class PamFFTProcess extends PamProcess {
 		double windowGain = WindowFunction.getWindowGain(windowFunction);
 		outputData.setWindowGain(windowGain);
 
-		fftRealBlock = new double[fftParameters.fftLength];
 		//		
 		// and for each channel, make a double array
 		// and set the pointer to zero
@@ -291,7 +302,6 @@ public class PamFFTProcess extends PamProcess {
 	 */
 	@Override
 	public void newData(PamObservable obs, PamDataUnit pamRawData) {
-		FFTDataUnit pu;
 /*
  *
  * 		int i=0;
@@ -310,7 +320,6 @@ public class PamFFTProcess extends PamProcess {
 		if ((rawDataUnit.getChannelBitmap() & getChannelMap()) == 0){
 			return;
 		}
-		int copyFrom;
 		/*
 		 * Now make blocks of overlapping FFT data and parse them to the output
 		 * data block Raw data blocks should be for a single channel
@@ -320,6 +329,77 @@ public class PamFFTProcess extends PamProcess {
 			 + rawDataUnit.getChannelBitmap());
 		}
 
+		/*
+		 * In parallel mode, channels other than the highest are transformed on the 
+		 * fork-join pool while the next channels are arriving. When the highest channel
+		 * arrives, it's transformed in this thread and then all the others are waited 
+		 * for, so the temp stores are complete before they are emptied below in exactly 
+		 * the same channel / time order as in serial mode.  
+		 */
+		int channelMap = getChannelMap();
+		int highestChannel = PamUtils.getHighestChannel(channelMap);
+		if (fftControl.getFFTParameters().parallelChannels && Integer.bitCount(channelMap) > 1) {
+			if (iChan != highestChannel) {
+				queueChannelData(rawDataUnit, iChan);
+				return;
+			}
+			waitForChannelTasks(1<<iChan);
+			fftChannelData(rawDataUnit, iChan);
+			waitForChannelTasks(channelMap);
+		}
+		else {
+			fftChannelData(rawDataUnit, iChan);
+		}
+
+		/**
+		 * Make a local copy of the array
+		 */
+		TempOutputStore[] oldStores = tempStores;
+		
+		if (iChan == highestChannel) {
+			// time to empty the stores - assume they all have the same amount of data. The
+			// channel map is reconciled with the source channels in setupFFT, so its highest
+			// channel is guaranteed to be present and the output is always triggered.
+			int[] chanList = PamUtils.getChannelArray(fftControl.getFFTParameters().channelMap);
+			try {
+				int n = oldStores[iChan].getN();
+				for (int iF = 0; iF < n; iF++) {
+					for (int iC = 0; iC < chanList.length; iC++) {
+						//					pu = tempStores[chanList[iC]].get(iF);
+						try {
+							outputData.addPamData(oldStores[chanList[iC]].get(iF));
+						}
+						catch (ArrayIndexOutOfBoundsException e) {
+							//						e.printStackTrace();
+//							System.err.printf("%s.newData: %s Store %s (was %s) iC: %d of %d iF: %d of %d\n", 
+//									this.getPamControlledUnit().getUnitName(), e.getMessage(), 
+//									oldStores[chanList[iC]], oldStores[chanList[iC]],
+//									iC, chanList.length, iF, n);
+						}
+						//					outputData.addPamData(null);
+					}
+				}
+				for (int iC = 0; iC < chanList.length; iC++) {
+					oldStores[chanList[iC]].clearStore();
+				}
+			}
+			catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Make FFT data from a block of raw data for a single channel, putting
+	 * the new FFT data units into the temporary output store for that channel. 
+	 * Only touches data for that one channel, so different channels can 
+	 * be processed on different threads at the same time. 
+	 * @param rawDataUnit raw data unit
+	 * @param iChan channel number
+	 */
+	private void fftChannelData(RawDataUnit rawDataUnit, int iChan) {
+		FFTDataUnit pu;
+		int copyFrom;
 		double rawData[] = rawDataUnit.getRawData();
 		int dataPointer = channelPointer[iChan];
 
@@ -332,12 +412,12 @@ public class PamFFTProcess extends PamProcess {
 		 */
 		double hopMillis = fftParameters.fftHop / getSampleRate() * 1000.; 
 		double fftMillis = fftParameters.fftLength / getSampleRate() * 1000.; 
-		long millisForward = pamRawData.getTimeMilliseconds() - lastChannelMillis[iChan];
+		long millisForward = rawDataUnit.getTimeMilliseconds() - lastChannelMillis[iChan];
 		long maxForward = (long) ((hopMillis + fftMillis) * 2)+1;
 		
 		if (millisForward < 0 || millisForward > maxForward) { // rest fill counter to start new bin. 
 			dataPointer = 0;
-			lastChannelMillis[iChan] = pamRawData.getTimeMilliseconds();
+			lastChannelMillis[iChan] = rawDataUnit.getTimeMilliseconds();
 		}
 
 		/*
@@ -361,11 +441,15 @@ public class PamFFTProcess extends PamProcess {
 				 * Before doing anything else, run the click removal
 				 * 
 				 */
+				double[] dataToFFT;
 				if (fftParameters.clickRemoval) {
 //					clickRemoval.removeClickInPlace(windowedData[iChan], 
 //							fftParameters.clickThreshold, fftParameters.clickPower);
-					dataToFFT = clickRemoval.removeClicks(windowedData[iChan], dataToFFT,
-							fftParameters.clickThreshold, fftParameters.clickPower);
+					if (clickRemoval[iChan] == null) {
+						clickRemoval[iChan] = new ClickRemoval();
+					}
+					dataToFFT = clickRemovedData[iChan] = clickRemoval[iChan].removeClicks(windowedData[iChan], 
+							clickRemovedData[iChan], fftParameters.clickThreshold, fftParameters.clickPower);
 				}
 				else {
 					dataToFFT = windowedData[iChan];
@@ -373,10 +457,12 @@ public class PamFFTProcess extends PamProcess {
 				
 				/*
 				 * we have a complete block, so make the FFT and send it off to
-				 * the output data block. The fftOutData was created by the FFT
-				 * routine, so we can pass it off to the data manager without
+				 * the output data block. The windowed data go into a new array
+				 * which is transformed in place and becomes the data of the FFT
+				 * unit, so we can pass it off to the data manager without
 				 * risk of it being overwritten
 				 */
+				double[] fftRealBlock = new double[fftParameters.fftLength];
 				for (int w = 0; w < fftParameters.fftLength; w++) {
 					fftRealBlock[w] = dataToFFT[w] * windowFunction[w];
 				}
@@ -398,7 +484,7 @@ public class PamFFTProcess extends PamProcess {
 //				pu = new FFTDataUnit(absSamplesToMilliseconds(startSample), 
 //						rawDataUnit.getChannelBitmap(), startSample, fftParameters.fftLength, 
 //						null, channelCounts[iChan]);
-				lastChannelMillis[iChan] = pamRawData.getTimeMilliseconds() + 
+				lastChannelMillis[iChan] = rawDataUnit.getTimeMilliseconds() + 
 					relSamplesToMilliseconds(i-fftParameters.fftLength);
 				pu = new FFTDataUnit(lastChannelMillis[iChan], 
 						rawDataUnit.getChannelBitmap(), startSample, fftParameters.fftLength, 
@@ -416,7 +502,7 @@ public class PamFFTProcess extends PamProcess {
 				 * always contain a null data reference.
 				 */
 //				Complex[] fftOutData = outputData.getComplexArray(fftParameters.fftLength/2);
-				ComplexArray fftOutData =  fastFFT.rfft(fftRealBlock, fftParameters.fftLength);
+				ComplexArray fftOutData =  fftService.rfftInPlace(fftRealBlock);
 				
 				// set the correct reference in the data block
 				pu.setFftData(fftOutData);
@@ -449,47 +535,55 @@ public class PamFFTProcess extends PamProcess {
 				}
 			}
 		}
-		/**
-		 * Make a local copy of the array
+		/*
+		 * finally store the pointer position in the ArrayList for that channel
 		 */
-		TempOutputStore[] oldStores = tempStores;
-		
-		if (iChan == PamUtils.getHighestChannel(fftControl.getFFTParameters().channelMap)) {
-			// time to empty the stores - assume they all have the same amount of data. The
-			// channel map is reconciled with the source channels in setupFFT, so its highest
-			// channel is guaranteed to be present and the output is always triggered.
-			int[] chanList = PamUtils.getChannelArray(fftControl.getFFTParameters().channelMap);
+		channelPointer[iChan] = dataPointer;
+	}
+
+	/**
+	 * Queue a block of raw data to be transformed on the fork-join pool. Tasks for 
+	 * each channel are chained so that blocks for a single channel are always
+	 * processed in order. 
+	 * @param rawDataUnit raw data unit
+	 * @param iChan channel number
+	 */
+	private void queueChannelData(RawDataUnit rawDataUnit, int iChan) {
+		rawDataUnit.holdRawData();
+		Runnable task = () -> {
 			try {
-				int n = oldStores[iChan].getN();
-				for (int iF = 0; iF < n; iF++) {
-					for (int iC = 0; iC < chanList.length; iC++) {
-						//					pu = tempStores[chanList[iC]].get(iF);
-						try {
-							outputData.addPamData(oldStores[chanList[iC]].get(iF));
-						}
-						catch (ArrayIndexOutOfBoundsException e) {
-							//						e.printStackTrace();
-//							System.err.printf("%s.newData: %s Store %s (was %s) iC: %d of %d iF: %d of %d\n", 
-//									this.getPamControlledUnit().getUnitName(), e.getMessage(), 
-//									oldStores[chanList[iC]], oldStores[chanList[iC]],
-//									iC, chanList.length, iF, n);
-						}
-						//					outputData.addPamData(null);
-					}
-				}
-				for (int iC = 0; iC < chanList.length; iC++) {
-					oldStores[chanList[iC]].clearStore();
-				}
+				fftChannelData(rawDataUnit, iChan);
 			}
-			catch (Exception e) {
-				e.printStackTrace();
+			finally {
+				rawDataUnit.holdDone();
 			}
+		};
+		CompletableFuture<Void> previous = channelTasks[iChan];
+		if (previous == null) {
+			channelTasks[iChan] = CompletableFuture.runAsync(task, ForkJoinPool.commonPool());
 		}
-		/*
-		 * finally store the pointer position in the ArrayList for that channel
-		 */
-		channelPointer[iChan] = dataPointer;
+		else {
+			channelTasks[iChan] = previous.thenRunAsync(task, ForkJoinPool.commonPool());
+		}
+	}
 
+	/**
+	 * Wait for queued FFT tasks to complete. 
+	 * @param channelMap channels to wait for
+	 */
+	private void waitForChannelTasks(int channelMap) {
+		for (int i = 0; i < channelTasks.length; i++) {
+			if ((channelMap & 1<<i) == 0 || channelTasks[i] == null) {
+				continue;
+			}
+			try {
+				channelTasks[i].join();
+			}
+			catch (CompletionException e) {
+				e.getCause().printStackTrace();
+			}
+			channelTasks[i] = null;
+		}
 	}
 
 	@Override
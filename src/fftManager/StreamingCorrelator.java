@@ -0,0 +1,213 @@
+package fftManager;
+
+import java.util.Arrays;
+
+/**
+ * Overlap-save cross correlation of a continuous stream of data against one or
+ * more fixed kernels (templates).
+ * <p>
+ * Kernels are transformed once when the correlator is made. Incoming data are
+ * collected into blocks of the FFT length. Each block gets one forward FFT, and then
+ * one multiply and inverse FFT per kernel, so many kernels can be run against the
+ * same data for little more than the cost of the inverse transforms. Successive
+ * blocks overlap by the length of the longest kernel, so the output is a continuous
+ * correlation function with none of the wrap around from circular correlation.
+ * <p>
+ * A correlator can be shared by any number of channels, each of which needs its own
+ * Channel object to hold the data buffer. All working arrays are made when the Channel
+ * is created and are reused for every block, so nothing is allocated while running.
+ * A Channel must only be used from one thread at a time.
+ * <p>
+ * For each kernel k of length L, output sample m of a block is
+ * sum(x[m+j]*k[j]) for j = 0 to L-1, where x[0] is the first sample in the block.
+ */
+public class StreamingCorrelator {
+
+	private int fftLength;
+
+	private int maxKernelLength;
+
+	private int usefulSamples;
+
+	private int nKernels;
+
+	/**
+	 * Kernel spectra, in the packed format used by the JTransforms real FFT.
+	 */
+	private double[][] kernelSpectra;
+
+	/**
+	 * Receives blocks of correlation data from a Channel.
+	 */
+	public interface CorrelationListener {
+
+		/**
+		 * Called each time a block of correlation data is ready.
+		 * @param startSample sample number of the first sample in the block, counting from
+		 * the first sample passed to the channel.
+		 * @param inputData input data for the block. The first nSamples+maxKernelLength
+		 * values are valid.
+		 * @param correlations correlation data for each kernel. The first nSamples values
+		 * of each are valid.
+		 * @param nSamples number of valid output samples.
+		 * The arrays are reused for the next block, so must be copied if they are needed later.
+		 */
+		public void newCorrelationBlock(long startSample, double[] inputData, double[][] correlations, int nSamples);
+
+	}
+
+	/**
+	 * Make a correlator for a single kernel.
+	 * @param kernel kernel
+	 * @param minFFTLength minimum FFT length. The FFT length used is the next power of 2 above
+	 * the larger of this and twice the kernel length.
+	 */
+	public StreamingCorrelator(double[] kernel, int minFFTLength) {
+		this(new double[][] {kernel}, minFFTLength);
+	}
+
+	/**
+	 * Make a correlator for several kernels.
+	 * @param kernels kernels, which can be different lengths.
+	 * @param minFFTLength minimum FFT length. The FFT length used is the next power of 2 above
+	 * the larger of this and twice the length of the longest kernel.
+	 */
+	public StreamingCorrelator(double[][] kernels, int minFFTLength) {
+		nKernels = kernels.length;
+		maxKernelLength = 1;
+		for (int i = 0; i < nKernels; i++) {
+			maxKernelLength = Math.max(maxKernelLength, kernels[i].length);
+		}
+		fftLength = FastFFT.nextBinaryExp(Math.max(minFFTLength, maxKernelLength * 2));
+		usefulSamples = fftLength - maxKernelLength;
+		kernelSpectra = new double[nKernels][];
+		for (int i = 0; i < nKernels; i++) {
+			kernelSpectra[i] = Arrays.copyOf(kernels[i], fftLength);
+			FFTService.getInstance().getPlan(fftLength).realForward(kernelSpectra[i]);
+		}
+	}
+
+	/**
+	 * @return a new channel for a stream of data.
+	 */
+	public Channel createChannel() {
+		return new Channel();
+	}
+
+	/**
+	 * @return the FFT length
+	 */
+	public int getFFTLength() {
+		return fftLength;
+	}
+
+	/**
+	 * @return the number of output samples in each block.
+	 */
+	public int getUsefulSamples() {
+		return usefulSamples;
+	}
+
+	/**
+	 * @return the length of the longest kernel.
+	 */
+	public int getMaxKernelLength() {
+		return maxKernelLength;
+	}
+
+	/**
+	 * @return the number of kernels.
+	 */
+	public int getNumKernels() {
+		return nKernels;
+	}
+
+	/**
+	 * Multiply a spectrum by the complex conjugate of a kernel spectrum. Both are in
+	 * the packed JTransforms format where element 1 holds the (real) Nyquist value.
+	 */
+	private void conjMultiply(double[] spectrum, double[] kernelSpectrum, double[] out) {
+		out[0] = spectrum[0] * kernelSpectrum[0];
+		out[1] = spectrum[1] * kernelSpectrum[1];
+		for (int re = 2, im = 3; re < fftLength; re += 2, im += 2) {
+			double xr = spectrum[re], xi = spectrum[im];
+			double kr = kernelSpectrum[re], ki = kernelSpectrum[im];
+			out[re] = xr * kr + xi * ki;
+			out[im] = xi * kr - xr * ki;
+		}
+	}
+
+	/**
+	 * Data buffer and working arrays for one stream of data.
+	 */
+	public class Channel {
+
+		private double[] dataBuffer = new double[fftLength];
+
+		private double[] spectrum = new double[fftLength];
+
+		private double[][] correlations = new double[nKernels][fftLength];
+
+		private int bufferIndex;
+
+		private long totalSamples;
+
+		private Channel() {
+		}
+
+		/**
+		 * Add data to the stream. The listener is called for each block of correlation
+		 * data completed.
+		 * @param data new data
+		 * @param offset position of first sample to use in the data array
+		 * @param n number of samples to use
+		 * @param listener receives correlation data.
+		 */
+		public void addData(double[] data, int offset, int n, CorrelationListener listener) {
+			int end = offset + n;
+			while (offset < end) {
+				int nCopy = Math.min(end - offset, fftLength - bufferIndex);
+				System.arraycopy(data, offset, dataBuffer, bufferIndex, nCopy);
+				bufferIndex += nCopy;
+				offset += nCopy;
+				totalSamples += nCopy;
+				if (bufferIndex == fftLength) {
+					processBuffer(listener);
+					// keep the overlap for the next block.
+					System.arraycopy(dataBuffer, usefulSamples, dataBuffer, 0, fftLength - usefulSamples);
+					bufferIndex -= usefulSamples;
+				}
+			}
+		}
+
+		/**
+		 * Add data to the stream.
+		 * @param data new data
+		 * @param listener receives correlation data.
+		 */
+		public void addData(double[] data, CorrelationListener listener) {
+			addData(data, 0, data.length, listener);
+		}
+
+		private void processBuffer(CorrelationListener listener) {
+			FFTService fftService = FFTService.getInstance();
+			System.arraycopy(dataBuffer, 0, spectrum, 0, fftLength);
+			fftService.getPlan(fftLength).realForward(spectrum);
+			for (int i = 0; i < nKernels; i++) {
+				conjMultiply(spectrum, kernelSpectra[i], correlations[i]);
+				fftService.getPlan(fftLength).realInverse(correlations[i], true);
+			}
+			listener.newCorrelationBlock(totalSamples - fftLength, dataBuffer, correlations, usefulSamples);
+		}
+
+		/**
+		 * Clear the buffer and restart the sample count.
+		 */
+		public void reset() {
+			bufferIndex = 0;
+			totalSamples = 0;
+		}
+
+	}
+
+}
@@ -3,6 +3,7 @@ package generalDatabase;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -28,6 +29,12 @@ abstract public class BufferedSQLLogging extends SQLLogging {
 	
 	private List<BufferedDataUnit> unitsList;
 	
+	/**
+	 * Look up of buffered units so that checking whether a unit is already 
+	 * in the buffer doesn't need a search through the whole list. 
+	 */
+	private IdentityHashMap<PamDataUnit, BufferedDataUnit> unitsMap = new IdentityHashMap<>();
+	
 	private Timer writeTimer;
 
 	private PamConnection currentCon;
@@ -87,6 +94,7 @@ abstract public class BufferedSQLLogging extends SQLLogging {
 					super.logData(currentCon, bufferedData.dataUnit, bufferedData.superDetection);
 				}
 				iter.remove();
+				unitsMap.remove(bufferedData.dataUnit);
 			}
 		}
 	}
@@ -104,7 +112,9 @@ abstract public class BufferedSQLLogging extends SQLLogging {
 			BufferedDataUnit existing = inList(dataUnit, superDetection);
 			if (existing == null) {
 //			if (unitsList.contains(dataUnit) == false) {
-				unitsList.add(new BufferedDataUnit(dataUnit, superDetection)); // just stick it in the list. 
+				BufferedDataUnit bufferedData = new BufferedDataUnit(dataUnit, superDetection);
+				unitsList.add(bufferedData); // just stick it in the list. 
+				unitsMap.put(dataUnit, bufferedData);
 			}
 			else {
 				// consider updating.
@@ -117,14 +127,7 @@ abstract public class BufferedSQLLogging extends SQLLogging {
 	}
 
 	private BufferedDataUnit inList(PamDataUnit dataUnit, PamDataUnit superDetection) {
-		Iterator<BufferedDataUnit> iter = unitsList.iterator();
-		while (iter.hasNext()) {
-			BufferedDataUnit bufferedData = iter.next();
-			if (bufferedData.dataUnit == dataUnit) {
-				return bufferedData;
-			}
-		}
-		return null;
+		return unitsMap.get(dataUnit);
 	}
 
 	/* (non-Javadoc)
@@ -138,6 +141,10 @@ abstract public class BufferedSQLLogging extends SQLLogging {
 		 */
 		synchronized (bufferSynch) {
 			if (dataUnit.getDatabaseIndex() <= 0) {
+				if (unitsMap.get(dataUnit) == null && isBatchQueued(dataUnit)) {
+					// already passed on to the batch writer, so update the data queued there. 
+					return super.logData(con, dataUnit, null);
+				}
 				return true;
 			}
 			else {
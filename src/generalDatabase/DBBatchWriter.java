@@ -0,0 +1,381 @@
+package generalDatabase;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import PamguardMVC.PamDataUnit;
+import warnings.PamWarning;
+import warnings.WarningSystem;
+
+/**
+ * Write behind database writer. Rather than writing each data unit to the database
+ * from the thread that created it, SQLLogging copies the data for each row out of
+ * the table definition and queues it here. A single writer thread then writes the
+ * queued rows for each table using JDBC batch inserts in a single transaction, either
+ * when a table has a full batch of rows or when the oldest queued row has waited for
+ * the maximum latency.
+ * <p>
+ * Once a batch is written, the new database indexes are set in the data units. Until
+ * then a data unit has a database index of 0. If a unit is logged again while it's still
+ * in the queue (e.g. because it's been updated), the queued data are replaced with the
+ * new data, so the unit is only written once. Updates to units which have already been
+ * written are done immediately in the normal way.
+ * <p>
+ * Only used during normal data acquisition. Call {@link #flush()} to make sure everything
+ * has been written, e.g. on PamStop.
+ *
+ * @see SQLLogging#setBatchWriter(DBBatchWriter)
+ */
+public class DBBatchWriter {
+
+	private DBControl dbControl;
+
+	private int maxBatchSize;
+
+	private int maxLatencyMillis;
+
+	private final Object queueLock = new Object();
+
+	private LinkedHashMap<SQLLogging, TableQueue> tableQueues = new LinkedHashMap<>();
+
+	private int totalQueued;
+
+	private volatile boolean running;
+
+	private Thread writerThread;
+
+	private long queueSeq;
+
+	private long flushSeq;
+
+	private long rowsWritten, batchesWritten, writeErrors;
+
+	private PamWarning batchWarning;
+
+	/**
+	 * @param dbControl database control
+	 * @param maxBatchSize maximum number of rows written to a table in one batch
+	 * @param maxLatencyMillis maximum time rows are held in the queue before being written.
+	 */
+	public DBBatchWriter(DBControl dbControl, int maxBatchSize, int maxLatencyMillis) {
+		this.dbControl = dbControl;
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+		this.maxLatencyMillis = Math.max(0, maxLatencyMillis);
+		batchWarning = new PamWarning("Database", "Database batch write error", 2);
+	}
+
+	/**
+	 * Queue for a single table. Only accessed when holding the queueLock.
+	 */
+	private class TableQueue {
+
+		private SQLLogging sqlLogging;
+
+		private ArrayDeque<QueuedRow> rows = new ArrayDeque<>();
+
+		private IdentityHashMap<PamDataUnit, QueuedRow> pending = new IdentityHashMap<>();
+
+		private TableQueue(SQLLogging sqlLogging) {
+			this.sqlLogging = sqlLogging;
+		}
+	}
+
+	/**
+	 * A row of data waiting to be written.
+	 */
+	class QueuedRow {
+
+		PamDataUnit dataUnit;
+
+		Object[] values;
+
+		long queueTime;
+
+		long seq;
+
+		boolean done;
+
+		private QueuedRow(PamDataUnit dataUnit, Object[] values, long seq) {
+			this.dataUnit = dataUnit;
+			this.values = values;
+			this.seq = seq;
+			queueTime = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Start the writer thread.
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		rowsWritten = batchesWritten = writeErrors = 0;
+		writerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writerLoop();
+			}
+		}, "Database batch writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Write everything in the queue and stop the writer thread.
+	 */
+	public synchronized void stop() {
+		if (!running) {
+			return;
+		}
+		flush();
+		running = false;
+		synchronized (queueLock) {
+			queueLock.notifyAll();
+		}
+		try {
+			writerThread.join(5000);
+		} catch (InterruptedException e) {
+		}
+		writerThread = null;
+	}
+
+	/**
+	 * @return true if the writer thread is running
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Queue a row of data. Called from SQLLogging when holding its lock, so a unit
+	 * can't be queued at the same time as a batch from the same table is being written.
+	 * @param sqlLogging logger for the table
+	 * @param dataUnit data unit
+	 * @param values row data from {@link generalDatabase.pamCursor.PamCursor#getInsertValues(SQLTypes)}
+	 */
+	void queueRow(SQLLogging sqlLogging, PamDataUnit dataUnit, Object[] values) {
+		synchronized (queueLock) {
+			TableQueue tableQueue = tableQueues.get(sqlLogging);
+			if (tableQueue == null) {
+				tableQueue = new TableQueue(sqlLogging);
+				tableQueues.put(sqlLogging, tableQueue);
+			}
+			QueuedRow existing = tableQueue.pending.get(dataUnit);
+			if (existing != null) {
+				// unit updated before it was written, so just write the latest data.
+				existing.values = values;
+				return;
+			}
+			QueuedRow row = new QueuedRow(dataUnit, values, ++queueSeq);
+			tableQueue.rows.add(row);
+			tableQueue.pending.put(dataUnit, row);
+			totalQueued++;
+			if (tableQueue.rows.size() >= maxBatchSize) {
+				queueLock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * @param sqlLogging logger for the table
+	 * @param dataUnit data unit
+	 * @return true if the data unit is waiting to be written
+	 */
+	boolean isQueued(SQLLogging sqlLogging, PamDataUnit dataUnit) {
+		synchronized (queueLock) {
+			TableQueue tableQueue = tableQueues.get(sqlLogging);
+			return tableQueue != null && tableQueue.pending.containsKey(dataUnit);
+		}
+	}
+
+	/**
+	 * Take up to a batch of rows for a table. Rows stay in the pending list
+	 * until {@link #rowsWritten(SQLLogging, List, int[])} is called.
+	 * @param sqlLogging logger for the table
+	 * @return list of rows.
+	 */
+	List<QueuedRow> takeRows(SQLLogging sqlLogging) {
+		synchronized (queueLock) {
+			TableQueue tableQueue = tableQueues.get(sqlLogging);
+			if (tableQueue == null) {
+				return new ArrayList<>();
+			}
+			int n = Math.min(maxBatchSize, tableQueue.rows.size());
+			ArrayList<QueuedRow> rows = new ArrayList<>(n);
+			for (int i = 0; i < n; i++) {
+				rows.add(tableQueue.rows.poll());
+			}
+			totalQueued -= n;
+			return rows;
+		}
+	}
+
+	/**
+	 * Called once a batch of rows has been written (or failed).
+	 * @param sqlLogging logger for the table
+	 * @param rows rows that were written
+	 * @param newIndexes new database indexes, or null if the write failed. Rows
+	 * which couldn't be written have an index of 0. 
+	 */
+	void rowsWritten(SQLLogging sqlLogging, List<QueuedRow> rows, int[] newIndexes) {
+		int nErrors = 0;
+		synchronized (queueLock) {
+			TableQueue tableQueue = tableQueues.get(sqlLogging);
+			if (tableQueue != null) {
+				for (QueuedRow row : rows) {
+					tableQueue.pending.remove(row.dataUnit);
+					row.done = true;
+				}
+			}
+			for (int i = 0; i < rows.size(); i++) {
+				if (newIndexes == null || newIndexes[i] <= 0) {
+					nErrors++;
+				}
+			}
+			writeErrors += nErrors;
+			rowsWritten += rows.size() - nErrors;
+			if (nErrors < rows.size()) {
+				batchesWritten++;
+			}
+			queueLock.notifyAll();
+		}
+		if (nErrors > 0) {
+			batchWarning.setWarningMessage("Error writing batch of data to " + sqlLogging.getTableDefinition().getTableName());
+			batchWarning.setEndOfLife(System.currentTimeMillis() + 10000);
+			WarningSystem.getWarningSystem().addWarning(batchWarning);
+		}
+	}
+
+	/**
+	 * Write everything currently in the queue and wait until it's done. Rows 
+	 * queued after this is called may not have been written when it returns. 
+	 */
+	public void flush() {
+		synchronized (queueLock) {
+			if (!running) {
+				return;
+			}
+			flushSeq = queueSeq;
+			ArrayList<QueuedRow> waitRows = new ArrayList<>();
+			for (TableQueue tableQueue : tableQueues.values()) {
+				waitRows.addAll(tableQueue.pending.values());
+			}
+			queueLock.notifyAll();
+			long giveUp = System.currentTimeMillis() + 30000;
+			for (QueuedRow row : waitRows) {
+				while (running && !row.done) {
+					long wait = giveUp - System.currentTimeMillis();
+					if (wait <= 0) {
+						System.out.println("Database batch writer flush timed out with rows still queued");
+						return;
+					}
+					try {
+						queueLock.wait(wait);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	private void writerLoop() {
+		while (running) {
+			List<SQLLogging> dueTables = new ArrayList<>();
+			synchronized (queueLock) {
+				long waitTime = findDueTables(dueTables);
+				if (dueTables.isEmpty()) {
+					try {
+						queueLock.wait(waitTime);
+					} catch (InterruptedException e) {
+					}
+					continue;
+				}
+			}
+			PamConnection con = dbControl.getConnection();
+			for (SQLLogging sqlLogging : dueTables) {
+				try {
+					sqlLogging.writeQueuedData(con, this);
+				}
+				catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Find tables which have a full batch, have rows which have waited too long, or
+	 * have rows which have been asked to be flushed. Call holding the queueLock.
+	 * @param dueTables list to fill with tables to write
+	 * @return time to wait until the next table will be due, if none are due now.
+	 */
+	private long findDueTables(List<SQLLogging> dueTables) {
+		long now = System.currentTimeMillis();
+		long nextDue = now + Math.max(maxLatencyMillis, 100);
+		for (TableQueue tableQueue : tableQueues.values()) {
+			QueuedRow first = tableQueue.rows.peek();
+			if (first == null) {
+				continue;
+			}
+			long due = first.queueTime + maxLatencyMillis;
+			if (first.seq <= flushSeq || tableQueue.rows.size() >= maxBatchSize || due <= now) {
+				dueTables.add(tableQueue.sqlLogging);
+			}
+			else {
+				nextDue = Math.min(nextDue, due);
+			}
+		}
+		return Math.max(1, nextDue - now);
+	}
+
+	/**
+	 * @return the number of rows waiting to be written
+	 */
+	public int getQueueLength() {
+		synchronized (queueLock) {
+			return totalQueued;
+		}
+	}
+
+	/**
+	 * @return the number of rows written since the writer started
+	 */
+	public long getRowsWritten() {
+		synchronized (queueLock) {
+			return rowsWritten;
+		}
+	}
+
+	/**
+	 * @return the number of batches written since the writer started
+	 */
+	public long getBatchesWritten() {
+		synchronized (queueLock) {
+			return batchesWritten;
+		}
+	}
+
+	/**
+	 * @return the number of rows which could not be written
+	 */
+	public long getWriteErrors() {
+		synchronized (queueLock) {
+			return writeErrors;
+		}
+	}
+
+	@Override
+	public String toString() {
+		synchronized (queueLock) {
+			return String.format("Database batch writer: %d rows written in %d batches, %d errors, %d queued",
+					rowsWritten, batchesWritten, writeErrors, totalQueued);
+		}
+	}
+
+}
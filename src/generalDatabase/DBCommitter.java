@@ -82,8 +82,10 @@ public class DBCommitter {
 			return false;
 		}
 		try {
-			if (!pamCon.getConnection().getAutoCommit()) {
-				pamCon.getConnection().commit();
+			synchronized (pamCon.getWriteLock()) {
+				if (!pamCon.getConnection().getAutoCommit()) {
+					pamCon.getConnection().commit();
+				}
 			}
 		} catch (SQLException e) {
 //			e.printStackTrace();
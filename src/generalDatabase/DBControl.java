@@ -360,7 +360,7 @@ PamSettingsSource {
 		if (connection.getConnection() == null) {
 			return false;
 		}
-		synchronized (DBControl.class) {
+		synchronized (connection.getWriteLock()) {
 			try {
 				if (!connection.getConnection().getAutoCommit()) {
 //					System.out.println("Database commit");
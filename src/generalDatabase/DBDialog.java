@@ -3,6 +3,8 @@ package generalDatabase;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.Frame;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.ArrayList;
@@ -10,10 +12,13 @@ import java.util.ArrayList;
 import javax.swing.AbstractButton;
 import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JTextField;
 import javax.swing.border.TitledBorder;
 
 import PamView.dialog.PamDialog;
+import PamView.dialog.PamGridBagContraints;
 import PamView.dialog.warn.WarnOnce;
 
 public class DBDialog extends PamDialog {
@@ -35,6 +40,10 @@ public class DBDialog extends PamDialog {
 	
 	private JCheckBox useAutoCommit;
 	
+	private JCheckBox useBatchWriter;
+	
+	private JTextField batchSize, batchLatency;
+	
 	private DBDialog(DBControl dbControl, Frame parentFrame, String title) {
 		
 		super(parentFrame, title, false);
@@ -64,10 +73,35 @@ public class DBDialog extends PamDialog {
 		p.add(BorderLayout.CENTER, dialogBottomPanel);
 		setDialogComponent(p);
 		
-		JPanel s = new JPanel(new BorderLayout());
+		JPanel s = new JPanel(new GridBagLayout());
 		s.setBorder(new TitledBorder("Options"));
-		s.add(BorderLayout.CENTER, useAutoCommit = new JCheckBox("Use AutoCommit"));
+		GridBagConstraints c = new PamGridBagContraints();
+		c.gridwidth = 4;
+		s.add(useAutoCommit = new JCheckBox("Use AutoCommit"), c);
+		c.gridy++;
+		s.add(useBatchWriter = new JCheckBox("Write data in batches on a background thread"), c);
+		c.gridy++;
+		c.gridwidth = 1;
+		s.add(new JLabel("Batch size ", JLabel.RIGHT), c);
+		c.gridx++;
+		s.add(batchSize = new JTextField(5), c);
+		c.gridx++;
+		s.add(new JLabel(" rows, max delay ", JLabel.RIGHT), c);
+		c.gridx++;
+		s.add(batchLatency = new JTextField(5), c);
+		c.gridx++;
+		s.add(new JLabel(" ms"), c);
 		p.add(BorderLayout.SOUTH, s);
+		useBatchWriter.setToolTipText("<html>Data are queued and written to each table in batches by a separate thread, so that<p>"
+				+ "detectors producing large amounts of data are not held up waiting for the database</html>");
+		batchSize.setToolTipText("Maximum number of rows written to a table in one batch");
+		batchLatency.setToolTipText("Maximum time data are held before being written to the database");
+		useBatchWriter.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				enableControls();
+			}
+		});
 		String tip = "<html>Auto Commit saves data immediately to the database. <p>"
 				+ "Turning this off can improve performance since multiple records will be written together.</html>";
 		useAutoCommit.setToolTipText(tip);
@@ -115,8 +149,17 @@ public class DBDialog extends PamDialog {
 			systemList.setSelectedIndex(dbParameters.getDatabaseSystem());
 		}
 		useAutoCommit.setSelected(dbParameters.getUseAutoCommit());
+		useBatchWriter.setSelected(dbParameters.getUseBatchWriter());
+		batchSize.setText(String.format("%d", dbParameters.getBatchSize()));
+		batchLatency.setText(String.format("%d", dbParameters.getBatchLatencyMillis()));
+		enableControls();
 //		systemDialogPanel.setParams();
 	}
+	
+	private void enableControls() {
+		batchSize.setEnabled(useBatchWriter.isSelected());
+		batchLatency.setEnabled(useBatchWriter.isSelected());
+	}
 
 	@Override
 	public boolean getParams() {
@@ -138,6 +181,22 @@ public class DBDialog extends PamDialog {
 		
 		dbParameters.setUseAutoCommit(oc);
 		
+		dbParameters.setUseBatchWriter(useBatchWriter.isSelected());
+		if (useBatchWriter.isSelected()) {
+			try {
+				int nBatch = Integer.valueOf(batchSize.getText());
+				int latency = Integer.valueOf(batchLatency.getText());
+				if (nBatch < 1 || latency < 0) {
+					return showWarning("Batch size must be at least 1 and the delay can not be negative");
+				}
+				dbParameters.setBatchSize(nBatch);
+				dbParameters.setBatchLatencyMillis(latency);
+			}
+			catch (NumberFormatException e) {
+				return showWarning("Invalid batch size or delay");
+			}
+		}
+		
 		return true;
 	}
 
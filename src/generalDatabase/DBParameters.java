@@ -16,6 +16,26 @@ public class DBParameters implements Cloneable, Serializable, ManagedParameters
 
 	private Boolean useAutoCommit = false;
 	
+	/**
+	 * Write data on a background thread in batches rather than 
+	 * immediately from the thread producing the data. 
+	 */
+	private Boolean useBatchWriter = false;
+	
+	/**
+	 * Maximum number of rows written to a table in one batch
+	 */
+	private Integer batchSize = DEFAULT_BATCH_SIZE;
+	
+	/**
+	 * Maximum time data are held before being written in milliseconds. 
+	 */
+	private Integer batchLatencyMillis = DEFAULT_BATCH_LATENCY;
+	
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	
+	public static final int DEFAULT_BATCH_LATENCY = 1000;
+	
 	/**
 	 * This is only added so that it appears in the XML parameter set, so has
 	 * a setter, but no getter. 
@@ -50,6 +70,57 @@ public class DBParameters implements Cloneable, Serializable, ManagedParameters
 		this.useAutoCommit = useAutoCommit;
 	}
 
+	/**
+	 * @return true if data should be written in batches on a background thread
+	 */
+	public boolean getUseBatchWriter() {
+		if (useBatchWriter == null) {
+			useBatchWriter = false;
+		}
+		return useBatchWriter;
+	}
+
+	/**
+	 * @param useBatchWriter write data in batches on a background thread
+	 */
+	public void setUseBatchWriter(boolean useBatchWriter) {
+		this.useBatchWriter = useBatchWriter;
+	}
+
+	/**
+	 * @return the maximum number of rows written to a table in one batch
+	 */
+	public int getBatchSize() {
+		if (batchSize == null || batchSize < 1) {
+			batchSize = DEFAULT_BATCH_SIZE;
+		}
+		return batchSize;
+	}
+
+	/**
+	 * @param batchSize the maximum number of rows written to a table in one batch
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @return the maximum time data are held before being written in milliseconds
+	 */
+	public int getBatchLatencyMillis() {
+		if (batchLatencyMillis == null || batchLatencyMillis < 0) {
+			batchLatencyMillis = DEFAULT_BATCH_LATENCY;
+		}
+		return batchLatencyMillis;
+	}
+
+	/**
+	 * @param batchLatencyMillis the maximum time data are held before being written in milliseconds
+	 */
+	public void setBatchLatencyMillis(int batchLatencyMillis) {
+		this.batchLatencyMillis = batchLatencyMillis;
+	}
+
 	/**
 	 * Set the database system.
 	 * @param dBIndexSystem - the index of the system to set
@@ -61,6 +61,8 @@ public class DBProcess extends PamProcess {
 
 	private javax.swing.Timer timer;
 
+	private DBBatchWriter batchWriter;
+
 	/**
 	 * These two are used by the sidepanel and get zeroed every 
 	 * second or so, each time the side panel updates. 
@@ -123,9 +125,65 @@ public class DBProcess extends PamProcess {
 	@Override
 	public void pamStart() {
 
-		if (PamController.getInstance().getRunMode() == PamController.RUN_MIXEDMODE) {
+		int runMode = PamController.getInstance().getRunMode();
+		if (runMode == PamController.RUN_MIXEDMODE) {
 			prepareForMixedMode();
 		}
+		else if (runMode == PamController.RUN_NORMAL || runMode == PamController.RUN_NETWORKRECEIVER) {
+			startBatchWriter();
+		}
+	}
+
+	/**
+	 * Start the write behind batch writer if it's been selected in the 
+	 * database options and tell all the loggers to use it. 
+	 */
+	private void startBatchWriter() {
+		DBParameters dbParams = databaseControll.getDbParameters();
+		if (dbParams == null || !dbParams.getUseBatchWriter() || databaseControll.getConnection() == null) {
+			return;
+		}
+		batchWriter = new DBBatchWriter(databaseControll, dbParams.getBatchSize(), dbParams.getBatchLatencyMillis());
+		batchWriter.start();
+		ArrayList<PamDataBlock> allBlocks = PamController.getInstance().getDataBlocks();
+		for (PamDataBlock aBlock : allBlocks) {
+			SQLLogging logging = aBlock.getLogging();
+			if (logging != null) {
+				logging.setBatchWriter(batchWriter);
+			}
+		}
+	}
+
+	/**
+	 * Write anything still in the batch writer queue, then stop it and 
+	 * go back to writing data immediately. 
+	 */
+	private void stopBatchWriter() {
+		if (batchWriter == null) {
+			return;
+		}
+		ArrayList<PamDataBlock> allBlocks = PamController.getInstance().getDataBlocks();
+		for (PamDataBlock aBlock : allBlocks) {
+			SQLLogging logging = aBlock.getLogging();
+			if (logging instanceof BufferedSQLLogging) {
+				((BufferedSQLLogging) logging).flushBuffer();
+			}
+		}
+		for (PamDataBlock aBlock : allBlocks) {
+			SQLLogging logging = aBlock.getLogging();
+			if (logging != null) {
+				logging.setBatchWriter(null);
+			}
+		}
+		batchWriter.stop();
+		batchWriter = null;
+	}
+
+	/**
+	 * @return the batch writer, or null if data are being written immediately. 
+	 */
+	public DBBatchWriter getBatchWriter() {
+		return batchWriter;
 	}
 
 	protected boolean saveStartSettings(long timeNow) {
@@ -150,6 +208,7 @@ public class DBProcess extends PamProcess {
 
 	@Override
 	public void pamStop() {
+		stopBatchWriter();
 		PamConnection con = databaseControll.getConnection();
 		if (con != null) {
 			for (int i = 0; i < dbSpecials.size(); i++) {
@@ -22,6 +22,8 @@ public class PamConnection {
 	private SQLTypes sqlTypes;
 	
 	private String databaseName;
+	
+	private final Object writeLock = new Object();
 
 	/**
 	 * Constructor needs a connection object and an sqlTypes object. 
@@ -63,6 +65,17 @@ public class PamConnection {
 		}
 	}
 
+	/**
+	 * Lock to hold while writing to the database or committing through this 
+	 * connection. The batch writer holds it for the whole of each batch transaction, 
+	 * so that statements from other threads can't end up inside a batch, and so 
+	 * be rolled back with it, or be committed by it. 
+	 * @return write lock for this connection
+	 */
+	public Object getWriteLock() {
+		return writeLock;
+	}
+
 	public String getDatabaseName() {
 		return databaseName;
 	}
@@ -37,6 +37,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.ListIterator;
 
 import PamController.PamController;
@@ -148,6 +149,12 @@ public abstract class SQLLogging {
 
 	private CursorFinder loggingCursorFinder = new CursorFinder();
 	private CursorFinder viewerCursorFinder = new CursorFinder();
+	
+	/**
+	 * Write behind batch writer. If set, new data are queued and written on
+	 * the writer thread rather than written immediately. 
+	 */
+	private volatile DBBatchWriter batchWriter;
 
 	public CursorFinder getViewerCursorFinder() {
 		return viewerCursorFinder;
@@ -399,6 +406,17 @@ public abstract class SQLLogging {
 			showWarning("Database cursor error");
 			return false;
 		}
+		
+		DBBatchWriter writer = batchWriter;
+		if (writer != null && superDetection == null && canBatchWrite()) {
+			/*
+			 * take a copy of the data for the writer thread. The database index
+			 * will be set once it's been written. 
+			 */
+			writer.queueRow(this, dataUnit, pamCursor.getInsertValues(con.getSqlTypes()));
+			clearWarning();
+			return true;
+		}
 
 		int newIndex = pamCursor.immediateInsert(con);
 		dataUnit.setDatabaseIndex(newIndex);
@@ -421,6 +439,104 @@ public abstract class SQLLogging {
 
 	}
 
+	/**
+	 * Write the next batch of data queued by the batch writer for this table and set
+	 * the new database indexes in the data units. Called from the batch writer thread. 
+	 * Holds the lock on this logger so that nothing else can be logged to the table 
+	 * while the batch is being written. 
+	 * @param con database connection
+	 * @param writer batch writer
+	 * @return number of rows written
+	 */
+	synchronized int writeQueuedData(PamConnection con, DBBatchWriter writer) {
+		List<DBBatchWriter.QueuedRow> rows = writer.takeRows(this);
+		if (rows.isEmpty()) {
+			return 0;
+		}
+		int[] newIndexes = null;
+		PamCursor pamCursor = con == null ? null : loggingCursorFinder.getCursor(con, pamTableDefinition);
+		if (pamCursor != null) {
+			ArrayList<Object[]> values = new ArrayList<>(rows.size());
+			for (DBBatchWriter.QueuedRow row : rows) {
+				values.add(row.values);
+			}
+			newIndexes = pamCursor.batchInsert(con, values);
+			if (newIndexes == null && rows.size() > 1) {
+				/*
+				 * The batch will have been rolled back, so try each row on its own so 
+				 * that one bad row doesn't lose all the others. 
+				 */
+				newIndexes = new int[rows.size()];
+				for (int i = 0; i < rows.size(); i++) {
+					int[] oneIndex = pamCursor.batchInsert(con, values.subList(i, i+1));
+					newIndexes[i] = oneIndex == null ? 0 : oneIndex[0];
+				}
+			}
+		}
+		int nWritten = 0;
+		if (newIndexes != null) {
+			for (int i = 0; i < rows.size(); i++) {
+				if (newIndexes[i] <= 0) {
+					continue;
+				}
+				PamDataUnit dataUnit = rows.get(i).dataUnit;
+				dataUnit.setDatabaseIndex(newIndexes[i]);
+				dataUnit.clearUpdateCount();
+				nWritten++;
+			}
+		}
+		if (nWritten < rows.size()) {
+			showWarning(String.format("Error writing %d of %d rows of data to %s", rows.size()-nWritten, 
+					rows.size(), pamTableDefinition.getTableName()));
+		}
+		writer.rowsWritten(this, rows, newIndexes);
+		return nWritten;
+	}
+	
+	/**
+	 * Can data from this logger be queued and written by the batch writer ? Not possible 
+	 * for sub tables or super detections since they need the database indexes of 
+	 * other data as soon as they are written. 
+	 * @return true if data can be written by the batch writer. 
+	 */
+	protected boolean canBatchWrite() {
+		return superDetLogging == null && !(pamTableDefinition instanceof PamSubtableDefinition);
+	}
+
+	/**
+	 * Set a batch writer, so that new data are queued and written in batches by 
+	 * the writer thread, or null to write data immediately. 
+	 * @param batchWriter the batch writer. 
+	 */
+	public void setBatchWriter(DBBatchWriter batchWriter) {
+		this.batchWriter = batchWriter;
+	}
+
+	/**
+	 * @return the batch writer, or null if data are being written immediately. 
+	 */
+	public DBBatchWriter getBatchWriter() {
+		return batchWriter;
+	}
+	
+	/**
+	 * Write everything queued in the batch writer, if there is one. 
+	 */
+	protected void flushBatchWriter() {
+		DBBatchWriter writer = batchWriter;
+		if (writer != null) {
+			writer.flush();
+		}
+	}
+	
+	/**
+	 * @param dataUnit data unit
+	 * @return true if the data unit is queued in the batch writer waiting to be written. 
+	 */
+	protected boolean isBatchQueued(PamDataUnit dataUnit) {
+		DBBatchWriter writer = batchWriter;
+		return writer != null && writer.isQueued(this, dataUnit);
+	}
 	
 	/**
 	 * Called when an old PamDataUnit is updated. The record is either 
@@ -459,6 +575,10 @@ public abstract class SQLLogging {
 			return false;
 		}
 		if (dataUnit.getDatabaseIndex() <= 0) {
+			if (isBatchQueued(dataUnit)) {
+				// not written yet, so replace the queued data with the updated data
+				return logData(con, dataUnit, null);
+			}
 			/** DG 20190828 I don't think the matters since there is no real need to rewrite a 
 			 * sub detection. Saves time not to rewrite every click every time we scroll and 
 			 * can't really use the db index since a single click might be in multiple different
@@ -1554,9 +1674,11 @@ public abstract class SQLLogging {
 		String sqlString = String.format("DELETE FROM %s WHERE Id %s", 
 				pamTableDefinition.getTableName(), createInClause(deleteIndexes));
 		try {
-			Statement s = connection.getConnection().createStatement();
-			s.execute(sqlString);
-			s.close();
+			synchronized (connection.getWriteLock()) {
+				Statement s = connection.getConnection().createStatement();
+				s.execute(sqlString);
+				s.close();
+			}
 
 //			// if we also have a subtable, remove any subdetections linked to the deleted units.
 //			// Do this before we clear the list of deleted units from the data block
@@ -2241,9 +2363,11 @@ public abstract class SQLLogging {
 		//		String sqlString = String.format("DELETE FROM %s WHERE UID = %d", 
 		//				subtable.getTableDefinition().getTableName(), subUID);
 		try {
-			Statement s = con.getConnection().createStatement();
-			s.execute(sqlString);
-			s.close();
+			synchronized (con.getWriteLock()) {
+				Statement s = con.getConnection().createStatement();
+				s.execute(sqlString);
+				s.close();
+			}
 		} catch (SQLException e) {
 			showWarning(sqlString + " failed: " + e.getMessage());
 //			e.printStackTrace();
@@ -2265,9 +2389,11 @@ public abstract class SQLLogging {
 		String sqlString = String.format("DELETE FROM %s WHERE ParentID = %d", 
 				getTableDefinition().getTableName(), parentID);
 		try {
-			Statement s = con.getConnection().createStatement();
-			s.execute(sqlString);
-			s.close();
+			synchronized (con.getWriteLock()) {
+				Statement s = con.getConnection().createStatement();
+				s.execute(sqlString);
+				s.close();
+			}
 		} catch (SQLException e) {
 			showWarning(sqlString + " failed: " + e.getMessage());
 			return false;
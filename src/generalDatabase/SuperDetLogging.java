@@ -115,6 +115,8 @@ public abstract class SuperDetLogging extends SQLLogging {
 
 	@Override
 	public synchronized boolean logData(PamConnection con, PamDataUnit dataUnit, PamDataUnit superDetection) {
+		// make sure sub detections have been written and have their database indexes
+		flushBatchWriter();
 		boolean ok = super.logData(con, dataUnit, superDetection);
 		if (ok && subLogging != null) {
 			subLogging.logSubtableData(con, (SuperDetection) dataUnit);
@@ -124,6 +126,7 @@ public abstract class SuperDetLogging extends SQLLogging {
 
 	@Override
 	public synchronized boolean reLogData(PamConnection con, PamDataUnit dataUnit, PamDataUnit superDetection) {
+		flushBatchWriter();
 		boolean ok = super.reLogData(con, dataUnit, superDetection);
 		if (ok && subLogging != null) {
 			subLogging.updateSubtable(con, (SuperDetection) dataUnit);
@@ -131,6 +134,11 @@ public abstract class SuperDetLogging extends SQLLogging {
 		return ok;
 	}
 
+	@Override
+	protected boolean canBatchWrite() {
+		return false;
+	}
+
 	@Override
 	public boolean saveOfflineData(DBControlUnit dbControlUnit, PamConnection connection) {
 		return super.saveOfflineData(dbControlUnit, connection);
@@ -367,9 +375,11 @@ public abstract class SuperDetLogging extends SQLLogging {
 		String sqlString = String.format("DELETE FROM %s WHERE ParentId %s", 
 				subLogging.getTableDefinition().getTableName(), createInClause(deleteIndexes));
 		try {
-			Statement s = connection.getConnection().createStatement();
-			s.execute(sqlString);
-			s.close();
+			synchronized (connection.getWriteLock()) {
+				Statement s = connection.getConnection().createStatement();
+				s.execute(sqlString);
+				s.close();
+			}
 		} catch (SQLException e) {
 			System.out.println("Delete of subtable items failed with " + sqlString);
 			e.printStackTrace();
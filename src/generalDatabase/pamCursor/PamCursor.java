@@ -6,11 +6,14 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.RowId;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.List;
 
 import PamUtils.PamCalendar;
 import warnings.PamWarning;
@@ -44,6 +47,14 @@ abstract public class PamCursor {
 	
 	private PreparedStatement preparedUpdateStatement;
 	
+	private PreparedStatement batchInsertStatement;
+	
+	private String batchInsertString;
+	
+	private boolean batchReturnsKeys;
+	
+	private PamConnection batchConnection;
+	
 	private StringBuffer blankBuffer = new StringBuffer(" ");
 
 	private PamWarning cursorWarning = new PamWarning("Database Cursor", "", 2);
@@ -335,6 +346,15 @@ abstract public class PamCursor {
 	 * @return the new database Index number
 	 */
 	public int immediateInsert(PamConnection connection) {
+		if (connection == null) {
+			return -1;
+		}
+		synchronized (connection.getWriteLock()) {
+			return insertRow(connection);
+		}
+	}
+
+	private int insertRow(PamConnection connection) {
 		// check the cursor is on the right connection.
 		if (openInsertCursor(connection) == false) {
 			return -1;
@@ -419,6 +439,274 @@ abstract public class PamCursor {
 		}
 	}
 	
+	/**
+	 * Take a copy of the data in the table definition in the same order as the 
+	 * parameters of the insert statement, so that it can be written later using 
+	 * {@link #batchInsert(PamConnection, List)}. 
+	 * @param sqlTypes SQL types for the database
+	 * @return packed values for each column of the insert statement. 
+	 */
+	public Object[] getInsertValues(SQLTypes sqlTypes) {
+		EmptyTableDefinition tableDef = getTableDefinition();
+		PamTableItem tableItem;
+		Object[] values = new Object[tableDef.getTableItemCount()];
+		int iCol = 0;
+		for (int i = 0; i < tableDef.getTableItemCount(); i++) {
+			tableItem = tableDef.getTableItem(i);
+			if (tableItem.getName().equalsIgnoreCase("Id") || tableItem.isCounter()) {
+				continue;
+			}
+			if (tableItem.getValue() != null) {
+				try {
+					values[iCol] = tableItem.getPackedValue();
+				}
+				catch (StringIndexOutOfBoundsException e) {
+					values[iCol] = null;
+				}
+			}
+			iCol++;
+		}
+		return Arrays.copyOf(values, iCol);
+	}
+	
+	/**
+	 * Insert many rows of data using JDBC batch updates within a single transaction. This 
+	 * is a lot faster than calling {@link #immediateInsert(PamConnection)} for each row. 
+	 * <p>
+	 * New database indexes are taken from the generated keys if the driver returns one for 
+	 * every row. Otherwise, for tables using cheat indexing, where PAMGuard is the only thing 
+	 * writing to the table so indexes are contiguous, they are worked out back from the last 
+	 * index in the table. For other tables the new indexes are read back from the table. 
+	 * If anything goes wrong the whole batch is rolled back, so nothing is written. 
+	 * <p>
+	 * The connection's write lock is held throughout, so no other writes can be made
+	 * on the connection during the batch. If the connection isn't auto committing, the 
+	 * batch is rolled back to a savepoint on error and is otherwise left to be committed 
+	 * with everything else, so other pending work is neither committed early nor lost. 
+	 * @param connection database connection
+	 * @param rows list of rows of data, each made with {@link #getInsertValues(SQLTypes)}
+	 * @return new database index for each row, or null if the batch could not be written. 
+	 */
+	public int[] batchInsert(PamConnection connection, List<Object[]> rows) {
+		int nRows = rows.size();
+		if (nRows == 0) {
+			return new int[0];
+		}
+		if (connection == null) {
+			return null;
+		}
+		synchronized (connection.getWriteLock()) {
+			return insertBatch(connection, rows);
+		}
+	}
+
+	private int[] insertBatch(PamConnection connection, List<Object[]> rows) {
+		int nRows = rows.size();
+		if (prepareBatchInsert(connection) == false) {
+			return null;
+		}
+		EmptyTableDefinition tableDef = getTableDefinition();
+		SQLTypes sqlTypes = connection.getSqlTypes();
+		int[] colTypes = new int[tableDef.getTableItemCount()];
+		int nCol = 0;
+		for (int i = 0; i < tableDef.getTableItemCount(); i++) {
+			PamTableItem tableItem = tableDef.getTableItem(i);
+			if (tableItem.getName().equalsIgnoreCase("Id") || tableItem.isCounter()) {
+				continue;
+			}
+			colTypes[nCol++] = sqlTypes.systemSqlType(tableItem.getSqlType());
+		}
+		Connection con = connection.getConnection();
+		int[] newIndexes = new int[nRows];
+		boolean autoCommit = false;
+		Savepoint savepoint = null;
+		try {
+			autoCommit = con.getAutoCommit();
+			if (autoCommit) {
+				con.setAutoCommit(false);
+			}
+			else {
+				// other work is pending, so only roll back as far as the start of this batch. 
+				savepoint = con.setSavepoint();
+			}
+		}
+		catch (SQLException e) {
+			System.out.println("Database error starting batch of data for " + tableDef.getTableName());
+			System.err.println("Error: " + e.getMessage());
+			return null;
+		}
+		try {
+			for (Object[] row : rows) {
+				if (row.length != nCol) {
+					throw new SQLException(String.format("Table %s has %d columns, but queued data has %d", 
+							tableDef.getTableName(), nCol, row.length));
+				}
+				for (int i = 0; i < nCol; i++) {
+					if (row[i] == null) {
+						batchInsertStatement.setNull(i+1, colTypes[i]);
+					}
+					else {
+						batchInsertStatement.setObject(i+1, row[i], colTypes[i]);
+					}
+				}
+				batchInsertStatement.addBatch();
+			}
+			int lastIndexBefore = -1;
+			if (!batchReturnsKeys && !tableDef.isUseCheatIndexing()) {
+				lastIndexBefore = getMaxIndex(con);
+			}
+			batchInsertStatement.executeBatch();
+			int nKeys = 0;
+			if (batchReturnsKeys) {
+				try (ResultSet keys = batchInsertStatement.getGeneratedKeys()) {
+					while (keys != null && keys.next() && nKeys < nRows) {
+						newIndexes[nKeys++] = keys.getInt(1);
+					}
+				}
+				catch (SQLException e) {
+					nKeys = 0;
+				}
+			}
+			if (nKeys != nRows) {
+				if (tableDef.isUseCheatIndexing()) {
+					int lastIndex = getLastDatabaseIndex(connection, batchInsertStatement);
+					for (int i = 0; i < nRows; i++) {
+						newIndexes[i] = lastIndex - nRows + 1 + i;
+					}
+				}
+				else if (lastIndexBefore < 0 || readBackIndexes(con, lastIndexBefore, newIndexes) == false) {
+					throw new SQLException("Unable to find database indexes for batch of data in " + tableDef.getTableName());
+				}
+			}
+			if (savepoint == null) {
+				con.commit();
+			}
+			else {
+				con.releaseSavepoint(savepoint);
+			}
+		}
+		catch (SQLException e) {
+			try {
+				if (savepoint == null) {
+					con.rollback();
+				}
+				else {
+					con.rollback(savepoint);
+				}
+			} catch (SQLException e1) {
+				System.out.println("Error rolling back batch of data for " + tableDef.getTableName());
+			}
+			cursorWarning.setWarningMessage(e.getMessage());
+			cursorWarning.setWarnignLevel(2);
+			WarningSystem.getWarningSystem().addWarning(cursorWarning);
+			System.out.println("Database error writing batch of data for " + tableDef.getTableName());
+			System.err.println("Error: " + e.getMessage());
+			try {
+				batchInsertStatement.close();
+			} catch (SQLException e1) {
+			}
+			batchInsertStatement = null;
+			return null;
+		}
+		finally {
+			if (autoCommit) {
+				try {
+					con.setAutoCommit(true);
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		if (cursorWarning.getWarnignLevel() > 0) {
+			WarningSystem.getWarningSystem().removeWarning(cursorWarning);
+			cursorWarning.setWarnignLevel(0);
+		}
+		if (tableDef.isUseCheatIndexing()) {
+			// keep the cheat index in step for any later immediate inserts. 
+			cheatsIndex = newIndexes[nRows-1];
+			cheatsConnection = connection;
+		}
+		return newIndexes;
+	}
+	
+	/**
+	 * Get the largest index in the table, within the current transaction. 
+	 * @param con database connection
+	 * @return largest index, or 0 if the table is empty. 
+	 * @throws SQLException
+	 */
+	private int getMaxIndex(Connection con) throws SQLException {
+		EmptyTableDefinition tableDef = getTableDefinition();
+		String qStr = String.format("SELECT MAX(%s) FROM %s", tableDef.getIndexItem().getName(), tableDef.getTableName());
+		try (Statement stmt = con.createStatement(); ResultSet rs = stmt.executeQuery(qStr)) {
+			return rs.next() ? rs.getInt(1) : 0;
+		}
+	}
+
+	/**
+	 * Read back the indexes of rows just written in a batch, within the same transaction. 
+	 * @param con database connection
+	 * @param lastIndexBefore largest index in the table before the batch was written
+	 * @param newIndexes array to fill with the new indexes, in the order they were written
+	 * @return true if exactly one index was found for every row in the batch. 
+	 * @throws SQLException
+	 */
+	private boolean readBackIndexes(Connection con, int lastIndexBefore, int[] newIndexes) throws SQLException {
+		EmptyTableDefinition tableDef = getTableDefinition();
+		String indexName = tableDef.getIndexItem().getName();
+		String qStr = String.format("SELECT %s FROM %s WHERE %s > %d ORDER BY %s", 
+				indexName, tableDef.getTableName(), indexName, lastIndexBefore, indexName);
+		int n = 0;
+		try (Statement stmt = con.createStatement(); ResultSet rs = stmt.executeQuery(qStr)) {
+			while (rs.next()) {
+				if (n == newIndexes.length) {
+					return false;
+				}
+				newIndexes[n++] = rs.getInt(1);
+			}
+		}
+		return n == newIndexes.length;
+	}
+
+	/**
+	 * Prepare the statement for batch inserts. Asks for generated keys if 
+	 * the driver can return them.
+	 * @param connection database connection
+	 * @return true if the statement is ready. 
+	 */
+	private boolean prepareBatchInsert(PamConnection connection) {
+		if (connection == null) {
+			return false;
+		}
+		String insertString = getInsertString(connection.getSqlTypes());
+		if (batchInsertStatement != null && connection == batchConnection && insertString.equals(batchInsertString)) {
+			return true;
+		}
+		if (batchInsertStatement != null) {
+			try {
+				batchInsertStatement.close();
+			} catch (SQLException e) {
+			}
+			batchInsertStatement = null;
+		}
+		try {
+			batchInsertStatement = connection.getConnection().prepareStatement(insertString, Statement.RETURN_GENERATED_KEYS);
+			batchReturnsKeys = true;
+		}
+		catch (SQLException | UnsupportedOperationException e) {
+			try {
+				batchInsertStatement = connection.getConnection().prepareStatement(insertString);
+				batchReturnsKeys = false;
+			} catch (SQLException e1) {
+				System.err.println(String.format("Error preparing batch insert \"%s\": %s", insertString, e1.getLocalizedMessage()));
+				return false;
+			}
+		}
+		batchInsertString = insertString;
+		batchConnection = connection;
+		return true;
+	}
+
 	private int getCheatsIndex(PamConnection connection, PreparedStatement preparedInsertStatement2) {
 		if (cheatsConnection != connection || cheatsIndex == 0) {
 			cheatsIndex = getLastDatabaseIndex(connection, preparedInsertStatement);
@@ -467,6 +755,15 @@ abstract public class PamCursor {
 	 * @return true if successful. 
 	 */
 	public boolean immediateUpdate(PamConnection connection) {
+		if (connection == null) {
+			return false;
+		}
+		synchronized (connection.getWriteLock()) {
+			return updateRow(connection);
+		}
+	}
+
+	private boolean updateRow(PamConnection connection) {
 		// check the cursor is on the right connection.
 		if (prepareUpdateStatement(connection) == false) {
 			return false;
@@ -528,6 +825,13 @@ abstract public class PamCursor {
 				e.printStackTrace();
 			}
 		}
+		if (batchInsertStatement != null) {
+			try {
+				batchInsertStatement.close();
+			} catch (SQLException e) {
+			}
+			batchInsertStatement = null;
+		}
 		closeScrollableCursor();
 	}
 	
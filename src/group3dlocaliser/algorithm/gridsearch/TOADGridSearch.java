@@ -1,6 +1,8 @@
 package group3dlocaliser.algorithm.gridsearch;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.stream.IntStream;
 
 import org.apache.commons.math.MathException;
 import org.apache.commons.math.distribution.ChiSquaredDistributionImpl;
@@ -28,8 +30,15 @@ public class TOADGridSearch extends TOADBaseAlgorithm {
 
 	public static String gridSearchName = "Grid Search";
 	
+	/**
+	 * Number of grid points evaluated together in each parallel task. 
+	 */
+	public static final int CHUNK_SIZE = 256;
+	
 	private Grid3D searchGrid;
 	
+	private boolean allowParallel = true;
+	
 	private TOADGridParams toadGridParams = new TOADGridParams();
 
 	public TOADGridSearch(Group3DLocaliserControl group3dLocaliser) {
@@ -80,23 +89,30 @@ public class TOADGridSearch extends TOADBaseAlgorithm {
 		searchGrid.resetGrid();
 		PamVector centre = geometry.getGeometricCentre();
 		int nPoint = searchGrid.getTotalPoints();
-		Chi2Data bestChi2 = new Chi2Data(Double.MAX_VALUE, 1);
-		PamVector bestPoint = null; 
+		/*
+		 * Get all the grid points first, since the grid can only be stepped through 
+		 * one point at a time, then calculate chi2 for blocks of points in parallel.  
+		 */
+		ArrayList<PamVector> gridPoints = new ArrayList<>(Math.max(nPoint, 16));
 		while(true) {
 			PamVector gridPoint = searchGrid.getNextPoint();
 			if (gridPoint == null) {
 				break;
 			}
-			gridPoint = gridPoint.add(centre);
-			Chi2Data chi2 = calcChi2(geometry, toadInformation, gridPoint.getVector());
-			if (chi2 != null && chi2.getChi2() < bestChi2.getChi2()) {
-				bestPoint = gridPoint;
-				bestChi2 = chi2;
-			}
+			gridPoints.add(gridPoint.add(centre));
 		}
-		if (bestPoint == null) {
+		int nChunks = (gridPoints.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		IntStream chunks = IntStream.range(0, nChunks);
+		if (allowParallel && nChunks > 1) {
+			chunks = chunks.parallel();
+		}
+		GridResult best = chunks.mapToObj(i -> searchChunk(geometry, toadInformation, gridPoints, i*CHUNK_SIZE, 
+				Math.min(gridPoints.size(), (i+1)*CHUNK_SIZE))).reduce(null, TOADGridSearch::bestResult);
+		if (best == null) {
 			return null;
 		}
+		PamVector bestPoint = gridPoints.get(best.index);
+		Chi2Data bestChi2 = best.chi2;
 
 		LatLong pos = geometry.getReferenceGPS().addDistanceMeters(bestPoint);
 		GroupLocResult glr = new GroupLocResult(pos, 0, bestChi2.getChi2());
@@ -121,6 +137,74 @@ public class TOADGridSearch extends TOADBaseAlgorithm {
 		GroupLocalisation groupLocalisation = new GroupLocalisation(groupDataUnit, glr);
 		return groupLocalisation;
 	}
+	
+	/**
+	 * Find the best point in a block of grid points. 
+	 * @param geometry array geometry
+	 * @param toadInformation TOAD information
+	 * @param gridPoints all grid points
+	 * @param i1 first point to test
+	 * @param i2 last point to test + 1
+	 * @return lowest chi2 point, or null if no points gave a chi2 value. 
+	 */
+	private GridResult searchChunk(SnapshotGeometry geometry, TOADInformation toadInformation, 
+			ArrayList<PamVector> gridPoints, int i1, int i2) {
+		GridResult best = null;
+		for (int i = i1; i < i2; i++) {
+			Chi2Data chi2 = calcChi2(geometry, toadInformation, gridPoints.get(i).getVector());
+			if (chi2 != null && chi2.getChi2() < (best == null ? Double.MAX_VALUE : best.chi2.getChi2())) {
+				best = new GridResult(i, chi2);
+			}
+		}
+		return best;
+	}
+	
+	/**
+	 * Pick the better of two results. Where chi2 values are equal, the earlier 
+	 * grid point is taken, so the answer is the same as searching the grid in order. 
+	 */
+	private static GridResult bestResult(GridResult a, GridResult b) {
+		if (a == null) {
+			return b;
+		}
+		if (b == null) {
+			return a;
+		}
+		int comp = Double.compare(a.chi2.getChi2(), b.chi2.getChi2());
+		if (comp == 0) {
+			return a.index < b.index ? a : b;
+		}
+		return comp < 0 ? a : b;
+	}
+	
+	/**
+	 * Chi2 value for a grid point. 
+	 */
+	private static class GridResult {
+		
+		private int index;
+		
+		private Chi2Data chi2;
+
+		private GridResult(int index, Chi2Data chi2) {
+			this.index = index;
+			this.chi2 = chi2;
+		}
+	}
+
+	/**
+	 * @return true if grid points can be searched in parallel.
+	 */
+	public boolean isAllowParallel() {
+		return allowParallel;
+	}
+
+	/**
+	 * @param allowParallel set true to search grid points in parallel
+	 */
+	public void setAllowParallel(boolean allowParallel) {
+		this.allowParallel = allowParallel;
+	}
 
 
 }
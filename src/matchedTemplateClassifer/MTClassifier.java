@@ -2,6 +2,9 @@ package matchedTemplateClassifer;
 
 import java.io.Serializable;
 import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.jamdev.jdl4pam.utils.DLMatFile;
@@ -15,6 +18,7 @@ import PamModel.parametermanager.PrivatePamParameterData;
 import PamUtils.PamArrayUtils;
 import PamUtils.PamInterp;
 import PamUtils.complex.ComplexArray;
+import fftManager.FFTService;
 import fftManager.FastFFT;
 import us.hebi.matlab.mat.format.Mat5;
 import us.hebi.matlab.mat.types.Matrix;
@@ -62,15 +66,27 @@ public class MTClassifier implements Serializable, Cloneable, ManagedParameters
 		
 	
 	/**
-	 * The waveform match FFT
+	 * The waveform match FFT. Not set during classification, which may run in parallel, so 
+	 * use getTemplateSpectra(...) to get template spectra. 
 	 */
 	private ComplexArray waveformMatchFFT;
 	
 	/**
-	 * The waveform match FFT
+	 * The waveform reject FFT. Not set during classification, which may run in parallel, so 
+	 * use getTemplateSpectra(...) to get template spectra. 
 	 */
 	private ComplexArray waveformRejectFFT;
 	
+	/**
+	 * Conjugate match and reject template spectra, keyed by sample rate and FFT length. 
+	 */
+	private transient ConcurrentHashMap<Long, ComplexArray[]> templateSpectra; 
+	
+	/**
+	 * Maximum number of sample rate and FFT length combinations to hold template spectra for. 
+	 */
+	private static final int MAX_TEMPLATE_SPECTRA = 64; 
+	
 	/**
 	 * The waveform to match
 	 */
@@ -123,41 +139,74 @@ public class MTClassifier implements Serializable, Cloneable, ManagedParameters
 	 * Get the match waveform FFT for the sampleRate.
 	 * @param fftLength - the FFTlength to use. Bins around waveform peak are used. 
 	 * @param sR - the sample rate in samples per second
+	 * @return the complex conjugate of the match template FFT. 
 	 */
 	public ComplexArray getWaveformMatchFFT(float sR, int length) {
-		if (waveformMatchFFT==null || currentSr!=sR) {
-			if (fft==null) fft=new FastFFT();
-			
-			
-//			System.out.println("interpWaveform: " + waveformMatch.waveform.length + " sR " + waveformMatch.sR);
+		return getTemplateSpectra(sR, length)[0]; 
+	}
+	
+	/**
+	 * Get the conjugate match and reject template spectra for a sample rate and FFT length. These 
+	 * are calculated the first time they are needed and then held, so clicks of different lengths or 
+	 * sample rates each get correctly sized templates without recalculating them for every click.  
+	 * @param sR - the sample rate in samples per second
+	 * @param length - the FFT length. 
+	 * @return the conjugate match template FFT and the conjugate reject template FFT. 
+	 */
+	public ComplexArray[] getTemplateSpectra(float sR, int length) {
+		ConcurrentHashMap<Long, ComplexArray[]> spectra = templateSpectra;
+		if (spectra == null) {
+			synchronized (this) {
+				if (templateSpectra == null) templateSpectra = new ConcurrentHashMap<Long, ComplexArray[]>(); 
+				spectra = templateSpectra; 
+			}
+		}
+		Long key = ((long) Float.floatToIntBits(sR) << 32) | (length & 0xFFFFFFFFL); 
+		ComplexArray[] templates = spectra.get(key);
+		if (templates == null) {
+			templates = makeTemplateSpectra(sR, length); 
+			if (spectra.size() >= MAX_TEMPLATE_SPECTRA) {
+				spectra.clear();
+			}
+			spectra.put(key, templates); 
+		}
+		return templates; 
+	}
+	
+	/**
+	 * Interpolate, normalise and FFT the match and reject templates. 
+	 * @param sR - the sample rate in samples per second
+	 * @param length - the FFT length. 
+	 * @return the conjugate match template FFT and the conjugate reject template FFT. 
+	 */
+	private synchronized ComplexArray[] makeTemplateSpectra(float sR, int length) {
+		if (fft==null) fft=new FastFFT();
 
-			//re-sample the waveform if the sample rate is different
-			this.interpWaveformMatch=interpWaveform(this.waveformMatch, sR); 
-			
-			
-			//normalise
-			//this.interpWaveformMatch=PamArrayUtils.normalise(interpWaveformMatch);
-			
-			//this.inteprWaveformReject=PamArrayUtils.divide(interpWaveformMatch, PamArrayUtils.max(interpWaveformMatch));
-			this.interpWaveformMatch = normaliseWaveform(interpWaveformMatch, this.normalisation);
-			
-			//System.out.println("interpWaveformMatch: " + interpWaveformMatch.length + " sR " + sR + " max: " + PamArrayUtils.max(interpWaveformMatch));
-			
-			/**
-			 * There is an issue here because, if we have a long template waveform, then it
-			 * will become truncated and the actual waveform may be missed. This means we
-			 * have to use the peak of the template
-			 */
-			waveformMatchFFT = calcTemplateFFT(interpWaveformMatch,  length); 
-			
-			//need to calculate the complex conjugate - note that originally I was flipping the array but this means 
-			//the max value does not equal one with identical waveforms...doh. 
-			waveformMatchFFT = waveformMatchFFT.conj();
-//			System.out.println("waveformMatch: " + waveformMatch.waveform.length + 
-//					" interpWaveformMatch: " + interpWaveformMatch.length + " for " +sR + " sr "); 
+		//re-sample and normalise the waveforms. Kept local since clicks may be classified in parallel. 
+		double[] matchWaveform = getNormalisedTemplate(this.waveformMatch, sR); 
+		double[] rejectWaveform = getNormalisedTemplate(this.waveformReject, sR);
 
-		}
-		return waveformMatchFFT; 
+		/**
+		 * There is an issue here because, if we have a long template waveform, then it
+		 * will become truncated and the actual waveform may be missed. This means we
+		 * have to use the peak of the template
+		 */
+		//need to calculate the complex conjugate - note that originally I was flipping the array but this means 
+		//the max value does not equal one with identical waveforms...doh. 
+		ComplexArray matchFFT = calcTemplateFFT(matchWaveform,  length).conj(); 
+		ComplexArray rejectFFT = calcTemplateFFT(rejectWaveform,  length).conj(); 
+
+		return new ComplexArray[] {matchFFT, rejectFFT}; 
+	}
+	
+	/**
+	 * Interpolate a template to a sample rate and normalise it. 
+	 * @param template - the match or reject template. 
+	 * @param sR - the sample rate in samples per second
+	 * @return the interpolated and normalised template waveform. 
+	 */
+	private double[] getNormalisedTemplate(MatchTemplate template, float sR) {
+		return normaliseWaveform(interpWaveform(template, sR), this.normalisation);
 	}
 	
 	
@@ -201,42 +250,10 @@ public class MTClassifier implements Serializable, Cloneable, ManagedParameters
 	/**
 	 * Get the match waveform for the sample rate 
 	 * @param sR - the sample rate in samples per second
+	 * @return the complex conjugate of the reject template FFT. 
 	 */
 	public ComplexArray getWaveformRejectFFT(float sR, int length) {
-		if (waveformRejectFFT==null || currentSr!=sR) {
-			if (fft==null) fft=new FastFFT();
-			
-			//re-sample the waveform
-			this.inteprWaveformReject=interpWaveform(this.waveformReject, sR);
-			
-//			System.out.println("MatchNorm: REJECT BEFORE INTERP");
-//			MTClassifierTest.printWaveform(waveformReject.waveform);
-//			System.out.println("MatchNorm: REJECT AFTER INTERP");
-//			MTClassifierTest.printWaveform(inteprWaveformReject);
-
-			//normalise
-//			this.inteprWaveformReject=PamArrayUtils.normalise(inteprWaveformReject);
-			
-//			this.inteprWaveformReject=PamArrayUtils.divide(inteprWaveformReject, PamArrayUtils.max(inteprWaveformReject));
-			this.inteprWaveformReject = normaliseWaveform(inteprWaveformReject, this.normalisation);
-
-//			System.out.println("MatchNorm: REJECT ");
-//			MTClassifierTest.normalizeTest(inteprWaveformReject);
-//			MTClassifierTest.printWaveform(inteprWaveformReject);
-			
-			/**
-			 * There is an issue here because, if we have a long template waveform, then it
-			 * will become truncated and the actual waveform may be missed. This means we
-			 * have to use the peak of the template
-			 */
-			waveformRejectFFT = calcTemplateFFT(inteprWaveformReject,  length); 
-
-			
-			//need to calculate the complex conjugate - note that originally I was flipping the array but this means 
-			//the max value does not equal one with identical waveforms...doh. 
-			waveformRejectFFT = waveformRejectFFT.conj(); 
-		}
-		return waveformRejectFFT; 
+		return getTemplateSpectra(sR, length)[1]; 
 	}
 	
 	/**
@@ -286,6 +303,7 @@ public class MTClassifier implements Serializable, Cloneable, ManagedParameters
 	public void reset() {
 		waveformMatchFFT=null; 
 		waveformRejectFFT=null;
+		templateSpectra=null; 
 		inteprWaveformReject=null; 
 		interpWaveformMatch=null; 
 	}
@@ -297,6 +315,7 @@ public class MTClassifier implements Serializable, Cloneable, ManagedParameters
 	private void interpTamplateWaveforms(float sR) {
 		this.inteprWaveformReject=interpWaveform(this.waveformReject, sR); 
 		this.interpWaveformMatch=interpWaveform(this.waveformMatch, sR); 
+		currentSr=sR;
 	}
 	
 	/**
@@ -354,8 +373,8 @@ public class MTClassifier implements Serializable, Cloneable, ManagedParameters
 		}
 		
 		//add data to struct her ebecause some arrays get overwritten
-		mlStruct.set("match_template_waveform", DLMatFile.array2Matrix(this.interpWaveformMatch));
-		mlStruct.set("reject_template_waveform", DLMatFile.array2Matrix(this.inteprWaveformReject));
+		mlStruct.set("match_template_waveform", DLMatFile.array2Matrix(getNormalisedTemplate(this.waveformMatch, sR)));
+		mlStruct.set("reject_template_waveform", DLMatFile.array2Matrix(getNormalisedTemplate(this.waveformReject, sR)));
 
 		//add data to struct her ebecause some arrays get overwritten
 		mlStruct.set("match_template_fft",  complexArray2MLArray(matchTemplate));
@@ -420,18 +439,7 @@ public class MTClassifier implements Serializable, Cloneable, ManagedParameters
 	 */
 	public MatchedTemplateResult calcCorrelationMatch(ComplexArray click, float sR) {
 		
-		//set the stored sR
-		currentSr=sR;
-		
-//		System.out.println("Waveform click: len: " + click.length()); 
-
-		//System.out.println("Waveform Reject max: " + PamArrayUtils.max(this.inteprWaveformReject)+ " len " + interpWaveformMatch.length); 
-
-		//int fftLength = getFFTLength(sR);
-		//int fftLength = this.getFFTLength(sR); 
-		
-		//System.out.println("click: Waveform click: " + click.length()); 
-
+		// nothing is stored here since clicks may be classified in parallel. 
 	
 		/**
 		 * 10/11/2021 An FFT length based on sample rate was being use for some reason but this will never 
@@ -440,74 +448,18 @@ public class MTClassifier implements Serializable, Cloneable, ManagedParameters
 		 */
 		int fftLength = click.length()*2;
 		
-		ComplexArray matchResult= new ComplexArray(fftLength); 
-		ComplexArray matchTemplate = getWaveformMatchFFT(sR,fftLength); //remember this is the  complex conjugate
+		ComplexArray[] templates = getTemplateSpectra(sR, fftLength); //remember these are the complex conjugates
 		
-//		System.out.println("matchTemplate interp: len: " + interpWaveformMatch.length+ " max: " +  PamArrayUtils.max(interpWaveformMatch)); 
-//		System.out.println("matchTemplate: len: " + waveformMatch.waveform.length+ " max: " +  PamArrayUtils.max(waveformMatch.waveform)); 
-//		System.out.println("matchTemplate interp: len: " + interpWaveformMatch.length+ " max: " +  PamArrayUtils.max(interpWaveformMatch)); 
-
-//		System.out.println("matchTemplate len: " + matchTemplate.length() + " click.length(): "  +click.length()); 
-		for (int i=0; i<Math.min(matchTemplate.length(), click.length()); i++) {
-			matchResult.set(i, click.get(i).times(matchTemplate.get(i)));
-		}
-		
-		ComplexArray rejectResult= new ComplexArray(fftLength); 
-		ComplexArray rejectTemplate = getWaveformRejectFFT(sR, fftLength); //remember this is the  complex conjugate
-		for (int i=0; i<Math.min(rejectTemplate.length(), click.length()); i++) {
-			rejectResult.set(i, click.get(i).times(rejectTemplate.get(i)));
-		}
-		
-//		System.out.println("Waveform Match max: " + PamArrayUtils.max(this.interpWaveformMatch)); 
-//		System.out.println("Waveform Reject max: " + PamArrayUtils.max(this.inteprWaveformReject)); 
-		
-		//System.out.println("Click input: " + click.length() + " click template: " + matchTemplate.length());
-
-		//must use scaling to get the same result as MATLAB 
-		if (fft==null) fft= new FastFFT();
-		fft.ifft(matchResult,  fftLength, true);
-		fft.ifft(rejectResult, fftLength, true);
-
-		//System.out.println("Inverse MATCH RESULTS");
-	
-		//need to take the real part of the result and multiply by 2 to get same as 
-		//ifft function in MATLAB - dunno why this is...
-		double[] matchReal = new double[matchResult.length()]; 
-		double[] rejectReal = new double[rejectResult.length()]; 
-		
-		for (int i=0; i<matchResult.length(); i++) {
-			matchReal[i]=2*matchResult.getReal(i); 
-			rejectReal[i]=2*rejectResult.getReal(i); 
-			//System.out.println("iFFt match result: " + matchResult.get(i) + " iFFT rejectResult: " + rejectResult.get(i) );
-		}
-		
-//		System.out.println("iFFT Real MATCH");
-//		MTClassifierTest.printWaveform(matchReal);
-//		System.out.println("-------------------------------------");
-//		System.out.println("iFFT Real REJECT");
-//		MTClassifierTest.printWaveform(rejectReal);
-		
-
-		double maxmatch=PamArrayUtils.max(matchReal); 
-		double maxreject=PamArrayUtils.max(rejectReal); 
-		
-		
-//		//TEST
-//		if (correlations==null) correlations=new Correlations(); 
-//		TimeDelayData matchResultTD = correlations.getDelay(click,  matchTemplate.conj(), null, sR,  fftLength); 
-//		System.out.println("Old xcorr method: " + maxmatch + " new PG method: " + matchResultTD.getDelayScore()); 
-		
-//		//TEST
+		double maxmatch = maxCorrelation(click, templates[0]); 
+		double maxreject = maxCorrelation(click, templates[1]); 
 		
 		//if the reject template is set to "none" then reject template will return a NaN 
-		//TODO bit messy and inefficient. 
 		double result; 
-//		double maxReject = PamArrayUtils.max(rejectReal); 
 		if (Double.isNaN(maxreject)) {
-			result = PamArrayUtils.max(matchReal);
+			result = maxmatch;
 		}
 		else {
-			result = PamArrayUtils.max(matchReal)-maxreject; 
+			result = maxmatch-maxreject; 
 		}
 
 //		System.out.println("Match corr " + maxmatch + " Reject Corr: " + maxreject);
@@ -520,6 +472,55 @@ public class MTClassifier implements Serializable, Cloneable, ManagedParameters
 		return matchTmpResult;
 	}
 	
+	/**
+	 * Get the maximum of the cross correlation between a click and a template. 
+	 * <p>
+	 * This used to multiply the spectra into a complex array twice the length of the click spectrum, 
+	 * leaving the upper half empty, then do a full complex inverse FFT and take twice the real part, 
+	 * to get the same as MATLAB. Twice the real part of the inverse of a one sided spectrum is the same
+	 * as the real inverse FFT of that spectrum with its first bin doubled and no Nyquist bin, so that's 
+	 * what's done here, using half the memory and a real FFT in a per thread work array.  
+	 * @param click - the click FFT (first half of the FFT of real data). 
+	 * @param template - the conjugate template FFT, the same length as the click FFT. 
+	 * @return the maximum correlation value. 
+	 */
+	private static double maxCorrelation(ComplexArray click, ComplexArray template) {
+		int fftLength = click.length()*2;
+		int n = Math.min(click.length(), template.length()); 
+		double[] c = click.getData();
+		double[] t = template.getData();
+		double[] out = FFTService.getInstance().getScratch(fftLength); 
+		Arrays.fill(out, 0.);
+		for (int i=0, re=0, im=1; i<n; i++, re+=2, im+=2) {
+			out[re] = c[re]*t[re] - c[im]*t[im]; 
+			out[im] = c[re]*t[im] + c[im]*t[re]; 
+		}
+		if (n > 0) {
+			//the first bin is real in the output and the second holds the Nyquist bin which is empty. 
+			out[0] *= 2; 
+			out[1] = 0; 
+		}
+		FFTService.getInstance().getPlan(fftLength).realInverse(out, true);
+		return PamArrayUtils.max(out); 
+	}
+	
+	/**
+	 * Calculate the correlation results of a click against several classifiers. The click spectrum
+	 * only needs to be calculated once for all of the classifiers. This can be called from several 
+	 * threads at the same time. 
+	 * @param classifiers - the classifiers. 
+	 * @param click - the click FFT. 
+	 * @param sR - the sample rate in samples per second
+	 * @return the result for each classifier. 
+	 */
+	public static MatchedTemplateResult[] calcCorrelationMatch(List<MTClassifier> classifiers, ComplexArray click, float sR) {
+		MatchedTemplateResult[] results = new MatchedTemplateResult[classifiers.size()]; 
+		for (int i=0; i<results.length; i++) {
+			results[i] = classifiers.get(i).calcCorrelationMatch(click, sR); 
+		}
+		return results; 
+	}
+	
 	
 	/**
 	 * Get the match waveform for the sample rate 
@@ -612,6 +613,8 @@ public class MTClassifier implements Serializable, Cloneable, ManagedParameters
 		MTClassifier newParams = null;
 		try {
 			newParams = (MTClassifier) super.clone();
+			//the clone's templates may be changed so it needs its own template spectra. 
+			newParams.templateSpectra = null; 
 		}
 		catch(CloneNotSupportedException Ex) {
 			Ex.printStackTrace(); 
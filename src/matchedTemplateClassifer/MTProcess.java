@@ -2,6 +2,11 @@ package matchedTemplateClassifer;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
 
 import PamController.PamController;
 import PamUtils.complex.ComplexArray;
@@ -15,7 +20,7 @@ import Spectrogram.WindowFunction;
 import clickDetector.ClickDetection;
 import clickDetector.ClickLength;
 import clickDetector.ClickClassifiers.basicSweep.SweepClassifierSet;
-import fftManager.FastFFT;
+import fftManager.FFTService;
 import matchedTemplateClassifer.annotation.MatchedClickAnnotation;
 import matchedTemplateClassifer.annotation.MatchedClickAnnotationType;
 import matchedTemplateClassifer.bespokeClassification.BeskopeClassifierManager;
@@ -63,14 +68,9 @@ public class MTProcess extends PamInstantProcess {
 //	private FastFFT fastFFT = new FastFFT();
 
 	/**
-	 * Click length calculation
+	 * Click length calculation. One per thread since clicks may be classified in parallel. 
 	 */
-	private ClickLength clickLength = new ClickLength(); 
-
-	/**
-	 * The length data of the last click in channels and start sample, end sample. 
-	 */
-	private int[][] lengthData;
+	private ThreadLocal<ClickLength> clickLength = ThreadLocal.withInitial(ClickLength::new); 
 
 	private BeskopeClassifierManager bespokeClassifierManager; 
 
@@ -143,12 +143,112 @@ public class MTProcess extends PamInstantProcess {
 	 * @param clickDetection - the incoming click.
 	 */
 	public void newClickData(PamDataUnit clickDetection) {
+		applyClickResult(clickDetection, calcClickResult(clickDetection));
+	}
+	
+	/**
+	 * Classification results for a single click, which have been calculated but not yet
+	 * added to the click. 
+	 */
+	public static class MTClickResult {
+		
+		/**
+		 * Results for each classifier. 
+		 */
+		private MatchedTemplateResult[] matchedClickResult;
+		
+		/**
+		 * True if the click is classified. 
+		 */
+		private boolean classify;
+		
+		private MTClickResult(MatchedTemplateResult[] matchedClickResult, boolean classify) {
+			this.matchedClickResult = matchedClickResult;
+			this.classify = classify;
+		}
+		
+		/**
+		 * @return true if the click passed the classifier. 
+		 */
+		public boolean isClassified() {
+			return classify;
+		}
+	}
+	
+	/**
+	 * Calculate classification results for a block of clicks, e.g. all the clicks loaded
+	 * in the viewer. The clicks are classified in parallel and each click spectrum is
+	 * only calculated once for all classifiers. Nothing is added to the clicks, so the
+	 * results should be added with applyClickResult(...) from the thread which owns the
+	 * clicks.
+	 * @param clicks - the clicks to classify. 
+	 * @return the results for each click. Clicks which could not be classified are left out. 
+	 */
+	public IdentityHashMap<PamDataUnit, MTClickResult> calcBatchResults(List<? extends PamDataUnit> clicks) {
+		MTClickResult[] results = new MTClickResult[clicks.size()];
+		AtomicInteger nErrors = new AtomicInteger(); 
+		AtomicReference<Exception> firstError = new AtomicReference<Exception>(); 
+		IntStream.range(0, clicks.size()).parallel().forEach(i -> {
+			PamDataUnit click = clicks.get(i);
+			if (click instanceof RawDataHolder == false || click.getParentDataBlock() == null) {
+				return;
+			}
+			try {
+				results[i] = calcClickResult(click);
+			}
+			catch (Exception e) {
+				// leave it to be classified on its own. 
+				nErrors.incrementAndGet(); 
+				firstError.compareAndSet(null, e); 
+			}
+		});
+		if (nErrors.get() > 0) {
+			// report once rather than for every click. 
+			System.out.printf("Matched click classifier: %d of %d clicks could not be classified in a batch and will be classified individually\n", 
+					nErrors.get(), clicks.size());
+			firstError.get().printStackTrace();
+		}
+		IdentityHashMap<PamDataUnit, MTClickResult> resultMap = new IdentityHashMap<PamDataUnit, MTClickResult>(); 
+		for (int i=0; i<results.length; i++) {
+			if (results[i] != null) {
+				resultMap.put(clicks.get(i), results[i]);
+			}
+		}
+		return resultMap; 
+	}
+	
+	/**
+	 * Classify a block of clicks. Results are calculated in parallel and then added to
+	 * each click in order. 
+	 * @param clicks - the clicks to classify. 
+	 */
+	public void classifyBatch(List<? extends PamDataUnit> clicks) {
+		IdentityHashMap<PamDataUnit, MTClickResult> results = calcBatchResults(clicks); 
+		for (PamDataUnit click : clicks) {
+			MTClickResult result = results.get(click); 
+			if (result == null) {
+				newClickData(click);
+			}
+			else {
+				applyClickResult(click, result);
+			}
+		}
+	}
+
+	/**
+	 * Calculate the classification results for a click without changing the click. This 
+	 * can be called from several threads at the same time. 
+	 * @param clickDetection - the click. 
+	 * @return the classification results. 
+	 */
+	public MTClickResult calcClickResult(PamDataUnit clickDetection) {
 		
 		//System.out.println("clickDetection: " + clickDetection.getUID());
 
 		boolean[] channelClassify;
 		boolean classify = false;
 		int classifyCount = 0;
+		int[][] lengthData = null; 
 
 		//this is the master result which holds all results from the various templates
 		MatchedTemplateResult[] matchedClickResult= new  MatchedTemplateResult[mtControl.getMTParams().classifiers.size()]; 
@@ -159,7 +259,7 @@ public class MTProcess extends PamInstantProcess {
 //		this.mtControl.getMTParams().lengthdB=6;
 
 		if (this.mtControl.getMTParams().peakSearch) {
-			calcLengthData(clickDetection);
+			lengthData = calcLengthData(clickDetection);
 			//					//Print out the length data
 			//					System.out.println("Generate length data: ");
 			//					for (int i=0; i<this.lengthData.length; i++) {
@@ -175,11 +275,11 @@ public class MTProcess extends PamInstantProcess {
 		double[][] waveData = ((RawDataHolder) clickDetection).getWaveData();
 		
 		double[] waveDataChan;
-		ArrayList<MatchedTemplateResult> aResult; 
+		MatchedTemplateResult[] aResult; 
 
 		for (int i=0; i<waveData.length; i++) {
 
-			waveDataChan = getWaveData(((RawDataHolder) clickDetection),  i);
+			waveDataChan = getWaveData(((RawDataHolder) clickDetection),  i, lengthData);
 
 			aResult= classifyDetection(waveDataChan, clickDetection.getParentDataBlock().getSampleRate());
 
@@ -187,16 +287,16 @@ public class MTProcess extends PamInstantProcess {
 			channelClassify = new boolean[mtControl.getMTParams().classifiers.size()];
 			
 			//now for each template combination we find the results which has the highest threshold 
-			for (int j=0; j<aResult.size(); j++) {
-				if (matchedClickResult[j]==null) matchedClickResult[j]=aResult.get(j); 
+			for (int j=0; j<aResult.length; j++) {
+				if (matchedClickResult[j]==null) matchedClickResult[j]=aResult[j]; 
 
 				//set max threshold as the threshold value. 
-				if (aResult.get(j).threshold>matchedClickResult[j].threshold) {
-					matchedClickResult[j]=aResult.get(j); 
+				if (aResult[j].threshold>matchedClickResult[j].threshold) {
+					matchedClickResult[j]=aResult[j]; 
 				}
 	
 				//check whether classification has occurred. 
-				channelClassify[j]=isClassified(aResult.get(j), j); 
+				channelClassify[j]=isClassified(aResult[j], j); 
 			}
 			
 			//now check whether classification on one channel is OK and if not record the classification result 
@@ -221,8 +321,20 @@ public class MTProcess extends PamInstantProcess {
 		}
 		
 
+		return new MTClickResult(matchedClickResult, classify); 
+	}
+	
+	/**
+	 * Add classification results to a click. 
+	 * @param clickDetection - the click. 
+	 * @param result - the classification results for the click. 
+	 */
+	public void applyClickResult(PamDataUnit clickDetection, MTClickResult result) {
+		
+		MatchedTemplateResult[] matchedClickResult = result.matchedClickResult; 
+
 		//set bespoke data unit specific classification flags. 
-		bespokeClassifierManager.bespokeDataUnitFlags(clickDetection,  classify);
+		bespokeClassifierManager.bespokeDataUnitFlags(clickDetection,  result.classify);
 	
 		//System.out.println("Add annotation: "); 
 		// add the matched click classifier annotation. 
@@ -249,9 +361,9 @@ public class MTProcess extends PamInstantProcess {
 	 * Better to call getLengthData which will only call this if it
 	 * really has to. 
 	 * @param click click
-	 * @param scs classifier settings
+	 * @return the length data in channels and start sample, end sample. 
 	 */
-	private synchronized void calcLengthData(PamDataUnit click) {
+	private int[][] calcLengthData(PamDataUnit click) {
 
 		int[][] tempLengthData;
 //		if (click instanceof ClickDetection) {
@@ -263,7 +375,7 @@ public class MTProcess extends PamInstantProcess {
 //		}
 //		else {
 			//generic calculation of length for a RawDataHolder
-			tempLengthData=clickLength.lengthData(click, this.mtControl.getMTParams().lengthdB, 
+			tempLengthData=clickLength.get().lengthData(click, this.mtControl.getMTParams().lengthdB, 
 					this.mtControl.getMTParams().peakSmoothing); 
 //		}
 		
@@ -274,17 +386,18 @@ public class MTProcess extends PamInstantProcess {
 //		PamArrayUtils.printArray(tempLengthData2);
 //		System.out.println("----------------------");
 
-		lengthData = tempLengthData;
+		return tempLengthData;
 	}
 
 	/**
 	 * Get wave data for a click- handles sampling around peaks to get rid of white noise. 
 	 * @param clickDetection - the click detection 
 	 * @param i - the index of the wave data 
+	 * @param lengthData - the length data for the click if the peak search is used. 
 	 * @return the wave data 
 	 */
 	@SuppressWarnings("unused")
-	private double[] getWaveData(RawDataHolder clickDetection, int i) {
+	private double[] getWaveData(RawDataHolder clickDetection, int i, int[][] lengthData) {
 		double[] waveform; 
 		
 		if (this.getMTParams().peakSearch) {
@@ -388,10 +501,12 @@ public class MTProcess extends PamInstantProcess {
 
 
 	private double[] getWindow(int len) {
-		if (window == null ||window.length != len) {
-			window = WindowFunction.hann(len);
+		double[] win = window; 
+		if (win == null || win.length != len) {
+			win = WindowFunction.hann(len);
+			window = win; 
 		}
-		return window;
+		return win;
 	}
 
 
@@ -408,59 +523,20 @@ public class MTProcess extends PamInstantProcess {
 	//the difference in correlation vales between the reject and match templates. 
 
 
-	ComplexArray clickFFT; 
 	/**
 	 * Classify a click. 
 	 * @param clickWaveform  - the waveform to correlate with reject and match templates. 
 	 * @return an array containing results from all match template classifiers 
 	 */
-	private ArrayList<MatchedTemplateResult> classifyDetection(double[] clickWaveform, float sR) {
-
-		ArrayList<MatchedTemplateResult> results = new ArrayList<MatchedTemplateResult>();
-		
-//		System.out.println("Click waveform max: " + PamArrayUtils.max(clickWaveform) + " sample rate: " + sR); 
+	private MatchedTemplateResult[] classifyDetection(double[] clickWaveform, float sR) {
 		
 		//normalisation and picking peak has already been performed
 
-		//multiple templates means that we have multiple results. 
-		MTClassifier classifier;
-		ComplexArray matchClick;
-		MatchedTemplateResult matchResult;
-		FastFFT fft;
-		//int fftSize;
-		for (int i=0; i<mtControl.getMTParams().classifiers.size(); i++) {
-
-			classifier = mtControl.getMTParams().classifiers.get(i);
-			//		int fftLength = classifier.getFFTLength(sR);
-			//if the template's FFT size is smaller then might only be grabbing a non peak section 
-			//of the click 
-			//		if (fftLength<clickWaveform.length) {
-			//			clickWaveform=MTClassifier.conditionClickLength(clickWaveform, fftLength, pamControlledUnit.getMTParams().peakSmoothing);
-			//		}
-
-			//calculate the click FFT. 
-			fft = new FastFFT(); 
-			//int fftSize = FastFFT.nextBinaryExp(testWaveform.length/2);
-
-			//fftSize = classifier.getFFTLength(sR); 
-			matchClick = fft.rfft(clickWaveform, clickWaveform.length);
-			
-			//System.out.println("clickWaveform: " +clickWaveform.length + " " + matchClick.length()); 
-
-			//calculate the correlation coefficient.
-			matchResult = classifier.calcCorrelationMatch(matchClick, sR);
+		//calculate the click FFT once for all the templates. 
+		ComplexArray matchClick = FFTService.getInstance().rfft(clickWaveform, clickWaveform.length);
 
-			results.add(matchResult); 
-		}
-
-		return results; 
-		//		//TESTING ONLY. Randomly classify 50% of clicks. 
-		//		if (Math.random()<0.5) {
-		//			return 0; 
-		//		}
-		//		else {
-		//			return 101; 
-		//		}
+		//multiple templates means that we have multiple results. 
+		return MTClassifier.calcCorrelationMatch(mtControl.getMTParams().classifiers, matchClick, sR); 
 	}
 
 
@@ -1,11 +1,14 @@
 package matchedTemplateClassifer.offline;
 
+import java.util.IdentityHashMap;
+
 import PamController.PamController;
 import PamguardMVC.PamDataUnit;
 import binaryFileStorage.DataUnitFileInformation;
 import clickDetector.ClickDetection;
 import dataMap.OfflineDataMapPoint;
 import matchedTemplateClassifer.MTClassifierControl;
+import matchedTemplateClassifer.MTProcess.MTClickResult;
 import offlineProcessing.OfflineTask;
 
 /**
@@ -22,6 +25,12 @@ public class MTClassifierOfflineTask extends OfflineTask<PamDataUnit<?,?>> {
 
 	private int count=0; 
 
+	/**
+	 * Results calculated in parallel for all the clicks in the current data load, 
+	 * which are added to each click as it's processed. 
+	 */
+	private IdentityHashMap<PamDataUnit, MTClickResult> batchResults; 
+
 	/** 
 	 * Constructor for the click train offline processing
 	 * @param clickTrainContol - the click train control. 
@@ -45,7 +54,13 @@ public class MTClassifierOfflineTask extends OfflineTask<PamDataUnit<?,?>> {
 
 
 			count++;
-			mtClassifierControl.getMTProcess().newClickData(dataUnit); 
+			MTClickResult result = batchResults == null ? null : batchResults.remove(dataUnit); 
+			if (result != null) {
+				mtClassifierControl.getMTProcess().applyClickResult(dataUnit, result);
+			}
+			else {
+				mtClassifierControl.getMTProcess().newClickData(dataUnit); 
+			}
 
 			//since an annotation has been added might need to do this so that the data unit is actually saved. 
 			DataUnitFileInformation fileInfo = dataUnit.getDataUnitFileInformation();
@@ -96,6 +111,7 @@ public class MTClassifierOfflineTask extends OfflineTask<PamDataUnit<?,?>> {
 	 */
 	@Override
 	public void completeTask() { 
+		batchResults = null; 
 		mtClassifierControl.update(MTClassifierControl.PROCESSING_END);
 	}
 
@@ -103,13 +119,22 @@ public class MTClassifierOfflineTask extends OfflineTask<PamDataUnit<?,?>> {
 	public void newDataLoad(long startTime, long endTime, OfflineDataMapPoint mapPoint) {
 		mtClassifierControl.update(MTClassifierControl.PROCESSING_START);
 		// called whenever new data is loaded. 
-
+		
+		/*
+		 * Classify all the loaded clicks in one go, in parallel, before they are processed one at a 
+		 * time. Clicks which are then processed get these results, anything else (e.g. if data 
+		 * are processed without a new load) is classified when it's processed. 
+		 */
+		if (getDataBlock() != null) {
+			batchResults = mtClassifierControl.getMTProcess().calcBatchResults(getDataBlock().getDataCopy()); 
+		}
 	}
 
 	@Override
 	public void loadedDataComplete() {
 		// called whenever the data load is complete
 		//clickTrainControl.update(ClickTrainControl.PROCESSING_START);
+		batchResults = null; 
 	}
 
 	/**
@@ -0,0 +1,172 @@
+package networkTransfer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import networkTransfer.receive.NetworkReceiveThread;
+
+/**
+ * Functions to pack and unpack batches of network objects.
+ * <p>
+ * A batch is sent as a single normal network object with dataType1 = NetworkReceiver.NET_BATCH_DATA
+ * and dataType2 = the number of objects in the batch. The data are a 12 byte header
+ * (int flags, int number of objects, int uncompressed length) followed by the complete packed
+ * objects, each with their own normal header (see NetworkObjectPacker), one after the other.
+ * If the FLAG_DEFLATE flag is set the packed objects are compressed with java.util.zip.Deflater.
+ * <p>
+ * Only PAMGuard receivers which know about batches can read them, so batches are only
+ * sent by the NIOSendClient.
+ */
+public class NetworkBatch {
+
+	/**
+	 * Batch data are compressed using a Deflater.
+	 */
+	public static final int FLAG_DEFLATE = 0x1;
+
+	/**
+	 * Size of the batch header at the start of the batch data.
+	 */
+	public static final int BATCH_HEADER_SIZE = 12;
+
+	/**
+	 * Size of the header in front of each packed object, including the start flag.
+	 */
+	public static final int OBJECT_HEADER_SIZE = 24;
+
+	/**
+	 * Largest uncompressed batch that will be packed or unpacked. The same as the largest 
+	 * object the NIO receiver will read. 
+	 */
+	public static final int MAX_BATCH_LENGTH = 64*1024*1024;
+
+	/**
+	 * Deflate can't compress by more than about 1032:1, so a batch claiming to inflate 
+	 * to more than this many times its compressed size must be corrupt. 
+	 */
+	public static final int MAX_DEFLATE_RATIO = 1032;
+
+	/**
+	 * Size of chunks data are inflated in, so that memory is only taken as real data arrive, 
+	 * not just because the header says so. 
+	 */
+	private static final int INFLATE_CHUNK = 65536;
+
+	/**
+	 * Make the data for a batch object.
+	 * @param objects packed objects, one after the other
+	 * @param length total length of the packed objects in bytes
+	 * @param nObjects number of objects
+	 * @param deflater deflater to compress the data with, or null for no compression. Compressed
+	 * data are only used if they are smaller than the original.
+	 * @return data for the batch object.
+	 * @throws IllegalArgumentException if length is negative, longer than the objects array
+	 * or more than MAX_BATCH_LENGTH. 
+	 */
+	public static byte[] packBatch(byte[] objects, int length, int nObjects, Deflater deflater) {
+		if (length < 0 || length > objects.length || length > MAX_BATCH_LENGTH) {
+			throw new IllegalArgumentException("Invalid network batch length " + length);
+		}
+		int flags = 0;
+		byte[] payload = objects;
+		int payloadLength = length;
+		if (deflater != null) {
+			deflater.reset();
+			deflater.setInput(objects, 0, length);
+			deflater.finish();
+			byte[] compressed = new byte[length];
+			int n = 0;
+			while (!deflater.finished() && n < compressed.length) {
+				n += deflater.deflate(compressed, n, compressed.length-n);
+			}
+			if (deflater.finished() && n < length) {
+				flags |= FLAG_DEFLATE;
+				payload = compressed;
+				payloadLength = n;
+			}
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(BATCH_HEADER_SIZE + payloadLength);
+		buffer.putInt(flags);
+		buffer.putInt(nObjects);
+		buffer.putInt(length);
+		buffer.put(payload, 0, payloadLength);
+		return buffer.array();
+	}
+
+	/**
+	 * Unpack the objects in a batch. The unpacked objects get the same socket as the batch.
+	 * @param batch batch object
+	 * @return list of objects in the batch.
+	 * @throws IOException if the batch is corrupt.
+	 */
+	public static List<NetworkObject> unpackBatch(NetworkObject batch) throws IOException {
+		byte[] data = batch.getData();
+		int dataLength = Math.min(data.length, batch.getDataLength());
+		if (dataLength < BATCH_HEADER_SIZE) {
+			throw new IOException("Network batch too short: " + dataLength + " bytes");
+		}
+		ByteBuffer header = ByteBuffer.wrap(data, 0, BATCH_HEADER_SIZE);
+		int flags = header.getInt();
+		int nObjects = header.getInt();
+		int length = header.getInt();
+		if (length < 0 || nObjects < 0 || length > MAX_BATCH_LENGTH) {
+			throw new IOException(String.format("Invalid network batch header: length %d, %d objects", length, nObjects));
+		}
+		ByteBuffer objects;
+		if ((flags & FLAG_DEFLATE) != 0) {
+			int compressedLength = dataLength-BATCH_HEADER_SIZE;
+			if ((long) length > (long) compressedLength * MAX_DEFLATE_RATIO) {
+				throw new IOException(String.format("Network batch of %d bytes can't inflate to %d bytes", 
+						compressedLength, length));
+			}
+			ByteArrayOutputStream inflated = new ByteArrayOutputStream(Math.min(length, INFLATE_CHUNK));
+			byte[] chunk = new byte[Math.min(length, INFLATE_CHUNK)];
+			Inflater inflater = new Inflater();
+			try {
+				inflater.setInput(data, BATCH_HEADER_SIZE, compressedLength);
+				int n = 0;
+				while (n < length && !inflater.finished()) {
+					int got = inflater.inflate(chunk, 0, Math.min(chunk.length, length-n));
+					if (got == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+						break;
+					}
+					inflated.write(chunk, 0, got);
+					n += got;
+				}
+				if (n != length) {
+					throw new IOException(String.format("Network batch inflated to %d bytes, expected %d", n, length));
+				}
+			} catch (DataFormatException e) {
+				throw new IOException(e);
+			}
+			finally {
+				inflater.end();
+			}
+			objects = ByteBuffer.wrap(inflated.toByteArray());
+		}
+		else {
+			objects = ByteBuffer.wrap(data, BATCH_HEADER_SIZE, Math.min(length, dataLength-BATCH_HEADER_SIZE));
+		}
+		ArrayList<NetworkObject> objectList = new ArrayList<>(Math.min(nObjects, objects.remaining()/OBJECT_HEADER_SIZE));
+		while (objects.remaining() >= OBJECT_HEADER_SIZE) {
+			int start = objects.position();
+			if (objects.getInt(start) != NetworkReceiveThread.HEADID) {
+				throw new IOException("Missing object header in network batch");
+			}
+			int objectSize = objects.getInt(start+4);
+			if (objectSize < OBJECT_HEADER_SIZE || objectSize > objects.remaining()) {
+				throw new IOException("Invalid object size in network batch: " + objectSize);
+			}
+			objects.position(start+4);
+			objectList.add(NetworkReceiverInterface.readNetworkObject(objects, batch.getSocket()));
+			objects.position(start+objectSize);
+		}
+		return objectList;
+	}
+}
@@ -25,6 +25,7 @@ import networkTransfer.send.NetTransmitException;
 import networkTransfer.send.NetworkQueuedObject;
 import networkTransfer.send.NetworkSendParams;
 import networkTransfer.send.NetworkSender;
+import networkTransfer.send.QueueStatusData;
 import pamguard.Pamguard;
 import warnings.PamWarning;
 import warnings.WarningSystem;
@@ -65,6 +66,14 @@ public abstract class NetworkClient {
 
 	public abstract boolean testClient() throws ClientConnectFailedException;
 	
+	/**
+	 * Get the state of the send queue and recent throughput and latency. 
+	 * @return queue status, or null if the client doesn't measure them. 
+	 */
+	public QueueStatusData getQueueStatus() {
+		return null;
+	}
+	
 	public String getStatus() {
 		
 		if(initializing) {
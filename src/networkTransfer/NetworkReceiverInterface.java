@@ -3,6 +3,7 @@ package networkTransfer;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 
 public interface NetworkReceiverInterface {
 	
@@ -48,6 +49,35 @@ public interface NetworkReceiverInterface {
 		return receivedObject;
 	}
 
+	/**
+	 * Read a network object from a buffer which already holds the whole object. As for
+	 * readNetworkObject(DataInputStream, Socket), the buffer must be positioned just after
+	 * the HEADID code. On return the buffer is positioned at the end of the object.
+	 * @param buffer buffer holding the object
+	 * @param clientSocket socket the data arrived on
+	 * @return network object
+	 * @throws IOException if the buffer doesn't hold the whole object.
+	 */
+	public static NetworkObject readNetworkObject(ByteBuffer buffer, Socket clientSocket) throws IOException {
+		if (buffer.remaining() < 20) {
+			throw new IOException("Incomplete network object header");
+		}
+		int duSize = buffer.getInt();
+		short dataVersion = buffer.getShort();
+		short buoyId1 = buffer.getShort();
+		short buoyId2 = buffer.getShort();
+		short dataId1 = buffer.getShort();
+		int dataId2 = buffer.getInt();
+		int dataLen = buffer.getInt();
+		int bytesLeft = duSize - 24;
+		if (bytesLeft < 0 || bytesLeft > buffer.remaining()) {
+			throw new IOException("Incomplete network object, size " + duSize);
+		}
+		byte[] data = new byte[bytesLeft];
+		buffer.get(data);
+		return new NetworkObject(clientSocket, dataVersion, buoyId1, buoyId2, dataId1, dataId2, data, dataLen);
+	}
+
 	public void runReceiver();
 
 }
@@ -0,0 +1,276 @@
+package networkTransfer.receive;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+import networkTransfer.NetworkObject;
+import networkTransfer.NetworkReceiverInterface;
+import networkTransfer.send.NetworkObjectPacker;
+
+/**
+ * TCP host which handles every connected station from a single thread using a
+ * selector and non blocking socket channels, rather than the thread per socket of
+ * the StandardTCPReceiver.
+ * <p>
+ * Data from each connection are read into a buffer for that connection and complete
+ * objects are taken out of the buffer and interpreted in exactly the same way as
+ * those from the StandardTCPReceiver, including batches from the NIOSendClient.
+ * If the stream gets out of step, the next object header is found by searching
+ * the buffer rather than reading one byte at a time from the socket.
+ */
+class NIOTCPReceiver extends StandardTCPReceiver {
+
+	/**
+	 * Initial size of the read buffer for each connection. Buffers grow
+	 * if larger objects arrive.
+	 */
+	private static final int INITIAL_BUFFER_SIZE = 64*1024;
+
+	/**
+	 * Largest object which will be accepted. Anything larger is assumed
+	 * to be a corrupt header.
+	 */
+	private static final int MAX_OBJECT_SIZE = 64*1024*1024;
+
+	private volatile boolean keepRunning = true;
+
+	private volatile Selector selector;
+
+	private NetworkObjectPacker netObjectPacker = new NetworkObjectPacker();
+
+	/**
+	 * State for one connected station.
+	 */
+	private class Connection {
+
+		private SocketChannel channel;
+
+		private ByteBuffer inBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+		private ArrayDeque<ByteBuffer> replies = new ArrayDeque<>();
+
+		private int badBytes;
+
+		private Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+	}
+
+	public NIOTCPReceiver(NetworkReceiveParams currentParams, NetworkReceiver netReceiver) {
+		super(currentParams, netReceiver);
+		setName("Network NIO Receiver");
+	}
+
+	@Override
+	public void stopConnectionThread() {
+		keepRunning = false;
+		Selector sel = selector;
+		if (sel != null) {
+			sel.wakeup();
+		}
+	}
+
+	@Override
+	public void run() {
+		try (Selector sel = Selector.open(); ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+			selector = sel;
+			serverChannel.bind(new InetSocketAddress(currentParams.receivePort));
+			serverChannel.configureBlocking(false);
+			serverChannel.register(sel, SelectionKey.OP_ACCEPT);
+			System.out.println("Waiting for client contact on port " + currentParams.receivePort);
+			while (keepRunning) {
+				sel.select();
+				Iterator<SelectionKey> keys = sel.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						acceptConnection(serverChannel, sel);
+						continue;
+					}
+					if (key.isReadable()) {
+						readData(key);
+					}
+					if (key.isValid() && key.isWritable()) {
+						writeReplies(key);
+					}
+				}
+			}
+			for (SelectionKey key : sel.keys()) {
+				if (key.attachment() instanceof Connection) {
+					closeConnection(key);
+				}
+			}
+		} catch (IOException e) {
+			System.out.println("IOException in NIOTCPReceiver" + e.getMessage());
+		}
+		selector = null;
+	}
+
+	private void acceptConnection(ServerSocketChannel serverChannel, Selector sel) {
+		try {
+			SocketChannel channel = serverChannel.accept();
+			if (channel == null) {
+				return;
+			}
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			channel.register(sel, SelectionKey.OP_READ, new Connection(channel));
+		} catch (IOException e) {
+			System.out.println("IOException accepting connection in NIOTCPReceiver: " + e.getMessage());
+		}
+	}
+
+	private void readData(SelectionKey key) {
+		Connection connection = (Connection) key.attachment();
+		int n;
+		try {
+			n = connection.channel.read(connection.inBuffer);
+		} catch (IOException e) {
+			System.out.printf("Socket closed on input stream %s: %s\n", connection.channel, e.getMessage());
+			closeConnection(key);
+			return;
+		}
+		if (n < 0) {
+			closeConnection(key);
+			return;
+		}
+		unpackObjects(key, connection);
+	}
+
+	/**
+	 * Take all complete objects out of the connection's buffer and interpret them,
+	 * leaving any partial object at the start of the buffer.
+	 */
+	private void unpackObjects(SelectionKey key, Connection connection) {
+		ByteBuffer buffer = connection.inBuffer;
+		buffer.flip();
+		int needed = 0;
+		while (findHead(connection, buffer)) {
+			if (buffer.remaining() < 8) {
+				break;
+			}
+			int start = buffer.position();
+			int objectSize = buffer.getInt(start+4);
+			if (objectSize < 24 || objectSize > MAX_OBJECT_SIZE) {
+				// not a real header, keep looking.
+				buffer.position(start+1);
+				connection.badBytes++;
+				continue;
+			}
+			if (buffer.remaining() < objectSize) {
+				needed = objectSize;
+				break;
+			}
+			NetworkObject receivedObject;
+			try {
+				buffer.position(start+4);
+				receivedObject = NetworkReceiverInterface.readNetworkObject(buffer, connection.channel.socket());
+			} catch (IOException e) {
+				System.out.println("Error reading network object: " + e.getMessage());
+				receivedObject = null;
+			}
+			buffer.position(start+objectSize);
+			if (receivedObject == null) {
+				continue;
+			}
+			try {
+				NetworkObject returnedData = interpretData(receivedObject);
+				if (returnedData != null) {
+					connection.replies.add(ByteBuffer.wrap(netObjectPacker.packData(returnedData)));
+				}
+			}
+			catch (Exception e) {
+				System.out.println(String.format("General exception in input stream %s", connection.channel));
+				e.printStackTrace();
+			}
+		}
+		buffer.compact();
+		if (needed > buffer.capacity()) {
+			ByteBuffer newBuffer = ByteBuffer.allocate(needed);
+			buffer.flip();
+			newBuffer.put(buffer);
+			connection.inBuffer = newBuffer;
+		}
+		if (connection.replies.size() > 0) {
+			writeReplies(key);
+		}
+	}
+
+	/**
+	 * Move the buffer on to the next object header.
+	 * @return true if a header was found, false if more data are needed.
+	 */
+	private boolean findHead(Connection connection, ByteBuffer buffer) {
+		int pos = buffer.position();
+		int limit = buffer.limit();
+		int skipped = 0;
+		while (pos + 4 <= limit && buffer.getInt(pos) != NetworkReceiveThread.HEADID) {
+			pos++;
+			skipped++;
+		}
+		if (skipped > 0) {
+			if (connection.badBytes == 0) {
+				System.out.printf("Unable to find head in network stream %s\n", connection.channel);
+			}
+			connection.badBytes += skipped;
+		}
+		if (pos + 4 > limit) {
+			// keep the last few bytes in case they're the start of a header
+			buffer.position(Math.max(buffer.position(), limit-3));
+			return false;
+		}
+		buffer.position(pos);
+		if (connection.badBytes > 0) {
+			System.out.printf("Correct network header alignment restored after %d bytes\n", connection.badBytes);
+			connection.badBytes = 0;
+		}
+		return true;
+	}
+
+	/**
+	 * Write any replies to the station, waiting for the socket to be ready
+	 * if they won't all go at once.
+	 */
+	private void writeReplies(SelectionKey key) {
+		Connection connection = (Connection) key.attachment();
+		try {
+			while (connection.replies.size() > 0) {
+				ByteBuffer reply = connection.replies.peek();
+				connection.channel.write(reply);
+				if (reply.hasRemaining()) {
+					break;
+				}
+				connection.replies.poll();
+			}
+		} catch (IOException e) {
+			System.out.printf("Socket closed on output stream %s: %s\n", connection.channel, e.getMessage());
+			closeConnection(key);
+			return;
+		}
+		key.interestOps(SelectionKey.OP_READ | (connection.replies.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+	}
+
+	private void closeConnection(SelectionKey key) {
+		Connection connection = (Connection) key.attachment();
+		key.cancel();
+		try {
+			connection.channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		socketClosed(connection.channel.socket());
+	}
+
+}
@@ -14,6 +14,11 @@ public class NetworkReceiveParams extends NetworkParams implements Cloneable, Se
 	
 	public static final int CONNECTIONTYPE_STANDARD_TCP = 1;
 	public static final int CONNECTIONTYPE_MQTT = 2;
+	/**
+	 * TCP host using a single selector thread for all connections, which can also 
+	 * receive batched data from the NIO sender. 
+	 */
+	public static final int CONNECTIONTYPE_NIO_TCP = 3;
 
 
 	public static final long serialVersionUID = 1L;
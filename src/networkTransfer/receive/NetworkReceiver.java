@@ -115,6 +115,11 @@ public class NetworkReceiver extends PamControlledUnit implements PamSettings {
 	public static final int  NET_PAM_DATA       = 1;
 	public static final int  NET_PAM_COMMAND    = 5;
 	public static final int  NET_AUDIO_DATA     = 10; // audio data sent over network from remote station. 
+	/**
+	 * A batch of several packed objects (see NetworkBatch). This is only used between 
+	 * PAMGuard stations using the NIO sender, not by the C++ code. 
+	 */
+	public static final int  NET_BATCH_DATA     = 20;
 
 
 	public static final int NET_PAM_COMMAND_STOP = 0;
@@ -245,6 +250,8 @@ public class NetworkReceiver extends PamControlledUnit implements PamSettings {
 	private void startConnectionThread() {
 		if(this.networkReceiveParams.connectionType==NetworkReceiveParams.CONNECTIONTYPE_STANDARD_TCP) {
 			connectionThread = new StandardTCPReceiver(networkReceiveParams,this);
+		}else if(this.networkReceiveParams.connectionType==NetworkReceiveParams.CONNECTIONTYPE_NIO_TCP) {
+			connectionThread = new NIOTCPReceiver(networkReceiveParams,this);
 		}else {
 			if(connectionThread==null) {
 				connectionThread = new MqttNetReceiver(networkReceiveParams,this);
@@ -358,7 +365,8 @@ public class NetworkReceiver extends PamControlledUnit implements PamSettings {
 		 * May now need to tell the overall pam controller that things are starting or
 		 * stopping !
 		 */
-		if(networkReceiveParams.connectionType==NetworkReceiveParams.CONNECTIONTYPE_STANDARD_TCP) {
+		if(networkReceiveParams.connectionType==NetworkReceiveParams.CONNECTIONTYPE_STANDARD_TCP ||
+				networkReceiveParams.connectionType==NetworkReceiveParams.CONNECTIONTYPE_NIO_TCP) {
 			PamController.getInstance().netReceiveStatus(changeTime, nPrepared, nStarted, nStopped);
 		}
 	}
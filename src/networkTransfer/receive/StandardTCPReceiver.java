@@ -11,6 +11,7 @@ import java.util.Vector;
 
 import PamUtils.PamCalendar;
 import PamguardMVC.PamDataUnit;
+import networkTransfer.NetworkBatch;
 import networkTransfer.NetworkObject;
 import networkTransfer.NetworkReceiverInterface;
 import networkTransfer.receive.status.BuoyStatusDataBlock;
@@ -180,15 +181,23 @@ class StandardTCPReceiver extends Thread implements NetworkDataUser,NetworkRecei
 	}
 	
 	public void socketClosed(NetworkReceiveThread networkReceiveThread) {
-		/*
-		 * Once the thread has ended, tell the stats objects that
-		 * they are no longer connected to anything. 
-		 */
+		socketClosed(networkReceiveThread.getClientSocket());
+		synchronized(receiveThreads) {
+			receiveThreads.remove(networkReceiveThread);
+		}
+	}
+	
+	/**
+	 * Once a socket has closed, tell the stats objects that
+	 * they are no longer connected to anything. 
+	 * @param clientSocket socket which has closed
+	 */
+	protected void socketClosed(Socket clientSocket) {
 		ListIterator<BuoyStatusDataUnit> it = buoyStatusDataBlock.getListIterator(0);
 		BuoyStatusDataUnit b = null;
 		while (it.hasNext()) {
 			b = it.next();
-			if (b.getSocket() == networkReceiveThread.getClientSocket()) {
+			if (b.getSocket() == clientSocket) {
 				b.setSocket(null);
 			}
 		}
@@ -198,13 +207,10 @@ class StandardTCPReceiver extends Thread implements NetworkDataUser,NetworkRecei
 		else {
 //			System.out.println(String.format("Rx socket closed for sender %d(%d) on %s", b.getBuoyId1(), b.getBuoyId2(), toString()));
 		}
-		synchronized(receiveThreads) {
-			receiveThreads.remove(networkReceiveThread);
-		}
 	}
 	
-	private synchronized void addPacketStats(int packetSize) {
-		recentPackets++;
+	private synchronized void addPacketStats(int nPackets, int packetSize) {
+		recentPackets += nPackets;
 		recentDataBytes += packetSize;
 	}
 
@@ -226,9 +232,40 @@ class StandardTCPReceiver extends Thread implements NetworkDataUser,NetworkRecei
 		 * of thee, so at this point data from all senders end up in the same
 		 * thread. 
 		 */
+		if (receivedObject.getDataType1() == NetworkReceiver.NET_BATCH_DATA) {
+			return interpretBatch(receivedObject);
+		}
 
-		addPacketStats(receivedObject.getTransferedLength());
+		addPacketStats(1, receivedObject.getTransferedLength());
 		
+		return interpretObject(receivedObject);
+	}
+	
+	/**
+	 * Unpack a batch of objects from the NIO sender and interpret each one in turn. 
+	 * @param batch batch object
+	 * @return the last non null object returned when interpreting the objects in the batch. 
+	 */
+	private NetworkObject interpretBatch(NetworkObject batch) {
+		List<NetworkObject> objects;
+		try {
+			objects = NetworkBatch.unpackBatch(batch);
+		} catch (IOException e) {
+			System.out.println("Unable to unpack network batch: " + e.getMessage());
+			return null;
+		}
+		addPacketStats(objects.size(), batch.getTransferedLength());
+		NetworkObject retObject = null;
+		for (NetworkObject anObject : objects) {
+			NetworkObject ret = interpretObject(anObject);
+			if (ret != null) {
+				retObject = ret;
+			}
+		}
+		return retObject;
+	}
+	
+	private NetworkObject interpretObject(NetworkObject receivedObject) {
 		BuoyStatusDataUnit buoyStatusDataUnit = netReceiver.findBuoyStatusDataUnit(receivedObject.getBuoyId1(), receivedObject.getBuoyId2(), true);
 		buoyStatusDataUnit.setSocket(receivedObject.getSocket());
 		// work out how long different socket asking questions take. 
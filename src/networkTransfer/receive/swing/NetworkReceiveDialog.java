@@ -38,7 +38,7 @@ public class NetworkReceiveDialog extends PamDialog {
 	
 	private JTextField compassOffset;
 	
-	private JRadioButton connectionStandard, connectionMqtt; 
+	private JRadioButton connectionStandard, connectionNIO, connectionMqtt; 
 	
 	private StandardNetRxPanel portPanel;
 	
@@ -65,8 +65,10 @@ public class NetworkReceiveDialog extends PamDialog {
 		GridBagConstraints c = new PamGridBagContraints();
 		ButtonGroup bg = new ButtonGroup();
 		bg.add(connectionStandard = new JRadioButton("Standard TCP Host"));
+		bg.add(connectionNIO = new JRadioButton("Multi-station TCP Host (NIO)"));
 		bg.add(connectionMqtt = new JRadioButton("Mqtt Subscriber"));
 		connectionStandard.setToolTipText("Old simple TCP host");
+		connectionNIO.setToolTipText("TCP host handling all stations in a single thread, which can also receive batched data");
 		connectionMqtt.setToolTipText("Setup net receiver as mqtt subscriber");
 		/*channelsRenumber.setToolTipText("Channels will re renumbered 0, 1, 2, etc. a unique number being used for each sending station." +
 				"\nThis is generally the best option when multiple stations are sending to this receiving station.");
@@ -74,11 +76,14 @@ public class NetworkReceiveDialog extends PamDialog {
 				"\nThis is generally the best option when a single remote station is sending to this receiving station.");*/
 		addComponent(connectionModePanel, connectionStandard, c);
 		c.gridy++;
+		addComponent(connectionModePanel, connectionNIO, c);
+		c.gridy++;
 		addComponent(connectionModePanel, connectionMqtt, c);
 		mainPanel.add(connectionModePanel);
 		
 		methods = new MethodSwitch();
 		connectionStandard.addActionListener(methods);
+		connectionNIO.addActionListener(methods);
 		connectionMqtt.addActionListener(methods);
 		
 		portPanel = new StandardNetRxPanel();
@@ -123,7 +128,7 @@ public class NetworkReceiveDialog extends PamDialog {
 	private class MethodSwitch implements ActionListener{
 		
 		public void runSwap() {
-			if(connectionStandard.isSelected()) {
+			if(connectionStandard.isSelected() || connectionNIO.isSelected()) {
 				portPanel.panel.setVisible(true);
 				networkParamsPanel.panel.setVisible(false);
 			}else {
@@ -161,13 +166,9 @@ public class NetworkReceiveDialog extends PamDialog {
 		channelsMaintain.setSelected(networkReceiveParams.channelNumberOption == NetworkReceiveParams.CHANNELS_MAINTAIN);
 		compassOffset.setText(String.format("%3.1f",networkReceiveParams.compassCorrection));
 		networkParamsPanel.setParams(networkReceiveParams);
-		if(networkReceiveParams.connectionType==NetworkReceiveParams.CONNECTIONTYPE_STANDARD_TCP) {
-			connectionStandard.setSelected(true);
-			connectionMqtt.setSelected(false);
-		}else {
-			connectionStandard.setSelected(false);
-			connectionMqtt.setSelected(true);
-		}
+		connectionStandard.setSelected(networkReceiveParams.connectionType==NetworkReceiveParams.CONNECTIONTYPE_STANDARD_TCP);
+		connectionNIO.setSelected(networkReceiveParams.connectionType==NetworkReceiveParams.CONNECTIONTYPE_NIO_TCP);
+		connectionMqtt.setSelected(networkReceiveParams.connectionType==NetworkReceiveParams.CONNECTIONTYPE_MQTT);
 		//
 	}
 	
@@ -184,8 +185,9 @@ public class NetworkReceiveDialog extends PamDialog {
 	public boolean getParams() {
 		
 		
-		if(connectionStandard.isSelected()) {
-			networkReceiveParams.connectionType = NetworkReceiveParams.CONNECTIONTYPE_STANDARD_TCP;
+		if(connectionStandard.isSelected() || connectionNIO.isSelected()) {
+			networkReceiveParams.connectionType = connectionNIO.isSelected() ? 
+					NetworkReceiveParams.CONNECTIONTYPE_NIO_TCP : NetworkReceiveParams.CONNECTIONTYPE_STANDARD_TCP;
 			try {
 				networkReceiveParams.receivePort = Integer.valueOf(receivePort.getText());
 			}
@@ -0,0 +1,565 @@
+package networkTransfer.send;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.zip.Deflater;
+
+import PamController.PamController;
+import networkTransfer.NetworkBatch;
+import networkTransfer.NetworkClient;
+import networkTransfer.NetworkParams;
+import networkTransfer.receive.NetworkReceiver;
+
+/**
+ * Network sender using a non blocking socket channel and a selector.
+ * <p>
+ * Objects are put into a bounded NetworkSendQueue. A single thread waits on a selector
+ * for the socket to connect, to be ready for more data or for new objects to arrive in the
+ * queue. Whenever the socket can take more data, everything which has built up in the queue
+ * (up to maxBatchSize) is packed into a single batch object (see NetworkBatch), optionally
+ * compressed, and written in one go. If the network is keeping up, each batch will only
+ * hold one or two objects and single objects are sent exactly as they would be by
+ * the TCPSendClient. If it isn't, batches get larger, which cuts the per object overheads
+ * and gives the compression more to work on. Nothing waits on a timer, so there is no
+ * added delay when the queue is empty.
+ * <p>
+ * If the connection is lost part way through writing a batch, there is no way of knowing 
+ * how much of it reached the receiver, so the batch is thrown away rather than risk the 
+ * receiver getting any of its objects twice. The objects in it are counted as dropped. A
+ * batch which hadn't started to go out is sent in full once the connection is reopened.
+ * <p>
+ * Throughput and latency are worked out by the selector thread about once a second, so 
+ * {@link #getQueueStatus()} can be called as often as anything likes without changing them.
+ * <p>
+ * TLS is not supported, so NetworkSender uses the TCPSendClient when useSSL is set.
+ */
+public class NIOSendClient extends NetworkClient {
+
+	/**
+	 * Time between attempts to reconnect.
+	 */
+	private static final long RECONNECT_MILLIS = 2000;
+
+	/**
+	 * Max time to wait for the queue to empty when the client is closed.
+	 */
+	private static final long FLUSH_MILLIS = 5000;
+
+	/**
+	 * Max number of objects in a single batch.
+	 */
+	private static final int MAX_BATCH_OBJECTS = 10000;
+
+	/**
+	 * Interval for working out throughput and latency.
+	 */
+	private static final long STATS_MILLIS = 1000;
+
+	private NetworkSendParams networkSendParams;
+
+	private NetworkSendQueue sendQueue;
+
+	private volatile Selector selector;
+
+	private volatile SocketChannel channel;
+
+	private volatile SelectorThread selectorThread;
+
+	private volatile String currStatus = "Closed";
+
+	private Deflater deflater;
+
+	private ByteBuffer readBuffer = ByteBuffer.allocate(1024);
+
+	/**
+	 * Buffer currently being written and the objects in it.
+	 */
+	private ByteBuffer outBuffer;
+
+	private ArrayList<NetworkSendQueue.QueueEntry> outEntries = new ArrayList<>();
+
+	private long nextConnectTime;
+
+	/*
+	 * Counters for QueueStatusData
+	 */
+	private long objectsSent, batchesSent, bytesSent, rawBytesSent, objectsLost;
+
+	private long lastStatsTime = System.currentTimeMillis(), lastStatsObjects, lastStatsBytes;
+
+	private double latencySum, latencyMax;
+
+	private int latencyCount;
+
+	/*
+	 * Throughput and latency over the last statistics interval.
+	 */
+	private double objectsPerSecond, bytesPerSecond, meanLatencyMillis, maxLatencyMillis;
+
+	public NIOSendClient(NetworkParams networkParams) {
+		super(networkParams);
+		this.networkSendParams = (NetworkSendParams) networkParams;
+		sendQueue = new NetworkSendQueue(networkSendParams.maxQueuedObjects, networkSendParams.maxQueueSize * 1024L);
+	}
+
+	@Override
+	public void configureClient(NetworkParams networkParams) {
+		this.networkSendParams = (NetworkSendParams) networkParams;
+		sendQueue.setLimits(networkSendParams.maxQueuedObjects, networkSendParams.maxQueueSize * 1024L);
+	}
+
+	@Override
+	public void updateParams(NetworkSendParams networkSendParams) {
+		super.updateParams(networkSendParams);
+		configureClient(networkSendParams);
+	}
+
+	/**
+	 * Start the selector thread if it isn't already running.
+	 */
+	private synchronized void startSelectorThread() {
+		if (selectorThread != null && selectorThread.isAlive()) {
+			return;
+		}
+		selectorThread = new SelectorThread();
+		selectorThread.start();
+	}
+
+	/**
+	 * Stop the selector thread.
+	 * @param flush send whatever is left in the queue first (up to FLUSH_MILLIS).
+	 * @param wait wait for the thread to finish.
+	 */
+	private synchronized void stopSelectorThread(boolean flush, boolean wait) {
+		SelectorThread thread = selectorThread;
+		if (thread == null) {
+			return;
+		}
+		thread.stopThread(flush);
+		Selector sel = selector;
+		if (sel != null) {
+			sel.wakeup();
+		}
+		if (wait) {
+			try {
+				thread.join(FLUSH_MILLIS + 1000);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+		selectorThread = null;
+	}
+
+	/**
+	 * Put data objects in a queue. The selector thread will handle opening the
+	 * connection and sending the data.
+	 * @param networkQueuedObject Object to add to the queue
+	 */
+	public void queueDataObject(NetworkQueuedObject networkQueuedObject) {
+		sendQueue.add(networkQueuedObject);
+		if (selectorThread == null) {
+			startSelectorThread();
+		}
+		Selector sel = selector;
+		if (sel != null) {
+			sel.wakeup();
+		}
+	}
+
+	@Override
+	public void sendNetworkQueuedObject(NetworkQueuedObject qo) {
+		queueDataObject(qo);
+	}
+
+	private class SelectorThread extends Thread {
+
+		private volatile boolean keepRunning = true;
+
+		private volatile boolean flush;
+
+		private SelectorThread() {
+			super("Network NIO Sender");
+			setDaemon(true);
+		}
+
+		private void stopThread(boolean flush) {
+			this.flush = flush;
+			keepRunning = false;
+		}
+
+		@Override
+		public void run() {
+			try (Selector sel = Selector.open()) {
+				selector = sel;
+				long flushEnd = 0;
+				while (true) {
+					if (!keepRunning) {
+						if (flushEnd == 0) {
+							flushEnd = System.currentTimeMillis() + FLUSH_MILLIS;
+						}
+						if (!flush || !hasDataToSend() || System.currentTimeMillis() > flushEnd) {
+							break;
+						}
+					}
+					if (channel == null && System.currentTimeMillis() >= nextConnectTime) {
+						startConnection(sel);
+					}
+					sel.select(channel == null ? RECONNECT_MILLIS : 1000);
+					Iterator<SelectionKey> keys = sel.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						if (!key.isValid()) {
+							continue;
+						}
+						if (key.isConnectable()) {
+							finishConnection(key);
+						}
+						if (key.isValid() && key.isReadable()) {
+							readReplies();
+						}
+					}
+					if (channel != null && channel.isConnected()) {
+						writePending();
+					}
+					if (System.currentTimeMillis() - lastStatsTime >= STATS_MILLIS) {
+						updateStatistics();
+					}
+				}
+			} catch (IOException e) {
+				System.out.println("IOException in NIOSendClient selector: " + e.getMessage());
+			}
+			finally {
+				closeChannel("Closed");
+				selector = null;
+				if (!keepRunning) {
+					deleteQueue();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true if there is anything waiting to be sent.
+	 */
+	private boolean hasDataToSend() {
+		return (outBuffer != null && outBuffer.hasRemaining()) || sendQueue.size() > 0;
+	}
+
+	/**
+	 * Open a new non blocking connection.
+	 */
+	private void startConnection(Selector sel) {
+		nextConnectTime = System.currentTimeMillis() + RECONNECT_MILLIS;
+		try {
+			SocketChannel newChannel = SocketChannel.open();
+			newChannel.configureBlocking(false);
+			newChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			channel = newChannel;
+			currStatus = "Connecting";
+			if (newChannel.connect(new InetSocketAddress(networkSendParams.ipAddress, networkSendParams.portNumber))) {
+				connectionOpen(newChannel.register(sel, SelectionKey.OP_READ));
+			}
+			else {
+				newChannel.register(sel, SelectionKey.OP_CONNECT);
+			}
+		}
+		catch (IOException | IllegalArgumentException e) {
+			closeChannel(e.getMessage());
+		}
+	}
+
+	private void finishConnection(SelectionKey key) {
+		try {
+			if (channel.finishConnect()) {
+				key.interestOps(SelectionKey.OP_READ);
+				connectionOpen(key);
+			}
+		}
+		catch (IOException e) {
+			closeChannel(e.getMessage());
+		}
+	}
+
+	private void connectionOpen(SelectionKey key) {
+		currStatus = "Open";
+		requireReconnect = false;
+		if (outBuffer != null && outBuffer.position() > 0) {
+			/*
+			 * Part of this batch went out on the old connection, but there is no way of 
+			 * knowing how much got there, so drop it rather than send objects twice.
+			 */
+			batchLost();
+		}
+	}
+
+	/**
+	 * Throw away anything the receiver sends back. It has to be read though, or
+	 * the receiver may block.
+	 */
+	private void readReplies() {
+		try {
+			int n;
+			do {
+				readBuffer.clear();
+				n = channel.read(readBuffer);
+			} while (n > 0);
+			if (n < 0) {
+				closeChannel("Socket Closed");
+			}
+		}
+		catch (IOException e) {
+			closeChannel(e.getMessage());
+		}
+	}
+
+	/**
+	 * Write as much as the socket will take, making new batches from the
+	 * queue as each one goes out.
+	 */
+	private void writePending() {
+		try {
+			while (true) {
+				if (outBuffer == null) {
+					outBuffer = makeBatch();
+					if (outBuffer == null) {
+						break;
+					}
+				}
+				channel.write(outBuffer);
+				if (outBuffer.hasRemaining()) {
+					// socket buffer is full, wait till it can take more.
+					break;
+				}
+				batchWritten();
+			}
+			SelectionKey key = channel.keyFor(selector);
+			if (key != null && key.isValid()) {
+				key.interestOps(SelectionKey.OP_READ | (outBuffer != null ? SelectionKey.OP_WRITE : 0));
+			}
+		}
+		catch (IOException e) {
+			System.out.println("IOException in NIOSendClient.writePending: " + e.getMessage());
+			closeChannel("Socket Closed");
+		}
+	}
+
+	/**
+	 * Take objects out of the queue and pack them ready to be written.
+	 * @return buffer to write, or null if the queue is empty.
+	 */
+	private ByteBuffer makeBatch() {
+		outEntries.clear();
+		long maxBytes = Math.min(NetworkBatch.MAX_BATCH_LENGTH, Math.max(1, networkSendParams.maxBatchSize) * 1024L);
+		int n = sendQueue.drainTo(outEntries, maxBytes, MAX_BATCH_OBJECTS);
+		if (n == 0) {
+			return null;
+		}
+		NetworkQueuedObject first = outEntries.get(0).queuedObject;
+		if (first.format == NetworkSendParams.NETWORKSEND_JSON) {
+			StringBuilder sb = new StringBuilder();
+			for (NetworkSendQueue.QueueEntry entry : outEntries) {
+				sb.append(entry.queuedObject.jsonString);
+			}
+			try {
+				// same as DataOutputStream.writeBytes in the TCPSendClient
+				return ByteBuffer.wrap(sb.toString().getBytes("ISO-8859-1"));
+			} catch (UnsupportedEncodingException e) {
+				e.printStackTrace();
+				return null;
+			}
+		}
+		int totalLength = 0;
+		for (NetworkSendQueue.QueueEntry entry : outEntries) {
+			totalLength += entry.queuedObject.dataLength;
+		}
+		if (n == 1 && (!networkSendParams.compressBatches || totalLength > NetworkBatch.MAX_BATCH_LENGTH)) {
+			return ByteBuffer.wrap(first.data, 0, first.dataLength);
+		}
+		byte[] objects = new byte[totalLength];
+		int pos = 0;
+		for (NetworkSendQueue.QueueEntry entry : outEntries) {
+			NetworkQueuedObject qo = entry.queuedObject;
+			System.arraycopy(qo.data, 0, objects, pos, qo.dataLength);
+			pos += qo.dataLength;
+		}
+		Deflater def = null;
+		if (networkSendParams.compressBatches) {
+			if (deflater == null) {
+				deflater = new Deflater(Deflater.BEST_SPEED);
+			}
+			def = deflater;
+		}
+		byte[] batchData = NetworkBatch.packBatch(objects, totalLength, n, def);
+		NetworkObjectPacker packer = new NetworkObjectPacker();
+		return ByteBuffer.wrap(packer.packData(networkSendParams.stationId1, networkSendParams.stationId2,
+				(short) NetworkReceiver.NET_BATCH_DATA, n, batchData));
+	}
+
+	/**
+	 * Update the counters once a batch has been completely written.
+	 */
+	private synchronized void batchWritten() {
+		long now = System.nanoTime();
+		for (NetworkSendQueue.QueueEntry entry : outEntries) {
+			double latency = (now - entry.queuedNanos) / 1.e6;
+			latencySum += latency;
+			latencyMax = Math.max(latencyMax, latency);
+			latencyCount++;
+			rawBytesSent += entry.queuedObject.dataLength;
+		}
+		objectsSent += outEntries.size();
+		batchesSent++;
+		bytesSent += outBuffer.limit();
+		outEntries.clear();
+		outBuffer = null;
+	}
+
+	/**
+	 * Throw away a batch which was only partly written before the connection was lost.
+	 */
+	private synchronized void batchLost() {
+		objectsLost += outEntries.size();
+		outEntries.clear();
+		outBuffer = null;
+	}
+
+	/**
+	 * Work out the throughput and latency since the last time this was called and 
+	 * reset the interval counters. Called from the selector thread. 
+	 */
+	private synchronized void updateStatistics() {
+		long now = System.currentTimeMillis();
+		double secs = Math.max(1, now - lastStatsTime) / 1000.;
+		objectsPerSecond = (objectsSent - lastStatsObjects) / secs;
+		bytesPerSecond = (bytesSent - lastStatsBytes) / secs;
+		if (latencyCount > 0) {
+			meanLatencyMillis = latencySum / latencyCount;
+			maxLatencyMillis = latencyMax;
+		}
+		else {
+			meanLatencyMillis = maxLatencyMillis = 0;
+		}
+		lastStatsTime = now;
+		lastStatsObjects = objectsSent;
+		lastStatsBytes = bytesSent;
+		latencySum = latencyMax = 0;
+		latencyCount = 0;
+	}
+
+	private void closeChannel(String status) {
+		SocketChannel ch = channel;
+		channel = null;
+		currStatus = status == null ? "Closed" : status;
+		if (ch == null) {
+			return;
+		}
+		try {
+			ch.close();
+		} catch (IOException e) {
+			System.out.println("IOException in NIOSendClient.closeChannel: " + e.getMessage());
+		}
+	}
+
+	private void deleteQueue() {
+		sendQueue.clear();
+		outBuffer = null;
+		outEntries.clear();
+	}
+
+	/**
+	 * Get the current state of the queue and the throughput and latency over the 
+	 * last statistics interval. Doesn't change any of the counters. 
+	 */
+	@Override
+	public synchronized QueueStatusData getQueueStatus() {
+		QueueStatusData status = new QueueStatusData();
+		status.timeMillis = System.currentTimeMillis();
+		status.queueLength = sendQueue.size();
+		status.queueBytes = sendQueue.getBytes();
+		status.objectsDropped = sendQueue.getNDropped() + objectsLost;
+		status.objectsSent = objectsSent;
+		status.batchesSent = batchesSent;
+		status.bytesSent = bytesSent;
+		status.rawBytesSent = rawBytesSent;
+		status.objectsPerSecond = objectsPerSecond;
+		status.bytesPerSecond = bytesPerSecond;
+		status.meanLatencyMillis = meanLatencyMillis;
+		status.maxLatencyMillis = maxLatencyMillis;
+		return status;
+	}
+
+	@Override
+	public boolean connect() throws ClientConnectFailedException {
+		startSelectorThread();
+		return isConnected();
+	}
+
+	/**
+	 * Stop the selector thread, sending anything left in the queue first.
+	 */
+	@Override
+	public void disconnect() {
+		stopSelectorThread(true, true);
+	}
+
+	@Override
+	public boolean isConnected() {
+		SocketChannel ch = channel;
+		return ch != null && ch.isConnected();
+	}
+
+	@Override
+	public void additionalClose() {
+		stopSelectorThread(false, true);
+		deleteQueue();
+	}
+
+	@Override
+	public void notifyModelChanged(int changeType) {
+		if (changeType == PamController.INITIALIZATION_COMPLETE) {
+			startSelectorThread();
+		}
+	}
+
+	@Override
+	public int getQueueLength() {
+		return sendQueue.size();
+	}
+
+	/**
+	 * Get the current queue size in kilobytes
+	 */
+	@Override
+	public int getQueueSize() {
+		return (int) (sendQueue.getBytes() / 1024);
+	}
+
+	@Override
+	public String getStatus() {
+		return currStatus;
+	}
+
+	@Override
+	public boolean testClient() throws ClientConnectFailedException {
+		try (SocketChannel testChannel = SocketChannel.open()) {
+			testChannel.socket().connect(new InetSocketAddress(networkSendParams.ipAddress, networkSendParams.portNumber), 2000);
+		}
+		catch (IOException | IllegalArgumentException e) {
+			String reason = String.format("Port %d on %s is not reachable; reason: %s", networkSendParams.portNumber,
+					networkSendParams.ipAddress, e.getMessage());
+			System.out.println(reason);
+			throw new ClientConnectFailedException(reason);
+		}
+		return true;
+	}
+
+}
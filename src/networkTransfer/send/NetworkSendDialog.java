@@ -200,7 +200,8 @@ public class NetworkSendDialog extends PamDialog {
 
 	private class QueuePanel extends JPanel {
 
-		JTextField queueSize, queueLength;
+		JTextField queueSize, queueLength, batchSize;
+		JCheckBox batchSend, compressBatches;
 		public QueuePanel() {
 			setBorder(new TitledBorder("Max Queue Size"));
 			setLayout(new BorderLayout());
@@ -229,6 +230,25 @@ public class NetworkSendDialog extends PamDialog {
 							  "if the output data is very large (such as when using the <br>" +
 							  "json format)</html>";
 			addComponent(inny, new JLabel(jsonWarn),c);
+			c.gridy++;
+			addComponent(inny, batchSend = new JCheckBox("Send queued data in batches"), c);
+			batchSend.setToolTipText("<html>Use a non blocking sender which sends everything queued while the last write was going out in a single batch.<br>" +
+					"The receiving station must use the multi-station (NIO) TCP host. Not used with TLS.</html>");
+			batchSend.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					enableControls();
+				}
+			});
+			c.gridy++;
+			addComponent(inny, compressBatches = new JCheckBox("Compress batches"), c);
+			c.gridy++;
+			c.gridwidth = 1;
+			addComponent(inny, new JLabel("Max Batch Size ", JLabel.RIGHT), c);
+			c.gridx++;
+			addComponent(inny, batchSize = new JTextField(5), c);
+			c.gridx++;
+			addComponent(inny, new JLabel(" kilobytes"), c);
 			
 			
 //			add a note to say that json text may need a very large queue size
@@ -239,6 +259,15 @@ public class NetworkSendDialog extends PamDialog {
 		public void setParams() {
 			queueLength.setText(String.format("%d", networkSendParams.maxQueuedObjects));
 			queueSize.setText(String.format("%d", networkSendParams.maxQueueSize));
+			batchSend.setSelected(networkSendParams.batchSend);
+			compressBatches.setSelected(networkSendParams.compressBatches);
+			batchSize.setText(String.format("%d", networkSendParams.maxBatchSize));
+			enableControls();
+		}
+		
+		private void enableControls() {
+			compressBatches.setEnabled(batchSend.isSelected());
+			batchSize.setEnabled(batchSend.isSelected());
 		}
 
 		public boolean getParams() {
@@ -249,6 +278,19 @@ public class NetworkSendDialog extends PamDialog {
 			catch (NumberFormatException e) {
 				return showWarning("Invalid queue size or length parameter");
 			}
+			networkSendParams.batchSend = batchSend.isSelected();
+			networkSendParams.compressBatches = compressBatches.isSelected();
+			if (networkSendParams.batchSend) {
+				try {
+					networkSendParams.maxBatchSize = Integer.valueOf(batchSize.getText());
+				}
+				catch (NumberFormatException e) {
+					return showWarning("Invalid batch size parameter");
+				}
+				if (networkSendParams.maxBatchSize <= 0) {
+					return showWarning("The max batch size must be greater than zero");
+				}
+			}
 			return true;
 		}
 
@@ -37,6 +37,24 @@ public class NetworkSendParams extends NetworkParams implements Serializable, Cl
 	 */
 	public int maxQueueSize = 10000;
 	
+	/**
+	 * Use the non blocking (NIO) sender, which sends everything that's built up in the
+	 * queue while the previous write was going out as a single batch. The receiving 
+	 * station must be using the multi-station (NIO) TCP host to unpack batches. Not 
+	 * used with TLS. 
+	 */
+	public boolean batchSend = false;
+	
+	/**
+	 * Max size of a batch in kilobytes
+	 */
+	public int maxBatchSize = 256;
+	
+	/**
+	 * Compress batches (deflate)
+	 */
+	public boolean compressBatches = false;
+	
 	private ArrayList<String> selectedDataBlocks;
 	
 	/**
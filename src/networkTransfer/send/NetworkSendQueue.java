@@ -0,0 +1,227 @@
+package networkTransfer.send;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import networkTransfer.receive.NetworkReceiver;
+
+/**
+ * Bounded queue of objects waiting to be sent over the network.
+ * <p>
+ * Objects are held in a separate queue for each data type (dataType1 and dataType2 for byte array
+ * objects, stream name for JSON strings) but are taken out in the order they were added. When
+ * the queue is longer than the maximum number of objects or larger than the maximum size,
+ * the oldest object of the data type currently using the most space is thrown away, so one
+ * busy data stream can't push everything else out of the queue. Commands are only thrown
+ * away if there is nothing else left to drop.
+ * <p>
+ * All functions are thread safe.
+ */
+public class NetworkSendQueue {
+
+	/**
+	 * An object in the queue and the time it was added.
+	 */
+	public static class QueueEntry {
+
+		public final NetworkQueuedObject queuedObject;
+
+		public final long queuedNanos;
+
+		private final long sequence;
+
+		private QueueEntry(NetworkQueuedObject queuedObject, long sequence) {
+			this.queuedObject = queuedObject;
+			this.sequence = sequence;
+			this.queuedNanos = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Queue for one data type and the total size of the objects in it.
+	 */
+	private static class TypeQueue extends ArrayDeque<QueueEntry> {
+
+		private static final long serialVersionUID = 1L;
+
+		private long bytes;
+	}
+
+	private LinkedHashMap<Object, TypeQueue> typeQueues = new LinkedHashMap<>();
+
+	private int maxObjects;
+
+	private long maxBytes;
+
+	private int nObjects;
+
+	private long nBytes;
+
+	private long nextSequence;
+
+	private long nDropped;
+
+	/**
+	 * @param maxObjects maximum number of objects in the queue
+	 * @param maxBytes maximum total size of the queue in bytes, 0 for no limit
+	 */
+	public NetworkSendQueue(int maxObjects, long maxBytes) {
+		setLimits(maxObjects, maxBytes);
+	}
+
+	/**
+	 * Set the queue limits. The queue will be trimmed next time something is added.
+	 * @param maxObjects maximum number of objects in the queue
+	 * @param maxBytes maximum total size of the queue in bytes, 0 for no limit
+	 */
+	public synchronized void setLimits(int maxObjects, long maxBytes) {
+		this.maxObjects = maxObjects;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Add an object to the queue, throwing away older objects if necessary.
+	 * @param queuedObject object to add
+	 */
+	public synchronized void add(NetworkQueuedObject queuedObject) {
+		Object key = getTypeKey(queuedObject);
+		TypeQueue queue = typeQueues.get(key);
+		if (queue == null) {
+			queue = new TypeQueue();
+			typeQueues.put(key, queue);
+		}
+		queue.add(new QueueEntry(queuedObject, nextSequence++));
+		queue.bytes += queuedObject.dataLength;
+		nObjects++;
+		nBytes += queuedObject.dataLength;
+		while (nObjects > 1 && (nObjects > maxObjects || (maxBytes > 0 && nBytes > maxBytes))) {
+			if (!dropOldest()) {
+				break;
+			}
+		}
+	}
+
+	private Object getTypeKey(NetworkQueuedObject queuedObject) {
+		if (queuedObject.format == NetworkSendParams.NETWORKSEND_JSON) {
+			return String.valueOf(queuedObject.streamName);
+		}
+		return Long.valueOf(((long) queuedObject.dataType1 << 32) | (queuedObject.dataType2 & 0xFFFFFFFFL));
+	}
+
+	/**
+	 * Throw away the oldest object from the data type using the most space.
+	 * @return true if something was removed.
+	 */
+	private boolean dropOldest() {
+		TypeQueue biggest = null;
+		long biggestSize = -1;
+		boolean biggestIsCommand = true;
+		for (TypeQueue queue : typeQueues.values()) {
+			if (queue.isEmpty()) {
+				continue;
+			}
+			boolean isCommand = queue.peek().queuedObject.dataType1 == NetworkReceiver.NET_PAM_COMMAND;
+			long size = queue.bytes;
+			if ((biggestIsCommand && !isCommand) || (isCommand == biggestIsCommand && size > biggestSize)) {
+				biggest = queue;
+				biggestSize = size;
+				biggestIsCommand = isCommand;
+			}
+		}
+		if (biggest == null) {
+			return false;
+		}
+		remove(biggest);
+		nDropped++;
+		return true;
+	}
+
+	private QueueEntry remove(TypeQueue queue) {
+		QueueEntry entry = queue.poll();
+		if (entry != null) {
+			nObjects--;
+			nBytes -= entry.queuedObject.dataLength;
+			queue.bytes -= entry.queuedObject.dataLength;
+		}
+		return entry;
+	}
+
+	/**
+	 * @return the queue holding the oldest object, or null if everything is empty.
+	 */
+	private TypeQueue findOldest() {
+		TypeQueue oldest = null;
+		for (TypeQueue queue : typeQueues.values()) {
+			QueueEntry head = queue.peek();
+			if (head != null && (oldest == null || head.sequence < oldest.peek().sequence)) {
+				oldest = queue;
+			}
+		}
+		return oldest;
+	}
+
+	/**
+	 * Take objects out of the queue, oldest first, stopping at the first object in a
+	 * different format to the first one or once the total size would go above maxBytes.
+	 * At least one object is taken if the queue isn't empty.
+	 * @param entries list to add the objects to
+	 * @param maxBytes maximum total size of objects to take
+	 * @param maxEntries maximum number of objects to take
+	 * @return number of objects taken.
+	 */
+	public synchronized int drainTo(List<QueueEntry> entries, long maxBytes, int maxEntries) {
+		int n = 0;
+		long size = 0;
+		int format = -1;
+		while (n < maxEntries) {
+			TypeQueue oldest = findOldest();
+			if (oldest == null) {
+				break;
+			}
+			NetworkQueuedObject next = oldest.peek().queuedObject;
+			if (n > 0 && (next.format != format || size + next.dataLength > maxBytes)) {
+				break;
+			}
+			format = next.format;
+			size += next.dataLength;
+			entries.add(remove(oldest));
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Remove everything from the queue.
+	 * @return number of objects removed.
+	 */
+	public synchronized int clear() {
+		int n = nObjects;
+		typeQueues.clear();
+		nObjects = 0;
+		nBytes = 0;
+		return n;
+	}
+
+	/**
+	 * @return the number of objects in the queue.
+	 */
+	public synchronized int size() {
+		return nObjects;
+	}
+
+	/**
+	 * @return total size of objects in the queue in bytes.
+	 */
+	public synchronized long getBytes() {
+		return nBytes;
+	}
+
+	/**
+	 * @return the number of objects thrown away because the queue was full.
+	 */
+	public synchronized long getNDropped() {
+		return nDropped;
+	}
+
+}
@@ -29,6 +29,8 @@ public class NetworkSendSidePanel implements PamSidePanel {
 	private JTextField status;
 	
 	private JTextField queueSize, queueLength;
+	
+	private JTextField sendRate;
 
 	private TitledBorder titledBorder;
 	 
@@ -68,8 +70,16 @@ public class NetworkSendSidePanel implements PamSidePanel {
 		PamDialog.addComponent(mainPanel, queueLength = new JTextField(4), c);
 		c.gridx++;
 		PamDialog.addComponent(mainPanel, new PamLabel(" objects"), c);
+		c.gridx = 0;
+		c.gridy++;
+		PamDialog.addComponent(mainPanel, new PamLabel("Rate ", JLabel.RIGHT), c);
+		c.gridwidth = 2;
+		c.gridx++;
+		PamDialog.addComponent(mainPanel, sendRate = new JTextField(10), c);
+		c.gridwidth = 1;
 		
 		ipAddress.setEditable(false);
+		sendRate.setEditable(false);
 		status.setEditable(false);
 		queueLength.setEditable(false);
 		queueSize.setEditable(false);
@@ -109,5 +119,15 @@ public class NetworkSendSidePanel implements PamSidePanel {
 		if(!String.format("%d", networkSender.getQueueSize()).equals(queueSize.getText())) {
 			queueSize.setText(String.format("%d", networkSender.getQueueSize()));
 		}
+		QueueStatusData queueStatus = networkSender.getQueueStatus();
+		if (queueStatus == null) {
+			sendRate.setText("");
+			sendRate.setToolTipText(null);
+		}
+		else {
+			sendRate.setText(String.format("%3.1f kB/s, %d ms", queueStatus.bytesPerSecond/1024, 
+					Math.round(queueStatus.meanLatencyMillis)));
+			sendRate.setToolTipText(queueStatus.toString());
+		}
 	}
 }
@@ -86,6 +86,8 @@ public class NetworkSender extends PamControlledUnit implements PamSettings {
 		}
 		if(this.networkSendParams.mqtt) {
 			client = new PamMqttClient(this.networkSendParams);
+		}else if(this.networkSendParams.batchSend && !this.networkSendParams.useSSL) {
+			client = new NIOSendClient(this.networkSendParams);
 		}else {
 			client = new TCPSendClient(this.networkSendParams);
 		}
@@ -458,6 +460,16 @@ public class NetworkSender extends PamControlledUnit implements PamSettings {
 		return client.getQueueSize();
 	}
 
+	/**
+	 * @return queue status and throughput, or null if the client doesn't measure them. 
+	 */
+	public QueueStatusData getQueueStatus() {
+		if(client==null) {
+			return null;
+		}
+		return client.getQueueStatus();
+	}
+
 	
 	
 }
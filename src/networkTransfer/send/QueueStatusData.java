@@ -1,5 +1,91 @@
 package networkTransfer.send;
 
+/**
+ * Snapshot of the state of a network send queue and the throughput and latency of
+ * data sent over the client's most recent statistics interval. Counts of objects and 
+ * bytes sent are totals since the client was created.
+ */
 public class QueueStatusData {
 
+	/**
+	 * Time the snapshot was taken
+	 */
+	public long timeMillis;
+
+	/**
+	 * Number of objects waiting in the queue
+	 */
+	public int queueLength;
+
+	/**
+	 * Total size of the objects waiting in the queue in bytes
+	 */
+	public long queueBytes;
+
+	/**
+	 * Total number of objects sent
+	 */
+	public long objectsSent;
+
+	/**
+	 * Total number of batches (or single objects) written to the socket
+	 */
+	public long batchesSent;
+
+	/**
+	 * Total number of bytes written to the socket
+	 */
+	public long bytesSent;
+
+	/**
+	 * Total size of the objects sent before compression
+	 */
+	public long rawBytesSent;
+
+	/**
+	 * Total number of objects thrown away because the queue was full, or because
+	 * the connection was lost part way through sending them
+	 */
+	public long objectsDropped;
+
+	/**
+	 * Objects sent per second over the last statistics interval
+	 */
+	public double objectsPerSecond;
+
+	/**
+	 * Bytes written to the socket per second over the last statistics interval
+	 */
+	public double bytesPerSecond;
+
+	/**
+	 * Mean time between objects being queued and being written to the socket
+	 * for objects sent in the last statistics interval.
+	 */
+	public double meanLatencyMillis;
+
+	/**
+	 * Maximum time between objects being queued and being written to the socket
+	 * for objects sent in the last statistics interval.
+	 */
+	public double maxLatencyMillis;
+
+	/**
+	 * @return ratio of the size of the data before compression to the number of bytes
+	 * written to the socket, or 1 if nothing has been sent.
+	 */
+	public double getCompressionRatio() {
+		if (bytesSent == 0) {
+			return 1;
+		}
+		return (double) rawBytesSent / bytesSent;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Queue %d objects (%d kB), sent %d objects at %3.1f/s, %3.1f kB/s, compression %3.2f, latency %3.1f ms (max %3.1f), dropped %d",
+				queueLength, queueBytes/1024, objectsSent, objectsPerSecond, bytesPerSecond/1024, getCompressionRatio(),
+				meanLatencyMillis, maxLatencyMillis, objectsDropped);
+	}
+
 }
@@ -55,4 +55,9 @@ public class NoiseBandDatagramProvider implements DatagramProvider {
 		return scaleInfo;
 	}
 
+	@Override
+	public boolean canProcessFilesConcurrently() {
+		return true;
+	}
+
 }
@@ -40,4 +40,9 @@ public class OneBandDatagramProvider implements DatagramProvider{
 		return scaleInfo;
 	}
 
+	@Override
+	public boolean canProcessFilesConcurrently() {
+		return true;
+	}
+
 }
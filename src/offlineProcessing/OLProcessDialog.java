@@ -68,6 +68,8 @@ public class OLProcessDialog extends PamDialog {
 
 	private JProgressBar loadedProgress; // progress throgh loaded data
 	private JCheckBox deleteOldData;
+
+	private JCheckBox runParallel;
 	private JLabel dataInfo;
 	private DBTextArea noteText;
 	/**
@@ -174,10 +176,16 @@ public class OLProcessDialog extends PamDialog {
 		southPanel.add(BorderLayout.NORTH, dataInfo);
 		//		dataSelection.setSelectedIndex(offlineClassifierParams.dataChoice);
 		southPanel.add(BorderLayout.CENTER,dateSelectionPanel); 
-		southPanel.add(BorderLayout.SOUTH, deleteOldData = new JCheckBox("Delete old database entries"));
+		JPanel checkPanel = new JPanel(new BorderLayout());
+		checkPanel.add(BorderLayout.NORTH, deleteOldData = new JCheckBox("Delete old database entries"));
 		deleteOldData.setToolTipText("<html>" +
 				"Delete old data entries in the corresponding database table<p>" +
 				"(Binary file data will always be overwritten)</html>)");
+		checkPanel.add(BorderLayout.SOUTH, runParallel = new JCheckBox("Process several files at once where possible"));
+		runParallel.setToolTipText("<html>" +
+				"Process several binary files at once on different threads<p>" +
+				"This is only used if all selected tasks only change the data units they process</html>");
+		southPanel.add(BorderLayout.SOUTH, checkPanel);
 		dataSelectPanel.add(BorderLayout.SOUTH, southPanel);
 				
 
@@ -309,6 +317,7 @@ public class OLProcessDialog extends PamDialog {
 		int nTasks = taskGroup.getNTasks();
 		dataSelection.setSelectedIndex(taskGroupParams.dataChoice);
 		deleteOldData.setSelected(taskGroupParams.deleteOld);
+		runParallel.setSelected(!taskGroupParams.disableParallel);
 		OfflineTask aTask;
 		for (int i = 0; i < nTasks; i++) {
 			aTask = taskGroup.getTask(i);
@@ -413,6 +422,7 @@ public class OLProcessDialog extends PamDialog {
 			taskGroupParams.setTaskSelection(i, taskCheckBox[i].isSelected());
 		}
 		taskGroupParams.deleteOld = deleteOldData.isSelected();
+		taskGroupParams.disableParallel = !runParallel.isSelected();
 		
 		//set start and end times. Maybe not have been changed in which otherwise will return zeros;
 		
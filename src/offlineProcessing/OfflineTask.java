@@ -265,6 +265,21 @@ public abstract class OfflineTask<T extends PamDataUnit> {
 	 */
 	abstract public boolean processDataUnit(T dataUnit);
 
+	/**
+	 * Can the task process data from several binary files at the same time 
+	 * on different threads ? This is only OK if the task is stateless, i.e. processing 
+	 * each data unit only depends on that data unit and only changes that data unit (e.g. 
+	 * its classification or annotations), the task doesn't need any other data loaded, and
+	 * processDataUnit is thread safe. 
+	 * <p>
+	 * When run in parallel, data units are not in the data block, newDataLoad is not called 
+	 * and loadedDataComplete is called once at the end of processing. 
+	 * @return true if the task can run in parallel. Default is false. 
+	 */
+	public boolean canRunParallel() {
+		return false;
+	}
+
 	/**
 	 * Called when new data are loaded for offline processing 
 	 * (or once at the start of processing loaded data). 
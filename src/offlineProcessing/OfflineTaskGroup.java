@@ -1,10 +1,18 @@
 package offlineProcessing;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.SwingWorker;
 
@@ -22,6 +30,11 @@ import PamguardMVC.PamDataUnit;
 import PamguardMVC.dataOffline.OfflineDataLoadInfo;
 import PamguardMVC.debug.Debug;
 import PamguardMVC.superdet.SuperDetDataBlock;
+import binaryFileStorage.BinaryDataSource;
+import binaryFileStorage.BinaryOfflineDataMapPoint;
+import binaryFileStorage.BinaryOutputStream;
+import binaryFileStorage.BinaryStore;
+import binaryFileStorage.BinaryUnitProcessor;
 import binaryFileStorage.DataUnitFileInformation;
 import dataMap.OfflineDataMap;
 import dataMap.OfflineDataMapPoint;
@@ -72,6 +85,11 @@ public class OfflineTaskGroup implements PamSettings {
 	
 	private CPUMonitor cpuMonitor;
 
+	/**
+	 * Maximum number of binary files processed at once when tasks can run in parallel. 
+	 */
+	private static final int MAX_PARALLEL_FILES = 8;
+
 	
 	/**
 	 * PamControlledunit required in constructor since some bookkeeping will
@@ -540,6 +558,12 @@ public class OfflineTaskGroup implements PamSettings {
 			return;
 		}
 		
+		if (canRunParallel()) {
+			processAllDataParallel(taskGroupWorker, dataMap, startTime, endTime);
+			primaryDataBlock.loadViewerData(new OfflineDataLoadInfo(currentStart, currentEnd), null);
+			return;
+		}
+		
 		int nMapPoints = dataMap.getNumMapPoints(startTime, endTime);
 		int iMapPoint = 0;
 		
@@ -631,6 +655,173 @@ public class OfflineTaskGroup implements PamSettings {
 		primaryDataBlock.loadViewerData(new OfflineDataLoadInfo(currentStart, currentEnd), null);
 	}
 
+
+	/**
+	 * Work out whether data can be processed a binary file at a time on several threads.
+	 * This is only possible if every selected task says it can run in parallel, the 
+	 * tasks don't need any other data and only change the primary data block, the primary 
+	 * data are in binary files and not in the database, and there is no super detection filter. 
+	 * @return true if data can be processed in parallel.
+	 */
+	public boolean canRunParallel() {
+		if (taskGroupParams.disableParallel || primaryDataBlock == null || superDetectionFilter != null) {
+			return false;
+		}
+		if (requiredDataBlocks.size() > 0) {
+			return false;
+		}
+		if (primaryDataBlock.getBinaryDataSource() == null || primaryDataBlock.getLogging() != null) {
+			return false;
+		}
+		OfflineDataMap dataMap = primaryDataBlock.getPrimaryDataMap();
+		if (dataMap == null || dataMap.getOfflineDataSource() instanceof BinaryStore == false) {
+			return false;
+		}
+		int nRun = 0;
+		int nTasks = getNTasks();
+		for (int i = 0; i < nTasks; i++) {
+			OfflineTask aTask = getTask(i);
+			if (!aTask.isDoRun() || !aTask.canRun()) {
+				continue;
+			}
+			if (!aTask.canRunParallel()) {
+				return false;
+			}
+			for (int b = 0; b < aTask.getNumAffectedDataBlocks(); b++) {
+				if (aTask.getAffectedDataBlock(b) != primaryDataBlock) {
+					return false;
+				}
+			}
+			nRun++;
+		}
+		return nRun > 0;
+	}
+
+	/**
+	 * Process data between two times, streaming each binary file through the tasks
+	 * and back to disk on a pool of threads, so that several files are processed at once. 
+	 * Only one data unit per file is in memory at any time, so memory use is bounded by the 
+	 * number of threads rather than the size of the files. Only call if {@link #canRunParallel()}
+	 * returns true. 
+	 * @param taskGroupWorker task worker
+	 * @param dataMap binary data map for the primary data block
+	 * @param startTime - the start time in millis
+	 * @param endTime - the end time in millis. 
+	 */
+	private void processAllDataParallel(TaskGroupWorker taskGroupWorker, OfflineDataMap dataMap, long startTime, long endTime) {
+		final BinaryStore binaryStore = (BinaryStore) dataMap.getOfflineDataSource();
+		ArrayList<BinaryOfflineDataMapPoint> mapPoints = new ArrayList<>();
+		Iterator<OfflineDataMapPoint> mapIterator = dataMap.getListIterator();
+		while (mapIterator.hasNext()) {
+			OfflineDataMapPoint mapPoint = mapIterator.next();
+			if (mapPoint.getEndTime() < startTime || mapPoint.getStartTime() > endTime ) {
+				continue;
+			}
+			if (!shouldProcess(mapPoint)) {
+				Debug.out.printf("Skipping map point %s since no matching data\n", mapPoint.toString());
+				continue;
+			}
+			if (mapPoint instanceof BinaryOfflineDataMapPoint) {
+				mapPoints.add((BinaryOfflineDataMapPoint) mapPoint);
+			}
+		}
+		int nMapPoints = mapPoints.size();
+		taskGroupWorker.publish(new TaskMonitorData(TaskStatus.RUNNING, TaskActivity.PROCESSING, nMapPoints, 0, "",  
+				taskGroupParams.startRedoDataTime));
+		if (nMapPoints == 0) {
+			return;
+		}
+		
+		final int nTasks = getNTasks();
+		final long procStart = startTime, procEnd = endTime;
+		BinaryUnitProcessor unitProcessor = new BinaryUnitProcessor() {
+			@Override
+			public boolean processDataUnit(PamDataUnit dataUnit) {
+				if (instantKill) {
+					return false;
+				}
+				long t = dataUnit.getTimeMilliseconds();
+				if (t < procStart || t > procEnd || !isInTimeChunk(dataUnit, taskGroupParams.timeChunks)) {
+					return false;
+				}
+				if (!shouldProcess(dataUnit)) {
+					return false;
+				}
+				boolean unitChanged = false;
+				for (int iTask = 0; iTask < nTasks; iTask++) {
+					OfflineTask aTask = getTask(iTask);
+					if (!aTask.isDoRun() || !aTask.canRun()) {
+						continue;
+					}
+					unitChanged |= aTask.processDataUnit(dataUnit);
+				}
+				return unitChanged;
+			}
+		};
+		
+		int nThreads = Math.min(MAX_PARALLEL_FILES, Math.min(nMapPoints, Runtime.getRuntime().availableProcessors()));
+		ExecutorService executor = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Offline task worker");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		/*
+		 * Each file gets its own output stream, but creating one sets it as the 
+		 * data source's storage stream, so put back whatever was there before at the end. 
+		 */
+		BinaryDataSource binarySource = primaryDataBlock.getBinaryDataSource();
+		BinaryOutputStream oldStream = binarySource.getBinaryStorageStream();
+		ArrayList<Future<Boolean>> futures = new ArrayList<>(nMapPoints);
+		for (final BinaryOfflineDataMapPoint mapPoint : mapPoints) {
+			futures.add(executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					if (instantKill) {
+						return false;
+					}
+					File file = mapPoint.getBinaryFile(binaryStore);
+					if (file == null || !file.exists()) {
+						return false;
+					}
+					return binaryStore.updateBinaryFile(primaryDataBlock, mapPoint, file, file, true, unitProcessor);
+				}
+			}));
+		}
+		int nDone = 0;
+		for (int i = 0; i < nMapPoints; i++) {
+			BinaryOfflineDataMapPoint mapPoint = mapPoints.get(i);
+			try {
+				futures.get(i).get();
+			} catch (CancellationException e) {
+				continue;
+			} catch (InterruptedException | ExecutionException e) {
+				e.printStackTrace();
+			}
+			nDone++;
+			taskGroupWorker.publish(new TaskMonitorData(TaskStatus.RUNNING, TaskActivity.PROCESSING, nMapPoints, nDone, mapPoint.getName(),
+					mapPoint.getEndTime()));
+			taskGroupParams.lastDataTime = Math.min(mapPoint.getEndTime(), endTime);
+			if (instantKill) {
+				for (int j = i+1; j < nMapPoints; j++) {
+					futures.get(j).cancel(false);
+				}
+				// still wait for any files which are part way through. 
+			}
+		}
+		executor.shutdown();
+		binarySource.setBinaryStorageStream(oldStream);
+		
+		for (int iTask = 0; iTask < nTasks; iTask++) {
+			OfflineTask aTask = getTask(iTask);
+			if (!aTask.isDoRun()) {
+				continue;
+			}
+			aTask.loadedDataComplete();
+		}
+	}
 	
 	/**
 	 * Get the actual start and end times of the data we have loaded for this map
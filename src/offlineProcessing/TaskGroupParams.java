@@ -96,6 +96,12 @@ public class TaskGroupParams implements Cloneable, Serializable, ManagedParamete
 	 * Note which will get written to the database of completed tasks. 
 	 */
 	public String taskNote;
+
+	/**
+	 * Don't process binary files in parallel, even if all the selected 
+	 * tasks can run in parallel. 
+	 */
+	public boolean disableParallel = false;
 	
 	/**
 	 * Set the selection state of a particular task. 
@@ -454,7 +454,7 @@ public class PamGuiManagerFX implements PAMControllerGUI, PamSettings {
 		PamSettingManager.getInstance().setDefaultFile(selectedFile.getAbsolutePath());
 		if (PamSettingManager.remote_psf != null)
 			PamSettingManager.remote_psf = selectedFile.getAbsolutePath();
-		PamSettingManager.getInstance().saveSettings(PamSettingManager.SAVE_PSF);
+		PamSettingManager.getInstance().saveSettings(PamSettingManager.SAVE_PSF | PamSettingManager.SAVE_BACKGROUND);
 		PamController.getInstance().getGuiFrameManager().sortFrameTitles();
 	}
 
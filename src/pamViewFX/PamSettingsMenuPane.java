@@ -389,7 +389,7 @@ public class PamSettingsMenuPane extends PamVBox {
 			PamSettingManager.remote_psf = selectedFile.getAbsolutePath();
 		}
 
-		PamSettingManager.getInstance().saveSettings(PamSettingManager.SAVE_PSF);
+		PamSettingManager.getInstance().saveSettings(PamSettingManager.SAVE_PSF | PamSettingManager.SAVE_BACKGROUND);
 
 		PamController.getInstance().getGuiFrameManager().sortFrameTitles();
 
@@ -44,6 +44,7 @@ import com.formdev.flatlaf.FlatLightLaf;
 
 import Acquisition.FolderInputSystem;
 import Acquisition.SoundCardSystem;
+import Acquisition.pamAudio.PamAudioFileManager;
 import NMEA.NMEAControl;
 import PamController.PamController;
 import PamController.PamFolders;
@@ -363,6 +364,11 @@ public class Pamguard {
 					GlobalArguments.setParam(RecorderControl.GlobalWavPrefixArg2, wavPrefix);
 					System.out.println("Setting recording prefix to " + wavPrefix);
 				}
+				else if (anArg.equalsIgnoreCase(PamAudioFileManager.GlobalMappedWavArg)) {
+					// read wav files using memory mapping
+					GlobalArguments.setParam(PamAudioFileManager.GlobalMappedWavArg, Boolean.TRUE.toString());
+					System.out.println("Using memory mapped wav file reader");
+				}
 				else if (anArg.equalsIgnoreCase(PamController.AUTOSTART)) {
 					// auto start processing. 
 					GlobalArguments.setParam(PamController.AUTOSTART, PamController.AUTOSTART);
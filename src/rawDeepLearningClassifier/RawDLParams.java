@@ -81,6 +81,36 @@ public class RawDLParams implements Serializable, Cloneable {
 	 * data is sent to the deep learning classifier.
 	 */
 	public double maxBufferTime = 1000.0; // milliseconds
+
+	/**
+	 * Default maximum number of segments sent to the model at once by the inference scheduler. 
+	 */
+	public static final int DEFAULT_INFERENCE_BATCH = 32;
+
+	/**
+	 * Default maximum time the inference scheduler waits to fill a batch. 
+	 */
+	public static final int DEFAULT_INFERENCE_WAIT = 250;
+
+	/**
+	 * The maximum number of segments the inference scheduler will combine
+	 * into a single call to the model when running on its own thread. Zero means the 
+	 * default. 
+	 */
+	public int maxInferenceBatch = DEFAULT_INFERENCE_BATCH;
+
+	/**
+	 * The maximum time in milliseconds the inference scheduler will wait for more
+	 * segments to fill a batch before running the model on whatever it has. Zero means
+	 * the default. 
+	 */
+	public int maxInferenceWait = DEFAULT_INFERENCE_WAIT;
+
+	/**
+	 * The number of threads running the model. More than one thread is only 
+	 * used by models which can create more than one model worker. 
+	 */
+	public int inferenceThreads = 1;
 	
 	
 	/**
@@ -111,6 +141,27 @@ public class RawDLParams implements Serializable, Cloneable {
 
 	private Serializable modelParameters;
 
+	/**
+	 * @return the maximum number of segments in an inference batch
+	 */
+	public int getMaxInferenceBatch() {
+		return maxInferenceBatch <= 0 ? DEFAULT_INFERENCE_BATCH : maxInferenceBatch;
+	}
+
+	/**
+	 * @return the maximum time to wait for an inference batch to fill in milliseconds
+	 */
+	public int getMaxInferenceWait() {
+		return maxInferenceWait <= 0 ? DEFAULT_INFERENCE_WAIT : maxInferenceWait;
+	}
+
+	/**
+	 * @return the number of inference threads
+	 */
+	public int getInferenceThreads() {
+		return Math.max(1, inferenceThreads);
+	}
+
 	@Override
 	public RawDLParams clone() {
 		RawDLParams newParams = null;
@@ -0,0 +1,432 @@
+package rawDeepLearningClassifier.dlClassification;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import PamguardMVC.PamDataUnit;
+import rawDeepLearningClassifier.dlClassification.genericModel.DLModelWorker;
+import rawDeepLearningClassifier.dlClassification.genericModel.StandardPrediction;
+
+/**
+ * Schedules deep learning model runs when the model is running on its own threads
+ * (i.e. not in the viewer). Replaces the polling DLTaskThread.
+ * <p>
+ * Groups of segments from the classify process are put in a blocking queue. Worker threads
+ * wait on the queue and, once there is something to do, keep taking groups until they
+ * have a full batch of segments or the oldest group has waited for the maximum wait time,
+ * then run the model once on the whole batch. This gives the model much larger batches than
+ * the classify process buffer alone, which makes far better use of the CPU when processing
+ * lots of data, while the maximum wait keeps latency down in real time.
+ * <p>
+ * Each worker thread has its own DLModelWorker, since the workers are not thread safe.
+ * Results are always passed back in the order the groups were submitted, whichever
+ * worker ran them.
+ * <p>
+ * Queue depth, batch sizes and inference times are recorded so they can be shown
+ * to the user.
+ */
+public class DLInferenceScheduler {
+
+	/**
+	 * Receives results from the scheduler.
+	 */
+	public interface DLResultListener {
+
+		/**
+		 * Called with the results for a group of segments, in the order groups were submitted.
+		 * @param modelResult - the model results, one per segment, or null if the model failed.
+		 * @param groupedRawData - the segments.
+		 */
+		public void newDLResult(ArrayList<StandardPrediction> modelResult, ArrayList<? extends PamDataUnit> groupedRawData);
+
+	}
+
+	/**
+	 * A group of segments waiting to be classified.
+	 */
+	private class InferenceJob {
+
+		private ArrayList<? extends PamDataUnit> groupedData;
+
+		private long seq;
+
+		private long queueNanos;
+
+		private ArrayList<StandardPrediction> result;
+
+		private boolean skip;
+
+		private InferenceJob(ArrayList<? extends PamDataUnit> groupedData, long seq) {
+			this.groupedData = groupedData;
+			this.seq = seq;
+			queueNanos = System.nanoTime();
+		}
+	}
+
+	private LinkedBlockingQueue<InferenceJob> queue = new LinkedBlockingQueue<>();
+
+	private List<DLModelWorker<StandardPrediction>> modelWorkers;
+
+	private DLResultListener resultListener;
+
+	private ArrayList<Thread> workerThreads = new ArrayList<>();
+
+	private volatile boolean running;
+
+	private int maxBatchSize;
+
+	private long maxWaitNanos;
+
+	/**
+	 * False if results from a batch can't be split back into groups, e.g. for models which return
+	 * a variable number of results per segment.
+	 */
+	private volatile boolean coalesce;
+
+	/**
+	 * Lock for the queue counters and for waiting for space in the queue.
+	 */
+	private final Object countLock = new Object();
+
+	private int queuedSegments;
+
+	private long nextSubmitSeq;
+
+	/**
+	 * Finished jobs waiting for earlier jobs to finish before they can be passed on.
+	 */
+	private TreeMap<Long, InferenceJob> completedJobs = new TreeMap<>();
+
+	private long nextDeliverSeq;
+
+	private final Object deliveryLock = new Object();
+
+	private final Object statsLock = new Object();
+
+	private long totalSegments, totalBatches, totalInferenceNanos;
+
+	private int lastBatchSize;
+
+	private double lastMillisPerSegment;
+
+	/**
+	 * @param modelWorkers - model workers, one per thread. The workers should already be prepared.
+	 * @param resultListener - receives results.
+	 * @param maxBatchSize - maximum number of segments to send to the model at once.
+	 * @param maxWaitMillis - maximum time to wait for a batch to fill.
+	 * @param coalesce - true if groups can be combined into a single model run. This is only OK if
+	 * the model returns exactly one result per segment.
+	 */
+	public DLInferenceScheduler(List<DLModelWorker<StandardPrediction>> modelWorkers, DLResultListener resultListener,
+			int maxBatchSize, int maxWaitMillis, boolean coalesce) {
+		this.modelWorkers = modelWorkers;
+		this.resultListener = resultListener;
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+		this.maxWaitNanos = Math.max(0, maxWaitMillis) * 1000000L;
+		this.coalesce = coalesce;
+	}
+
+	/**
+	 * Start the worker threads.
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		for (int i = 0; i < modelWorkers.size(); i++) {
+			final DLModelWorker<StandardPrediction> modelWorker = modelWorkers.get(i);
+			Thread t = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					workerLoop(modelWorker);
+				}
+			}, "DL inference " + i);
+			t.setDaemon(true);
+			t.setPriority(Thread.MAX_PRIORITY);
+			workerThreads.add(t);
+			t.start();
+		}
+	}
+
+	/**
+	 * Stop the worker threads. Anything still in the queue is discarded.
+	 */
+	public synchronized void stop() {
+		running = false;
+		for (Thread t : workerThreads) {
+			t.interrupt();
+		}
+		workerThreads.clear();
+		clear();
+	}
+
+	/**
+	 * @return true if the worker threads are running
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Add a group of segments to the queue.
+	 * @param groupedData - segments from the classify process.
+	 */
+	public void submit(ArrayList<? extends PamDataUnit> groupedData) {
+		if (groupedData == null || groupedData.size() == 0) {
+			return;
+		}
+		synchronized (countLock) {
+			queuedSegments += groupedData.size();
+			queue.add(new InferenceJob(groupedData, nextSubmitSeq++));
+		}
+	}
+
+	/**
+	 * Discard everything in the queue.
+	 */
+	public void clear() {
+		ArrayList<InferenceJob> dropped = new ArrayList<>();
+		queue.drainTo(dropped);
+		jobsTaken(dropped);
+		for (InferenceJob job : dropped) {
+			job.skip = true;
+		}
+		deliver(dropped);
+	}
+
+	/**
+	 * Wait until there are no more than a given number of segments in the queue. Used to
+	 * stop processing of sound files getting too far ahead of the model.
+	 * @param maxSegments - maximum segments
+	 * @param timeoutMillis - maximum time to wait
+	 * @return true if the queue is small enough, false if timed out or stopped.
+	 */
+	public boolean waitForQueue(int maxSegments, long timeoutMillis) {
+		long giveUp = System.currentTimeMillis() + timeoutMillis;
+		synchronized (countLock) {
+			while (queuedSegments > maxSegments) {
+				long wait = giveUp - System.currentTimeMillis();
+				if (wait <= 0 || !running) {
+					return false;
+				}
+				try {
+					countLock.wait(wait);
+				} catch (InterruptedException e) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private void workerLoop(DLModelWorker<StandardPrediction> modelWorker) {
+		ArrayList<InferenceJob> batch = new ArrayList<>();
+		while (running) {
+			batch.clear();
+			try {
+				InferenceJob first = queue.take();
+				batch.add(first);
+				int nSegments = first.groupedData.size();
+				long deadline = first.queueNanos + maxWaitNanos;
+				while (coalesce && nSegments < maxBatchSize) {
+					InferenceJob next;
+					long wait = deadline - System.nanoTime();
+					if (wait > 0) {
+						next = queue.poll(wait, TimeUnit.NANOSECONDS);
+					}
+					else {
+						next = queue.poll();
+					}
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+					nSegments += next.groupedData.size();
+				}
+			} catch (InterruptedException e) {
+				// stopping, but still pass on anything already taken from the queue.
+			}
+			if (batch.size() == 0) {
+				continue;
+			}
+			jobsTaken(batch);
+			try {
+				runBatch(modelWorker, batch);
+			}
+			catch (Exception e) {
+				e.printStackTrace();
+			}
+			deliver(batch);
+		}
+	}
+
+	/**
+	 * Run the model on a batch of jobs, setting the result in each job. Segment raw data
+	 * only hold the channels of their own channel group, so the model always runs on the 
+	 * first channel in the segment data (the lowest channel of the group) whichever group
+	 * the segments came from. 
+	 */
+	private void runBatch(DLModelWorker<StandardPrediction> modelWorker, ArrayList<InferenceJob> batch) {
+		ArrayList<PamDataUnit> allData;
+		if (batch.size() == 1) {
+			allData = new ArrayList<>(batch.get(0).groupedData);
+		}
+		else {
+			allData = new ArrayList<>();
+			for (InferenceJob job : batch) {
+				allData.addAll(job.groupedData);
+			}
+		}
+		float sampleRate = allData.get(0).getParentDataBlock().getSampleRate();
+		long t0 = System.nanoTime();
+		ArrayList<StandardPrediction> results = modelWorker.runModel(allData, sampleRate, 0);
+		if (batch.size() > 1 && (results == null || results.size() != allData.size())) {
+			/*
+			 * Can't tell which results go with which group, so run each group on it's own. 
+			 * If the model doesn't return one result per segment, don't combine groups again. 
+			 */
+			if (results != null) {
+				coalesce = false;
+			}
+			for (InferenceJob job : batch) {
+				job.result = modelWorker.runModel(job.groupedData, sampleRate, 0);
+			}
+		}
+		else if (batch.size() == 1) {
+			batch.get(0).result = results;
+		}
+		else {
+			int ind = 0;
+			for (InferenceJob job : batch) {
+				int n = job.groupedData.size();
+				job.result = new ArrayList<>(results.subList(ind, ind + n));
+				ind += n;
+			}
+		}
+		long t1 = System.nanoTime();
+		synchronized (statsLock) {
+			totalSegments += allData.size();
+			totalBatches++;
+			totalInferenceNanos += t1 - t0;
+			lastBatchSize = allData.size();
+			lastMillisPerSegment = (t1 - t0) / 1.e6 / allData.size();
+		}
+	}
+
+	/**
+	 * Update the queue count when jobs are removed from the queue.
+	 */
+	private void jobsTaken(List<InferenceJob> jobs) {
+		synchronized (countLock) {
+			for (InferenceJob job : jobs) {
+				queuedSegments -= job.groupedData.size();
+			}
+			countLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Pass on results from finished jobs, holding back any which finished before jobs
+	 * submitted ahead of them.
+	 */
+	private void deliver(List<InferenceJob> finished) {
+		synchronized (deliveryLock) {
+			for (InferenceJob job : finished) {
+				completedJobs.put(job.seq, job);
+			}
+			InferenceJob job;
+			while ((job = completedJobs.remove(nextDeliverSeq)) != null) {
+				nextDeliverSeq++;
+				if (job.skip) {
+					continue;
+				}
+				try {
+					resultListener.newDLResult(job.result, job.groupedData);
+				}
+				catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of groups waiting to be classified
+	 */
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	/**
+	 * @return the number of segments waiting to be classified
+	 */
+	public int getQueuedSegments() {
+		synchronized (countLock) {
+			return queuedSegments;
+		}
+	}
+
+	/**
+	 * @return the number of model threads
+	 */
+	public int getNumThreads() {
+		return modelWorkers.size();
+	}
+
+	/**
+	 * @return the number of segments in the last batch sent to the model
+	 */
+	public int getLastBatchSize() {
+		synchronized (statsLock) {
+			return lastBatchSize;
+		}
+	}
+
+	/**
+	 * @return the mean number of segments per batch since the scheduler was created
+	 */
+	public double getMeanBatchSize() {
+		synchronized (statsLock) {
+			return totalBatches == 0 ? 0 : (double) totalSegments / totalBatches;
+		}
+	}
+
+	/**
+	 * @return the time in milliseconds per segment for the last batch
+	 */
+	public double getLastMillisPerSegment() {
+		synchronized (statsLock) {
+			return lastMillisPerSegment;
+		}
+	}
+
+	/**
+	 * @return the mean time in milliseconds per segment since the scheduler was created
+	 */
+	public double getMeanMillisPerSegment() {
+		synchronized (statsLock) {
+			return totalSegments == 0 ? 0 : totalInferenceNanos / 1.e6 / totalSegments;
+		}
+	}
+
+	/**
+	 * @return the total number of segments classified
+	 */
+	public long getTotalSegments() {
+		synchronized (statsLock) {
+			return totalSegments;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("DL inference: %d threads, %d queued, batch %d (mean %3.1f), %3.1f ms/segment (mean %3.1f)",
+				getNumThreads(), getQueuedSegments(), getLastBatchSize(), getMeanBatchSize(),
+				getLastMillisPerSegment(), getMeanMillisPerSegment());
+	}
+
+}
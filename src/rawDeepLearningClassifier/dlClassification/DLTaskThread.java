@@ -13,8 +13,11 @@ import rawDeepLearningClassifier.segmenter.GroupedRawData;
 /**
  * Creates a que for grouped data units for classification. 
  * @author Jamie Macaulay
+ * @deprecated standard models now use {@link DLInferenceScheduler} which blocks on it's queue 
+ * rather than polling and runs the model on larger batches. 
  *
  */
+@Deprecated
 public abstract class DLTaskThread extends Thread {
 
 	private AtomicBoolean run = new AtomicBoolean(true);
@@ -7,6 +7,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.codehaus.plexus.util.FileUtils;
+import org.jamdev.jdl4pam.transforms.DLTransformsFactory;
+import org.jamdev.jdl4pam.transforms.DLTransfromParams;
 
 import PamController.PamSettings;
 import PamDetection.RawDataUnit;
@@ -16,6 +18,7 @@ import PamguardMVC.PamDataUnit;
 import javafx.stage.FileChooser.ExtensionFilter;
 import rawDeepLearningClassifier.DLControl;
 import rawDeepLearningClassifier.DLStatus;
+import rawDeepLearningClassifier.RawDLParams;
 import rawDeepLearningClassifier.dlClassification.animalSpot.StandardModelParams;
 import rawDeepLearningClassifier.dlClassification.genericModel.DLModelWorker;
 import rawDeepLearningClassifier.dlClassification.genericModel.GenericDLClassifier;
@@ -42,10 +45,15 @@ public abstract class StandardClassifierModel implements DLClassiferModel, PamSe
 	private boolean forceQueue = false; 
 
 	/**
-	 * The  worker thread has a buffer so that Standard models can be run
+	 * The inference scheduler has a queue and it's own threads so that Standard models can be run
 	 * in real time without slowing down the rest of PAMGaurd. 
 	 */
-	private StandardDLTaskThread workerThread;
+	private DLInferenceScheduler inferenceScheduler;
+
+	/**
+	 * Extra model workers for inference threads after the first. 
+	 */
+	private ArrayList<DLModelWorker<StandardPrediction>> extraWorkers = new ArrayList<>();
 
 	/**
 	 * Makes a binary decision on whether a prediction result should go on
@@ -103,36 +111,28 @@ public abstract class StandardClassifierModel implements DLClassiferModel, PamSe
 		else {
 			//REAL TIME - when using a sound card. 
 			//add to a buffer if in real time. 
-			if (workerThread.getQueue().size()>getMaxQueueSize()) {
-//				System.out.println(getName() + " deep learning model queue size exceeded: " + workerThread.getQueue().size());
-
-				if (PamCalendar.isSoundFile() && !forceQueue) {
-					//we are analysing a sound file so just wait until the queue has space. Note that we
-					//could just put sound data in real time model into the viewer if satement above but
-					//this results in a very "jerky" spectrogram - putting on a thread means the processing can take place 
-					//without stopping the spectrogram updating every xx seconds if the user sets the processing speed to be
-					//slower than the model takes to run. 
-					int count =0 ; 
-					while (workerThread.getQueue().size()>getMaxQueueSize()) {
-						try {
-							Thread.sleep(100);
-							count++;
-							if (count%50==0) {
-								System.out.println(getName() + " deep learning model waiting for queue to clear...");
-							}
-						} catch (InterruptedException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						}
+			if (inferenceScheduler == null) {
+				return null;
+			}
+			if (PamCalendar.isSoundFile() && !forceQueue) {
+				//we are analysing a sound file so just wait until the queue has space. Note that we
+				//could just put sound data in real time model into the viewer if satement above but
+				//this results in a very "jerky" spectrogram - putting on a thread means the processing can take place 
+				//without stopping the spectrogram updating every xx seconds if the user sets the processing speed to be
+				//slower than the model takes to run. 
+				while (!inferenceScheduler.waitForQueue(getMaxQueuedSegments(), 5000)) {
+					if (!inferenceScheduler.isRunning()) {
+						break;
 					}
 				}
-				else {
-					//we are not doing well - clear the buffer
-					workerThread.getQueue().clear();
-					dlClassifierWarning.setWarningMessage(getName() + " deep learning model queue overloaded - results are being dropped");
-				}
 			}
-			workerThread.getQueue().add(groupedRawData);
+			else if (inferenceScheduler.getQueuedSegments() > getMaxRealTimeSegments()) {
+				//we are not doing well - clear the buffer
+				inferenceScheduler.clear();
+				dlClassifierWarning.setWarningMessage(getName() + " deep learning model queue overloaded - results are being dropped");
+				WarningSystem.getWarningSystem().addWarning(dlClassifierWarning);
+			}
+			inferenceScheduler.submit(groupedRawData);
 		}
 		return null;
 		
@@ -174,16 +174,25 @@ public abstract class StandardClassifierModel implements DLClassiferModel, PamSe
 	
 	
 	/**
-	 * Get the maximum queue size which depends on whether we are analysing a sound file or real time data.
-	 * @return the maximum queue size. 
+	 * Get the maximum number of segments that can be queued when analysing a sound file. This
+	 * is enough for every inference thread to have a couple of full batches ready, but doesn't let 
+	 * the model get very far behind the file. 
+	 * @return the maximum number of queued segments. 
 	 */
-	private int getMaxQueueSize() {
-		if (PamCalendar.isSoundFile() && !forceQueue) {
-			return OFFLINE_FILE_QUEUE_SIZE;
-		}
-		else {
-			return DLModelWorker.MAX_QUEUE_SIZE; 
-		}
+	private int getMaxQueuedSegments() {
+		RawDLParams rawParams = dlControl.getDLParams();
+		return OFFLINE_FILE_QUEUE_SIZE * rawParams.getMaxInferenceBatch() * Math.max(1, inferenceScheduler.getNumThreads());
+	}
+
+	/**
+	 * Get the maximum number of segments which can be waiting for the model in real time 
+	 * before the queue is considered overloaded and cleared, i.e. {@link DLModelWorker#MAX_QUEUE_SIZE}
+	 * full inference batches. 
+	 * @return maximum number of queued segments in real time. 
+	 */
+	private int getMaxRealTimeSegments() {
+		RawDLParams rawParams = dlControl.getDLParams();
+		return DLModelWorker.MAX_QUEUE_SIZE * Math.max(1, rawParams.getMaxInferenceBatch());
 	}
 
 	/**
@@ -241,14 +250,94 @@ public abstract class StandardClassifierModel implements DLClassiferModel, PamSe
 
 		if (!dlControl.isViewer()) {
 			//for real time only
-			if (workerThread!=null) {
-				workerThread.stopTaskThread();
+			startInferenceScheduler();
+		}
+	}
+
+	/**
+	 * Start the inference scheduler, which runs the model on it's own threads. Any 
+	 * existing scheduler is stopped first. 
+	 */
+	@SuppressWarnings("unchecked")
+	private void startInferenceScheduler() {
+		if (inferenceScheduler!=null) {
+			inferenceScheduler.stop();
+		}
+		RawDLParams rawParams = dlControl.getDLParams();
+
+		ArrayList<DLModelWorker<StandardPrediction>> workers = new ArrayList<>(); 
+		workers.add((DLModelWorker<StandardPrediction>) getDLWorker()); 
+		int nThreads = rawParams.getInferenceThreads();
+		while (extraWorkers.size() > nThreads-1) {
+			extraWorkers.remove(extraWorkers.size()-1).closeModel();
+		}
+		for (int i = 0; i < nThreads-1; i++) {
+			DLModelWorker<StandardPrediction> extraWorker = i < extraWorkers.size() ? extraWorkers.get(i) : newDLWorker(); 
+			if (extraWorker == null) {
+				//the model can't have more than one worker. 
+				break;
+			}
+			if (i == extraWorkers.size()) {
+				extraWorkers.add(extraWorker);
+			}
+			if (!prepExtraWorker(extraWorker)) {
+				break;
 			}
+			workers.add(extraWorker); 
+		}
+
+		inferenceScheduler = new DLInferenceScheduler(workers, new StandardDLResultListener(), 
+				rawParams.getMaxInferenceBatch(), rawParams.getMaxInferenceWait(), canCombineBatches()); 
+		inferenceScheduler.start();
+	}
 
-			workerThread = new StandardDLTaskThread(getDLWorker());
-			workerThread.setPriority(Thread.MAX_PRIORITY);
-			workerThread.start();
+	/**
+	 * Prepare an extra model worker for an inference thread. The worker gets its own copy of 
+	 * the parameters and of the transforms, since transforms hold data while they run. 
+	 * @param extraWorker - the extra model worker
+	 * @return true if the model loaded OK. 
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean prepExtraWorker(DLModelWorker<StandardPrediction> extraWorker) {
+		StandardModelParams workerParams = getDLParams().clone(); 
+		if (workerParams.dlTransfromParams != null) {
+			workerParams.dlTransfroms = DLTransformsFactory.makeDLTransforms((ArrayList<DLTransfromParams>) workerParams.dlTransfromParams);
+		}
+		try {
+			extraWorker.prepModel(workerParams, dlControl); 
 		}
+		catch (Exception e) {
+			e.printStackTrace();
+			return false;
+		}
+		return !extraWorker.isModelNull(); 
+	}
+
+	/**
+	 * Create a new, unprepared, model worker so that the model can be run on more than one thread. 
+	 * Models which can't safely have more than one worker return null, which is the default. 
+	 * @return a new model worker or null. 
+	 */
+	protected DLModelWorker<StandardPrediction> newDLWorker() {
+		return null; 
+	}
+
+	/**
+	 * Check whether groups of segments can be combined into a single run of the model. This is 
+	 * only possible if the model returns exactly one result for each segment and the result 
+	 * for one segment doesn't depend on the others. 
+	 * @return true if batches can be combined. 
+	 */
+	protected boolean canCombineBatches() {
+		return true; 
+	}
+
+	/**
+	 * Get the inference scheduler which runs the model during normal processing. 
+	 * @return the inference scheduler, or null if the model is not running on it's own threads. 
+	 */
+	public DLInferenceScheduler getInferenceScheduler() {
+		return inferenceScheduler;
 	}
 
 
@@ -334,15 +423,9 @@ public abstract class StandardClassifierModel implements DLClassiferModel, PamSe
 
 
 	/**
-	 * The task thread. 
-	 * @author Jamie Macaulay 
-	 *
+	 * Receives results from the inference scheduler. 
 	 */
-	public class StandardDLTaskThread extends DLTaskThread {
-
-		public StandardDLTaskThread(DLModelWorker dlWorker) {
-			super(dlWorker);
-		}
+	private class StandardDLResultListener implements DLInferenceScheduler.DLResultListener {
 
 		@Override
 		public void newDLResult(ArrayList<StandardPrediction> modelResult,
@@ -430,6 +513,14 @@ public abstract class StandardClassifierModel implements DLClassiferModel, PamSe
 
 	@Override
 	public void closeModel() {
+		if (inferenceScheduler!=null) {
+			inferenceScheduler.stop();
+			inferenceScheduler = null; 
+		}
+		for (DLModelWorker<StandardPrediction> extraWorker : extraWorkers) {
+			extraWorker.closeModel();
+		}
+		extraWorkers.clear();
 		getDLWorker().closeModel();
 	}
 
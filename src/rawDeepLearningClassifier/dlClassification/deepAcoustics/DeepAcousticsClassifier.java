@@ -87,6 +87,12 @@ public class DeepAcousticsClassifier extends ArchiveModelClassifier {
 	}
 
 
+	@Override
+	protected boolean canCombineBatches() {
+		//multiple results per segment and bounding boxes are merged across the segments in a batch. 
+		return false;
+	}
+
 	@Override
 	protected  ArrayList<ArrayList<? extends PredictionResult>>  processModelResults(ArrayList<? extends PamDataUnit> groupedRawData, List<StandardPrediction> modelResult) {
 //		System.out.println("DeepAcousticsClassifier: processModelResults called with " + modelResult.size() + " results for " + groupedRawData.size() + " segments.");
@@ -207,6 +207,12 @@ public class GenericDLClassifier extends StandardClassifierModel {
 		return this.genericModelWorker;
 	}
 
+	@Override
+	protected DLModelWorker<StandardPrediction> newDLWorker() {
+		//each generic model worker loads it's own copy of the model so can run on a separate thread. 
+		return new GenericModelWorker();
+	}
+
 
 
 	@Override
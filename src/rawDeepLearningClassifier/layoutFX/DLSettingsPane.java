@@ -120,6 +120,21 @@ public class DLSettingsPane  extends SettingsPane<RawDLParams>{
 
 	private PamGridPane segmenterGridPane;
 
+	/**
+	 * Maximum number of segments sent to the model at once. 
+	 */
+	private PamSpinner<Integer> inferenceBatch;
+
+	/**
+	 * Maximum time to wait for a batch of segments to fill. 
+	 */
+	private PamSpinner<Integer> inferenceWait;
+
+	/**
+	 * Number of threads running the model. 
+	 */
+	private PamSpinner<Integer> inferenceThreads;
+
 
 	private ArrayList<Class> currentAllowedDataTypes;
 
@@ -303,9 +318,62 @@ public class DLSettingsPane  extends SettingsPane<RawDLParams>{
 
 		vBox.getChildren().addAll(modelSelectPane, classifierPane);
 
+		vBox.getChildren().add(createInferencePane());
+
 		return vBox; 
 	}
 
+	/**
+	 * Create the pane with settings for batching segments when the model runs on it's own threads. 
+	 * @return the inference settings pane. 
+	 */
+	private Pane createInferencePane() {
+		Label inferenceLabel = new Label("Batch Inference"); 
+		inferenceLabel.setPadding(new Insets(5,0,0,0));
+		PamGuiManagerFX.titleFont2style(inferenceLabel);
+
+		inferenceBatch = new PamSpinner<Integer>(1, 10000, RawDLParams.DEFAULT_INFERENCE_BATCH, 1); 
+		inferenceBatch.getStyleClass().add(Spinner.STYLE_CLASS_SPLIT_ARROWS_HORIZONTAL);
+		inferenceBatch.setEditable(true);
+		inferenceBatch.setTooltip(new Tooltip("The maximum number of segments sent to the model at once"));
+
+		inferenceWait = new PamSpinner<Integer>(1, 60000, RawDLParams.DEFAULT_INFERENCE_WAIT, 50); 
+		inferenceWait.getStyleClass().add(Spinner.STYLE_CLASS_SPLIT_ARROWS_HORIZONTAL);
+		inferenceWait.setEditable(true);
+		inferenceWait.setTooltip(new Tooltip("The maximum time to wait for more segments before running the model on a part full batch"));
+
+		inferenceThreads = new PamSpinner<Integer>(1, Runtime.getRuntime().availableProcessors(), 1, 1); 
+		inferenceThreads.getStyleClass().add(Spinner.STYLE_CLASS_SPLIT_ARROWS_HORIZONTAL);
+		inferenceThreads.setEditable(true);
+		inferenceThreads.setTooltip(new Tooltip("The number of threads running the model. Only some models can use more than one thread "
+				+ "and each thread loads it's own copy of the model"));
+
+		PamGridPane inferenceGridPane = new PamGridPane(); 
+		inferenceGridPane.setHgap(5);
+
+		ColumnConstraints col1 = new ColumnConstraints();
+		col1.setHgrow( Priority.SOMETIMES );
+		ColumnConstraints col2 = new ColumnConstraints();
+		col2.setHgrow( Priority.ALWAYS );
+		inferenceGridPane.getColumnConstraints().addAll(col1, col2 );
+
+		inferenceGridPane.add(new Label("Max. batch"), 0, 0);
+		inferenceGridPane.add(inferenceBatch, 1, 0);
+		inferenceGridPane.add(new Label("segments"), 2, 0);
+
+		inferenceGridPane.add(new Label("Max. wait"), 0, 1);
+		inferenceGridPane.add(inferenceWait, 1, 1);
+		inferenceGridPane.add(new Label("ms"), 2, 1);
+
+		inferenceGridPane.add(new Label("Threads"), 0, 2);
+		inferenceGridPane.add(inferenceThreads, 1, 2);
+
+		PamVBox inferencePane = new PamVBox(); 
+		inferencePane.setSpacing(5);
+		inferencePane.getChildren().addAll(inferenceLabel, inferenceGridPane); 
+		return inferencePane; 
+	}
+
 
 	/**
 	 * Create the data selector. 
@@ -603,6 +671,10 @@ public class DLSettingsPane  extends SettingsPane<RawDLParams>{
 		currParams.sampleHop = hopLength.getValue(); 
 		currParams.maxMergeHops = reMergeSeg.getValue(); 
 
+		currParams.maxInferenceBatch = inferenceBatch.getValue(); 
+		currParams.maxInferenceWait = inferenceWait.getValue(); 
+		currParams.inferenceThreads = inferenceThreads.getValue(); 
+
 
 		if (modelSelectPane.currentClassifierModel == null) {
 			currParams.modelSelection = -1; 
@@ -677,6 +749,10 @@ public class DLSettingsPane  extends SettingsPane<RawDLParams>{
 
 		reMergeSeg.getValueFactory().setValue(currParams.maxMergeHops);
 
+		inferenceBatch.getValueFactory().setValue(currParams.getMaxInferenceBatch());
+		inferenceWait.getValueFactory().setValue(currParams.getMaxInferenceWait());
+		inferenceThreads.getValueFactory().setValue(currParams.getInferenceThreads());
+
 		dataSelectorCheckBox.setSelected(currParams.useDataSelector);
 
 		//setClassifierPane(); 
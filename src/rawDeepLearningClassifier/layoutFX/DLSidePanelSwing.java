@@ -1,13 +1,18 @@
 package rawDeepLearningClassifier.layoutFX;
 
 import java.awt.BorderLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 
 import javax.swing.JComponent;
 import javax.swing.JLabel;
+import javax.swing.Timer;
 
 import PamView.PamSidePanel;
 import PamView.panel.PamPanel;
 import rawDeepLearningClassifier.DLControl;
+import rawDeepLearningClassifier.dlClassification.DLInferenceScheduler;
+import rawDeepLearningClassifier.dlClassification.StandardClassifierModel;
 
 /**
  * The DL side panel for the Swing GUI. Shows information on the current DL
@@ -23,11 +28,42 @@ public class DLSidePanelSwing implements PamSidePanel {
 	private DLControl dlControl;
 	private JComponent mainPanel;
 
+	/**
+	 * Shows the inference queue depth, batch size and time per segment. 
+	 */
+	private JLabel inferenceLabel;
+
 	public DLSidePanelSwing(DLControl dlControl) {
 		this.dlControl =dlControl; 
 		this.mainPanel   = new PamPanel(); 
 		mainPanel.setLayout(new BorderLayout());
+		inferenceLabel = new JLabel(" ");
 		setupPanel(); 
+		Timer timer = new Timer(1000, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				updateInferenceStats();
+			}
+		});
+		timer.start();
+	}
+
+	/**
+	 * Update the inference statistics if the model is running on the inference scheduler.
+	 */
+	private void updateInferenceStats() {
+		DLInferenceScheduler scheduler = null;
+		if (dlControl.getDLModel() instanceof StandardClassifierModel) {
+			scheduler = ((StandardClassifierModel) dlControl.getDLModel()).getInferenceScheduler();
+		}
+		if (scheduler == null || !scheduler.isRunning()) {
+			inferenceLabel.setText(" ");
+			inferenceLabel.setToolTipText(null);
+			return;
+		}
+		inferenceLabel.setText(String.format("Queue %d, batch %d, %3.1f ms/seg", scheduler.getQueuedSegments(), 
+				scheduler.getLastBatchSize(), scheduler.getLastMillisPerSegment()));
+		inferenceLabel.setToolTipText(scheduler.toString());
 	}
 
 	/**
@@ -37,12 +73,14 @@ public class DLSidePanelSwing implements PamSidePanel {
 		//System.out
 		if (dlControl.getDLModel()!=null && dlControl.getDLModel().getModelUI()!=null && dlControl.getDLModel().getModelUI().getSidePanel()!=null) {
 			mainPanel.add(dlControl.getDLModel().getModelUI().getSidePanel(), BorderLayout.CENTER);
+			mainPanel.add(inferenceLabel, BorderLayout.SOUTH);
 //			mainPanel.add(new JLabel("Hello"), BorderLayout.WEST);
 			mainPanel.validate();
 		}
 		else {
 			//blank
 			mainPanel.removeAll();
+			mainPanel.add(inferenceLabel, BorderLayout.SOUTH);
 		}
 		
 	}
@@ -0,0 +1,126 @@
+package test.Array;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+import Array.GeometryCacheParams;
+import Array.SnapshotGeometry;
+import Array.SnapshotGeometryCache;
+
+/**
+ * Tests that geometry cached by the ArrayManager is thrown away when the array
+ * or the hydrophone positions change.
+ */
+public class SnapshotGeometryCacheTest {
+
+	private static final int RESOLUTION = 100;
+
+	/**
+	 * Makes empty geometry and counts how many times it's been called.
+	 */
+	private class CountingMaker implements SnapshotGeometryCache.GeometryMaker {
+
+		private int nMade;
+
+		private Runnable duringMake;
+
+		@Override
+		public SnapshotGeometry makeGeometry(int hydrophoneMap, long timeMillis) {
+			nMade++;
+			if (duringMake != null) {
+				duringMake.run();
+			}
+			return new SnapshotGeometry(null, timeMillis, null, null, null, null, null, null, null);
+		}
+	}
+
+	private SnapshotGeometryCache makeCache() {
+		SnapshotGeometryCache cache = new SnapshotGeometryCache();
+		GeometryCacheParams params = new GeometryCacheParams();
+		params.resolutionMillis = RESOLUTION;
+		params.interpolate = false;
+		cache.setCacheParams(params);
+		return cache;
+	}
+
+	@Test
+	public void sameBucketFromCache() {
+		SnapshotGeometryCache cache = makeCache();
+		CountingMaker maker = new CountingMaker();
+		SnapshotGeometry g1 = cache.getGeometry(3, 1010, maker);
+		SnapshotGeometry g2 = cache.getGeometry(3, 1090, maker);
+		assertSame(g1, g2);
+		assertEquals(1000, g1.getTimeMilliseconds());
+		assertEquals(1, maker.nMade);
+		// different hydrophones are a different entry.
+		cache.getGeometry(1, 1010, maker);
+		assertEquals(2, maker.nMade);
+	}
+
+	@Test
+	public void arrayChangeInvalidates() {
+		SnapshotGeometryCache cache = makeCache();
+		CountingMaker maker = new CountingMaker();
+		SnapshotGeometry g1 = cache.getGeometry(3, 1010, maker);
+		cache.invalidateAll();
+		SnapshotGeometry g2 = cache.getGeometry(3, 1010, maker);
+		assertNotSame(g1, g2);
+		assertEquals(2, maker.nMade);
+	}
+
+	@Test
+	public void paramsChangeInvalidates() {
+		SnapshotGeometryCache cache = makeCache();
+		CountingMaker maker = new CountingMaker();
+		cache.getGeometry(3, 1010, maker);
+		GeometryCacheParams params = cache.getCacheParams().clone();
+		cache.setCacheParams(params);
+		cache.getGeometry(3, 1010, maker);
+		assertEquals(2, maker.nMade);
+	}
+
+	@Test
+	public void arrayChangeWhileMaking() {
+		SnapshotGeometryCache cache = makeCache();
+		CountingMaker maker = new CountingMaker();
+		maker.duringMake = cache::invalidateAll;
+		cache.getGeometry(3, 1010, maker);
+		maker.duringMake = null;
+		// made for the old array, so should not have been kept.
+		cache.getGeometry(3, 1010, maker);
+		assertEquals(2, maker.nMade);
+		cache.getGeometry(3, 1010, maker);
+		assertEquals(2, maker.nMade);
+	}
+
+	@Test
+	public void newPositionDataInvalidatesLaterGeometry() {
+		SnapshotGeometryCache cache = makeCache();
+		CountingMaker maker = new CountingMaker();
+		cache.positionDataUpdate(1000);
+		SnapshotGeometry early = cache.getGeometry(3, 510, maker);
+		SnapshotGeometry late = cache.getGeometry(3, 5010, maker);
+		assertEquals(2, maker.nMade);
+		// geometry after the previous position data was extrapolated, so must be remade.
+		cache.positionDataUpdate(2000);
+		assertSame(early, cache.getGeometry(3, 510, maker));
+		assertNotSame(late, cache.getGeometry(3, 5010, maker));
+		assertEquals(3, maker.nMade);
+	}
+
+	@Test
+	public void outOfOrderPositionDataInvalidatesAll() {
+		SnapshotGeometryCache cache = makeCache();
+		CountingMaker maker = new CountingMaker();
+		cache.positionDataUpdate(2000);
+		SnapshotGeometry early = cache.getGeometry(3, 510, maker);
+		// e.g. an edited hydrophone position from earlier in the data.
+		cache.positionDataUpdate(100);
+		assertNotSame(early, cache.getGeometry(3, 510, maker));
+		assertEquals(2, maker.nMade);
+	}
+
+}
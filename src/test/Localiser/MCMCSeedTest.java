@@ -0,0 +1,98 @@
+package test.Localiser;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import Localiser.algorithms.genericLocaliser.MinimisationFunction;
+import Localiser.algorithms.genericLocaliser.MCMC.MCMC;
+import Localiser.algorithms.genericLocaliser.MCMC.MCMCParams2;
+
+/**
+ * Tests that MCMC chains, which run in parallel, give exactly the same
+ * localisation each time when a random seed is set.
+ */
+public class MCMCSeedTest {
+
+	private static final double[] TRUE_POS = {20, -10, 5};
+
+	/**
+	 * Simple chi2 function with a single minimum at TRUE_POS.
+	 */
+	private class BowlChi2 implements MinimisationFunction {
+
+		@Override
+		public double value(double[] location) {
+			double chi2 = 0;
+			for (int i = 0; i < TRUE_POS.length; i++) {
+				double d = location[i] - TRUE_POS[i];
+				chi2 += d*d;
+			}
+			return chi2;
+		}
+
+		@Override
+		public int getDim() {
+			return TRUE_POS.length;
+		}
+
+		@Override
+		public double[] getStart() {
+			return new double[TRUE_POS.length];
+		}
+
+		@Override
+		public double[] getFirstStep() {
+			return new double[] {1, 1, 1};
+		}
+	}
+
+	private MCMC runMCMC(Long seed) {
+		MCMCParams2 params = new MCMCParams2();
+		params.numberOfJumps = 20000;
+		params.numberOfChains = 4;
+		params.randomSeed = seed;
+		MCMC mcmc = new MCMC(params);
+		mcmc.setMinimisationFunction(new BowlChi2());
+		assertTrue(mcmc.runAlgorithm());
+		return mcmc;
+	}
+
+	@Test
+	public void sameSeedSameResult() {
+		MCMC run1 = runMCMC(1234L);
+		MCMC run2 = runMCMC(1234L);
+		double[][] result1 = run1.getResult();
+		double[][] result2 = run2.getResult();
+		assertNotNull(result1);
+		assertEquals(result1.length, result2.length);
+		for (int i = 0; i < result1.length; i++) {
+			assertArrayEquals(result1[i], result2[i], 0.);
+		}
+		assertArrayEquals(run1.getChi2(), run2.getChi2(), 0.);
+	}
+
+	@Test
+	public void seededResultIsCorrect() {
+		double[][] result = runMCMC(1234L).getResult();
+		for (int i = 0; i < result.length; i++) {
+			for (int d = 0; d < TRUE_POS.length; d++) {
+				assertEquals(TRUE_POS[d], result[i][d], 2.);
+			}
+		}
+	}
+
+	@Test
+	public void differentSeedDifferentResult() {
+		double[][] result1 = runMCMC(1234L).getResult();
+		double[][] result2 = runMCMC(5678L).getResult();
+		assertFalse(Arrays.deepEquals(result1, result2));
+	}
+
+}
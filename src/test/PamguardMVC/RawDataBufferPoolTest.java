@@ -0,0 +1,103 @@
+package test.PamguardMVC;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+
+import org.junit.jupiter.api.Test;
+
+import PamguardMVC.RawDataBufferPool;
+
+/**
+ * Tests for the raw data buffer pool, including a measurement of how much less
+ * memory is allocated when arrays from removed units are recycled.
+ */
+public class RawDataBufferPoolTest {
+
+	private static final int BLOCK_LENGTH = 48000;
+
+	@Test
+	public void reuseSameLength() {
+		RawDataBufferPool pool = new RawDataBufferPool(4);
+		double[] a = pool.getBuffer(0, BLOCK_LENGTH);
+		pool.releaseBuffer(0, a);
+		assertSame(a, pool.getBuffer(0, BLOCK_LENGTH));
+		// wrong length or wrong channel get a new array.
+		pool.releaseBuffer(0, a);
+		assertNotSame(a, pool.getBuffer(1, BLOCK_LENGTH));
+		assertNotSame(a, pool.getBuffer(0, BLOCK_LENGTH/2));
+		assertEquals(1, pool.getReusedCount());
+		assertEquals(3, pool.getAllocatedCount());
+		assertEquals(1, pool.getDiscardedCount());
+	}
+
+	@Test
+	public void poolSizeLimit() {
+		RawDataBufferPool pool = new RawDataBufferPool(2);
+		for (int i = 0; i < 5; i++) {
+			pool.releaseBuffer(0, new double[BLOCK_LENGTH]);
+		}
+		assertEquals(2, pool.getReleasedCount());
+		assertEquals(3, pool.getDiscardedCount());
+		pool.clear();
+		assertEquals(0, pool.getReleasedCount());
+		assertEquals(BLOCK_LENGTH, pool.getBuffer(0, BLOCK_LENGTH).length);
+		assertEquals(1, pool.getAllocatedCount());
+	}
+
+	/**
+	 * Simulate a raw data block holding a few seconds of data, with the oldest
+	 * unit removed each time a new one is added, and measure the memory allocated
+	 * by this thread with and without the arrays being recycled.
+	 */
+	@Test
+	public void recyclingReducesAllocation() {
+		int nBlocks = 2000;
+		int nHeld = 10;
+		long unpooled = measureAllocation(new RawDataBufferPool(), nBlocks, nHeld, false);
+		RawDataBufferPool pool = new RawDataBufferPool();
+		long pooled = measureAllocation(pool, nBlocks, nHeld, true);
+		System.out.printf("Allocated %d MB without recycling, %d MB with. %s\n", unpooled>>20, pooled>>20, pool);
+		assertEquals(nHeld + 1, pool.getAllocatedCount());
+		assertEquals(nBlocks - nHeld - 1, pool.getReusedCount());
+		if (unpooled > 0) {
+			assertTrue(pooled * 10 < unpooled);
+		}
+	}
+
+	private long measureAllocation(RawDataBufferPool pool, int nBlocks, int nHeld, boolean recycle) {
+		long startBytes = getThreadAllocatedBytes();
+		ArrayDeque<double[]> held = new ArrayDeque<>();
+		double sum = 0;
+		for (int i = 0; i < nBlocks; i++) {
+			double[] data = pool.getBuffer(0, BLOCK_LENGTH);
+			data[i % BLOCK_LENGTH] = i;
+			held.addLast(data);
+			if (held.size() > nHeld) {
+				double[] removed = held.pollFirst();
+				sum += removed[0];
+				if (recycle) {
+					pool.releaseBuffer(0, removed);
+				}
+			}
+		}
+		assertTrue(sum >= 0);
+		return getThreadAllocatedBytes() - startBytes;
+	}
+
+	/**
+	 * @return bytes allocated by this thread, or 0 if the JVM can't measure it.
+	 */
+	private long getThreadAllocatedBytes() {
+		if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+			return Math.max(0, bean.getThreadAllocatedBytes(Thread.currentThread().getId()));
+		}
+		return 0;
+	}
+
+}
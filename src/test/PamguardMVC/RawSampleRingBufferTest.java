@@ -0,0 +1,213 @@
+package test.PamguardMVC;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import PamguardMVC.RawSampleRingBuffer;
+
+/**
+ * Tests for the lock free raw sample buffer used by PamRawDataBlock. Sample values
+ * are set equal to their sample numbers so that any read can be checked.
+ */
+public class RawSampleRingBufferTest {
+
+	private static final int CAPACITY = 1024;
+
+	private double[] makeSamples(long startSample, int n) {
+		double[] samples = new double[n];
+		for (int i = 0; i < n; i++) {
+			samples[i] = startSample + i;
+		}
+		return samples;
+	}
+
+	private void checkSamples(long startSample, double[] data, int n) {
+		for (int i = 0; i < n; i++) {
+			assertEquals(startSample + i, data[i], 0.);
+		}
+	}
+
+	@Test
+	public void readWithinBuffer() {
+		RawSampleRingBuffer buffer = new RawSampleRingBuffer(CAPACITY);
+		assertEquals(CAPACITY, buffer.getCapacity());
+		buffer.write(0, 0, makeSamples(0, 500), 500);
+		double[] dest = new double[100];
+		assertEquals(RawSampleRingBuffer.READ_OK, buffer.read(0, 200, dest, 0, 100));
+		checkSamples(200, dest, 100);
+		assertEquals(RawSampleRingBuffer.READ_NOT_ARRIVED, buffer.read(0, 450, dest, 0, 100));
+		assertEquals(RawSampleRingBuffer.READ_NOT_HELD, buffer.read(1, 0, dest, 0, 100));
+	}
+
+	@Test
+	public void readAcrossWrap() {
+		RawSampleRingBuffer buffer = new RawSampleRingBuffer(CAPACITY);
+		long sample = 0;
+		for (int i = 0; i < 5; i++) {
+			buffer.write(0, sample, makeSamples(sample, 300), 300);
+			sample += 300;
+		}
+		// 1500 samples written, so 1000 to 1100 is split across the end of the array.
+		double[] dest = new double[110];
+		assertEquals(RawSampleRingBuffer.READ_OK, buffer.read(0, 1000, dest, 10, 100));
+		for (int i = 0; i < 100; i++) {
+			assertEquals(1000 + i, dest[10 + i], 0.);
+		}
+		assertEquals(sample - CAPACITY, buffer.getFirstSample(0));
+		assertEquals(sample, buffer.getEndSample(0));
+	}
+
+	@Test
+	public void overwrittenNotHeld() {
+		RawSampleRingBuffer buffer = new RawSampleRingBuffer(CAPACITY);
+		long sample = 0;
+		for (int i = 0; i < 10; i++) {
+			buffer.write(0, sample, makeSamples(sample, 300), 300);
+			sample += 300;
+		}
+		double[] dest = new double[100];
+		long firstHeld = sample - CAPACITY;
+		assertEquals(RawSampleRingBuffer.READ_NOT_HELD, buffer.read(0, firstHeld - 1, dest, 0, 100));
+		assertEquals(RawSampleRingBuffer.READ_OK, buffer.read(0, firstHeld, dest, 0, 100));
+		checkSamples(firstHeld, dest, 100);
+		// a single write longer than the buffer only keeps the last samples.
+		buffer.write(0, sample, makeSamples(sample, 3000), 3000);
+		sample += 3000;
+		assertEquals(sample - CAPACITY, buffer.getFirstSample(0));
+		assertEquals(RawSampleRingBuffer.READ_OK, buffer.read(0, sample - 100, dest, 0, 100));
+		checkSamples(sample - 100, dest, 100);
+	}
+
+	@Test
+	public void restartOnGap() {
+		RawSampleRingBuffer buffer = new RawSampleRingBuffer(CAPACITY);
+		buffer.write(0, 0, makeSamples(0, 500), 500);
+		buffer.write(0, 10000, makeSamples(10000, 500), 500);
+		double[] dest = new double[100];
+		assertEquals(10000, buffer.getFirstSample(0));
+		assertEquals(RawSampleRingBuffer.READ_NOT_HELD, buffer.read(0, 200, dest, 0, 100));
+		assertEquals(RawSampleRingBuffer.READ_OK, buffer.read(0, 10000, dest, 0, 100));
+		checkSamples(10000, dest, 100);
+	}
+
+	@Test
+	public void totalMemoryLimit() {
+		// room for two channels only.
+		RawSampleRingBuffer buffer = new RawSampleRingBuffer(CAPACITY, 2L * CAPACITY * Double.BYTES);
+		for (int chan = 0; chan < 4; chan++) {
+			buffer.write(chan, 0, makeSamples(0, 500), 500);
+		}
+		assertEquals(2L * CAPACITY * Double.BYTES, buffer.getTotalBytes());
+		assertFalse(buffer.isRefused(1));
+		assertTrue(buffer.isRefused(2));
+		double[] dest = new double[100];
+		assertEquals(RawSampleRingBuffer.READ_OK, buffer.read(1, 0, dest, 0, 100));
+		assertEquals(RawSampleRingBuffer.READ_NOT_HELD, buffer.read(2, 0, dest, 0, 100));
+		assertEquals(RawSampleRingBuffer.READ_NOT_HELD, buffer.read(3, 0, dest, 0, 100));
+	}
+
+	/**
+	 * Read continuously while another thread writes, always asking for the oldest
+	 * samples so that many reads are overwritten while they copy. Every read which
+	 * claims to be OK must have the right data.
+	 */
+	@Test
+	public void concurrentOverwriteDetected() throws InterruptedException {
+		RawSampleRingBuffer buffer = new RawSampleRingBuffer(CAPACITY);
+		int blockSize = 256;
+		AtomicBoolean running = new AtomicBoolean(true);
+		Thread writer = new Thread(() -> {
+			long sample = 0;
+			double[] samples = new double[blockSize];
+			while (running.get()) {
+				for (int i = 0; i < blockSize; i++) {
+					samples[i] = sample + i;
+				}
+				buffer.write(0, sample, samples, blockSize);
+				sample += blockSize;
+			}
+		});
+		writer.start();
+		int nBad = 0;
+		double[] dest = new double[CAPACITY/2];
+		long endTime = System.currentTimeMillis() + 500;
+		while (System.currentTimeMillis() < endTime) {
+			long first = buffer.getFirstSample(0);
+			if (first < 0) {
+				continue;
+			}
+			if (buffer.read(0, first, dest, 0, dest.length) == RawSampleRingBuffer.READ_OK) {
+				for (int i = 0; i < dest.length; i++) {
+					if (dest[i] != first + i) {
+						nBad++;
+						break;
+					}
+				}
+			}
+		}
+		running.set(false);
+		writer.join();
+		assertEquals(0, nBad);
+	}
+
+	/**
+	 * Read the latest samples while another thread keeps writing a few buffers worth
+	 * of data then restarting the channel from an earlier sample, e.g. when sample 
+	 * numbers are reset. Reads which straddle a restart must fail rather than return
+	 * a mix of old and new data. 
+	 */
+	@Test
+	public void concurrentBackwardsRestart() throws InterruptedException {
+		RawSampleRingBuffer buffer = new RawSampleRingBuffer(CAPACITY);
+		int blockSize = 256;
+		AtomicBoolean running = new AtomicBoolean(true);
+		Thread writer = new Thread(() -> {
+			double[] samples = new double[blockSize];
+			long restartSample = 0;
+			while (running.get()) {
+				/*
+				 * restart from an earlier sample which goes in the same place in the buffer
+				 * as the last samples of the previous run, which are the ones being read. 
+				 */
+				long sample = restartSample;
+				restartSample = (restartSample + 3*CAPACITY - blockSize) % (4*CAPACITY);
+				for (int b = 0; b < 12 && running.get(); b++) {
+					for (int i = 0; i < blockSize; i++) {
+						samples[i] = sample + i;
+					}
+					buffer.write(0, sample, samples, blockSize);
+					sample += blockSize;
+				}
+			}
+		});
+		writer.start();
+		int nBad = 0, nOK = 0;
+		double[] dest = new double[blockSize];
+		long endTime = System.currentTimeMillis() + 1000;
+		while (System.currentTimeMillis() < endTime) {
+			long first = buffer.getEndSample(0) - dest.length;
+			if (first < 0) {
+				continue;
+			}
+			if (buffer.read(0, first, dest, 0, dest.length) == RawSampleRingBuffer.READ_OK) {
+				nOK++;
+				for (int i = 0; i < dest.length; i++) {
+					if (dest[i] != first + i) {
+						nBad++;
+						break;
+					}
+				}
+			}
+		}
+		running.set(false);
+		writer.join();
+		assertTrue(nOK > 0);
+		assertEquals(0, nBad);
+	}
+
+}
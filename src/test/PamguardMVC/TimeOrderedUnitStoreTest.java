@@ -0,0 +1,153 @@
+package test.PamguardMVC;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ListIterator;
+
+import org.junit.jupiter.api.Test;
+
+import PamguardMVC.PamDataUnit;
+import PamguardMVC.superdet.SuperDetection;
+import PamguardMVC.unitstore.TimeOrderedUnitStore;
+
+/**
+ * Tests for the array based data unit store used by PamDataBlock. 
+ */
+public class TimeOrderedUnitStoreTest {
+
+	private class TestUnit extends PamDataUnit<PamDataUnit, SuperDetection> {
+		public TestUnit(long timeMilliseconds, long startSample) {
+			super(timeMilliseconds, 1, startSample, 100);
+		}
+	}
+
+	private TimeOrderedUnitStore<TestUnit> makeStore(int n) {
+		TimeOrderedUnitStore<TestUnit> store = new TimeOrderedUnitStore<>();
+		for (int i = 0; i < n; i++) {
+			store.add(new TestUnit(i * 10, i * 100));
+		}
+		return store;
+	}
+
+	/**
+	 * Add and remove units from the head as a datablock does and check that the 
+	 * contents always match a reference list. 
+	 */
+	@Test
+	public void addRemoveTest() {
+		TimeOrderedUnitStore<TestUnit> store = new TimeOrderedUnitStore<>();
+		List<TestUnit> reference = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			TestUnit unit = new TestUnit(i, i);
+			store.add(unit);
+			reference.add(unit);
+			if (i % 3 == 0) {
+				assertSame(reference.remove(0), store.remove(0));
+			}
+		}
+		assertEquals(reference, store);
+		assertTrue(store.isTimeOrdered());
+		assertTrue(store.isSampleOrdered());
+
+		// list iterator functions are used throughout PamDataBlock
+		ListIterator<TestUnit> it = store.listIterator(store.size());
+		ListIterator<TestUnit> refIt = reference.listIterator(reference.size());
+		while (refIt.hasPrevious()) {
+			assertSame(refIt.previous(), it.previous());
+		}
+		assertFalse(it.hasPrevious());
+	}
+
+	@Test
+	public void searchTest() {
+		TimeOrderedUnitStore<TestUnit> store = makeStore(100);
+		assertEquals(0, store.indexOfFirstAtOrAfterMillis(-5));
+		assertEquals(5, store.indexOfFirstAtOrAfterMillis(50));
+		assertEquals(6, store.indexOfFirstAtOrAfterMillis(51));
+		assertEquals(100, store.indexOfFirstAtOrAfterMillis(10000));
+		assertEquals(7, store.indexOfFirstAtOrAfterSample(650));
+		store.remove(0);
+		assertEquals(4, store.indexOfFirstAtOrAfterMillis(50));
+
+		// adding a unit out of order must disable the binary searches
+		store.add(new TestUnit(5, 50));
+		assertFalse(store.isTimeOrdered());
+		Collections.sort(store);
+		assertTrue(store.isTimeOrdered());
+		assertEquals(5, store.get(0).getTimeMilliseconds());
+	}
+
+	/**
+	 * Changing the time of a unit already in the store, as super detections do
+	 * when sub detections are added, must disable the binary searches until the 
+	 * units are back in order. 
+	 */
+	@Test
+	public void timeChangeTest() {
+		TimeOrderedUnitStore<TestUnit> store = makeStore(10);
+		TestUnit unit = store.get(5);
+		unit.setTimeMilliseconds(5);
+		store.unitOrderChanged();
+		assertFalse(store.isTimeOrdered());
+		assertTrue(store.isSampleOrdered());
+		unit.setTimeMilliseconds(50);
+		store.unitOrderChanged();
+		assertTrue(store.isTimeOrdered());
+		assertEquals(5, store.indexOfFirstAtOrAfterMillis(50));
+	}
+
+	/**
+	 * Snapshots must not change when the store is later modified, 
+	 * including removals and inserts in the middle of the data. 
+	 */
+	@Test
+	public void snapshotTest() {
+		TimeOrderedUnitStore<TestUnit> store = makeStore(20);
+		List<TestUnit> snapshot = store.snapshot();
+		List<TestUnit> copy = new ArrayList<>(snapshot);
+		store.remove(0);
+		store.remove(5);
+		store.add(3, new TestUnit(25, 250));
+		store.set(7, new TestUnit(71, 710));
+		for (int i = 0; i < 100; i++) {
+			store.add(new TestUnit(1000 + i, 10000 + i));
+			store.remove(0);
+		}
+		store.clear();
+		assertEquals(copy, snapshot);
+		assertEquals(20, snapshot.size());
+	}
+
+	/**
+	 * Copying data, as PamDataBlock.getDataCopy() does, must not stop units removed
+	 * from the head of the store from being garbage collected. 
+	 */
+	@Test
+	public void copyReleaseTest() throws InterruptedException {
+		TimeOrderedUnitStore<TestUnit> store = makeStore(20);
+		List<TestUnit> copy = store.copy(0, store.size());
+		assertEquals(20, copy.size());
+		assertEquals(store, copy);
+		List<TestUnit> part = store.copy(5, 10);
+		assertSame(store.get(5), part.get(0));
+		assertEquals(5, part.size());
+		copy = null;
+		part = null;
+		
+		WeakReference<TestUnit> removed = new WeakReference<>(store.remove(0));
+		for (int i = 0; i < 50 && removed.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(removed.get());
+		assertEquals(19, store.size());
+	}
+}